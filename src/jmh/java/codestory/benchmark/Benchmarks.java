@@ -0,0 +1,45 @@
+package codestory.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Runs the engine benchmarks and writes their results as JSON, to be kept and compared between releases:
+ * <pre>
+ *     Benchmarks target/jmh-result.json [JMH options, e.g. -p floors=20 EngineBenchmark]
+ * </pre>
+ * The <code>engine</code> parameter takes the names of {@link codestory.replay.ReplayedEngine}, e.g.
+ * <code>-p engine=LOOKAHEAD</code>.
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        if (args.length == 0) {
+            System.err.println("usage: Benchmarks <result file> [JMH options]");
+            System.exit(1);
+        }
+        CommandLineOptions jmhOptions = new CommandLineOptions(Arrays.copyOfRange(args, 1, args.length));
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(jmhOptions).resultFormat(ResultFormatType.JSON).result(args[0]);
+        if (jmhOptions.getIncludes().isEmpty()) {
+            options.include("codestory\\.benchmark\\..*");
+        }
+        new Runner(options.build()).run();
+    }
+
+    /**
+     * The engines log each request at INFO, which would be all a benchmark measures.
+     */
+    static void quietLogs() {
+        ((Logger) LoggerFactory.getLogger("codestory")).setLevel(Level.ERROR);
+    }
+}
@@ -0,0 +1,95 @@
+package codestory.benchmark;
+
+import codestory.EngineConfiguration;
+import codestory.core.Command;
+import codestory.core.engine.ElevatorEngine;
+import codestory.replay.ReplayedEngine;
+import com.google.common.base.Optional;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operations that leave the building as busy as they found it: ticks of a game kept at <code>users</code> users, and
+ * state requests. W2 engines run with and without <code>publishState</code>, W1 ignores it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+    private static final Optional<Boolean> YES = Optional.of(true);
+    private static final Optional<Boolean> NO = Optional.of(false);
+    @Param({"W1", "W2", "W2_COMPACT", "W2_ALLOCATION_FREE"})
+    public ReplayedEngine engine;
+    @Param({"6", "20", "100"})
+    public int floors;
+    @Param({"10", "100", "1000"})
+    public int users;
+    @Param({"false", "true"})
+    public boolean publishState;
+    private SimulatedBuilding game;
+    private SimulatedBuilding rushHour;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Benchmarks.quietLogs();
+        game = new SimulatedBuilding(newEngine(), floors, users, 30, false);
+        rushHour = new SimulatedBuilding(newEngine(), floors, users, 30, true);
+        // past the first trips, where the cabin only picks users up
+        for (int tick = 0; tick < 10 * floors; tick++) {
+            game.tick();
+            rushHour.tick();
+        }
+    }
+
+    private ElevatorEngine newEngine() {
+        EngineConfiguration configuration = new EngineConfiguration();
+        configuration.setPublishState(publishState);
+        return engine.create(configuration);
+    }
+
+    /**
+     * nextCommand, and the calls, gos, entries and exits of the users answering it.
+     */
+    @Benchmark
+    public Command nextCommand() {
+        return game.tick();
+    }
+
+    /**
+     * The same ticks, in a building where most stops open the door.
+     */
+    @Benchmark
+    public Command openTheDoorTicks() {
+        return rushHour.tick();
+    }
+
+    /**
+     * With <code>publishState</code>, a W2 engine answers from the state it published at its last tick, publishing
+     * being measured with nextCommand; without it, the default, the state is built here, on demand.
+     */
+    @Benchmark
+    public byte[] getState() {
+        return game.getEngine().getStateAsJson(NO, NO);
+    }
+
+    @Benchmark
+    public byte[] getStateWithFullUserList() {
+        return game.getEngine().getStateAsJson(YES, NO);
+    }
+}
@@ -0,0 +1,115 @@
+package codestory.benchmark;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.engine.ElevatorEngine;
+import codestory.replay.ReplayedEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operations that change the building for good: each iteration starts from a fresh game holding <code>users</code>
+ * users and runs one batch of them, the score is the time of the whole batch.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class EngineMutationBenchmark {
+
+    private static final int CALLS = 100;
+    private static final int GOS = 30;
+
+    @Benchmark
+    @Warmup(iterations = 20, batchSize = CALLS)
+    @Measurement(iterations = 50, batchSize = CALLS)
+    public ElevatorEngine call(Building building) {
+        int floor = building.nextFloor();
+        return building.elevator.call(floor, floor == building.floors - 1 ? Direction.DOWN : Direction.UP);
+    }
+
+    @Benchmark
+    @Warmup(iterations = 20, batchSize = GOS)
+    @Measurement(iterations = 50, batchSize = GOS)
+    public ElevatorEngine go(BoardedBuilding building) {
+        return building.elevator.go(1 + building.nextFloor() % (building.floors - 1));
+    }
+
+    /**
+     * Ends a game of <code>users</code> users, keeping its state for the record.
+     */
+    @Benchmark
+    @Warmup(iterations = 20, batchSize = 1)
+    @Measurement(iterations = 50, batchSize = 1)
+    public ElevatorEngine reset(Building building) {
+        return building.elevator.reset("benchmark", 0, building.floors - 1, 30);
+    }
+
+    @State(Scope.Thread)
+    public static class Building {
+        @Param({"W1", "W2", "W2_COMPACT", "W2_ALLOCATION_FREE"})
+        public ReplayedEngine engine;
+        @Param({"6", "20", "100"})
+        public int floors;
+        @Param({"10", "100", "1000"})
+        public int users;
+        ElevatorEngine elevator;
+        private int floor;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            Benchmarks.quietLogs();
+            SimulatedBuilding game = new SimulatedBuilding(engine.create(), floors, users, 30, false);
+            for (int tick = 0; tick < 10 * floors; tick++) {
+                game.tick();
+            }
+            elevator = game.getEngine();
+            floor = 0;
+        }
+
+        int nextFloor() {
+            floor = (floor + 1) % floors;
+            return floor;
+        }
+    }
+
+    /**
+     * <code>users</code> users waiting upstairs, and <code>GOS</code> users who just boarded at the ground floor and
+     * have not asked for their floor yet.
+     */
+    @State(Scope.Thread)
+    public static class BoardedBuilding extends Building {
+
+        @Override
+        @Setup(Level.Iteration)
+        public void setUp() {
+            Benchmarks.quietLogs();
+            elevator = engine.create();
+            elevator.reset("benchmark", 0, floors - 1, GOS);
+            for (int user = 0; user < users; user++) {
+                elevator.call(1 + user % (floors - 1), Direction.DOWN);
+            }
+            for (int user = 0; user < GOS; user++) {
+                elevator.call(0, Direction.UP);
+            }
+            // the cabin starts at the ground floor, where the boarding users wait
+            for (int tick = 0; tick < floors && elevator.nextCommand() != Command.OPEN; tick++) {
+                continue;
+            }
+            for (int user = 0; user < GOS; user++) {
+                elevator.userHasEntered(null);
+            }
+        }
+    }
+}
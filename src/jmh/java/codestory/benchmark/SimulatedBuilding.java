@@ -0,0 +1,98 @@
+package codestory.benchmark;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.engine.ElevatorEngine;
+
+import java.util.Random;
+
+/**
+ * Plays the server for a benchmark: keeps <code>nbUsers</code> users in the building, waiting or inside the cabin, and
+ * answers each command the way users would. A user reaching their floor is replaced by a new caller, anywhere in the
+ * building; during a rush hour the new caller shows up right where the cabin let the previous one out, so the cabin
+ * finds someone to take at most of the floors it stops at.
+ */
+class SimulatedBuilding {
+
+    private final ElevatorEngine engine;
+    private final int nbFloors;
+    private final int cabinSize;
+    private final boolean rushHour;
+    private final Random random = new Random(42);
+    // by user index: floor called from, floor to go, inside the cabin or not
+    private final int[] initialFloors;
+    private final int[] floorsToGo;
+    private final boolean[] inside;
+    private final int[] exited;
+    private int nbInside;
+    private int floor;
+
+    SimulatedBuilding(ElevatorEngine engine, int nbFloors, int nbUsers, int cabinSize, boolean rushHour) {
+        this.engine = engine;
+        this.nbFloors = nbFloors;
+        this.cabinSize = cabinSize;
+        this.rushHour = rushHour;
+        this.initialFloors = new int[nbUsers];
+        this.floorsToGo = new int[nbUsers];
+        this.inside = new boolean[nbUsers];
+        this.exited = new int[nbUsers];
+        engine.reset("benchmark", 0, nbFloors - 1, cabinSize);
+        for (int user = 0; user < nbUsers; user++) {
+            arrive(user, random.nextInt(nbFloors));
+        }
+    }
+
+    ElevatorEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * One nextCommand, and the users' answer to it.
+     */
+    Command tick() {
+        Command command = engine.nextCommand();
+        if (command == Command.UP) {
+            floor++;
+        } else if (command == Command.DOWN) {
+            floor--;
+        } else if (command == Command.OPEN) {
+            usersGetInAndOut();
+        }
+        return command;
+    }
+
+    private void usersGetInAndOut() {
+        int nbExited = 0;
+        for (int user = 0; user < inside.length; user++) {
+            if (inside[user] && floorsToGo[user] == floor) {
+                engine.userHasExited(null);
+                inside[user] = false;
+                nbInside--;
+                exited[nbExited++] = user;
+            }
+        }
+        for (int user = 0; user < inside.length && nbInside < cabinSize; user++) {
+            if (!inside[user] && initialFloors[user] == floor) {
+                inside[user] = true;
+                nbInside++;
+                engine.userHasEntered(null);
+                engine.go(floorsToGo[user]);
+            }
+        }
+        // after boarding: new callers wait for the next stop, as they would on the real server
+        for (int e = 0; e < nbExited; e++) {
+            arrive(exited[e], rushHour ? floor : random.nextInt(nbFloors));
+        }
+    }
+
+    private void arrive(int user, int atFloor) {
+        int to;
+        do {
+            to = random.nextInt(nbFloors);
+        } while (to == atFloor);
+        initialFloors[user] = atFloor;
+        floorsToGo[user] = to;
+        inside[user] = false;
+        engine.call(atFloor, to > atFloor ? Direction.UP : Direction.DOWN);
+    }
+}
@@ -14,4 +14,6 @@ import lombok.Data;
 public class ElevatorConfiguration extends Configuration {
     @JsonProperty
     LogstashLogbackEncoderConfiguration logstash;
+    @JsonProperty
+    EngineConfiguration engine = new EngineConfiguration();
 }
@@ -0,0 +1,47 @@
+package codestory;
+
+import codestory.core.engine.ElevatorEngine;
+import codestory.core.engine.EventLoopElevatorEngine;
+import codestory.core.engine.MultiCabinElevator;
+import codestory.core.engine.RequestJournal;
+import codestory.core.engine.SessionRegistry;
+import com.google.common.base.Optional;
+import com.google.inject.Inject;
+import com.yammer.dropwizard.lifecycle.Managed;
+
+/**
+ * Lets the engine thread of an {@link EventLoopElevatorEngine} apply pending events before the service stops, then
+ * forces the last records of the {@link RequestJournal} to the disk, and stops the cabin threads of a
+ * {@link MultiCabinElevator} and the shard threads of the {@link SessionRegistry}.
+ */
+public class ElevatorEngineLifecycle implements Managed {
+
+    private final ElevatorEngine engine;
+    private final SessionRegistry sessions;
+    private final Optional<RequestJournal> journal;
+
+    @Inject
+    public ElevatorEngineLifecycle(ElevatorEngine engine, SessionRegistry sessions, Optional<RequestJournal> journal) {
+        this.engine = engine;
+        this.sessions = sessions;
+        this.journal = journal;
+    }
+
+    @Override
+    public void start() throws Exception {
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (engine instanceof EventLoopElevatorEngine) {
+            ((EventLoopElevatorEngine) engine).shutdown();
+        }
+        if (journal.isPresent()) {
+            journal.get().close();
+        }
+        if (engine instanceof MultiCabinElevator) {
+            ((MultiCabinElevator) engine).shutdown();
+        }
+        sessions.shutdown();
+    }
+}
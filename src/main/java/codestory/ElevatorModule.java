@@ -1,11 +1,25 @@
 package codestory;
 
+import codestory.core.AllocationMeter;
+import codestory.core.engine.DecisionTracer;
+import codestory.core.engine.EventLoopElevatorEngine;
+import codestory.core.engine.JournaledElevatorEngine;
+import codestory.core.engine.LookaheadElevator;
+import codestory.core.engine.MultiCabinElevator;
+import codestory.core.engine.RequestJournal;
 import codestory.core.engine.S03E01W2Elevator;
+import codestory.core.engine.SessionRegistry;
+import codestory.core.engine.SynchronizedElevatorEngine;
+import com.google.common.base.Optional;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
+import com.yammer.metrics.Metrics;
 import codestory.core.engine.ElevatorEngine;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * User: cfurmaniak
  * Date: 31/10/13
@@ -18,7 +32,52 @@ public class ElevatorModule extends AbstractModule {
 
     @Provides
     @Singleton
-    protected ElevatorEngine providesElevatorEngine() {
-        return new S03E01W2Elevator();
+    protected ElevatorEngine providesElevatorEngine(ElevatorConfiguration configuration, DecisionTracer tracer,
+                                                    Optional<RequestJournal> journal) {
+        EngineConfiguration engineConfiguration = configuration.getEngine();
+        if (engineConfiguration.isMultiCabin()) {
+            return new MultiCabinElevator(engineConfiguration, tracer);
+        }
+        S03E01W2Elevator w2 = S03E01W2Elevator.create(engineConfiguration, tracer);
+        if (w2 instanceof LookaheadElevator) {
+            ((LookaheadElevator) w2).register(Metrics.defaultRegistry());
+        }
+        ElevatorEngine engine = journal.isPresent() ? JournaledElevatorEngine.recover(w2, journal.get(), tracer,
+                engineConfiguration.getSnapshotEveryTicks()) : w2;
+        if (engineConfiguration.isEventLoop()) {
+            return new EventLoopElevatorEngine(engine, engineConfiguration.getEventQueueCapacity(),
+                    engineConfiguration.getBackpressure(), Metrics.defaultRegistry());
+        }
+        return new SynchronizedElevatorEngine(engine, Metrics.defaultRegistry());
+    }
+
+    @Provides
+    @Singleton
+    protected Optional<RequestJournal> providesRequestJournal(ElevatorConfiguration configuration) throws IOException {
+        EngineConfiguration engineConfiguration = configuration.getEngine();
+        if (engineConfiguration.getJournal() == null || engineConfiguration.isMultiCabin()) {
+            return Optional.absent();
+        }
+        return Optional.of(RequestJournal.open(new File(engineConfiguration.getJournal()),
+                engineConfiguration.getJournalCapacity(), engineConfiguration.getJournalFlushMillis()));
+    }
+
+    @Provides
+    @Singleton
+    protected SessionRegistry providesSessionRegistry(ElevatorConfiguration configuration, DecisionTracer tracer) {
+        return new SessionRegistry(configuration.getEngine(), tracer);
+    }
+
+    @Provides
+    @Singleton
+    protected DecisionTracer providesDecisionTracer(ElevatorConfiguration configuration) {
+        return new DecisionTracer(configuration.getEngine());
+    }
+
+    @Provides
+    @Singleton
+    protected AllocationMeter providesAllocationMeter(ElevatorConfiguration configuration) {
+        EngineConfiguration engineConfiguration = configuration.getEngine();
+        return new AllocationMeter(engineConfiguration.isAllocationMeter() && !engineConfiguration.isEventLoop());
     }
 }
@@ -1,5 +1,11 @@
 package codestory;
 
+import codestory.replay.ReplayCommand;
+import codestory.simulator.CompileTableCommand;
+import codestory.simulator.SimulateCommand;
+import codestory.simulator.TournamentCommand;
+import codestory.simulator.TrainPolicyCommand;
+import codestory.simulator.TuneCommand;
 import com.hubspot.dropwizard.guice.GuiceBundle;
 import com.yammer.dropwizard.Service;
 import com.yammer.dropwizard.config.Bootstrap;
@@ -20,9 +26,15 @@ public class ElevatorService extends Service<ElevatorConfiguration> {
     @Override
     public void initialize(Bootstrap<ElevatorConfiguration> bootstrap) {
         bootstrap.setName("Elevator Service baby!");
-        bootstrap.addBundle(GuiceBundle.<ElevatorConfiguration>newBuilder().addModule(new ElevatorModule()).enableAutoConfig(getClass()
-                .getPackage().getName()).build()
+        bootstrap.addBundle(GuiceBundle.<ElevatorConfiguration>newBuilder().addModule(new ElevatorModule())
+                .setConfigClass(ElevatorConfiguration.class).enableAutoConfig(getClass().getPackage().getName()).build()
         );
+        bootstrap.addCommand(new ReplayCommand());
+        bootstrap.addCommand(new SimulateCommand());
+        bootstrap.addCommand(new TournamentCommand());
+        bootstrap.addCommand(new TuneCommand());
+        bootstrap.addCommand(new CompileTableCommand());
+        bootstrap.addCommand(new TrainPolicyCommand());
 //        bootstrap.addBundle(new LogstashLogbackEncoderBundle<ElevatorConfiguration>() {
 //            @Override
 //            public LogstashLogbackEncoderConfiguration getConfiguration(ElevatorConfiguration configuration) {
@@ -0,0 +1,184 @@
+package codestory;
+
+import codestory.core.engine.DecisionTracer;
+import codestory.core.engine.EventLoopElevatorEngine;
+import codestory.core.engine.LookaheadElevator;
+import codestory.core.engine.S03E01W2Elevator;
+import codestory.core.engine.StrategyParameters;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+/**
+ * Tuning knobs of the elevator engine, the <code>engine:</code> block of the service configuration.
+ */
+@Data
+public class EngineConfiguration {
+    /**
+     * keep users as primitive columns (see {@link codestory.core.CompactUserStore}) instead of User objects
+     */
+    @JsonProperty
+    boolean compactUserStore = false;
+    /**
+     * steady state ticks, calls and gos allocate nothing: tracing starts off, implies compactUserStore
+     */
+    @JsonProperty
+    boolean allocationFree = false;
+    /**
+     * measure bytes allocated by nextCommand/call/go, reported by the <code>allocations</code> admin task; off with
+     * eventLoop, where the request thread only queues events and the engine thread does the allocating
+     */
+    @JsonProperty
+    boolean allocationMeter = false;
+    /**
+     * GET / reads the state the engine published at its last tick or reset, instead of building it from the live
+     * engine. Each tick then copies every user and renders the request history, for reads that are rare: off by
+     * default, the state is built when read, under the lock or on the thread of the engine. Ignored by an
+     * allocationFree engine
+     */
+    @JsonProperty
+    boolean publishState = false;
+    @JsonProperty
+    int lastCommandsCapacity = S03E01W2Elevator.LAST_COMMANDS_QUEUE_SIZE;
+    @JsonProperty
+    int lastRequestsCapacity = S03E01W2Elevator.LAST_REQUESTS_QUEUE_SIZE;
+    @JsonProperty
+    int lastResetsCapacity = S03E01W2Elevator.LAST_RESET_QUEUE_SIZE;
+    /**
+     * which decisions get their engine state logged as JSON, changed at runtime by the <code>trace</code> admin task
+     */
+    @JsonProperty
+    DecisionTracer.Sampling traceSampling = DecisionTracer.Sampling.ALL;
+    /**
+     * N for {@link DecisionTracer.Sampling#EVERY_N_TICKS}
+     */
+    @JsonProperty
+    int traceEvery = 100;
+    /**
+     * mutations applied by a single engine thread fed by a lock-free queue, instead of being serialized on a monitor
+     */
+    @JsonProperty
+    boolean eventLoop = false;
+    @JsonProperty
+    int eventQueueCapacity = 1024;
+    /**
+     * what producers do when eventQueueCapacity events are pending: wait for room, or get a 503
+     */
+    @JsonProperty
+    EventLoopElevatorEngine.Backpressure backpressure = EventLoopElevatorEngine.Backpressure.BLOCK;
+    /**
+     * several cabins, see {@link codestory.core.engine.MultiCabinElevator}; each cabin has its own lock, eventLoop is
+     * ignored
+     */
+    @JsonProperty
+    boolean multiCabin = false;
+    /**
+     * cabins until a reset gives their number
+     */
+    @JsonProperty
+    int cabinCount = 1;
+    /**
+     * from this number of cabins on, their next commands are computed in parallel by cabinThreads threads
+     */
+    @JsonProperty
+    int parallelCabinsThreshold = 8;
+    @JsonProperty
+    int cabinThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * engine threads the games served under <code>/sessions/{session}</code> are spread over
+     */
+    @JsonProperty
+    int sessionShards = Runtime.getRuntime().availableProcessors();
+    @JsonProperty
+    int sessionIdleMinutes = 30;
+    /**
+     * new sessions are refused with a 503 past this many; only idle ones are forgotten
+     */
+    @JsonProperty
+    int maxSessions = 256;
+    /**
+     * calls to a session are refused once its users hold about this many bytes
+     */
+    @JsonProperty
+    long sessionMemoryCap = 16 * 1024 * 1024;
+    /**
+     * plan the next ticks instead of deciding greedily, see {@link LookaheadElevator}
+     */
+    @JsonProperty
+    boolean lookahead = false;
+    @JsonProperty
+    int lookaheadTicks = 8;
+    /**
+     * wall-clock time a decision may spend planning
+     */
+    @JsonProperty
+    long lookaheadBudgetMicros = 1000;
+    /**
+     * a plan not looking this many ticks ahead, for want of time, is not followed: the greedy decision is taken
+     */
+    @JsonProperty
+    int lookaheadMinTicks = 3;
+    /**
+     * how a lookahead engine plans: SEARCH every sequence of commands over the users it knows, or play ROLLOUTS where
+     * users keep calling as they did
+     */
+    @JsonProperty
+    LookaheadElevator.Planning lookaheadPlanning = LookaheadElevator.Planning.SEARCH;
+    /**
+     * most ticks a rollout plays, it stops once the users known are delivered
+     */
+    @JsonProperty
+    int rolloutTicks = 100;
+    /**
+     * fewer rounds (a rollout of each command) played by the deadline, the greedy decision is taken
+     */
+    @JsonProperty
+    int minRolloutRounds = 4;
+    @JsonProperty
+    int rolloutThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * file of a {@link codestory.core.engine.DecisionTable} the W2 engine reads its decisions from, written by the
+     * <code>compile-table</code> command; null to decide live
+     */
+    @JsonProperty
+    String decisionTable;
+    /**
+     * file of a {@link codestory.core.engine.PolicyTable} learnt by the <code>train-policy</code> command, memory-mapped
+     * by the W2 engine to read its decisions from; null to decide live
+     */
+    @JsonProperty
+    String policyTable;
+    /**
+     * directory the requests applied to the engine are journaled to, and replayed from at startup, see
+     * {@link codestory.core.engine.RequestJournal}; null not to journal. Session and multi cabin games are not
+     * journaled
+     */
+    @JsonProperty
+    String journal;
+    /**
+     * records a journal segment is mapped for at first, it grows twice as large when full
+     */
+    @JsonProperty
+    int journalCapacity = 1 << 20;
+    /**
+     * how often the records journaled meanwhile are forced to the disk
+     */
+    @JsonProperty
+    long journalFlushMillis = 100;
+    /**
+     * how many ticks apart the journaled engine is snapshotted, as well as after each reset, for recovery to replay
+     * the journal from the newest snapshot only; 0 not to snapshot
+     */
+    @JsonProperty
+    int snapshotEveryTicks = 1000;
+    /**
+     * port of a lightweight listener serving the game requests straight to the engine, next to the Jersey ones, see
+     * {@link codestory.transport.NioGameListener}; null not to listen
+     */
+    @JsonProperty
+    Integer nioPort;
+    /**
+     * knobs of the W2 strategy, see {@link codestory.core.engine.StrategyParameters}
+     */
+    @JsonProperty
+    StrategyParameters strategy = new StrategyParameters();
+}
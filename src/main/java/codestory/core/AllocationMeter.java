@@ -0,0 +1,109 @@
+package codestory.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bytes allocated on the heap by engine operations, read from the per-thread allocation counters of the JVM
+ * (<code>com.sun.management.ThreadMXBean</code>). An operation is measured on the thread running it:
+ * <pre>
+ *     long start = meter.start();
+ *     engine.nextCommand();
+ *     meter.record(Operation.NEXT_COMMAND, start);
+ * </pre>
+ * Reading the counter costs a few bytes on some JVMs, that cost is measured once and taken off every record. A
+ * disabled meter, or a JVM without the counters, records nothing.
+ */
+public class AllocationMeter {
+
+    private static final com.sun.management.ThreadMXBean THREADS = sunThreadMXBean();
+    private final boolean enabled;
+    private final long readCost;
+    private final AtomicLongArray counts = new AtomicLongArray(Operation.values().length);
+    private final AtomicLongArray bytes = new AtomicLongArray(Operation.values().length);
+
+    public AllocationMeter(boolean enabled) {
+        this.enabled = enabled && isSupported();
+        this.readCost = this.enabled ? measureReadCost() : 0;
+    }
+
+    public static boolean isSupported() {
+        return THREADS != null;
+    }
+
+    /**
+     * @return bytes allocated so far by the current thread, -1 if the JVM does not tell
+     */
+    public static long allocatedBytes() {
+        if (THREADS == null) {
+            return -1;
+        }
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long start() {
+        return enabled ? allocatedBytes() : 0;
+    }
+
+    public void record(Operation operation, long start) {
+        if (!enabled) {
+            return;
+        }
+        long allocated = allocatedBytes() - start - readCost;
+        counts.incrementAndGet(operation.ordinal());
+        bytes.addAndGet(operation.ordinal(), Math.max(0, allocated));
+    }
+
+    public long getCount(Operation operation) {
+        return counts.get(operation.ordinal());
+    }
+
+    public long getBytes(Operation operation) {
+        return bytes.get(operation.ordinal());
+    }
+
+    public double getBytesPerOperation(Operation operation) {
+        long count = getCount(operation);
+        return count == 0 ? 0 : (double) getBytes(operation) / count;
+    }
+
+    public void reset() {
+        for (Operation operation : Operation.values()) {
+            counts.set(operation.ordinal(), 0);
+            bytes.set(operation.ordinal(), 0);
+        }
+    }
+
+    private static long measureReadCost() {
+        long cost = Long.MAX_VALUE;
+        for (int i = 0; i < 100; i++) {
+            long start = allocatedBytes();
+            cost = Math.min(cost, allocatedBytes() - start);
+        }
+        return cost;
+    }
+
+    private static com.sun.management.ThreadMXBean sunThreadMXBean() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+        if (!sunThreads.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        if (!sunThreads.isThreadAllocatedMemoryEnabled()) {
+            sunThreads.setThreadAllocatedMemoryEnabled(true);
+        }
+        return sunThreads;
+    }
+
+    public enum Operation {
+        NEXT_COMMAND, CALL, GO,;
+    }
+}
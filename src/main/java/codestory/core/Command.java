@@ -4,4 +4,21 @@ public enum Command {
 
     UP, DOWN, OPEN, CLOSE, NOTHING;
 
+    /**
+     * @return true when the game server would play <code>command</code> with the cabin at <code>floor</code> of a
+     * building from <code>lowerFloor</code> to <code>higherFloor</code>: NOTHING only with the door closed
+     */
+    public static boolean accepted(Command command, int floor, boolean open, int lowerFloor, int higherFloor) {
+        switch (command) {
+            case UP:
+                return !open && floor < higherFloor;
+            case DOWN:
+                return !open && floor > lowerFloor;
+            case CLOSE:
+                return open;
+            default:
+                return !open;
+        }
+    }
+
 }
@@ -0,0 +1,119 @@
+package codestory.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The last commands sent by an engine, kept as primitives in preallocated arrays used as a ring: recording allocates
+ * nothing, the oldest command is overwritten once <code>capacity</code> commands are kept. Only {@link #render()}
+ * builds strings.
+ */
+public class CommandHistory {
+
+    private static final Command[] COMMANDS = Command.values();
+    private final int[] ticks;
+    private final int[] floors;
+    private final byte[] commands;
+    private long nbRecorded;
+
+    public CommandHistory(int capacity) {
+        checkArgument(capacity > 0, "capacity has to be positive");
+        ticks = new int[capacity];
+        floors = new int[capacity];
+        commands = new byte[capacity];
+    }
+
+    public synchronized void record(int tick, int floor, Command command) {
+        int i = (int) (nbRecorded++ % ticks.length);
+        ticks[i] = tick;
+        floors[i] = floor;
+        commands[i] = (byte) command.ordinal();
+    }
+
+    public synchronized void clear() {
+        nbRecorded = 0;
+    }
+
+    /**
+     * @return a history with the same commands, that later records here do not change
+     */
+    public synchronized CommandHistory copy() {
+        CommandHistory copy = new CommandHistory(ticks.length);
+        System.arraycopy(ticks, 0, copy.ticks, 0, ticks.length);
+        System.arraycopy(floors, 0, copy.floors, 0, floors.length);
+        System.arraycopy(commands, 0, copy.commands, 0, commands.length);
+        copy.nbRecorded = nbRecorded;
+        return copy;
+    }
+
+    /**
+     * Replaces the commands kept by those of <code>other</code>, the newest ones if they do not fit.
+     */
+    public void copyFrom(CommandHistory other) {
+        CommandHistory source = other.copy();
+        synchronized (this) {
+            clear();
+            for (long n = Math.max(0, source.nbRecorded - source.ticks.length); n < source.nbRecorded; n++) {
+                int i = (int) (n % source.ticks.length);
+                record(source.ticks[i], source.floors[i], COMMANDS[source.commands[i]]);
+            }
+        }
+    }
+
+    /**
+     * @return the history {@link #render()} rendered <code>rendered</code> from, in a history just large enough for it
+     */
+    public static CommandHistory of(Map<Integer, String> rendered) {
+        CommandHistory history = new CommandHistory(Math.max(1, rendered.size()));
+        for (Map.Entry<Integer, String> entry : rendered.entrySet()) {
+            String command = entry.getValue();
+            int colon = command.indexOf(':');
+            history.record(entry.getKey(), Integer.parseInt(command.substring(0, colon)),
+                    Command.valueOf(command.substring(colon + 1)));
+        }
+        return history;
+    }
+
+    /**
+     * Writes the commands kept, oldest first, for {@link #readFrom(DataInput)}.
+     */
+    public synchronized void writeTo(DataOutput output) throws IOException {
+        long first = Math.max(0, nbRecorded - ticks.length);
+        output.writeInt((int) (nbRecorded - first));
+        for (long n = first; n < nbRecorded; n++) {
+            int i = (int) (n % ticks.length);
+            output.writeInt(ticks[i]);
+            output.writeInt(floors[i]);
+            output.writeByte(commands[i]);
+        }
+    }
+
+    /**
+     * @return the commands written by {@link #writeTo(DataOutput)}, in a history just large enough for them
+     */
+    public static CommandHistory readFrom(DataInput input) throws IOException {
+        int size = input.readInt();
+        CommandHistory history = new CommandHistory(Math.max(1, size));
+        for (int n = 0; n < size; n++) {
+            history.record(input.readInt(), input.readInt(), COMMANDS[input.readByte()]);
+        }
+        return history;
+    }
+
+    /**
+     * @return <code>floor:command</code> by tick, oldest first
+     */
+    public synchronized Map<Integer, String> render() {
+        Map<Integer, String> rendered = new LinkedHashMap<>();
+        for (long n = Math.max(0, nbRecorded - ticks.length); n < nbRecorded; n++) {
+            int i = (int) (n % ticks.length);
+            rendered.put(ticks[i], floors[i] + ":" + COMMANDS[commands[i]]);
+        }
+        return rendered;
+    }
+}
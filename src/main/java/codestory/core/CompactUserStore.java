@@ -0,0 +1,417 @@
+package codestory.core;
+
+import com.google.common.collect.ImmutableList;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Users kept as primitive columns (one slot per user in parallel int/byte arrays) instead of {@link User} objects:
+ * about 40 bytes per user and no boxing, aging every user is a loop over two int arrays. Slots of done users are
+ * recycled.
+ * <p/>
+ * Call order and the same per-floor buckets as {@link PassengerBuckets} are doubly linked lists threaded through the
+ * slots, so that registering, boarding, requesting a stop and leaving are O(1). Users only exist as {@link User}
+ * objects when {@link #getUsers()} materializes them, with the same values a {@link ListUserStore} would hold.
+ * <p/>
+ * The store keeps a single current floor for all users, the one given to the last {@link #elevatorIsAt(int)}. Nobody
+ * is found at a floor out of the building, where the cabin may start.
+ */
+@Slf4j
+public class CompactUserStore implements UserStore {
+
+    public static final int DEFAULT_INITIAL_CAPACITY = 64;
+    private static final int NONE = -1;
+    private static final int UNSET = User.UNSET;
+    private static final User.State[] STATES = User.State.values();
+    private static final byte WAITING = (byte) User.State.WAITING.ordinal();
+    private static final byte TRAVELLING = (byte) User.State.TRAVELLING.ordinal();
+    private static final byte FREE = (byte) STATES.length;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int NB_DIRECTIONS = DIRECTIONS.length;
+
+    private final int lowerFloor;
+    private final int higherFloor;
+    private final int nbFloors;
+    private final FloorDemandIndex demandIndex;
+    private final int[] bucketHead;
+    private final int[] bucketTail;
+    private final BitSet currentFloorUnknown = new BitSet();
+    private int[] initialFloor;
+    private int[] floorToGo;
+    private int[] tickToWait;
+    private int[] tickToGo;
+    private int[] travelingTick;
+    private byte[] state;
+    private byte[] direction;
+    private int[] previousInCallOrder;
+    private int[] nextInCallOrder;
+    private int[] previousInBucket;
+    private int[] nextInBucket;
+    private int firstInCallOrder = NONE;
+    private int lastInCallOrder = NONE;
+    // free slots are chained through nextInCallOrder
+    private int firstFreeSlot = NONE;
+    private int usedSlots;
+    private int size;
+    private int elevatorFloor;
+
+    public CompactUserStore(int lowerFloor, int higherFloor) {
+        this(lowerFloor, higherFloor, DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public CompactUserStore(int lowerFloor, int higherFloor, int initialCapacity) {
+        this.lowerFloor = lowerFloor;
+        this.higherFloor = higherFloor;
+        this.nbFloors = higherFloor - lowerFloor + 1;
+        this.demandIndex = new FloorDemandIndex(lowerFloor, higherFloor);
+        // waiting by floor and direction, then boarded without stop by floor and direction, then stops by floor
+        int nbBuckets = nbFloors * NB_DIRECTIONS * 2 + nbFloors;
+        bucketHead = new int[nbBuckets];
+        bucketTail = new int[nbBuckets];
+        Arrays.fill(bucketHead, NONE);
+        Arrays.fill(bucketTail, NONE);
+        int capacity = Math.max(1, initialCapacity);
+        initialFloor = new int[capacity];
+        floorToGo = new int[capacity];
+        tickToWait = new int[capacity];
+        tickToGo = new int[capacity];
+        travelingTick = new int[capacity];
+        state = new byte[capacity];
+        direction = new byte[capacity];
+        previousInCallOrder = new int[capacity];
+        nextInCallOrder = new int[capacity];
+        previousInBucket = new int[capacity];
+        nextInBucket = new int[capacity];
+    }
+
+    @Override
+    public synchronized void register(User user) {
+        register(user.getInitialFloor(), user.getDirection(), user.getFloorToGo(), user.getTickToWait(),
+                user.getTickToGo(), user.getTravelingTick(), user.getState(), user.getCurrentFloor() == null);
+    }
+
+    @Override
+    public synchronized void register(int initialFloor, Direction direction) {
+        register(initialFloor, direction, UNSET, 0, 0, Integer.MIN_VALUE, User.State.WAITING, true);
+    }
+
+    @Override
+    public synchronized void elevatorIsAt(int floor) {
+        elevatorFloor = floor;
+        currentFloorUnknown.clear();
+    }
+
+    @Override
+    public synchronized void tick() {
+        for (int slot = 0; slot < usedSlots; slot++) {
+            byte s = state[slot];
+            if (s == TRAVELLING) {
+                tickToGo[slot]++;
+            } else if (s == WAITING) {
+                tickToWait[slot]++;
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean requestStop(int boardingFloor, Direction direction, int floorToGo) {
+        if (!demandIndex.inBuilding(boardingFloor)) {
+            return false;
+        }
+        int slot = bucketHead[boardedBucket(boardingFloor, direction.ordinal())];
+        if (slot == NONE) {
+            return false;
+        }
+        detach(slot);
+        this.floorToGo[slot] = floorToGo;
+        attach(slot);
+        return true;
+    }
+
+    @Override
+    public synchronized int elevatorIsOpen(int floor, int tick, Score score) {
+        int nbDone = 0;
+        if (!isAt(floor) || !demandIndex.inBuilding(floor)) {
+            return nbDone;
+        }
+        for (int d = 0; d < NB_DIRECTIONS; d++) {
+            int slot = bucketHead[waitingBucket(floor, d)];
+            while (slot != NONE) {
+                int next = nextInBucket[slot];
+                if (currentFloorUnknown.get(slot)) {
+                    slot = next;
+                    continue;
+                }
+                detach(slot);
+                state[slot] = TRAVELLING;
+                travelingTick[slot] = tick;
+                attach(slot);
+                slot = next;
+            }
+        }
+        int slot = bucketHead[stopBucket(floor)];
+        while (slot != NONE) {
+            int next = nextInBucket[slot];
+            if (currentFloorUnknown.get(slot)) {
+                slot = next;
+                continue;
+            }
+            detach(slot);
+            try {
+                score.success(initialFloor[slot], floorToGo[slot], tickToWait[slot], tickToGo[slot]);
+                // debug and guarded: varargs and boxing would allocate on every user done
+                if (log.isDebugEnabled()) {
+                    log.debug("openTheDoor(): user from floor <{}> to floor <{}> done after <{}> ticks waiting and <{}> ticks traveling, totalScore is <{}>",
+                            initialFloor[slot], floorToGo[slot], tickToWait[slot], tickToGo[slot], score.getScore());
+                }
+            } catch (IllegalStateException e) {
+                log.info("openTheDoor(): caught IllegalStateException <{}> while computing score for user from floor <{}> to floor <{}>",
+                        e.getMessage(), initialFloor[slot], floorToGo[slot]);
+            }
+            releaseSlot(slot);
+            nbDone++;
+            slot = next;
+        }
+        return nbDone;
+    }
+
+    @Override
+    public FloorDemandIndex getDemandIndex() {
+        return demandIndex;
+    }
+
+    @Override
+    public synchronized int nbWaitingAt(int floor, Direction direction, int maxTicksWaited) {
+        int nbWaiting = 0;
+        if (!demandIndex.inBuilding(floor)) {
+            return nbWaiting;
+        }
+        for (int d = 0; d < NB_DIRECTIONS; d++) {
+            if (direction != null && direction.ordinal() != d) {
+                continue;
+            }
+            for (int slot = bucketHead[waitingBucket(floor, d)]; slot != NONE; slot = nextInBucket[slot]) {
+                if (tickToWait[slot] <= maxTicksWaited) {
+                    nbWaiting++;
+                }
+            }
+        }
+        return nbWaiting;
+    }
+
+    @Override
+    public synchronized List<User> getUsers() {
+        List<User> users = new ArrayList<>(size);
+        for (int slot = firstInCallOrder; slot != NONE; slot = nextInCallOrder[slot]) {
+            users.add(toUser(slot));
+        }
+        return users;
+    }
+
+    @Override
+    public synchronized List<User> getUsersInStrangeTravelingState() {
+        List<User> weirdUsers = new ArrayList<>();
+        for (int slot = firstInCallOrder; slot != NONE; slot = nextInCallOrder[slot]) {
+            if (state[slot] == TRAVELLING && floorToGo[slot] == UNSET) {
+                weirdUsers.add(toUser(slot));
+            }
+        }
+        return ImmutableList.copyOf(weirdUsers);
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    private void register(int initialFloor, Direction direction, int floorToGo, int tickToWait, int tickToGo,
+                          int travelingTick, User.State state, boolean currentFloorUnknown) {
+        int slot = allocateSlot();
+        this.initialFloor[slot] = initialFloor;
+        this.direction[slot] = (byte) direction.ordinal();
+        this.floorToGo[slot] = floorToGo;
+        this.tickToWait[slot] = tickToWait;
+        this.tickToGo[slot] = tickToGo;
+        this.travelingTick[slot] = travelingTick;
+        this.state[slot] = (byte) state.ordinal();
+        this.currentFloorUnknown.set(slot, currentFloorUnknown);
+        appendToCallOrder(slot);
+        attach(slot);
+    }
+
+    public synchronized int capacity() {
+        return state.length;
+    }
+
+    /**
+     * Nine int columns and two byte columns per slot, free slots included.
+     */
+    @Override
+    public synchronized long estimatedBytes() {
+        return (long) state.length * (9 * 4 + 2) + (bucketHead.length + bucketTail.length) * 4;
+    }
+
+    private User toUser(int slot) {
+        User user = new User(initialFloor[slot], DIRECTIONS[direction[slot]]);
+        if (floorToGo[slot] != UNSET) {
+            user.go(floorToGo[slot]);
+        }
+        if (!currentFloorUnknown.get(slot)) {
+            user.setCurrentFloor(elevatorFloor);
+        }
+        user.setTickToWait(tickToWait[slot]);
+        user.setTickToGo(tickToGo[slot]);
+        user.setTravelingTick(travelingTick[slot]);
+        user.setState(STATES[state[slot]]);
+        return user;
+    }
+
+    private boolean isAt(int floor) {
+        return elevatorFloor == floor;
+    }
+
+    private int allocateSlot() {
+        int slot;
+        if (firstFreeSlot != NONE) {
+            slot = firstFreeSlot;
+            firstFreeSlot = nextInCallOrder[slot];
+        } else {
+            if (usedSlots == state.length) {
+                grow();
+            }
+            slot = usedSlots++;
+        }
+        size++;
+        return slot;
+    }
+
+    private void releaseSlot(int slot) {
+        int previous = previousInCallOrder[slot];
+        int next = nextInCallOrder[slot];
+        if (previous == NONE) {
+            firstInCallOrder = next;
+        } else {
+            nextInCallOrder[previous] = next;
+        }
+        if (next == NONE) {
+            lastInCallOrder = previous;
+        } else {
+            previousInCallOrder[next] = previous;
+        }
+        state[slot] = FREE;
+        nextInCallOrder[slot] = firstFreeSlot;
+        firstFreeSlot = slot;
+        size--;
+    }
+
+    private void appendToCallOrder(int slot) {
+        previousInCallOrder[slot] = lastInCallOrder;
+        nextInCallOrder[slot] = NONE;
+        if (lastInCallOrder == NONE) {
+            firstInCallOrder = slot;
+        } else {
+            nextInCallOrder[lastInCallOrder] = slot;
+        }
+        lastInCallOrder = slot;
+    }
+
+    private void grow() {
+        int capacity = state.length * 2;
+        initialFloor = Arrays.copyOf(initialFloor, capacity);
+        floorToGo = Arrays.copyOf(floorToGo, capacity);
+        tickToWait = Arrays.copyOf(tickToWait, capacity);
+        tickToGo = Arrays.copyOf(tickToGo, capacity);
+        travelingTick = Arrays.copyOf(travelingTick, capacity);
+        state = Arrays.copyOf(state, capacity);
+        direction = Arrays.copyOf(direction, capacity);
+        previousInCallOrder = Arrays.copyOf(previousInCallOrder, capacity);
+        nextInCallOrder = Arrays.copyOf(nextInCallOrder, capacity);
+        previousInBucket = Arrays.copyOf(previousInBucket, capacity);
+        nextInBucket = Arrays.copyOf(nextInBucket, capacity);
+    }
+
+    /**
+     * Appends the slot to the bucket matching its state and counts it in the demand index.
+     */
+    private void attach(int slot) {
+        int bucket = bucketOf(slot);
+        if (bucket == NONE) {
+            return;
+        }
+        previousInBucket[slot] = bucketTail[bucket];
+        nextInBucket[slot] = NONE;
+        if (bucketTail[bucket] == NONE) {
+            bucketHead[bucket] = slot;
+        } else {
+            nextInBucket[bucketTail[bucket]] = slot;
+        }
+        bucketTail[bucket] = slot;
+        if (state[slot] == WAITING) {
+            demandIndex.addWaiting(initialFloor[slot], DIRECTIONS[direction[slot]]);
+        } else if (floorToGo[slot] != UNSET) {
+            demandIndex.addStop(floorToGo[slot], DIRECTIONS[direction[slot]]);
+        }
+    }
+
+    /**
+     * Unlinks the slot from the bucket matching its state and uncounts it from the demand index.
+     */
+    private void detach(int slot) {
+        int bucket = bucketOf(slot);
+        if (bucket == NONE) {
+            return;
+        }
+        int previous = previousInBucket[slot];
+        int next = nextInBucket[slot];
+        if (previous == NONE) {
+            bucketHead[bucket] = next;
+        } else {
+            nextInBucket[previous] = next;
+        }
+        if (next == NONE) {
+            bucketTail[bucket] = previous;
+        } else {
+            previousInBucket[next] = previous;
+        }
+        if (state[slot] == WAITING) {
+            demandIndex.removeWaiting(initialFloor[slot], DIRECTIONS[direction[slot]]);
+        } else if (floorToGo[slot] != UNSET) {
+            demandIndex.removeStop(floorToGo[slot], DIRECTIONS[direction[slot]]);
+        }
+    }
+
+    private int bucketOf(int slot) {
+        if (state[slot] == WAITING) {
+            return waitingBucket(initialFloor[slot], direction[slot]);
+        } else if (state[slot] == TRAVELLING && floorToGo[slot] != UNSET) {
+            return stopBucket(floorToGo[slot]);
+        } else if (state[slot] == TRAVELLING) {
+            return boardedBucket(initialFloor[slot], direction[slot]);
+        }
+        return NONE;
+    }
+
+    private int waitingBucket(int floor, int direction) {
+        return indexOf(floor) * NB_DIRECTIONS + direction;
+    }
+
+    private int boardedBucket(int floor, int direction) {
+        return nbFloors * NB_DIRECTIONS + indexOf(floor) * NB_DIRECTIONS + direction;
+    }
+
+    private int stopBucket(int floor) {
+        return nbFloors * NB_DIRECTIONS * 2 + indexOf(floor);
+    }
+
+    private int indexOf(int floor) {
+        if (floor < lowerFloor || floor > higherFloor) {
+            throw new IllegalArgumentException("floor <" + floor + "> is not between <" + lowerFloor + "> and <" +
+                    higherFloor + ">");
+        }
+        return floor - lowerFloor;
+    }
+}
@@ -1,9 +1,13 @@
 package codestory.core;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.Multimap;
 import lombok.Getter;
 import lombok.experimental.Builder;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -48,6 +52,109 @@ public class ElevatorContext {
     private final List<User> users;
     private final Map<Integer, String> lastRequests;
 
+    /**
+     * @return the context a getState() JSON dump was rendered from, as far as the dump holds it
+     */
+    public static ElevatorContext fromJson(JsonNode node) {
+        if (isNull(node)) {
+            return null;
+        }
+        return ElevatorContext.builder()
+                .caller(text(node, "caller"))
+                .date(text(node, "date"))
+                .lastResetCause(text(node, "lastResetCause"))
+                .lastResetDateTime(text(node, "lastResetDateTime"))
+                .lastResetTick(node.path("lastResetTick").asInt())
+                .score(node.path("score").asInt())
+                .tick(node.path("tick").asInt())
+                .lastRequestNumber(node.path("lastRequestNumber").asInt())
+                .lowerFloor(node.path("lowerFloor").asInt())
+                .higherFloor(node.path("higherFloor").asInt())
+                .currentFloor(node.path("currentFloor").asInt())
+                .previousFloor(node.path("previousFloor").asInt())
+                .middleFloor(node.path("middleFloor").asInt())
+                .currentNbOfUsersInsideTheElevator(node.path("currentNbOfUsersInsideTheElevator").asInt())
+                .cabinSize(node.path("cabinSize").asInt())
+                .currentDoorStatus(isNull(node.get("currentDoorStatus")) ? null :
+                        Door.valueOf(node.get("currentDoorStatus").asText()))
+                .previousCommand(isNull(node.get("previousCommand")) ? null :
+                        Command.valueOf(node.get("previousCommand").asText()))
+                .previousDirection(direction(node.get("previousDirection")))
+                .currentDirection(direction(node.get("currentDirection")))
+                .someoneIsWaitingAtLowerLevels(node.path("someoneIsWaitingAtLowerLevels").asBoolean())
+                .someoneIsWaitingAtUpperLevels(node.path("someoneIsWaitingAtUpperLevels").asBoolean())
+                .someoneRequestedAStopAtLowerLevels(node.path("someoneRequestedAStopAtLowerLevels").asBoolean())
+                .someoneRequestedAStopAtUpperLevels(node.path("someoneRequestedAStopAtUpperLevels").asBoolean())
+                .userWaitingAtCurrentFloor(node.path("userWaitingAtCurrentFloor").asBoolean())
+                .userInsideElevatorNeedToGetOut(node.path("userInsideElevatorNeedToGetOut").asBoolean())
+                .lastCommands(map(node.get("lastCommands")))
+                .waitingList(counts(node.get("waitingList")))
+                .stopList(counts(node.get("stopList")))
+                .usersInStrangeTravelingState(users(node.get("usersInStrangeTravelingState")))
+                .lastResetContext(fromJson(node.get("lastResetContext")))
+                .users(users(node.get("users")))
+                .lastRequests(map(node.get("lastRequests")))
+                .build();
+    }
 
+    private static boolean isNull(JsonNode node) {
+        return node == null || node.isNull();
+    }
 
+    private static String text(JsonNode node, String field) {
+        return isNull(node.get(field)) ? null : node.get(field).asText();
+    }
+
+    private static Integer integer(JsonNode node, String field) {
+        return isNull(node.get(field)) ? null : node.get(field).asInt();
+    }
+
+    private static Direction direction(JsonNode node) {
+        return isNull(node) ? null : Direction.valueOf(node.asText());
+    }
+
+    private static Map<Integer, String> map(JsonNode node) {
+        if (isNull(node)) {
+            return null;
+        }
+        Map<Integer, String> map = new LinkedHashMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> fields = node.fields(); fields.hasNext(); ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            map.put(Integer.valueOf(field.getKey()), field.getValue().asText());
+        }
+        return map;
+    }
+
+    private static List<CountsByFloorByDirection> counts(JsonNode node) {
+        if (isNull(node)) {
+            return null;
+        }
+        List<CountsByFloorByDirection> counts = new ArrayList<>();
+        for (JsonNode count : node) {
+            counts.add(new CountsByFloorByDirection(integer(count, "floor"), integer(count.path("count"), "DOWN"),
+                    integer(count.path("count"), "UP")));
+        }
+        return counts;
+    }
+
+    private static List<User> users(JsonNode node) {
+        if (isNull(node)) {
+            return null;
+        }
+        List<User> users = new ArrayList<>();
+        for (JsonNode user : node) {
+            User read = new User(integer(user, "initialFloor"), direction(user.get("direction")));
+            Integer floorToGo = integer(user, "floorToGo");
+            if (floorToGo != null && !floorToGo.equals(User.UNSET)) {
+                read.go(floorToGo);
+            }
+            read.setCurrentFloor(integer(user, "currentFloor"));
+            read.setTickToGo(integer(user, "tickToGo"));
+            read.setState(isNull(user.get("state")) ? null : User.State.valueOf(user.get("state").asText()));
+            read.setTickToWait(integer(user, "tickToWait"));
+            read.setTravelingTick(integer(user, "travelingTick"));
+            users.add(read);
+        }
+        return users;
+    }
 }
@@ -0,0 +1,317 @@
+package codestory.core;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * An engine at a given tick, immutable: forking it is keeping a reference, {@link #step(Command)}, {@link #call(int,
+ * Direction)} and {@link #go(int)} return the state that follows and leave this one as it was.
+ * <p/>
+ * Users are kept by floor, in buckets the states following one another share: waiting users by initial floor, users
+ * who requested a stop by floorToGo, plus the users who boarded but did not call go() yet. A state only copies the
+ * buckets of the floors it changes and the arrays of references to them; users are not ticked one by one, each one
+ * remembers the tick it called at and the tick it boarded at. Moving the cabin or its door without opening it copies
+ * no user at all.
+ * <p/>
+ * The door opens as on the game server: users who requested a stop at the floor exit and score, then users waiting
+ * there enter while there is room. Their ticks are counted as a W2 engine counts them, see
+ * {@link codestory.core.engine.S03E01W2Elevator#exportState()}.
+ */
+public final class EngineState {
+
+    @Getter
+    private final int lowerFloor;
+    @Getter
+    private final int higherFloor;
+    @Getter
+    private final int cabinSize;
+    @Getter
+    private final int tick;
+    @Getter
+    private final int floor;
+    @Getter
+    private final boolean open;
+    @Getter
+    private final Direction direction;
+    @Getter
+    private final int score;
+    @Getter
+    private final int nbInside;
+    /**
+     * its formula only, shared by the states following one another
+     */
+    private final Score scorer;
+    private final Users[] waitingByFloor;
+    private final Users[] stopsByFloor;
+    private final Users boardedWithoutStop;
+
+    private EngineState(EngineState state, int tick, int floor, boolean open, Direction direction, int score,
+                        int nbInside, Users[] waitingByFloor, Users[] stopsByFloor, Users boardedWithoutStop) {
+        this(state.lowerFloor, state.higherFloor, state.cabinSize, state.scorer, tick, floor, open, direction, score,
+                nbInside, waitingByFloor, stopsByFloor, boardedWithoutStop);
+    }
+
+    private EngineState(int lowerFloor, int higherFloor, int cabinSize, Score scorer, int tick, int floor,
+                        boolean open, Direction direction, int score, int nbInside, Users[] waitingByFloor,
+                        Users[] stopsByFloor, Users boardedWithoutStop) {
+        this.lowerFloor = lowerFloor;
+        this.higherFloor = higherFloor;
+        this.cabinSize = cabinSize;
+        this.scorer = scorer;
+        this.tick = tick;
+        this.floor = floor;
+        this.open = open;
+        this.direction = direction;
+        this.score = score;
+        this.nbInside = nbInside;
+        this.waitingByFloor = waitingByFloor;
+        this.stopsByFloor = stopsByFloor;
+        this.boardedWithoutStop = boardedWithoutStop;
+    }
+
+    /**
+     * The state right after a reset: nobody in the building, the cabin closed at floor 0, going up.
+     */
+    public static EngineState initial(int lowerFloor, int higherFloor, int cabinSize) {
+        return of(lowerFloor, higherFloor, cabinSize, 0, 0, false, Direction.UP, 0, 0, Collections.<User>emptyList());
+    }
+
+    /**
+     * The state of an engine which gave <code>tick</code> commands and knows of <code>users</code>, ticked as many
+     * times as it gave commands since they called. Done users are left out.
+     */
+    public static EngineState of(int lowerFloor, int higherFloor, int cabinSize, int tick, int floor, boolean open,
+                                 Direction direction, int score, int nbInside, Iterable<User> users) {
+        checkArgument(lowerFloor <= higherFloor, "lowerFloor <" + lowerFloor + "> cannot be more than higherFloor <" +
+                higherFloor + ">");
+        int nbFloors = higherFloor - lowerFloor + 1;
+        Users[] waitingByFloor = new Users[nbFloors];
+        Users[] stopsByFloor = new Users[nbFloors];
+        Arrays.fill(waitingByFloor, Users.NONE);
+        Arrays.fill(stopsByFloor, Users.NONE);
+        Users boardedWithoutStop = Users.NONE;
+        for (User user : users) {
+            boolean up = user.getDirection() == Direction.UP;
+            if (user.waiting()) {
+                int index = user.getInitialFloor() - lowerFloor;
+                waitingByFloor[index] = waitingByFloor[index].plus(user.getInitialFloor(), up,
+                        tick - user.getTickToWait(), 0);
+            } else if (user.traveling()) {
+                int boardTick = tick - user.getTickToGo();
+                int callTick = boardTick - user.getTickToWait();
+                if (user.didNotRequestedAStopYet()) {
+                    boardedWithoutStop = boardedWithoutStop.plus(user.getInitialFloor(), up, callTick, boardTick);
+                } else {
+                    int index = user.getFloorToGo() - lowerFloor;
+                    stopsByFloor[index] = stopsByFloor[index].plus(user.getInitialFloor(), up, callTick, boardTick);
+                }
+            }
+        }
+        return new EngineState(lowerFloor, higherFloor, cabinSize, new Score(lowerFloor, higherFloor), tick, floor,
+                open, direction, score, nbInside, waitingByFloor, stopsByFloor, boardedWithoutStop);
+    }
+
+    /**
+     * @return true when the game server would play <code>command</code>
+     */
+    public boolean accepts(Command command) {
+        return Command.accepted(command, floor, open, lowerFloor, higherFloor);
+    }
+
+    /**
+     * @return the state one tick later, <code>command</code> played; shares all of its users with this one unless
+     * the door opens on some of them
+     * @throws IllegalStateException if the command is not {@link #accepts(Command) accepted}
+     */
+    public EngineState step(Command command) throws IllegalStateException {
+        checkState(accepts(command), "<" + command + "> cannot be played at floor <" + floor + "> with the door " +
+                (open ? "open" : "closed"));
+        int next = tick + 1;
+        switch (command) {
+            case UP:
+                return new EngineState(this, next, floor + 1, false, Direction.UP, score, nbInside, waitingByFloor,
+                        stopsByFloor, boardedWithoutStop);
+            case DOWN:
+                return new EngineState(this, next, floor - 1, false, Direction.DOWN, score, nbInside, waitingByFloor,
+                        stopsByFloor, boardedWithoutStop);
+            case CLOSE:
+                return new EngineState(this, next, floor, false, direction, score, nbInside, waitingByFloor,
+                        stopsByFloor, boardedWithoutStop);
+            case OPEN:
+                return openAt(next);
+            default:
+                return new EngineState(this, next, floor, open, direction, score, nbInside, waitingByFloor,
+                        stopsByFloor, boardedWithoutStop);
+        }
+    }
+
+    private EngineState openAt(int next) {
+        if (floor < lowerFloor || floor > higherFloor) {
+            return new EngineState(this, next, floor, true, direction, score, nbInside, waitingByFloor, stopsByFloor,
+                    boardedWithoutStop);
+        }
+        int index = floor - lowerFloor;
+        Users[] stops = stopsByFloor;
+        int points = score;
+        int inside = nbInside;
+        Users exiting = stopsByFloor[index];
+        if (exiting.size() > 0) {
+            for (int user = 0; user < exiting.size(); user++) {
+                points += points(exiting.initialFloor(user), exiting.boardTick(user) - exiting.callTick(user),
+                        next - exiting.boardTick(user));
+            }
+            inside -= exiting.size();
+            stops = with(stopsByFloor, index, Users.NONE);
+        }
+        Users[] waiting = waitingByFloor;
+        Users boarded = boardedWithoutStop;
+        Users entering = waitingByFloor[index];
+        int nbEntering = Math.min(entering.size(), Math.max(0, cabinSize - inside));
+        if (nbEntering > 0) {
+            for (int user = 0; user < nbEntering; user++) {
+                boarded = boarded.plus(entering.initialFloor(user), entering.up(user), entering.callTick(user), next);
+            }
+            inside += nbEntering;
+            waiting = with(waitingByFloor, index, entering.range(nbEntering, entering.size()));
+        }
+        return new EngineState(this, next, floor, true, direction, points, inside, waiting, stops, boarded);
+    }
+
+    /**
+     * @return the state with one more user waiting at <code>atFloor</code>, for the next tick
+     */
+    public EngineState call(int atFloor, Direction to) {
+        checkFloor(atFloor);
+        int index = atFloor - lowerFloor;
+        Users[] waiting = with(waitingByFloor, index,
+                waitingByFloor[index].plus(atFloor, to == Direction.UP, tick, 0));
+        return new EngineState(this, tick, floor, open, direction, score, nbInside, waiting, stopsByFloor,
+                boardedWithoutStop);
+    }
+
+    /**
+     * @return the state where the first user who boarded at the current floor, in the direction of
+     * <code>floorToGo</code>, requested a stop there; this state if there is no such user, as a W2 engine ignores it
+     */
+    public EngineState go(int floorToGo) {
+        checkFloor(floorToGo);
+        boolean up = floorToGo > floor || floorToGo == floor && direction == Direction.UP;
+        for (int user = 0; user < boardedWithoutStop.size(); user++) {
+            if (boardedWithoutStop.initialFloor(user) == floor && boardedWithoutStop.up(user) == up) {
+                int index = floorToGo - lowerFloor;
+                Users[] stops = with(stopsByFloor, index, stopsByFloor[index].plus(boardedWithoutStop.initialFloor(user),
+                        up, boardedWithoutStop.callTick(user), boardedWithoutStop.boardTick(user)));
+                return new EngineState(this, tick, floor, open, direction, score, nbInside, waitingByFloor, stops,
+                        boardedWithoutStop.without(user));
+            }
+        }
+        return this;
+    }
+
+    public int nbWaitingAt(int atFloor) {
+        return waitingByFloor[atFloor - lowerFloor].size();
+    }
+
+    public int nbWaitingAt(int atFloor, Direction to) {
+        Users waiting = waitingByFloor[atFloor - lowerFloor];
+        int nbWaiting = 0;
+        for (int user = 0; user < waiting.size(); user++) {
+            if (waiting.up(user) == (to == Direction.UP)) {
+                nbWaiting++;
+            }
+        }
+        return nbWaiting;
+    }
+
+    /**
+     * @return the users who requested a stop at <code>atFloor</code>
+     */
+    public int nbStopsAt(int atFloor) {
+        return stopsByFloor[atFloor - lowerFloor].size();
+    }
+
+    public int getNbBoardedWithoutStop() {
+        return boardedWithoutStop.size();
+    }
+
+    private void checkFloor(int value) {
+        checkArgument(value >= lowerFloor && value <= higherFloor, "floor <" + value + "> is not between <" +
+                lowerFloor + "> and <" + higherFloor + ">");
+    }
+
+    /**
+     * @return the points of a user delivered at the current floor, none when the server would not score it either
+     */
+    private int points(int initialFloor, int tickToWait, int tickToGo) {
+        try {
+            return scorer.score(initialFloor, floor, tickToWait, tickToGo);
+        } catch (IllegalStateException e) {
+            return 0;
+        }
+    }
+
+    private static Users[] with(Users[] buckets, int index, Users bucket) {
+        Users[] copy = buckets.clone();
+        copy[index] = bucket;
+        return copy;
+    }
+
+    /**
+     * An immutable bucket of users, four ints each: initial floor, 1 when going up, tick of the call, tick of the
+     * boarding.
+     */
+    private static final class Users {
+        private static final int WIDTH = 4;
+        private static final Users NONE = new Users(new int[0]);
+        private final int[] values;
+
+        private Users(int[] values) {
+            this.values = values;
+        }
+
+        int size() {
+            return values.length / WIDTH;
+        }
+
+        int initialFloor(int user) {
+            return values[user * WIDTH];
+        }
+
+        boolean up(int user) {
+            return values[user * WIDTH + 1] == 1;
+        }
+
+        int callTick(int user) {
+            return values[user * WIDTH + 2];
+        }
+
+        int boardTick(int user) {
+            return values[user * WIDTH + 3];
+        }
+
+        Users plus(int initialFloor, boolean up, int callTick, int boardTick) {
+            int[] copy = Arrays.copyOf(values, values.length + WIDTH);
+            copy[values.length] = initialFloor;
+            copy[values.length + 1] = up ? 1 : 0;
+            copy[values.length + 2] = callTick;
+            copy[values.length + 3] = boardTick;
+            return new Users(copy);
+        }
+
+        Users without(int user) {
+            int[] copy = new int[values.length - WIDTH];
+            System.arraycopy(values, 0, copy, 0, user * WIDTH);
+            System.arraycopy(values, (user + 1) * WIDTH, copy, user * WIDTH, copy.length - user * WIDTH);
+            return copy.length == 0 ? NONE : new Users(copy);
+        }
+
+        Users range(int from, int to) {
+            return from == to ? NONE : new Users(Arrays.copyOfRange(values, from * WIDTH, to * WIDTH));
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package codestory.core;
+
+import java.util.BitSet;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Per-floor, per-direction counters of waiting users and requested stops, plus bitsets of the floors where at least one
+ * of them is pending, so that "is there demand above/below/here" is answered without walking the user list.
+ * <p/>
+ * A user is indexed as waiting at its initial floor while {@link User#waiting()}, and as a stop at its floorToGo while
+ * {@link User#traveling()} with a requested stop. Callers have to {@link #remove(User)} a user before changing its
+ * state and {@link #add(User)} it back afterwards. Not thread safe.
+ * <p/>
+ * Users are only indexed at floors of the building, but queries may be about any floor: the cabin starts at floor 0,
+ * which a building may not have. Nobody waits and no stop is requested out of the building.
+ */
+public class FloorDemandIndex {
+
+    private final int lowerFloor;
+    private final int higherFloor;
+    private final int[][] waitingByFloorByDirection;
+    private final int[][] stopsByFloorByDirection;
+    private final BitSet floorsWithWaitingUsers;
+    private final BitSet floorsWithRequestedStops;
+    private int nbWaiting;
+    private int nbStops;
+
+    public FloorDemandIndex(int lowerFloor, int higherFloor) {
+        checkArgument(lowerFloor <= higherFloor, "lowerFloor <" + lowerFloor + "> cannot be more than higherFloor <" +
+                higherFloor + ">");
+        this.lowerFloor = lowerFloor;
+        this.higherFloor = higherFloor;
+        int nbFloors = higherFloor - lowerFloor + 1;
+        waitingByFloorByDirection = new int[nbFloors][Direction.values().length];
+        stopsByFloorByDirection = new int[nbFloors][Direction.values().length];
+        floorsWithWaitingUsers = new BitSet(nbFloors);
+        floorsWithRequestedStops = new BitSet(nbFloors);
+    }
+
+    public void add(User user) {
+        if (user.waiting()) {
+            addWaiting(user.getInitialFloor(), user.getDirection());
+        } else if (user.traveling() && user.requestedAStop()) {
+            addStop(user.getFloorToGo(), user.getDirection());
+        }
+    }
+
+    public void remove(User user) {
+        if (user.waiting()) {
+            removeWaiting(user.getInitialFloor(), user.getDirection());
+        } else if (user.traveling() && user.requestedAStop()) {
+            removeStop(user.getFloorToGo(), user.getDirection());
+        }
+    }
+
+    public void addWaiting(int initialFloor, Direction direction) {
+        nbWaiting++;
+        increment(waitingByFloorByDirection, floorsWithWaitingUsers, initialFloor, direction, 1);
+    }
+
+    public void removeWaiting(int initialFloor, Direction direction) {
+        nbWaiting--;
+        increment(waitingByFloorByDirection, floorsWithWaitingUsers, initialFloor, direction, -1);
+    }
+
+    public void addStop(int floorToGo, Direction direction) {
+        nbStops++;
+        increment(stopsByFloorByDirection, floorsWithRequestedStops, floorToGo, direction, 1);
+    }
+
+    public void removeStop(int floorToGo, Direction direction) {
+        nbStops--;
+        increment(stopsByFloorByDirection, floorsWithRequestedStops, floorToGo, direction, -1);
+    }
+
+    public void clear() {
+        for (int i = 0; i < waitingByFloorByDirection.length; i++) {
+            for (Direction direction : Direction.values()) {
+                waitingByFloorByDirection[i][direction.ordinal()] = 0;
+                stopsByFloorByDirection[i][direction.ordinal()] = 0;
+            }
+        }
+        floorsWithWaitingUsers.clear();
+        floorsWithRequestedStops.clear();
+        nbWaiting = 0;
+        nbStops = 0;
+    }
+
+    public void rebuild(Iterable<User> users) {
+        clear();
+        for (User user : users) {
+            add(user);
+        }
+    }
+
+    public boolean nobodyIsWaiting() {
+        return nbWaiting == 0;
+    }
+
+    public boolean nobodyRequestedAStop() {
+        return nbStops == 0;
+    }
+
+    public int getNbWaiting() {
+        return nbWaiting;
+    }
+
+    public int getNbStops() {
+        return nbStops;
+    }
+
+    public int nbWaitingAt(int floor) {
+        if (!inBuilding(floor)) {
+            return 0;
+        }
+        int[] counts = waitingByFloorByDirection[indexOf(floor)];
+        return counts[Direction.UP.ordinal()] + counts[Direction.DOWN.ordinal()];
+    }
+
+    public int nbWaitingAt(int floor, Direction direction) {
+        return inBuilding(floor) ? waitingByFloorByDirection[indexOf(floor)][direction.ordinal()] : 0;
+    }
+
+    public int nbStopsAt(int floor, Direction direction) {
+        return inBuilding(floor) ? stopsByFloorByDirection[indexOf(floor)][direction.ordinal()] : 0;
+    }
+
+    public boolean stopRequestedAt(int floor) {
+        return inBuilding(floor) && floorsWithRequestedStops.get(indexOf(floor));
+    }
+
+    public boolean someoneIsWaitingBelow(int floor) {
+        return floorsWithWaitingUsers.previousSetBit(indexBelow(floor)) >= 0;
+    }
+
+    public boolean someoneIsWaitingAbove(int floor) {
+        return floorsWithWaitingUsers.nextSetBit(indexAbove(floor)) >= 0;
+    }
+
+    public boolean someoneRequestedAStopBelow(int floor) {
+        return floorsWithRequestedStops.previousSetBit(indexBelow(floor)) >= 0;
+    }
+
+    public boolean someoneRequestedAStopAbove(int floor) {
+        return floorsWithRequestedStops.nextSetBit(indexAbove(floor)) >= 0;
+    }
+
+    public boolean someoneIsWaitingAt(int floor) {
+        return inBuilding(floor) && floorsWithWaitingUsers.get(indexOf(floor));
+    }
+
+    public boolean inBuilding(int floor) {
+        return floor >= lowerFloor && floor <= higherFloor;
+    }
+
+    private void increment(int[][] countsByFloorByDirection, BitSet nonEmptyFloors, int floor, Direction direction,
+                           int delta) {
+        int index = indexOf(floor);
+        int[] counts = countsByFloorByDirection[index];
+        counts[direction.ordinal()] += delta;
+        if (counts[Direction.UP.ordinal()] + counts[Direction.DOWN.ordinal()] > 0) {
+            nonEmptyFloors.set(index);
+        } else {
+            nonEmptyFloors.clear(index);
+        }
+    }
+
+    /**
+     * @return the index of the highest floor of the building below <code>floor</code>, -1 if there is none
+     */
+    private int indexBelow(int floor) {
+        return Math.max(Math.min(floor, higherFloor + 1) - lowerFloor - 1, -1);
+    }
+
+    /**
+     * @return the index of the lowest floor of the building above <code>floor</code>, past the last index if there is
+     * none
+     */
+    private int indexAbove(int floor) {
+        return Math.max(floor, lowerFloor - 1) - lowerFloor + 1;
+    }
+
+    private int indexOf(int floor) {
+        if (floor < lowerFloor || floor > higherFloor) {
+            throw new IllegalArgumentException("floor <" + floor + "> is not between <" + lowerFloor + "> and <" +
+                    higherFloor + ">");
+        }
+        return floor - lowerFloor;
+    }
+}
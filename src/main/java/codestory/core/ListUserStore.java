@@ -0,0 +1,178 @@
+package codestory.core;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Users kept as {@link User} objects in a list, in call order, and in {@link PassengerBuckets} for per-floor access.
+ * <p/>
+ * A store built on a list it does not own ({@link #managedExternally(List, int, int)}) cannot see changes made to that
+ * list: its buckets are rebuilt from the list on every query, and opening the door walks the whole list.
+ */
+@Slf4j
+public class ListUserStore implements UserStore {
+
+    static final int BYTES_PER_USER = 128;
+    private final List<User> users;
+    private final PassengerBuckets passengers;
+    private final boolean usersManagedExternally;
+
+    public ListUserStore(int lowerFloor, int higherFloor) {
+        this(new ArrayList<User>(), lowerFloor, higherFloor, false);
+    }
+
+    private ListUserStore(List<User> users, int lowerFloor, int higherFloor, boolean usersManagedExternally) {
+        this.users = users;
+        this.passengers = new PassengerBuckets(lowerFloor, higherFloor);
+        this.usersManagedExternally = usersManagedExternally;
+        passengers.rebuild(users);
+    }
+
+    public static ListUserStore managedExternally(List<User> users, int lowerFloor, int higherFloor) {
+        return new ListUserStore(users, lowerFloor, higherFloor, true);
+    }
+
+    @Override
+    public void register(User user) {
+        synchronized (users) {
+            users.add(user);
+            passengers.add(user);
+        }
+    }
+
+    @Override
+    public void register(int initialFloor, Direction direction) {
+        register(new User(initialFloor, direction));
+    }
+
+    @Override
+    public void elevatorIsAt(int floor) {
+        synchronized (users) {
+            for (User user : users) {
+                user.setCurrentFloor(floor);
+            }
+        }
+    }
+
+    @Override
+    public void tick() {
+        synchronized (users) {
+            for (User user : users) {
+                user.tick();
+            }
+        }
+    }
+
+    @Override
+    public boolean requestStop(int boardingFloor, Direction direction, int floorToGo) {
+        synchronized (users) {
+            User user = passengers().firstBoardedWithoutStop(boardingFloor, direction);
+            if (user == null) {
+                return false;
+            }
+            passengers.remove(user);
+            user.go(floorToGo);
+            passengers.add(user);
+            return true;
+        }
+    }
+
+    @Override
+    public int elevatorIsOpen(int floor, int tick, Score score) {
+        List<User> doneUsers = new ArrayList<>();
+        synchronized (users) {
+            // a list we do not own may hold users the buckets know nothing about (already done ones for instance)
+            Iterable<User> concernedUsers = usersManagedExternally ? new ArrayList<>(users) :
+                    passengers.collectConcernedByOpenDoorAt(floor, new ArrayList<User>());
+            for (User user : concernedUsers) {
+                passengers.remove(user);
+                user.elevatorIsOpen(floor, tick);
+                passengers.add(user);
+                if (user.done()) {
+                    try {
+                        score.success(user);
+                        log.info("openTheDoor(): score for user <{}> is <{}>, totalScore is <{}>", user, score.score(user),
+                                score.getScore());
+                    } catch (IllegalStateException e) {
+                        log.info("openTheDoor(): caught IllegalStateException <{}> while computing score for user <{}>", e.getMessage(), user.toString());
+                    }
+                    doneUsers.add(user);
+                }
+            }
+            if (!doneUsers.isEmpty()) {
+                Iterables.removeIf(users, Predicates.in(Sets.newHashSet(doneUsers)));
+            }
+        }
+        return doneUsers.size();
+    }
+
+    @Override
+    public FloorDemandIndex getDemandIndex() {
+        synchronized (users) {
+            return passengers().getDemandIndex();
+        }
+    }
+
+    @Override
+    public int nbWaitingAt(int floor, Direction direction, int maxTicksWaited) {
+        int nbWaiting = 0;
+        synchronized (users) {
+            for (User user : users) {
+                if (user.waiting() && user.getInitialFloor() == floor && user.getTickToWait() <= maxTicksWaited
+                        && (direction == null || user.directionIsMine(direction))) {
+                    nbWaiting++;
+                }
+            }
+        }
+        return nbWaiting;
+    }
+
+    /**
+     * @return the list itself, not a copy
+     */
+    @Override
+    public List<User> getUsers() {
+        return users;
+    }
+
+    @Override
+    public List<User> getUsersInStrangeTravelingState() {
+        List<User> weirdUsers = new ArrayList<>();
+        synchronized (users) {
+            for (User user : users) {
+                if (user.traveling() && user.didNotRequestedAStopYet()) {
+                    weirdUsers.add(user);
+                }
+            }
+        }
+        return ImmutableList.copyOf(weirdUsers);
+    }
+
+    @Override
+    public int size() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    /**
+     * A User with its boxed fields and its slots in the list and in the passenger buckets.
+     */
+    @Override
+    public long estimatedBytes() {
+        return (long) size() * BYTES_PER_USER;
+    }
+
+    private PassengerBuckets passengers() {
+        if (usersManagedExternally) {
+            passengers.rebuild(users);
+        }
+        return passengers;
+    }
+}
@@ -0,0 +1,152 @@
+package codestory.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Users grouped by the floor where they matter: waiting users by initial floor and direction, users who requested a
+ * stop by floorToGo, and users who boarded but did not call go() yet in a FIFO by boarding floor and direction.
+ * Keeps a {@link FloorDemandIndex} in sync with its content.
+ * <p/>
+ * Same contract as the index: {@link #remove(User)} a user before changing its state, {@link #add(User)} it back
+ * afterwards. Not thread safe. Nobody is found at a floor out of the building, where the cabin may start.
+ */
+public class PassengerBuckets {
+
+    private static final int NB_DIRECTIONS = Direction.values().length;
+    private final int lowerFloor;
+    private final int higherFloor;
+    private final List<Deque<User>> waitingByFloorByDirection;
+    private final List<Deque<User>> boardedWithoutStopByFloorByDirection;
+    private final List<Deque<User>> stopsByFloor;
+    private final FloorDemandIndex demandIndex;
+
+    public PassengerBuckets(int lowerFloor, int higherFloor) {
+        this.demandIndex = new FloorDemandIndex(lowerFloor, higherFloor);
+        this.lowerFloor = lowerFloor;
+        this.higherFloor = higherFloor;
+        int nbFloors = higherFloor - lowerFloor + 1;
+        waitingByFloorByDirection = newBuckets(nbFloors * NB_DIRECTIONS);
+        boardedWithoutStopByFloorByDirection = newBuckets(nbFloors * NB_DIRECTIONS);
+        stopsByFloor = newBuckets(nbFloors);
+    }
+
+    public FloorDemandIndex getDemandIndex() {
+        return demandIndex;
+    }
+
+    public void add(User user) {
+        Deque<User> bucket = bucketOf(user);
+        if (bucket != null) {
+            bucket.addLast(user);
+            demandIndex.add(user);
+        }
+    }
+
+    public void remove(User user) {
+        Deque<User> bucket = bucketOf(user);
+        if (bucket != null && removeSameInstance(bucket, user)) {
+            demandIndex.remove(user);
+        }
+    }
+
+    public void clear() {
+        for (Deque<User> bucket : waitingByFloorByDirection) {
+            bucket.clear();
+        }
+        for (Deque<User> bucket : boardedWithoutStopByFloorByDirection) {
+            bucket.clear();
+        }
+        for (Deque<User> bucket : stopsByFloor) {
+            bucket.clear();
+        }
+        demandIndex.clear();
+    }
+
+    public void rebuild(Iterable<User> users) {
+        clear();
+        for (User user : users) {
+            add(user);
+        }
+    }
+
+    /**
+     * Adds to <code>into</code> every user whose state may change when the door opens at <code>floor</code>: the ones
+     * waiting there and the ones who requested a stop there.
+     */
+    public <C extends Collection<User>> C collectConcernedByOpenDoorAt(int floor, C into) {
+        if (!demandIndex.inBuilding(floor)) {
+            return into;
+        }
+        for (Direction direction : Direction.values()) {
+            into.addAll(waitingByFloorByDirection.get(indexOf(floor, direction)));
+        }
+        into.addAll(stopsByFloor.get(indexOf(floor)));
+        return into;
+    }
+
+    /**
+     * @return the user who boarded first at <code>floor</code> for <code>direction</code> and has not requested a
+     * stop yet, <code>null</code> if there is none
+     */
+    public User firstBoardedWithoutStop(int floor, Direction direction) {
+        if (!demandIndex.inBuilding(floor)) {
+            return null;
+        }
+        return boardedWithoutStopByFloorByDirection.get(indexOf(floor, direction)).peekFirst();
+    }
+
+    private Deque<User> bucketOf(User user) {
+        if (user.waiting()) {
+            return waitingByFloorByDirection.get(indexOf(user.getInitialFloor(), user.getDirection()));
+        } else if (user.traveling() && user.requestedAStop()) {
+            return stopsByFloor.get(indexOf(user.getFloorToGo()));
+        } else if (user.traveling()) {
+            return boardedWithoutStopByFloorByDirection.get(indexOf(user.getInitialFloor(), user.getDirection()));
+        }
+        return null;
+    }
+
+    /**
+     * User is a value object, two users called from the same floor at the same tick are equal: buckets have to be
+     * searched by reference.
+     */
+    private static boolean removeSameInstance(Deque<User> bucket, User user) {
+        if (bucket.peekFirst() == user) {
+            bucket.pollFirst();
+            return true;
+        }
+        Iterator<User> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == user) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Deque<User>> newBuckets(int nbBuckets) {
+        List<Deque<User>> buckets = new ArrayList<>(nbBuckets);
+        for (int i = 0; i < nbBuckets; i++) {
+            buckets.add(new ArrayDeque<User>());
+        }
+        return buckets;
+    }
+
+    private int indexOf(int floor, Direction direction) {
+        return indexOf(floor) * NB_DIRECTIONS + direction.ordinal();
+    }
+
+    private int indexOf(int floor) {
+        if (floor < lowerFloor || floor > higherFloor) {
+            throw new IllegalArgumentException("floor <" + floor + "> is not between <" + lowerFloor + "> and <" +
+                    higherFloor + ">");
+        }
+        return floor - lowerFloor;
+    }
+}
@@ -0,0 +1,218 @@
+package codestory.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The last requests received by an engine, encoded as primitives (request number, tick, type and up to three int
+ * arguments) in preallocated arrays used as a ring: recording allocates nothing, the oldest request is overwritten
+ * once <code>capacity</code> requests are kept. Only {@link #render()} builds the query strings.
+ */
+public class RequestHistory {
+
+    private static final Type[] TYPES = Type.values();
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private final int[] numbers;
+    private final int[] ticks;
+    private final byte[] types;
+    private final int[] firstArguments;
+    private final int[] secondArguments;
+    private final int[] thirdArguments;
+    // only resets have one, and they are not on the hot path
+    private final String[] causes;
+    private long nbRecorded;
+
+    public RequestHistory(int capacity) {
+        checkArgument(capacity > 0, "capacity has to be positive");
+        numbers = new int[capacity];
+        ticks = new int[capacity];
+        types = new byte[capacity];
+        firstArguments = new int[capacity];
+        secondArguments = new int[capacity];
+        thirdArguments = new int[capacity];
+        causes = new String[capacity];
+    }
+
+    public void nextCommand(int number, int tick) {
+        record(number, tick, Type.NEXT_COMMAND, 0, 0, 0, null);
+    }
+
+    public void call(int number, int tick, int atFloor, Direction to) {
+        record(number, tick, Type.CALL, atFloor, to == null ? -1 : to.ordinal(), 0, null);
+    }
+
+    public void go(int number, int tick, int floorToGo) {
+        record(number, tick, Type.GO, floorToGo, 0, 0, null);
+    }
+
+    public void userHasEntered(int number, int tick) {
+        record(number, tick, Type.USER_HAS_ENTERED, 0, 0, 0, null);
+    }
+
+    public void userHasExited(int number, int tick) {
+        record(number, tick, Type.USER_HAS_EXITED, 0, 0, 0, null);
+    }
+
+    public void reset(int number, int tick, String cause, int lowerFloor, int higherFloor, int cabinSize) {
+        record(number, tick, Type.RESET, lowerFloor, higherFloor, cabinSize, cause);
+    }
+
+    public synchronized void clear() {
+        nbRecorded = 0;
+    }
+
+    /**
+     * @return a history with the same requests, that later records here do not change
+     */
+    public synchronized RequestHistory copy() {
+        RequestHistory copy = new RequestHistory(numbers.length);
+        System.arraycopy(numbers, 0, copy.numbers, 0, numbers.length);
+        System.arraycopy(ticks, 0, copy.ticks, 0, ticks.length);
+        System.arraycopy(types, 0, copy.types, 0, types.length);
+        System.arraycopy(firstArguments, 0, copy.firstArguments, 0, firstArguments.length);
+        System.arraycopy(secondArguments, 0, copy.secondArguments, 0, secondArguments.length);
+        System.arraycopy(thirdArguments, 0, copy.thirdArguments, 0, thirdArguments.length);
+        System.arraycopy(causes, 0, copy.causes, 0, causes.length);
+        copy.nbRecorded = nbRecorded;
+        return copy;
+    }
+
+    /**
+     * Replaces the requests kept by those of <code>other</code>, the newest ones if they do not fit.
+     */
+    public void copyFrom(RequestHistory other) {
+        RequestHistory source = other.copy();
+        synchronized (this) {
+            clear();
+            for (long n = Math.max(0, source.nbRecorded - source.numbers.length); n < source.nbRecorded; n++) {
+                int i = (int) (n % source.numbers.length);
+                record(source.numbers[i], source.ticks[i], TYPES[source.types[i]], source.firstArguments[i],
+                        source.secondArguments[i], source.thirdArguments[i], source.causes[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the history {@link #render()} rendered <code>rendered</code> from, in a history just large enough for it
+     */
+    public static RequestHistory of(Map<Integer, String> rendered) {
+        RequestHistory history = new RequestHistory(Math.max(1, rendered.size()));
+        for (Map.Entry<Integer, String> entry : rendered.entrySet()) {
+            String request = entry.getValue();
+            int colon = request.indexOf(':');
+            int number = entry.getKey();
+            int tick = Integer.parseInt(request.substring(0, colon));
+            String query = request.substring(colon + 1);
+            if (query.startsWith("call?")) {
+                String to = parameter(query, "&to=", query.length());
+                history.call(number, tick, Integer.parseInt(parameter(query, "atFloor=", query.indexOf("&to="))),
+                        "null".equals(to) ? null : Direction.valueOf(to));
+            } else if (query.startsWith("go?")) {
+                history.go(number, tick, Integer.parseInt(parameter(query, "floorToGo=", query.length())));
+            } else if (query.equals("userHasEntered")) {
+                history.userHasEntered(number, tick);
+            } else if (query.equals("userHasExited")) {
+                history.userHasExited(number, tick);
+            } else if (query.startsWith("reset?")) {
+                // the cause is free text: the floors are read from the end
+                int lowerFloor = query.lastIndexOf("&lowerFloor=");
+                int higherFloor = query.lastIndexOf("&higherFloor=");
+                int cabinSize = query.lastIndexOf("&cabinSize=");
+                String cause = query.substring("reset?cause=".length(), lowerFloor);
+                history.reset(number, tick, "null".equals(cause) ? null : cause,
+                        Integer.parseInt(parameter(query, "&lowerFloor=", higherFloor)),
+                        Integer.parseInt(parameter(query, "&higherFloor=", cabinSize)),
+                        Integer.parseInt(parameter(query, "&cabinSize=", query.length())));
+            } else {
+                history.nextCommand(number, tick);
+            }
+        }
+        return history;
+    }
+
+    private static String parameter(String query, String name, int end) {
+        return query.substring(query.lastIndexOf(name) + name.length(), end);
+    }
+
+    /**
+     * Writes the requests kept, oldest first, for {@link #readFrom(DataInput)}.
+     */
+    public synchronized void writeTo(DataOutput output) throws IOException {
+        long first = Math.max(0, nbRecorded - numbers.length);
+        output.writeInt((int) (nbRecorded - first));
+        for (long n = first; n < nbRecorded; n++) {
+            int i = (int) (n % numbers.length);
+            output.writeInt(numbers[i]);
+            output.writeInt(ticks[i]);
+            output.writeByte(types[i]);
+            output.writeInt(firstArguments[i]);
+            output.writeInt(secondArguments[i]);
+            output.writeInt(thirdArguments[i]);
+            SnapshotCodec.writeString(output, causes[i]);
+        }
+    }
+
+    /**
+     * @return the requests written by {@link #writeTo(DataOutput)}, in a history just large enough for them
+     */
+    public static RequestHistory readFrom(DataInput input) throws IOException {
+        int size = input.readInt();
+        RequestHistory history = new RequestHistory(Math.max(1, size));
+        for (int n = 0; n < size; n++) {
+            history.record(input.readInt(), input.readInt(), TYPES[input.readByte()], input.readInt(),
+                    input.readInt(), input.readInt(), SnapshotCodec.readString(input));
+        }
+        return history;
+    }
+
+    /**
+     * @return <code>tick:request</code> by request number, oldest first
+     */
+    public synchronized Map<Integer, String> render() {
+        Map<Integer, String> rendered = new LinkedHashMap<>();
+        for (long n = Math.max(0, nbRecorded - numbers.length); n < nbRecorded; n++) {
+            int i = (int) (n % numbers.length);
+            rendered.put(numbers[i], ticks[i] + ":" + describe(i));
+        }
+        return rendered;
+    }
+
+    private String describe(int i) {
+        switch (TYPES[types[i]]) {
+            case CALL:
+                return "call?atFloor=" + firstArguments[i] + "&to=" +
+                        (secondArguments[i] < 0 ? null : DIRECTIONS[secondArguments[i]]);
+            case GO:
+                return "go?floorToGo=" + firstArguments[i];
+            case USER_HAS_ENTERED:
+                return "userHasEntered";
+            case USER_HAS_EXITED:
+                return "userHasExited";
+            case RESET:
+                return "reset?cause=" + causes[i] + "&lowerFloor=" + firstArguments[i] + "&higherFloor=" +
+                        secondArguments[i] + "&cabinSize=" + thirdArguments[i];
+            default:
+                return "nextCommand";
+        }
+    }
+
+    private synchronized void record(int number, int tick, Type type, int first, int second, int third, String cause) {
+        int i = (int) (nbRecorded++ % numbers.length);
+        numbers[i] = number;
+        ticks[i] = tick;
+        types[i] = (byte) type.ordinal();
+        firstArguments[i] = first;
+        secondArguments[i] = second;
+        thirdArguments[i] = third;
+        causes[i] = cause;
+    }
+
+    private enum Type {
+        NEXT_COMMAND, CALL, GO, USER_HAS_ENTERED, USER_HAS_EXITED, RESET,;
+    }
+}
@@ -0,0 +1,93 @@
+package codestory.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The contexts captured by the last resets, by tick, in preallocated arrays used as a ring.
+ */
+public class ResetHistory {
+
+    private final int[] ticks;
+    private final ElevatorContext[] contexts;
+    private long nbRecorded;
+
+    public ResetHistory(int capacity) {
+        checkArgument(capacity > 0, "capacity has to be positive");
+        ticks = new int[capacity];
+        contexts = new ElevatorContext[capacity];
+    }
+
+    public synchronized void record(int tick, ElevatorContext context) {
+        int i = (int) (nbRecorded++ % ticks.length);
+        ticks[i] = tick;
+        contexts[i] = context;
+    }
+
+    /**
+     * @return a history with the same contexts, that later records here do not change
+     */
+    public synchronized ResetHistory copy() {
+        ResetHistory copy = new ResetHistory(ticks.length);
+        System.arraycopy(ticks, 0, copy.ticks, 0, ticks.length);
+        System.arraycopy(contexts, 0, copy.contexts, 0, contexts.length);
+        copy.nbRecorded = nbRecorded;
+        return copy;
+    }
+
+    /**
+     * Replaces the contexts kept by those of <code>other</code>, the newest ones if they do not fit.
+     */
+    public void copyFrom(ResetHistory other) {
+        ResetHistory source = other.copy();
+        synchronized (this) {
+            nbRecorded = 0;
+            for (long n = Math.max(0, source.nbRecorded - source.ticks.length); n < source.nbRecorded; n++) {
+                int i = (int) (n % source.ticks.length);
+                record(source.ticks[i], source.contexts[i]);
+            }
+        }
+    }
+
+    /**
+     * Writes the contexts kept, oldest first, for {@link #readFrom(DataInput)}.
+     */
+    public synchronized void writeTo(DataOutput output) throws IOException {
+        long first = Math.max(0, nbRecorded - ticks.length);
+        output.writeInt((int) (nbRecorded - first));
+        for (long n = first; n < nbRecorded; n++) {
+            int i = (int) (n % ticks.length);
+            output.writeInt(ticks[i]);
+            SnapshotCodec.writeContext(output, contexts[i]);
+        }
+    }
+
+    /**
+     * @return the contexts written by {@link #writeTo(DataOutput)}, in a history just large enough for them
+     */
+    public static ResetHistory readFrom(DataInput input) throws IOException {
+        int size = input.readInt();
+        ResetHistory history = new ResetHistory(Math.max(1, size));
+        for (int n = 0; n < size; n++) {
+            history.record(input.readInt(), SnapshotCodec.readContext(input));
+        }
+        return history;
+    }
+
+    /**
+     * @return contexts by tick, oldest first
+     */
+    public synchronized Map<Integer, ElevatorContext> render() {
+        Map<Integer, ElevatorContext> rendered = new LinkedHashMap<>();
+        for (long n = Math.max(0, nbRecorded - ticks.length); n < nbRecorded; n++) {
+            int i = (int) (n % ticks.length);
+            rendered.put(ticks[i], contexts[i]);
+        }
+        return rendered;
+    }
+}
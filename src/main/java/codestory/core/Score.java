@@ -6,14 +6,22 @@ import static java.lang.Math.min;
 
 public class Score {
 
-    final Integer nbFloors;
-    Integer score;
+    final int nbFloors;
+    int score;
 
     public Score(Integer lowerFloor, Integer higherFloor) {
         score = 0;
         this.nbFloors = higherFloor - lowerFloor + 1;
     }
 
+    /**
+     * The score of a game going on, restored from a snapshot.
+     */
+    public Score(Integer lowerFloor, Integer higherFloor, int score) {
+        this(lowerFloor, higherFloor);
+        this.score = score;
+    }
+
     public static Integer bestTickToGo(Integer floor, Integer floorToGo) {
         // elevator is OPEN at floor
         final Integer elevatorHasToCloseDoorsWhenAtFloor = 1;
@@ -26,16 +34,20 @@ public class Score {
     }
 
     public Integer score(User user) throws IllegalStateException {
-        if (user.getTickToWait() < 1) {
+        return score(user.getInitialFloor(), user.getFloorToGo(), user.getTickToWait(), user.getTickToGo());
+    }
+
+    public int score(int initialFloor, int floorToGo, int tickToWait, int tickToGo) throws IllegalStateException {
+        if (tickToWait < 1) {
             throw new IllegalStateException("when done, user have to wait at least one tick");
         }
-        Integer bestTickToGo = bestTickToGo(user.getInitialFloor(), user.getFloorToGo());
-        if (user.getTickToGo() < bestTickToGo) {
+        int bestTickToGo = bestTickToGo(initialFloor, floorToGo);
+        if (tickToGo < bestTickToGo) {
             throw new IllegalStateException("when done, user have to wait at least minimum amount of ticks");
         }
-        Integer score = nbFloors
-                - user.getTickToWait() / 2
-                - user.getTickToGo()
+        int score = nbFloors
+                - tickToWait / 2
+                - tickToGo
                 + bestTickToGo;
         return min(max(0, score), nbFloors);
     }
@@ -50,6 +62,11 @@ public class Score {
         return this;
     }
 
+    public Score success(int initialFloor, int floorToGo, int tickToWait, int tickToGo) throws IllegalStateException {
+        score += score(initialFloor, floorToGo, tickToWait, tickToGo);
+        return this;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -57,7 +74,7 @@ public class Score {
 
         Score score1 = (Score) o;
 
-        return score.equals(score1.score);
+        return score == score1.score;
     }
 
     @Override
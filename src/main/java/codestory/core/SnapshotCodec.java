@@ -0,0 +1,236 @@
+package codestory.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the pieces of an engine state as compact binary, for snapshots: nullable values start with a presence flag,
+ * lists and maps with their size, enums are their ordinal.
+ */
+public final class SnapshotCodec {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final Door[] DOORS = Door.values();
+    private static final Command[] COMMANDS = Command.values();
+    private static final User.State[] STATES = User.State.values();
+
+    private SnapshotCodec() {
+    }
+
+    public static void writeString(DataOutput output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    public static String readString(DataInput input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+
+    public static void writeEnum(DataOutput output, Enum<?> value) throws IOException {
+        output.writeByte(value == null ? -1 : value.ordinal());
+    }
+
+    public static Direction readDirection(DataInput input) throws IOException {
+        byte ordinal = input.readByte();
+        return ordinal < 0 ? null : DIRECTIONS[ordinal];
+    }
+
+    public static Door readDoor(DataInput input) throws IOException {
+        byte ordinal = input.readByte();
+        return ordinal < 0 ? null : DOORS[ordinal];
+    }
+
+    public static Command readCommand(DataInput input) throws IOException {
+        byte ordinal = input.readByte();
+        return ordinal < 0 ? null : COMMANDS[ordinal];
+    }
+
+    private static void writeInteger(DataOutput output, Integer value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeInt(value);
+        }
+    }
+
+    private static Integer readInteger(DataInput input) throws IOException {
+        return input.readBoolean() ? input.readInt() : null;
+    }
+
+    public static void writeUser(DataOutput output, User user) throws IOException {
+        output.writeInt(user.getInitialFloor());
+        writeEnum(output, user.getDirection());
+        output.writeInt(user.getFloorToGo());
+        writeInteger(output, user.getCurrentFloor());
+        writeInteger(output, user.getTickToGo());
+        writeEnum(output, user.getState());
+        writeInteger(output, user.getTickToWait());
+        writeInteger(output, user.getTravelingTick());
+    }
+
+    public static User readUser(DataInput input) throws IOException {
+        User user = new User(input.readInt(), readDirection(input));
+        int floorToGo = input.readInt();
+        if (floorToGo != User.UNSET) {
+            user.go(floorToGo);
+        }
+        user.setCurrentFloor(readInteger(input));
+        user.setTickToGo(readInteger(input));
+        byte state = input.readByte();
+        user.setState(state < 0 ? null : STATES[state]);
+        user.setTickToWait(readInteger(input));
+        user.setTravelingTick(readInteger(input));
+        return user;
+    }
+
+    public static void writeUsers(DataOutput output, List<User> users) throws IOException {
+        output.writeInt(users == null ? -1 : users.size());
+        if (users != null) {
+            for (User user : users) {
+                writeUser(output, user);
+            }
+        }
+    }
+
+    public static List<User> readUsers(DataInput input) throws IOException {
+        int size = input.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<User> users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            users.add(readUser(input));
+        }
+        return users;
+    }
+
+    private static void writeMap(DataOutput output, Map<Integer, String> map) throws IOException {
+        output.writeInt(map == null ? -1 : map.size());
+        if (map != null) {
+            for (Map.Entry<Integer, String> entry : map.entrySet()) {
+                output.writeInt(entry.getKey());
+                writeString(output, entry.getValue());
+            }
+        }
+    }
+
+    private static Map<Integer, String> readMap(DataInput input) throws IOException {
+        int size = input.readInt();
+        if (size < 0) {
+            return null;
+        }
+        Map<Integer, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put(input.readInt(), readString(input));
+        }
+        return map;
+    }
+
+    private static void writeCounts(DataOutput output, List<CountsByFloorByDirection> counts) throws IOException {
+        output.writeInt(counts == null ? -1 : counts.size());
+        if (counts != null) {
+            for (CountsByFloorByDirection count : counts) {
+                writeInteger(output, count.getFloor());
+                writeInteger(output, count.getCountByDirection().get(Direction.DOWN));
+                writeInteger(output, count.getCountByDirection().get(Direction.UP));
+            }
+        }
+    }
+
+    private static List<CountsByFloorByDirection> readCounts(DataInput input) throws IOException {
+        int size = input.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<CountsByFloorByDirection> counts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            counts.add(new CountsByFloorByDirection(readInteger(input), readInteger(input), readInteger(input)));
+        }
+        return counts;
+    }
+
+    public static void writeContext(DataOutput output, ElevatorContext context) throws IOException {
+        output.writeBoolean(context != null);
+        if (context == null) {
+            return;
+        }
+        writeString(output, context.getCaller());
+        writeString(output, context.getDate());
+        writeString(output, context.getLastResetCause());
+        writeString(output, context.getLastResetDateTime());
+        output.writeInt(context.getLastResetTick());
+        output.writeInt(context.getScore());
+        output.writeInt(context.getTick());
+        output.writeInt(context.getLastRequestNumber());
+        output.writeInt(context.getLowerFloor());
+        output.writeInt(context.getHigherFloor());
+        output.writeInt(context.getCurrentFloor());
+        output.writeInt(context.getPreviousFloor());
+        output.writeInt(context.getMiddleFloor());
+        output.writeInt(context.getCurrentNbOfUsersInsideTheElevator());
+        output.writeInt(context.getCabinSize());
+        writeEnum(output, context.getCurrentDoorStatus());
+        writeEnum(output, context.getPreviousCommand());
+        writeEnum(output, context.getPreviousDirection());
+        writeEnum(output, context.getCurrentDirection());
+        output.writeBoolean(context.isSomeoneIsWaitingAtLowerLevels());
+        output.writeBoolean(context.isSomeoneIsWaitingAtUpperLevels());
+        output.writeBoolean(context.isSomeoneRequestedAStopAtLowerLevels());
+        output.writeBoolean(context.isSomeoneRequestedAStopAtUpperLevels());
+        output.writeBoolean(context.isUserWaitingAtCurrentFloor());
+        output.writeBoolean(context.isUserInsideElevatorNeedToGetOut());
+        writeMap(output, context.getLastCommands());
+        writeCounts(output, context.getWaitingList());
+        writeCounts(output, context.getStopList());
+        writeUsers(output, context.getUsersInStrangeTravelingState());
+        writeContext(output, context.getLastResetContext());
+        writeUsers(output, context.getUsers());
+        writeMap(output, context.getLastRequests());
+    }
+
+    public static ElevatorContext readContext(DataInput input) throws IOException {
+        if (!input.readBoolean()) {
+            return null;
+        }
+        return ElevatorContext.builder()
+                .caller(readString(input))
+                .date(readString(input))
+                .lastResetCause(readString(input))
+                .lastResetDateTime(readString(input))
+                .lastResetTick(input.readInt())
+                .score(input.readInt())
+                .tick(input.readInt())
+                .lastRequestNumber(input.readInt())
+                .lowerFloor(input.readInt())
+                .higherFloor(input.readInt())
+                .currentFloor(input.readInt())
+                .previousFloor(input.readInt())
+                .middleFloor(input.readInt())
+                .currentNbOfUsersInsideTheElevator(input.readInt())
+                .cabinSize(input.readInt())
+                .currentDoorStatus(readDoor(input))
+                .previousCommand(readCommand(input))
+                .previousDirection(readDirection(input))
+                .currentDirection(readDirection(input))
+                .someoneIsWaitingAtLowerLevels(input.readBoolean())
+                .someoneIsWaitingAtUpperLevels(input.readBoolean())
+                .someoneRequestedAStopAtLowerLevels(input.readBoolean())
+                .someoneRequestedAStopAtUpperLevels(input.readBoolean())
+                .userWaitingAtCurrentFloor(input.readBoolean())
+                .userInsideElevatorNeedToGetOut(input.readBoolean())
+                .lastCommands(readMap(input))
+                .waitingList(readCounts(input))
+                .stopList(readCounts(input))
+                .usersInStrangeTravelingState(readUsers(input))
+                .lastResetContext(readContext(input))
+                .users(readUsers(input))
+                .lastRequests(readMap(input))
+                .build();
+    }
+}
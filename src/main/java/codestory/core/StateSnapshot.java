@@ -0,0 +1,61 @@
+package codestory.core;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Engine state captured on the engine thread, published for readers on any thread. The four contexts a state request
+ * can ask for (with or without the full user list, with or without the last requests) share everything they hold; each
+ * one is serialized to JSON by the first reader asking for it, later readers get the same bytes.
+ * <p/>
+ * The contexts must not be changed once handed over: the users and the requests given here are copies nobody else
+ * holds.
+ */
+public class StateSnapshot {
+
+    private static final int FULL_USER_LIST = 1;
+    private static final int LAST_REQUESTS = 2;
+    @Getter
+    private final int tick;
+    private final ObjectMapper mapper;
+    private final ElevatorContext[] contexts = new ElevatorContext[4];
+    private final AtomicReferenceArray<byte[]> json = new AtomicReferenceArray<>(4);
+
+    public StateSnapshot(ObjectMapper mapper, ElevatorContext.ElevatorContextBuilder builder, List<User> users,
+                         Map<Integer, String> lastRequests) {
+        this.mapper = mapper;
+        for (int variant = 0; variant < contexts.length; variant++) {
+            builder.users((variant & FULL_USER_LIST) != 0 ? users : null);
+            builder.lastRequests((variant & LAST_REQUESTS) != 0 ? lastRequests : null);
+            contexts[variant] = builder.build();
+        }
+        this.tick = contexts[0].getTick();
+    }
+
+    public ElevatorContext getContext(boolean includeFullUserList, boolean includeLastRequests) {
+        return contexts[variant(includeFullUserList, includeLastRequests)];
+    }
+
+    /**
+     * @return the JSON of the context, to be written as is and never modified
+     */
+    public byte[] toJson(boolean includeFullUserList, boolean includeLastRequests) throws JsonProcessingException {
+        int variant = variant(includeFullUserList, includeLastRequests);
+        byte[] bytes = json.get(variant);
+        if (bytes == null) {
+            // two first readers may both serialize, they produce the same bytes
+            bytes = mapper.writeValueAsBytes(contexts[variant]);
+            json.set(variant, bytes);
+        }
+        return bytes;
+    }
+
+    private static int variant(boolean includeFullUserList, boolean includeLastRequests) {
+        return (includeFullUserList ? FULL_USER_LIST : 0) | (includeLastRequests ? LAST_REQUESTS : 0);
+    }
+}
@@ -28,6 +28,20 @@ public class User {
         this.travelingTick = Integer.MIN_VALUE;
     }
 
+    /**
+     * A copy later moves of <code>user</code> do not change.
+     */
+    public User(User user) {
+        this.initialFloor = user.initialFloor;
+        this.direction = user.direction;
+        this.floorToGo = user.floorToGo;
+        this.currentFloor = user.currentFloor;
+        this.tickToGo = user.tickToGo;
+        this.state = user.state;
+        this.tickToWait = user.tickToWait;
+        this.travelingTick = user.travelingTick;
+    }
+
     public void elevatorIsOpen(Integer floor, Integer atTick) throws ElevatorIsBrokenException {
         if (waiting() && at(floor) && elevatorIsAtWaitingFloor(floor)) {
             state = State.TRAVELLING;
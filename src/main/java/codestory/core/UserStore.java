@@ -0,0 +1,62 @@
+package codestory.core;
+
+import java.util.List;
+
+/**
+ * Where an engine keeps the users it reconstructed from call/go requests, and the per-floor demand they represent.
+ */
+public interface UserStore {
+
+    public void register(User user);
+
+    /**
+     * Registers a user who just called the elevator.
+     */
+    public void register(int initialFloor, Direction direction);
+
+    /**
+     * The elevator is at <code>floor</code> for the tick about to be processed: every known user is at that floor too.
+     */
+    public void elevatorIsAt(int floor);
+
+    public void tick();
+
+    /**
+     * Gives <code>floorToGo</code> to the first user who boarded at <code>boardingFloor</code> for
+     * <code>direction</code> and did not request a stop yet.
+     *
+     * @return false if no such user exists
+     */
+    public boolean requestStop(int boardingFloor, Direction direction, int floorToGo);
+
+    /**
+     * Lets users waiting at <code>floor</code> in, lets users who requested a stop there out, credits
+     * <code>score</code> for the latter and forgets them.
+     *
+     * @return the number of users who reached their destination
+     */
+    public int elevatorIsOpen(int floor, int tick, Score score);
+
+    public FloorDemandIndex getDemandIndex();
+
+    /**
+     * @param direction null for both directions
+     * @return the users waiting at <code>floor</code> who waited <code>maxTicksWaited</code> ticks or less
+     */
+    public int nbWaitingAt(int floor, Direction direction, int maxTicksWaited);
+
+    /**
+     * @return users not done yet, in the order they called the elevator
+     */
+    public List<User> getUsers();
+
+    public List<User> getUsersInStrangeTravelingState();
+
+    public int size();
+
+    /**
+     * @return a rough count of the heap bytes the users of this store hold
+     */
+    public long estimatedBytes();
+
+}
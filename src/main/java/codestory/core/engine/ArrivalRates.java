@@ -0,0 +1,39 @@
+package codestory.core.engine;
+
+import codestory.core.Direction;
+
+/**
+ * Calls an engine received by floor and direction since its last reset, and the ticks they were received over: the
+ * arrival rates rollouts draw future users from.
+ */
+class ArrivalRates {
+
+    private int lowerFloor;
+    private int[] calls = new int[0];
+    private int ticks;
+
+    void reset(int lowerFloor, int higherFloor) {
+        this.lowerFloor = lowerFloor;
+        this.calls = new int[2 * (higherFloor - lowerFloor + 1)];
+        this.ticks = 0;
+    }
+
+    void call(int floor, Direction direction) {
+        calls[index(floor, direction == Direction.UP)]++;
+    }
+
+    void tick() {
+        ticks++;
+    }
+
+    /**
+     * @return users calling at <code>floor</code> for <code>up</code> by tick, 0 before the first tick
+     */
+    double rate(int floor, boolean up) {
+        return ticks == 0 ? 0 : (double) calls[index(floor, up)] / ticks;
+    }
+
+    private int index(int floor, boolean up) {
+        return 2 * (floor - lowerFloor) + (up ? 1 : 0);
+    }
+}
@@ -0,0 +1,16 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+
+/**
+ * An engine applying an {@link EventBatch} at once: no request of another caller gets in between its events, and the
+ * batch takes the lock, queued event or shard task of a single request.
+ */
+public interface BatchingElevatorEngine extends ElevatorEngine {
+
+    /**
+     * @return the command answered by the nextCommand ending the batch, null if it does not end with one
+     */
+    public Command apply(EventBatch batch);
+
+}
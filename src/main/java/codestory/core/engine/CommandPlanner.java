@@ -0,0 +1,21 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+
+/**
+ * How a {@link LookaheadElevator} looks ahead: from the state it fills, the command to give.
+ */
+interface CommandPlanner {
+
+    /**
+     * The state planned from, filled by the caller before {@link #plan(Command, long)}.
+     */
+    PlanningState getRoot();
+
+    /**
+     * @param preferred wins ties, the greedy decision of the engine
+     * @param deadline  of the search, a {@link System#nanoTime()}
+     * @return the command to give, null if the planner could not tell by the deadline
+     */
+    Command plan(Command preferred, long deadline);
+}
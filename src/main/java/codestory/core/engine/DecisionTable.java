@@ -0,0 +1,188 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.Door;
+import codestory.core.FloorDemandIndex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The commands an engine gives in every situation of a small building, compiled offline: situations are the floor of
+ * the cabin, its door (open, closed, just closed), its direction, and three masks of floors, those with users waiting
+ * to go up, those with users waiting to go down and those where users inside requested a stop. Each situation is one
+ * index of a table of 4 bits commands, 0 for the situations left out: nobody calls down from the lower floor or up
+ * from the higher one.
+ * <p/>
+ * A table only knows where users are, not how many nor for how long: it gives what a W2 engine would as long as its
+ * strategy does not count users (no maxUsersOnBoard nor maxTicksWaited). It keeps the strategy it was compiled with,
+ * engines with another one decide live. A table compiled from a lookahead engine
+ * gives what it planned for one user per floor of the masks, users who called a tick ago.
+ */
+public class DecisionTable extends SituationTable {
+
+    /**
+     * 6 floors, the default building, make 2<sup>18</sup> masks by cabin floor, door and direction
+     */
+    public static final int MAX_FLOORS = 6;
+    private static final int MAGIC = 0x57324432;
+    private final int nbFloors;
+    private final byte[] commands;
+
+    private DecisionTable(S03E01W2Elevator engine, byte[] commands) {
+        super(engine);
+        this.nbFloors = getHigherFloor() - getLowerFloor() + 1;
+        this.commands = commands;
+    }
+
+    private DecisionTable(ByteBuffer header, byte[] commands) throws IOException {
+        super(header, MAGIC, "decision table");
+        this.nbFloors = getHigherFloor() - getLowerFloor() + 1;
+        this.commands = commands;
+    }
+
+    /**
+     * Asks <code>engine</code> what to do in every situation of its building, which must have at most
+     * {@link #MAX_FLOORS} floors. Leaves the engine in the last situation: it needs a reset to play again.
+     */
+    public static DecisionTable compile(S03E01W2Elevator engine) {
+        int lowerFloor = engine.getLowerFloor();
+        int higherFloor = engine.getHigherFloor();
+        int nbFloors = higherFloor - lowerFloor + 1;
+        checkArgument(nbFloors <= MAX_FLOORS, "<" + nbFloors + "> floors, a decision table has " + MAX_FLOORS +
+                " at most");
+        DecisionTable table = new DecisionTable(engine, new byte[(nbFloors * DOOR_STATES * 2 << 3 * nbFloors) / 2]);
+        int impossibleUp = 1 << nbFloors - 1;
+        int impossibleDown = 1;
+        int masks = 1 << nbFloors;
+        for (int floor = lowerFloor; floor <= higherFloor; floor++) {
+            for (int door = 0; door < DOOR_STATES; door++) {
+                for (Direction direction : Direction.values()) {
+                    for (int waitingUp = 0; waitingUp < masks; waitingUp++) {
+                        if ((waitingUp & impossibleUp) != 0) {
+                            continue;
+                        }
+                        for (int waitingDown = 0; waitingDown < masks; waitingDown++) {
+                            if ((waitingDown & impossibleDown) != 0) {
+                                continue;
+                            }
+                            for (int stops = 0; stops < masks; stops++) {
+                                engine.load(floor, door == OPEN ? Door.OPEN : Door.CLOSE, door == JUST_CLOSED,
+                                        direction, waitingUp, waitingDown, stops);
+                                table.set(table.index(floor, door, direction, waitingUp, waitingDown, stops),
+                                        engine.decide());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @return the table in <code>file</code>, read once for all the engines asking for it
+     */
+    public static DecisionTable load(String file) throws IOException {
+        return load(file, DecisionTable.class, new Reader<DecisionTable>() {
+            @Override
+            public DecisionTable read(String file) throws IOException {
+                try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+                    return readFrom(input);
+                }
+            }
+        });
+    }
+
+    public static DecisionTable readFrom(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(input);
+        byte[] header = new byte[HEADER_BYTES];
+        data.readFully(header);
+        byte[] commands = new byte[data.readInt()];
+        data.readFully(commands);
+        return new DecisionTable(ByteBuffer.wrap(header), commands);
+    }
+
+    public void writeTo(OutputStream output) throws IOException {
+        DataOutputStream data = new DataOutputStream(output);
+        data.write(header(MAGIC, HEADER_BYTES).array());
+        data.writeInt(commands.length);
+        data.write(commands);
+        data.flush();
+    }
+
+    public void writeTo(File file) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+            writeTo(output);
+        }
+    }
+
+    /**
+     * Reads the masks of waiting users and requested stops from the demand index of <code>engine</code>.
+     */
+    @Override
+    protected Command commandOf(S03E01W2Elevator engine) {
+        FloorDemandIndex demand = engine.getUserStore().getDemandIndex();
+        int waitingUp = 0;
+        int waitingDown = 0;
+        int stops = 0;
+        for (int floor = getLowerFloor(), bit = 1; floor <= getHigherFloor(); floor++, bit <<= 1) {
+            if (demand.nbWaitingAt(floor, Direction.UP) > 0) {
+                waitingUp |= bit;
+            }
+            if (demand.nbWaitingAt(floor, Direction.DOWN) > 0) {
+                waitingDown |= bit;
+            }
+            if (demand.stopRequestedAt(floor)) {
+                stops |= bit;
+            }
+        }
+        return lookup(engine.getCurrentFloor().get(), engine.getCurrentDoorStatus(), engine.justClosedTheDoor(),
+                engine.getCurrentDirection(), waitingUp, waitingDown, stops);
+    }
+
+    /**
+     * @return the command of the situation, null if the table left it out
+     */
+    public Command lookup(int floor, Door door, boolean justClosed, Direction direction, int waitingUp,
+                         int waitingDown, int stops) {
+        if (floor < getLowerFloor() || floor > getHigherFloor()) {
+            return null;
+        }
+        int index = index(floor, doorState(door, justClosed), direction, waitingUp, waitingDown, stops);
+        int command = commands[index >> 1] >> ((index & 1) << 2) & 0xF;
+        return command == 0 ? null : COMMANDS[command - 1];
+    }
+
+    /**
+     * @return the situations the table gives a command for
+     */
+    public int size() {
+        int size = 0;
+        for (byte pair : commands) {
+            size += ((pair & 0xF) != 0 ? 1 : 0) + ((pair & 0xF0) != 0 ? 1 : 0);
+        }
+        return size;
+    }
+
+    private int index(int floor, int doorState, Direction direction, int waitingUp, int waitingDown, int stops) {
+        int situation = ((floor - getLowerFloor()) * DOOR_STATES + doorState) * 2 + (direction == Direction.UP ? 1 : 0);
+        return situation << 3 * nbFloors | waitingUp << 2 * nbFloors | waitingDown << nbFloors | stops;
+    }
+
+    private void set(int index, Command command) {
+        commands[index >> 1] |= (command.ordinal() + 1) << ((index & 1) << 2);
+    }
+}
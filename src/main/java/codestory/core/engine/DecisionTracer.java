@@ -0,0 +1,85 @@
+package codestory.core.engine;
+
+import codestory.EngineConfiguration;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Decides which engine decisions are worth tracing, before anything is built: a tick left out of the sample costs a
+ * couple of field reads. Sampling can be changed at runtime (see the <code>trace</code> admin task), to get full
+ * traces during an incident.
+ */
+public class DecisionTracer {
+
+    private volatile Sampling sampling;
+    private volatile int every;
+
+    public DecisionTracer(Sampling sampling, int every) {
+        set(sampling, every);
+    }
+
+    /**
+     * An allocation free engine starts with tracing off, whatever the configured sampling.
+     */
+    public DecisionTracer(EngineConfiguration configuration) {
+        this(configuration.isAllocationFree() ? Sampling.OFF : configuration.getTraceSampling(),
+                configuration.getTraceEvery());
+    }
+
+    public void set(Sampling sampling, int every) {
+        checkArgument(sampling != null, "sampling cannot be null");
+        checkArgument(every > 0, "every has to be positive");
+        this.every = every;
+        this.sampling = sampling;
+    }
+
+    public Sampling getSampling() {
+        return sampling;
+    }
+
+    public int getEvery() {
+        return every;
+    }
+
+    /**
+     * State before a tick is processed: whether the direction will change is not known yet.
+     */
+    public boolean tracesTickStart(int tick) {
+        switch (sampling) {
+            case ALL:
+                return true;
+            case EVERY_N_TICKS:
+                return tick % every == 0;
+            default:
+                return false;
+        }
+    }
+
+    public boolean tracesTickEnd(int tick, boolean directionChanged) {
+        switch (sampling) {
+            case ALL:
+                return true;
+            case EVERY_N_TICKS:
+                return tick % every == 0;
+            case DIRECTION_CHANGES:
+                return directionChanged;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * users entering/exiting follow the sampling of the tick they happen at
+     */
+    public boolean tracesUserMove(int tick) {
+        return tracesTickStart(tick);
+    }
+
+    public boolean tracesReset() {
+        return sampling != Sampling.OFF;
+    }
+
+    public enum Sampling {
+        OFF, ALL, EVERY_N_TICKS, DIRECTION_CHANGES,;
+    }
+}
@@ -31,4 +31,9 @@ public interface ElevatorEngine {
 
     public String getState(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests);
 
+    /**
+     * The state as UTF-8 JSON bytes, written as is by GET /: callers must not modify them.
+     */
+    public byte[] getStateAsJson(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests);
+
 }
@@ -0,0 +1,226 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.CommandHistory;
+import codestory.core.CountsByFloorByDirection;
+import codestory.core.Direction;
+import codestory.core.Door;
+import codestory.core.ElevatorContext;
+import codestory.core.RequestHistory;
+import codestory.core.ResetHistory;
+import codestory.core.SnapshotCodec;
+import codestory.core.User;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.Builder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The full state of a W2 engine between two requests, taken on the engine thread by
+ * {@link S03E01W2Elevator#snapshot()}: the users and the histories are copies, later requests do not change them, so
+ * the snapshot can be written by another thread. {@link S03E01W2Elevator#restore(EngineSnapshot)} puts an engine back
+ * in that state.
+ * <p/>
+ * Unlike {@link codestory.core.StateSnapshot}, published for GET / readers, this one is meant for a file: it keeps the
+ * last commands, requests and resets contexts as well, and is written as compact binary. {@link #of(ElevatorContext)}
+ * builds one from a getState() dump instead.
+ */
+@Builder
+@Getter(AccessLevel.PACKAGE)
+public class EngineSnapshot {
+
+    private static final int MAGIC = 0x57325353;
+    private static final int VERSION = 1;
+
+    private final int lowerFloor;
+    private final int higherFloor;
+    private final int cabinSize;
+    @Getter
+    private final int ticks;
+    private final int nbRequests;
+    private final int score;
+    private final int currentFloor;
+    private final int previousFloor;
+    private final int nbInside;
+    private final Direction currentDirection;
+    private final Command previousCommand;
+    private final Door currentDoorStatus;
+    private final String lastResetCause;
+    private final String lastResetDateTime;
+    private final int lastResetTick;
+    private final ElevatorContext lastResetContext;
+    private final List<User> users;
+    private final CommandHistory lastCommands;
+    private final RequestHistory lastRequests;
+    private final ResetHistory lastResets;
+
+    public void writeTo(OutputStream stream) throws IOException {
+        DataOutputStream output = new DataOutputStream(stream);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(lowerFloor);
+        output.writeInt(higherFloor);
+        output.writeInt(cabinSize);
+        output.writeInt(ticks);
+        output.writeInt(nbRequests);
+        output.writeInt(score);
+        output.writeInt(currentFloor);
+        output.writeInt(previousFloor);
+        output.writeInt(nbInside);
+        SnapshotCodec.writeEnum(output, currentDirection);
+        SnapshotCodec.writeEnum(output, previousCommand);
+        SnapshotCodec.writeEnum(output, currentDoorStatus);
+        SnapshotCodec.writeString(output, lastResetCause);
+        SnapshotCodec.writeString(output, lastResetDateTime);
+        output.writeInt(lastResetTick);
+        SnapshotCodec.writeContext(output, lastResetContext);
+        SnapshotCodec.writeUsers(output, users);
+        lastCommands.writeTo(output);
+        lastRequests.writeTo(output);
+        lastResets.writeTo(output);
+        output.flush();
+    }
+
+    /**
+     * Writes the snapshot to <code>file</code> and forces it to the disk before returning.
+     */
+    public void writeTo(File file) throws IOException {
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            OutputStream output = new BufferedOutputStream(stream);
+            writeTo(output);
+            output.flush();
+            stream.getFD().sync();
+        }
+    }
+
+    public static EngineSnapshot readFrom(InputStream stream) throws IOException {
+        DataInputStream input = new DataInputStream(stream);
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            throw new IOException("not an engine snapshot");
+        }
+        return builder()
+                .lowerFloor(input.readInt())
+                .higherFloor(input.readInt())
+                .cabinSize(input.readInt())
+                .ticks(input.readInt())
+                .nbRequests(input.readInt())
+                .score(input.readInt())
+                .currentFloor(input.readInt())
+                .previousFloor(input.readInt())
+                .nbInside(input.readInt())
+                .currentDirection(SnapshotCodec.readDirection(input))
+                .previousCommand(SnapshotCodec.readCommand(input))
+                .currentDoorStatus(SnapshotCodec.readDoor(input))
+                .lastResetCause(SnapshotCodec.readString(input))
+                .lastResetDateTime(SnapshotCodec.readString(input))
+                .lastResetTick(input.readInt())
+                .lastResetContext(SnapshotCodec.readContext(input))
+                .users(SnapshotCodec.readUsers(input))
+                .lastCommands(CommandHistory.readFrom(input))
+                .lastRequests(RequestHistory.readFrom(input))
+                .lastResets(ResetHistory.readFrom(input))
+                .build();
+    }
+
+    public static EngineSnapshot readFrom(File file) throws IOException {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            return readFrom(input);
+        }
+    }
+
+    /**
+     * @return the snapshot in <code>file</code>, either written by {@link #writeTo(File)} or a getState() JSON dump
+     */
+    public static EngineSnapshot load(File file) throws IOException {
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+            input.mark(4);
+            boolean binary = new DataInputStream(input).readInt() == MAGIC;
+            input.reset();
+            return binary ? readFrom(input) : of(ElevatorContext.fromJson(S03E01W2Elevator.MAPPER.readTree(input)));
+        }
+    }
+
+    /**
+     * @return the state a getState() dump was rendered from. The users are those of the full user list if the dump
+     * has one; otherwise they are rebuilt from the waiting and stop lists, with their ticks waited and traveled
+     * unknown, hence 0, and those traveling from the current floor.
+     */
+    public static EngineSnapshot of(ElevatorContext context) {
+        checkArgument(context != null, "no context to restore from");
+        ResetHistory lastResets = new ResetHistory(1);
+        if (context.getLastResetContext() != null) {
+            lastResets.record(context.getLastResetTick(), context.getLastResetContext());
+        }
+        return builder()
+                .lowerFloor(context.getLowerFloor())
+                .higherFloor(context.getHigherFloor())
+                .cabinSize(context.getCabinSize())
+                .ticks(context.getTick())
+                .nbRequests(context.getLastRequestNumber())
+                .score(context.getScore())
+                .currentFloor(context.getCurrentFloor())
+                .previousFloor(context.getPreviousFloor())
+                .nbInside(context.getCurrentNbOfUsersInsideTheElevator())
+                .currentDirection(context.getCurrentDirection())
+                .previousCommand(context.getPreviousCommand())
+                .currentDoorStatus(context.getCurrentDoorStatus())
+                .lastResetCause(context.getLastResetCause())
+                .lastResetDateTime(context.getLastResetDateTime())
+                .lastResetTick(context.getLastResetTick())
+                .lastResetContext(context.getLastResetContext())
+                .users(context.getUsers() != null ? context.getUsers() : usersOf(context))
+                .lastCommands(CommandHistory.of(orEmpty(context.getLastCommands())))
+                .lastRequests(RequestHistory.of(orEmpty(context.getLastRequests())))
+                .lastResets(lastResets)
+                .build();
+    }
+
+    private static List<User> usersOf(ElevatorContext context) {
+        List<User> users = new ArrayList<>();
+        for (CountsByFloorByDirection waiting : orEmpty(context.getWaitingList())) {
+            for (Map.Entry<Direction, Integer> count : waiting.getCountByDirection().entrySet()) {
+                for (int n = 0; n < count.getValue(); n++) {
+                    User user = new User(waiting.getFloor(), count.getKey());
+                    user.setCurrentFloor(context.getCurrentFloor());
+                    users.add(user);
+                }
+            }
+        }
+        for (CountsByFloorByDirection stop : orEmpty(context.getStopList())) {
+            for (Map.Entry<Direction, Integer> count : stop.getCountByDirection().entrySet()) {
+                for (int n = 0; n < count.getValue(); n++) {
+                    User user = new User(context.getCurrentFloor(), count.getKey());
+                    user.setCurrentFloor(context.getCurrentFloor());
+                    user.setState(User.State.TRAVELLING);
+                    user.go(stop.getFloor());
+                    users.add(user);
+                }
+            }
+        }
+        return users;
+    }
+
+    private static <T> List<T> orEmpty(List<T> list) {
+        return list == null ? Collections.<T>emptyList() : list;
+    }
+
+    private static Map<Integer, String> orEmpty(Map<Integer, String> map) {
+        return map == null ? Collections.<Integer, String>emptyMap() : map;
+    }
+}
@@ -0,0 +1,226 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import com.google.common.base.Splitter;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Game events applied in order and at once, see {@link #applyTo(ElevatorEngine)}: the requests the game server sends
+ * between two ticks, then possibly the nextCommand of the tick, whose command the batch answers.
+ * <p/>
+ * As text, one event per line, written as the request it stands for:
+ * <pre>
+ *     call?atFloor=3&amp;to=UP
+ *     userHasEntered
+ *     go?floorToGo=5
+ *     nextCommand
+ * </pre>
+ */
+public class EventBatch {
+
+    private static final Splitter LINES = Splitter.on('\n').trimResults().omitEmptyStrings();
+    private static final Splitter.MapSplitter QUERY = Splitter.on('&').withKeyValueSeparator('=');
+
+    private final List<Event> events = new ArrayList<>();
+    /**
+     * whether the batch ends with a nextCommand
+     */
+    @Getter
+    private boolean nextCommand;
+
+    public EventBatch call(int atFloor, Direction to) {
+        checkArgument(to != null, "'to' cannot be null");
+        return add(new Event(Type.CALL, atFloor, to));
+    }
+
+    public EventBatch go(int floorToGo) {
+        return add(new Event(Type.GO, floorToGo, null));
+    }
+
+    public EventBatch userHasEntered() {
+        return add(new Event(Type.USER_HAS_ENTERED, 0, null));
+    }
+
+    public EventBatch userHasExited() {
+        return add(new Event(Type.USER_HAS_EXITED, 0, null));
+    }
+
+    /**
+     * Ends the batch with the nextCommand of the tick.
+     */
+    public EventBatch nextCommand() {
+        checkState(!nextCommand, "a batch ends with its nextCommand");
+        nextCommand = true;
+        return this;
+    }
+
+    /**
+     * @return the number of events, the nextCommand included
+     */
+    public int size() {
+        return events.size() + (nextCommand ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    boolean hasCalls() {
+        for (Event event : events) {
+            if (event.type == Type.CALL) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @throws IllegalArgumentException on a line that is not a game event
+     */
+    public static EventBatch parse(String text) {
+        EventBatch batch = new EventBatch();
+        for (String line : LINES.split(text)) {
+            int question = line.indexOf('?');
+            String request = question < 0 ? line : line.substring(0, question);
+            try {
+                switch (request) {
+                    case "call":
+                        batch.call(Integer.parseInt(parameter(line, question, "atFloor")),
+                                Direction.valueOf(parameter(line, question, "to")));
+                        break;
+                    case "go":
+                        batch.go(Integer.parseInt(parameter(line, question, "floorToGo")));
+                        break;
+                    case "userHasEntered":
+                        batch.userHasEntered();
+                        break;
+                    case "userHasExited":
+                        batch.userHasExited();
+                        break;
+                    case "nextCommand":
+                        batch.nextCommand();
+                        break;
+                    default:
+                        throw new IllegalArgumentException("<" + line + "> is not a game event");
+                }
+            } catch (IllegalStateException | NullPointerException e) {
+                throw new IllegalArgumentException("<" + line + "> cannot be batched: " + e.getMessage());
+            }
+        }
+        return batch;
+    }
+
+    private static String parameter(String line, int question, String name) {
+        checkArgument(question >= 0, "<%s> misses its parameters", line);
+        String value = QUERY.split(line.substring(question + 1)).get(name);
+        checkArgument(value != null, "<%s> misses '%s'", line, name);
+        return value;
+    }
+
+    /**
+     * Applies the batch to <code>engine</code>, at once if it is a {@link BatchingElevatorEngine}, one event after the
+     * other otherwise.
+     *
+     * @return the command answered by the nextCommand ending the batch, null if it does not end with one
+     */
+    public Command applyTo(ElevatorEngine engine) {
+        if (engine instanceof BatchingElevatorEngine) {
+            return ((BatchingElevatorEngine) engine).apply(this);
+        }
+        return applyEach(engine);
+    }
+
+    /**
+     * Applies the events to <code>engine</code> one after the other, once their floors are checked against the
+     * building: a batch with a floor out of it is refused whole, before any of its events is applied. To be called
+     * where <code>engine</code> is not mutated by anyone else.
+     *
+     * @return the command answered by the nextCommand ending the batch, null if it does not end with one
+     */
+    public Command applyEach(ElevatorEngine engine) {
+        int lowerFloor = engine.getLowerFloor();
+        int higherFloor = engine.getHigherFloor();
+        for (Event event : events) {
+            if ((event.type == Type.CALL || event.type == Type.GO)
+                    && (event.floor < lowerFloor || event.floor > higherFloor)) {
+                throw new IllegalArgumentException("floor <" + event.floor + "> of a batched " + event.type +
+                        " is out of the building <" + lowerFloor + ".." + higherFloor + ">");
+            }
+        }
+        for (Event event : events) {
+            switch (event.type) {
+                case CALL:
+                    engine.call(event.floor, event.direction);
+                    break;
+                case GO:
+                    engine.go(event.floor);
+                    break;
+                case USER_HAS_ENTERED:
+                    engine.userHasEntered(null);
+                    break;
+                case USER_HAS_EXITED:
+                    engine.userHasExited(null);
+                    break;
+            }
+        }
+        return nextCommand ? engine.nextCommand() : null;
+    }
+
+    /**
+     * @return the batch as text, for {@link #parse(String)}
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Event event : events) {
+            switch (event.type) {
+                case CALL:
+                    text.append("call?atFloor=").append(event.floor).append("&to=").append(event.direction);
+                    break;
+                case GO:
+                    text.append("go?floorToGo=").append(event.floor);
+                    break;
+                case USER_HAS_ENTERED:
+                    text.append("userHasEntered");
+                    break;
+                case USER_HAS_EXITED:
+                    text.append("userHasExited");
+                    break;
+            }
+            text.append('\n');
+        }
+        if (nextCommand) {
+            text.append("nextCommand\n");
+        }
+        return text.toString();
+    }
+
+    private EventBatch add(Event event) {
+        checkState(!nextCommand, "a batch ends with its nextCommand");
+        events.add(event);
+        return this;
+    }
+
+    private enum Type {
+        CALL, GO, USER_HAS_ENTERED, USER_HAS_EXITED,;
+    }
+
+    private static class Event {
+        private final Type type;
+        private final int floor;
+        private final Direction direction;
+
+        private Event(Type type, int floor, Direction direction) {
+            this.type = type;
+            this.floor = floor;
+            this.direction = direction;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.User;
+import codestory.core.exception.ElevatorIsBrokenException;
+import codestory.core.exception.EngineOverloadedException;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Meter;
+import com.yammer.metrics.core.MetricsRegistry;
+import com.yammer.metrics.core.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Single writer front of an engine: mutations are queued without locking and applied by one engine thread, in arrival
+ * order.
+ * <p/>
+ * Threading contract:
+ * <ul>
+ * <li>once wrapped, the engine is only mutated by the engine thread: do not call it directly anymore</li>
+ * <li>call, go, userHasEntered and userHasExited return as soon as their event is queued; an event the engine refuses
+ * (a floor out of the building for instance) is logged and counted in <code>failed-events</code>, the caller does not
+ * see it</li>
+ * <li>nextCommand, reset, getState, snapshot, restore and batches wait for their own result, and rethrow what the
+ * engine threw; a batch is a single event, applied without other events in between</li>
+ * <li>getLowerFloor and getHigherFloor read the engine from the calling thread, without queuing</li>
+ * </ul>
+ * At most <code>capacity</code> events wait in the queue. When it is full, producers either wait for room
+ * ({@link Backpressure#BLOCK}, time spent in <code>producer-waits</code>) or get an {@link EngineOverloadedException}
+ * ({@link Backpressure#REJECT}, counted in <code>rejected-events</code>).
+ * <p/>
+ * An {@link Error} thrown by the engine is logged and handed to the caller waiting for the event, the engine thread
+ * goes on. Events left once the loop is shut down fail with an {@link IllegalStateException}, so that no caller waits
+ * for them forever.
+ */
+@Slf4j
+public class EventLoopElevatorEngine implements RestorableElevatorEngine, BatchingElevatorEngine {
+
+    private static final long PRODUCER_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private final ElevatorEngine engine;
+    private final int capacity;
+    private final Backpressure backpressure;
+    private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingEvents = new AtomicInteger();
+    private final Thread engineThread;
+    private volatile boolean running = true;
+    /**
+     * set by the engine thread once it applies no more events: producers queuing past it fail their own events
+     */
+    private volatile boolean stopped;
+    private volatile boolean engineThreadParked;
+    private final Meter queuedEvents;
+    private final Counter rejectedEvents;
+    private final Counter failedEvents;
+    private final Timer producerWaits;
+    private final Timer nextCommandLatency;
+
+    public EventLoopElevatorEngine(ElevatorEngine engine, int capacity, Backpressure backpressure,
+                                   MetricsRegistry metrics) {
+        checkArgument(capacity > 0, "capacity has to be positive");
+        this.engine = engine;
+        this.capacity = capacity;
+        this.backpressure = backpressure;
+        metrics.newGauge(EventLoopElevatorEngine.class, "pending-events", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return pendingEvents.get();
+            }
+        });
+        queuedEvents = metrics.newMeter(EventLoopElevatorEngine.class, "queued-events", "events", TimeUnit.SECONDS);
+        rejectedEvents = metrics.newCounter(EventLoopElevatorEngine.class, "rejected-events");
+        failedEvents = metrics.newCounter(EventLoopElevatorEngine.class, "failed-events");
+        producerWaits = metrics.newTimer(EventLoopElevatorEngine.class, "producer-waits");
+        nextCommandLatency = metrics.newTimer(EventLoopElevatorEngine.class, "next-command");
+        engineThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                applyEvents();
+            }
+        }, "elevator-engine");
+        engineThread.setDaemon(true);
+        engineThread.start();
+    }
+
+    @Override
+    public ElevatorEngine call(Integer atFloor, Direction to) throws ElevatorIsBrokenException {
+        queue(new Event(EventType.CALL, atFloor, to, null));
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine go(Integer floorToGo) throws ElevatorIsBrokenException {
+        queue(new Event(EventType.GO, floorToGo, null, null));
+        return this;
+    }
+
+    @Override
+    public Command nextCommand() throws ElevatorIsBrokenException {
+        long start = System.nanoTime();
+        Event event = new Event(EventType.NEXT_COMMAND, null, null, SettableFuture.create());
+        queue(event);
+        Command command = (Command) resultOf(event);
+        nextCommandLatency.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return command;
+    }
+
+    @Override
+    public ElevatorEngine userHasEntered(User user) throws ElevatorIsBrokenException {
+        queue(new Event(EventType.USER_HAS_ENTERED, null, null, null));
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine userHasExited(User user) throws ElevatorIsBrokenException {
+        queue(new Event(EventType.USER_HAS_EXITED, null, null, null));
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine reset(String cause, int lowerFloor, int higherFloor, int cabinSize)
+            throws ElevatorIsBrokenException {
+        Event event = new Event(EventType.RESET, null, null, SettableFuture.create());
+        event.cause = cause;
+        event.lowerFloor = lowerFloor;
+        event.higherFloor = higherFloor;
+        event.cabinSize = cabinSize;
+        queue(event);
+        resultOf(event);
+        return this;
+    }
+
+    @Override
+    public Command apply(EventBatch batch) {
+        Event event = new Event(EventType.BATCH, null, null, SettableFuture.create());
+        event.batch = batch;
+        queue(event);
+        return (Command) resultOf(event);
+    }
+
+    @Override
+    public EngineSnapshot snapshot() {
+        Event event = new Event(EventType.SNAPSHOT, null, null, SettableFuture.create());
+        queue(event);
+        return (EngineSnapshot) resultOf(event);
+    }
+
+    @Override
+    public void restore(EngineSnapshot snapshot) {
+        Event event = new Event(EventType.RESTORE, null, null, SettableFuture.create());
+        event.snapshot = snapshot;
+        queue(event);
+        resultOf(event);
+    }
+
+    @Override
+    public Integer getLowerFloor() {
+        return engine.getLowerFloor();
+    }
+
+    @Override
+    public Integer getHigherFloor() {
+        return engine.getHigherFloor();
+    }
+
+    @Override
+    public String getState(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests) {
+        return (String) resultOf(queueState(oIncludeFullUserList, oIncludeLastRequests, false));
+    }
+
+    @Override
+    public byte[] getStateAsJson(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests) {
+        return (byte[]) resultOf(queueState(oIncludeFullUserList, oIncludeLastRequests, true));
+    }
+
+    /**
+     * The state is read on the engine thread too: the engine builds it from users the engine thread is changing.
+     */
+    private Event queueState(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests,
+                             boolean asJson) {
+        Event event = new Event(EventType.STATE, null, null, SettableFuture.create());
+        event.includeFullUserList = oIncludeFullUserList;
+        event.includeLastRequests = oIncludeLastRequests;
+        event.asJson = asJson;
+        queue(event);
+        return event;
+    }
+
+    public int getPendingEvents() {
+        return pendingEvents.get();
+    }
+
+    /**
+     * Stops taking events, lets the engine thread apply the ones already queued and waits for it 5 seconds at most.
+     */
+    public void shutdown() throws InterruptedException {
+        shutdown(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops taking events, lets the engine thread apply the ones already queued and waits for it: the events it did
+     * not get to by <code>timeout</code> fail.
+     */
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        running = false;
+        LockSupport.unpark(engineThread);
+        engineThread.join(unit.toMillis(timeout));
+        failPendingEvents();
+    }
+
+    private void queue(Event event) {
+        if (!running) {
+            throw new IllegalStateException("engine event loop is shut down");
+        }
+        if (!tryToReserveRoom()) {
+            if (backpressure == Backpressure.REJECT) {
+                rejectedEvents.inc();
+                throw new EngineOverloadedException("<" + capacity + "> engine events are already pending");
+            }
+            waitForRoom();
+        }
+        events.offer(event);
+        queuedEvents.mark();
+        if (stopped) {
+            // the engine thread may have drained the queue before this event got in
+            failPendingEvents();
+        } else if (engineThreadParked) {
+            LockSupport.unpark(engineThread);
+        }
+    }
+
+    private boolean tryToReserveRoom() {
+        while (true) {
+            int pending = pendingEvents.get();
+            if (pending >= capacity) {
+                return false;
+            }
+            if (pendingEvents.compareAndSet(pending, pending + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void waitForRoom() {
+        long start = System.nanoTime();
+        while (!tryToReserveRoom()) {
+            if (!running) {
+                throw new IllegalStateException("engine event loop is shut down");
+            }
+            LockSupport.parkNanos(PRODUCER_BACKOFF_NANOS);
+        }
+        producerWaits.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private Object resultOf(Event event) {
+        try {
+            return Uninterruptibles.getUninterruptibly(event.result);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private void applyEvents() {
+        try {
+            loop();
+        } finally {
+            stopped = true;
+            failPendingEvents();
+        }
+    }
+
+    private void loop() {
+        while (running || !events.isEmpty()) {
+            Event event = events.poll();
+            if (event == null) {
+                // parked flag first, then a last look at the queue: a producer queuing in between will unpark us
+                engineThreadParked = true;
+                if (running && events.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                engineThreadParked = false;
+                continue;
+            }
+            pendingEvents.decrementAndGet();
+            apply(event);
+        }
+    }
+
+    private void apply(Event event) {
+        try {
+            Object result = null;
+            switch (event.type) {
+                case CALL:
+                    engine.call(event.floor, event.direction);
+                    break;
+                case GO:
+                    engine.go(event.floor);
+                    break;
+                case USER_HAS_ENTERED:
+                    engine.userHasEntered(null);
+                    break;
+                case USER_HAS_EXITED:
+                    engine.userHasExited(null);
+                    break;
+                case RESET:
+                    engine.reset(event.cause, event.lowerFloor, event.higherFloor, event.cabinSize);
+                    break;
+                case NEXT_COMMAND:
+                    result = engine.nextCommand();
+                    break;
+                case BATCH:
+                    result = event.batch.applyEach(engine);
+                    break;
+                case STATE:
+                    result = event.asJson ? engine.getStateAsJson(event.includeFullUserList, event.includeLastRequests)
+                            : engine.getState(event.includeFullUserList, event.includeLastRequests);
+                    break;
+                case SNAPSHOT:
+                    result = restorable().snapshot();
+                    break;
+                case RESTORE:
+                    restorable().restore(event.snapshot);
+                    break;
+            }
+            if (event.result != null) {
+                event.result.set(result);
+            }
+        } catch (RuntimeException e) {
+            failedEvents.inc();
+            if (event.result != null) {
+                event.result.setException(e);
+            } else {
+                log.warn("apply(): engine refused <{}> event: <{}>", event.type, e.getMessage());
+            }
+        } catch (Error e) {
+            failedEvents.inc();
+            log.error("apply(): engine failed on <{}> event, the engine thread goes on", event.type, e);
+            if (event.result != null) {
+                try {
+                    event.result.setException(e);
+                } catch (Error rethrown) {
+                    // the future rethrows the errors it completes with, once its caller can see them
+                }
+            }
+        }
+    }
+
+    /**
+     * Fails the events no engine thread will apply, polled one by one: each is applied or failed, never both.
+     */
+    private void failPendingEvents() {
+        Event event;
+        while ((event = events.poll()) != null) {
+            pendingEvents.decrementAndGet();
+            failedEvents.inc();
+            if (event.result != null) {
+                event.result.setException(new IllegalStateException("engine event loop is shut down"));
+            }
+        }
+    }
+
+    private RestorableElevatorEngine restorable() {
+        if (!(engine instanceof RestorableElevatorEngine)) {
+            throw new UnsupportedOperationException("<" + engine.getClass().getSimpleName() + "> cannot be restored");
+        }
+        return (RestorableElevatorEngine) engine;
+    }
+
+    public enum Backpressure {
+        BLOCK, REJECT,;
+    }
+
+    private enum EventType {
+        CALL, GO, USER_HAS_ENTERED, USER_HAS_EXITED, RESET, NEXT_COMMAND, BATCH, STATE, SNAPSHOT, RESTORE,;
+    }
+
+    private static class Event {
+        private final EventType type;
+        private final Integer floor;
+        private final Direction direction;
+        private final SettableFuture<Object> result;
+        private String cause;
+        private int lowerFloor;
+        private int higherFloor;
+        private int cabinSize;
+        private EngineSnapshot snapshot;
+        private EventBatch batch;
+        private Optional<Boolean> includeFullUserList;
+        private Optional<Boolean> includeLastRequests;
+        private boolean asJson;
+
+        private Event(EventType type, Integer floor, Direction direction, SettableFuture<Object> result) {
+            this.type = type;
+            this.floor = floor;
+            this.direction = direction;
+            this.result = result;
+        }
+    }
+}
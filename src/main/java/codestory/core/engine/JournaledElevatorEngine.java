@@ -0,0 +1,311 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.User;
+import codestory.core.exception.ElevatorIsBrokenException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Appends each request the wrapped engine applied to a {@link RequestJournal}, so that a restarted service picks the
+ * game up where it was instead of being reset by the server. Requests the engine refuses are not journaled.
+ * <p/>
+ * Journal order has to be apply order: wrap it in a serializing engine ({@link SynchronizedElevatorEngine},
+ * {@link EventLoopElevatorEngine}), not the other way round.
+ * <p/>
+ * A W2 engine is also snapshotted every <code>snapshotEveryTicks</code> ticks and after each reset, so that recovery
+ * only replays the journal tail: the journal is rolled and the engine state copied between two requests, on the
+ * engine thread, then the copy is written to <code>snapshot-&lt;n&gt;.bin</code> next to the journal, n being the
+ * first request it does not hold, by a writer thread, which then deletes the older snapshots and the journal segments
+ * the new one covers. A snapshot due while the previous one is still being written is skipped.
+ * <p/>
+ * An engine restored from a snapshot is snapshotted at once, on the calling thread: replaying the journal alone would
+ * not lead to its state anymore.
+ */
+@Slf4j
+public class JournaledElevatorEngine implements RestorableElevatorEngine {
+
+    private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d+)\\.bin");
+
+    private final ElevatorEngine engine;
+    private final RequestJournal journal;
+    private final Optional<S03E01W2Elevator> snapshotted;
+    private final int snapshotEveryTicks;
+    private final ExecutorService writer;
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private volatile Future<?> lastWrite;
+    private int lastSnapshotTick;
+
+    public JournaledElevatorEngine(ElevatorEngine engine, RequestJournal journal) {
+        this(engine, journal, Optional.<S03E01W2Elevator>absent(), 0);
+    }
+
+    /**
+     * @param snapshotEveryTicks 0 not to snapshot the engine
+     */
+    public JournaledElevatorEngine(S03E01W2Elevator engine, RequestJournal journal, int snapshotEveryTicks) {
+        this(engine, journal, Optional.of(engine), snapshotEveryTicks);
+    }
+
+    private JournaledElevatorEngine(ElevatorEngine engine, RequestJournal journal,
+                                    Optional<S03E01W2Elevator> snapshotted, int snapshotEveryTicks) {
+        this.engine = engine;
+        this.journal = journal;
+        this.snapshotted = snapshotEveryTicks > 0 ? snapshotted : Optional.<S03E01W2Elevator>absent();
+        this.snapshotEveryTicks = snapshotEveryTicks;
+        this.writer = this.snapshotted.isPresent() ? Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("elevator-snapshot-writer").build()) : null;
+        this.lastSnapshotTick = this.snapshotted.isPresent() ? this.snapshotted.get().getTicks().get() : 0;
+    }
+
+    /**
+     * Replays the journal to <code>engine</code>, untraced, then journals what it applies next.
+     */
+    public static JournaledElevatorEngine recover(ElevatorEngine engine, RequestJournal journal,
+                                                  DecisionTracer tracer) {
+        replay(engine, journal, 0, tracer);
+        return new JournaledElevatorEngine(engine, journal);
+    }
+
+    /**
+     * Restores <code>engine</code> from the newest snapshot it can read next to the journal, replays the journal
+     * from there, untraced, then journals and snapshots what it applies next.
+     */
+    public static JournaledElevatorEngine recover(S03E01W2Elevator engine, RequestJournal journal,
+                                                  DecisionTracer tracer, int snapshotEveryTicks) {
+        long from = 0;
+        List<Long> snapshots = snapshotsIn(journal.getDirectory());
+        for (int i = snapshots.size() - 1; i >= 0; i--) {
+            File file = snapshotFile(journal.getDirectory(), snapshots.get(i));
+            try {
+                engine.restore(EngineSnapshot.readFrom(file));
+                from = snapshots.get(i);
+                log.info("recover(): engine restored from <{}> at tick <{}>", file, engine.getTicks().get());
+                break;
+            } catch (IOException | RuntimeException e) {
+                log.warn("recover(): could not restore engine from <{}>: <{}>", file, e.getMessage());
+            }
+        }
+        replay(engine, journal, from, tracer);
+        return new JournaledElevatorEngine(engine, journal, snapshotEveryTicks);
+    }
+
+    private static void replay(ElevatorEngine engine, RequestJournal journal, long from, DecisionTracer tracer) {
+        DecisionTracer.Sampling sampling = tracer.getSampling();
+        tracer.set(DecisionTracer.Sampling.OFF, tracer.getEvery());
+        long start = System.nanoTime();
+        RequestJournal.Replayed replayed;
+        try {
+            replayed = journal.replayTo(engine, from);
+        } catch (IOException e) {
+            throw new IllegalStateException("could not replay request journal <" + journal.getDirectory() + ">", e);
+        } finally {
+            tracer.set(sampling, tracer.getEvery());
+        }
+        log.info("recover(): <{}> requests of <{}> replayed in <{}> ms, <{}> refused, <{}> commands diverged",
+                replayed.getRequests(), journal.getDirectory(), (System.nanoTime() - start) / 1000000,
+                replayed.getFailures(), replayed.getDivergences());
+    }
+
+    /**
+     * @return the index of the first request not held by each snapshot in <code>directory</code>, in order
+     */
+    public static List<Long> snapshotsIn(File directory) {
+        List<Long> snapshots = new ArrayList<>();
+        String[] names = directory.list();
+        for (String name : names == null ? new String[0] : names) {
+            Matcher matcher = SNAPSHOT.matcher(name);
+            if (matcher.matches()) {
+                snapshots.add(Long.parseLong(matcher.group(1)));
+            }
+        }
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+
+    private static File snapshotFile(File directory, long from) {
+        return new File(directory, "snapshot-" + from + ".bin");
+    }
+
+    /**
+     * Rolls the journal and copies the engine state, to be written by the writer thread; skipped if it is still
+     * writing the previous snapshot.
+     */
+    private void snapshotInBackground() {
+        if (!writing.compareAndSet(false, true)) {
+            return;
+        }
+        final long from;
+        final EngineSnapshot snapshot;
+        try {
+            from = journal.roll();
+            snapshot = snapshotted.get().snapshot();
+        } catch (IOException | RuntimeException e) {
+            writing.set(false);
+            log.warn("snapshot(): could not roll request journal <{}>: <{}>", journal.getDirectory(), e.getMessage());
+            return;
+        }
+        lastSnapshotTick = snapshot.getTicks();
+        lastWrite = writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write(snapshot, from);
+                } finally {
+                    writing.set(false);
+                }
+            }
+        });
+    }
+
+    private boolean write(EngineSnapshot snapshot, long from) {
+        File directory = journal.getDirectory();
+        File file = snapshotFile(directory, from);
+        File temporary = new File(directory, file.getName() + ".tmp");
+        long start = System.nanoTime();
+        try {
+            snapshot.writeTo(temporary);
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("write(): could not write snapshot <{}>: <{}>", file, e.getMessage());
+            temporary.delete();
+            return false;
+        }
+        for (long older : snapshotsIn(directory)) {
+            if (older < from && !snapshotFile(directory, older).delete()) {
+                log.warn("write(): could not delete snapshot <{}>", snapshotFile(directory, older));
+            }
+        }
+        int segments = journal.deleteSegmentsBefore(from);
+        log.debug("write(): snapshot <{}> written in <{}> ms, <{}> journal segments deleted", file,
+                (System.nanoTime() - start) / 1000000, segments);
+        return true;
+    }
+
+    /**
+     * Waits for the snapshot being written, if any.
+     */
+    @VisibleForTesting
+    protected void awaitSnapshot() throws InterruptedException, ExecutionException {
+        Future<?> write = lastWrite;
+        if (write != null) {
+            write.get();
+        }
+    }
+
+    private RestorableElevatorEngine restorable() {
+        if (!(engine instanceof RestorableElevatorEngine)) {
+            throw new UnsupportedOperationException("<" + engine.getClass().getSimpleName() + "> cannot be restored");
+        }
+        return (RestorableElevatorEngine) engine;
+    }
+
+    @Override
+    public ElevatorEngine call(Integer atFloor, Direction to) throws ElevatorIsBrokenException {
+        engine.call(atFloor, to);
+        journal.call(atFloor, to);
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine go(Integer floorToGo) throws ElevatorIsBrokenException {
+        engine.go(floorToGo);
+        journal.go(floorToGo);
+        return this;
+    }
+
+    @Override
+    public Command nextCommand() throws ElevatorIsBrokenException {
+        Command command = engine.nextCommand();
+        journal.nextCommand(command);
+        if (snapshotted.isPresent() && snapshotted.get().getTicks().get() - lastSnapshotTick >= snapshotEveryTicks) {
+            snapshotInBackground();
+        }
+        return command;
+    }
+
+    @Override
+    public ElevatorEngine userHasEntered(User user) throws ElevatorIsBrokenException {
+        engine.userHasEntered(user);
+        journal.userHasEntered();
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine userHasExited(User user) throws ElevatorIsBrokenException {
+        engine.userHasExited(user);
+        journal.userHasExited();
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine reset(String cause, int lowerFloor, int higherFloor, int cabinSize)
+            throws ElevatorIsBrokenException {
+        engine.reset(cause, lowerFloor, higherFloor, cabinSize);
+        journal.reset(cause, lowerFloor, higherFloor, cabinSize);
+        if (snapshotted.isPresent()) {
+            snapshotInBackground();
+        }
+        return this;
+    }
+
+    @Override
+    public EngineSnapshot snapshot() {
+        return restorable().snapshot();
+    }
+
+    @Override
+    public void restore(EngineSnapshot snapshot) {
+        restorable().restore(snapshot);
+        long from;
+        try {
+            from = journal.roll();
+        } catch (IOException e) {
+            throw new IllegalStateException("could not roll request journal <" + journal.getDirectory() + ">", e);
+        }
+        if (!write(snapshot, from)) {
+            throw new IllegalStateException("could not snapshot the restored engine next to request journal <"
+                    + journal.getDirectory() + ">");
+        }
+        lastSnapshotTick = snapshot.getTicks();
+    }
+
+    @Override
+    public Integer getLowerFloor() {
+        return engine.getLowerFloor();
+    }
+
+    @Override
+    public Integer getHigherFloor() {
+        return engine.getHigherFloor();
+    }
+
+    @Override
+    public String getState(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests) {
+        return engine.getState(oIncludeFullUserList, oIncludeLastRequests);
+    }
+
+    @Override
+    public byte[] getStateAsJson(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests) {
+        return engine.getStateAsJson(oIncludeFullUserList, oIncludeLastRequests);
+    }
+}
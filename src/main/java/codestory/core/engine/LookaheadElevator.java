@@ -0,0 +1,199 @@
+package codestory.core.engine;
+
+import codestory.EngineConfiguration;
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.Door;
+import codestory.core.User;
+import com.google.common.annotations.VisibleForTesting;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.MetricsRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A W2 engine which, at each tick, looks ahead and gives the command scoring best. Its {@link Planning} either plays
+ * the next <code>lookaheadTicks</code> ticks of every sequence of commands on the users it knows of, or plays
+ * randomized games where users keep calling as they did. Planning stops at <code>lookaheadBudgetMicros</code>: when it
+ * could not look far enough by then (<code>lookaheadMinTicks</code>, <code>minRolloutRounds</code>), the greedy W2
+ * decision is taken, so a tick never takes much more than the budget. The greedy decision also wins ties.
+ * <p/>
+ * Rollouts are played in a pool shared by all the engines asking for as many threads: session engines are dropped
+ * without being told, they would leave their own pools behind.
+ */
+@Slf4j
+public class LookaheadElevator extends S03E01W2Elevator {
+
+    private static final ConcurrentMap<Integer, ForkJoinPool> ROLLOUT_POOLS = new ConcurrentHashMap<>();
+
+    private final CommandPlanner planner;
+    private final ArrivalRates arrivals = new ArrivalRates();
+    private final long budgetNanos;
+    private volatile long plannedDecisions;
+    private volatile long greedyDecisions;
+    private volatile long rollouts;
+    private volatile int lastRollouts;
+
+    public LookaheadElevator() {
+        this(new EngineConfiguration());
+    }
+
+    public LookaheadElevator(EngineConfiguration configuration) {
+        this(configuration, new DecisionTracer(configuration));
+    }
+
+    public LookaheadElevator(EngineConfiguration configuration, DecisionTracer tracer) {
+        super(configuration, tracer);
+        this.arrivals.reset(getLowerFloor(), getHigherFloor());
+        this.planner = configuration.getLookaheadPlanning() == Planning.ROLLOUTS ?
+                new RolloutPlanner(rolloutPool(configuration.getRolloutThreads()),
+                        configuration.getRolloutTicks(), configuration.getMinRolloutRounds(), arrivals) :
+                new LookaheadPlanner(configuration.getLookaheadTicks(), configuration.getLookaheadMinTicks());
+        this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(configuration.getLookaheadBudgetMicros());
+    }
+
+    /**
+     * @return the pool of <code>threads</code> threads rollouts are played in, created once for all the engines
+     */
+    @VisibleForTesting
+    static ForkJoinPool rolloutPool(int threads) {
+        ForkJoinPool pool = ROLLOUT_POOLS.get(threads);
+        if (pool == null) {
+            ForkJoinPool created = new ForkJoinPool(threads);
+            pool = ROLLOUT_POOLS.putIfAbsent(threads, created);
+            if (pool == null) {
+                pool = created;
+            } else {
+                created.shutdown();
+            }
+        }
+        return pool;
+    }
+
+    @Override
+    public ElevatorEngine reset(String cause, int lowerFloor, int higherFloor, int cabinSize) {
+        super.reset(cause, lowerFloor, higherFloor, cabinSize);
+        // the first reset is the one of the W2 constructor, before the arrivals are there
+        if (planner != null) {
+            arrivals.reset(lowerFloor, higherFloor);
+        }
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine call(Integer atFloor, Direction to) {
+        super.call(atFloor, to);
+        arrivals.call(atFloor, to);
+        return this;
+    }
+
+    @Override
+    protected Command decide() {
+        long deadline = System.nanoTime() + budgetNanos;
+        arrivals.tick();
+        Command greedy = super.decide();
+        Command planned = capture(planner.getRoot()) ? planner.plan(greedy, deadline) : null;
+        if (planner instanceof RolloutPlanner) {
+            lastRollouts = ((RolloutPlanner) planner).getLastRollouts();
+            rollouts += lastRollouts;
+        }
+        if (planned == null) {
+            greedyDecisions++;
+            return greedy;
+        }
+        plannedDecisions++;
+        if (planned != greedy) {
+            log.debug("planned <{}> instead of <{}>", planned, greedy);
+        }
+        return planned;
+    }
+
+    /**
+     * @return false when there is nothing to plan from: the cabin is not in the building yet
+     */
+    private boolean capture(PlanningState root) {
+        int floor = getCurrentFloor().get();
+        if (floor < getLowerFloor() || floor > getHigherFloor()) {
+            return false;
+        }
+        root.reset(getLowerFloor(), getHigherFloor(), getCabinSize(), floor, getCurrentDoorStatus() == Door.OPEN,
+                getCurrentDirection(), getCurrentNbOfUsersInsideTheElevator().get());
+        for (User user : getUsers()) {
+            root.add(user);
+        }
+        return true;
+    }
+
+    /**
+     * Publishes the counts of decisions and rollouts, so that how far planning gets by the deadline can be watched.
+     */
+    public void register(MetricsRegistry metrics) {
+        metrics.newGauge(LookaheadElevator.class, "planned-decisions", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return plannedDecisions;
+            }
+        });
+        metrics.newGauge(LookaheadElevator.class, "greedy-decisions", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return greedyDecisions;
+            }
+        });
+        metrics.newGauge(LookaheadElevator.class, "rollouts", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                return rollouts;
+            }
+        });
+        metrics.newGauge(LookaheadElevator.class, "last-decision-rollouts", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return lastRollouts;
+            }
+        });
+    }
+
+    /**
+     * @return the decisions taken from a plan since the engine was created
+     */
+    public long getPlannedDecisions() {
+        return plannedDecisions;
+    }
+
+    /**
+     * @return the decisions left to the greedy strategy, for want of time, since the engine was created
+     */
+    public long getGreedyDecisions() {
+        return greedyDecisions;
+    }
+
+    /**
+     * @return the games played by rollouts since the engine was created, 0 when it does not plan with rollouts
+     */
+    public long getRollouts() {
+        return rollouts;
+    }
+
+    /**
+     * @return the games played by rollouts for the last decision
+     */
+    public int getLastRollouts() {
+        return lastRollouts;
+    }
+
+    public enum Planning {
+        /**
+         * every sequence of commands over the next ticks, users known only
+         */
+        SEARCH,
+        /**
+         * randomized games drawing future calls, played in parallel
+         */
+        ROLLOUTS,;
+    }
+}
@@ -0,0 +1,122 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+
+/**
+ * Searches the sequences of the next ticks' commands for the one with the best {@link PlanningState#value()}, by
+ * iterative deepening: a horizon is only trusted once all of its sequences were played before the deadline. Not
+ * thread safe, a planner keeps one scratch state per tick of its horizon.
+ */
+class LookaheadPlanner implements CommandPlanner {
+
+    private static final Command[] COMMANDS = Command.values();
+
+    private final int maxTicks;
+    private final int minTicks;
+    private final PlanningState[] states;
+    private long deadline;
+    private boolean outOfTime;
+    private int nbPlayed;
+    private int horizon;
+
+    /**
+     * @param maxTicks the horizon searched when time allows
+     * @param minTicks shorter horizons are not trusted: no plan unless at least this one was searched
+     */
+    LookaheadPlanner(int maxTicks, int minTicks) {
+        this.maxTicks = maxTicks;
+        this.minTicks = minTicks;
+        this.states = new PlanningState[maxTicks + 1];
+        for (int tick = 0; tick <= maxTicks; tick++) {
+            states[tick] = new PlanningState();
+        }
+    }
+
+    @Override
+    public PlanningState getRoot() {
+        return states[0];
+    }
+
+    /**
+     * @return the first command of the best sequence over the longest horizon searched, null if the deadline came
+     * before minTicks were searched
+     */
+    @Override
+    public Command plan(Command preferred, long deadline) {
+        this.deadline = deadline;
+        this.outOfTime = false;
+        this.nbPlayed = 0;
+        this.horizon = 0;
+        Command best = null;
+        for (int ticks = 1; ticks <= maxTicks && System.nanoTime() - deadline < 0; ticks++) {
+            Command bestAtHorizon = bestFirstCommand(preferred, ticks);
+            if (outOfTime) {
+                break;
+            }
+            best = bestAtHorizon;
+            horizon = ticks;
+        }
+        return horizon < minTicks ? null : best;
+    }
+
+    /**
+     * @return the horizon of the last plan, 0 if not even one tick was searched
+     */
+    int getHorizon() {
+        return horizon;
+    }
+
+    /**
+     * @return the sequences of commands played by the last plan, up to the deadline
+     */
+    int getNbPlayed() {
+        return nbPlayed;
+    }
+
+    private Command bestFirstCommand(Command preferred, int ticks) {
+        Command best = null;
+        int bestValue = Integer.MIN_VALUE;
+        if (states[0].accepts(preferred)) {
+            best = preferred;
+            bestValue = valueOf(0, preferred, ticks);
+        }
+        for (Command command : COMMANDS) {
+            if (command == preferred || !states[0].accepts(command)) {
+                continue;
+            }
+            int value = valueOf(0, command, ticks);
+            if (value > bestValue) {
+                best = command;
+                bestValue = value;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the best value reachable by playing <code>command</code> on the state of <code>tick</code>, then
+     * <code>ticksLeft - 1</code> more commands
+     */
+    private int valueOf(int tick, Command command, int ticksLeft) {
+        PlanningState next = states[tick + 1];
+        next.copyFrom(states[tick]);
+        next.play(command);
+        if (ticksLeft == 1) {
+            nbPlayed++;
+            if ((nbPlayed & 63) == 0 && System.nanoTime() - deadline > 0) {
+                outOfTime = true;
+            }
+            return next.value();
+        }
+        int best = Integer.MIN_VALUE;
+        for (Command following : COMMANDS) {
+            if (outOfTime) {
+                break;
+            }
+            if (next.accepts(following)) {
+                best = Math.max(best, valueOf(tick + 1, following, ticksLeft - 1));
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,362 @@
+package codestory.core.engine;
+
+import codestory.EngineConfiguration;
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.FloorDemandIndex;
+import codestory.core.User;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Several {@link S03E01W2Elevator} cabins sharing one building. Each waiting call goes to the cabin with the lowest
+ * estimated cost, and from then on only that cabin serves it.
+ * <p/>
+ * Calls are only dispatched once the client speaks the multi-cabin protocol: a reset with a <code>cabinCount</code> or
+ * a {@link #nextCommands()}. A client of the single-cabin protocol only ticks cabin 0 with {@link #nextCommand()}, so
+ * its calls all go to cabin 0, until its next reset without <code>cabinCount</code>.
+ * <p/>
+ * There is no lock on the building: each cabin has its own monitor, and publishes its position in volatile fields
+ * after each change, which is what calls are dispatched on. {@link #nextCommands()} asks the cabins for their next
+ * command in parallel once there are <code>parallelCabinsThreshold</code> of them. A reset keeping the number of cabins
+ * resets each of them in place, so that their states keep the history of their resets; one changing it replaces all
+ * the cabins at once. Either way, requests racing with it may land in the cabins of the previous game.
+ */
+@Slf4j
+public class MultiCabinElevator implements MultiCabinEngine {
+
+    // a stop costs the tick opening the door and the one closing it
+    private static final int STOP_TICKS = 2;
+    private final EngineConfiguration configuration;
+    private final DecisionTracer tracer;
+    private final int parallelCabinsThreshold;
+    private final ExecutorService cabinThreads;
+    private volatile Cabin[] cabins;
+    private volatile boolean dispatching;
+
+    public MultiCabinElevator(EngineConfiguration configuration, DecisionTracer tracer) {
+        this.configuration = configuration;
+        this.tracer = tracer;
+        this.parallelCabinsThreshold = configuration.getParallelCabinsThreshold();
+        this.cabinThreads = new ForkJoinPool(configuration.getCabinThreads());
+        resetCabins("self initializing", S03E01W2Elevator.DEFAULT_LOWER_FLOOR, S03E01W2Elevator.DEFAULT_HIGHER_FLOOR,
+                S03E01W2Elevator.DEFAULT_CABIN_SIZE, configuration.getCabinCount());
+    }
+
+    /**
+     * Ticks to serve a call at <code>atFloor</code> going <code>to</code>: the floors to travel before the cabin gets
+     * there in the right direction, the stops it already has to make, and a whole trip more when it is full.
+     */
+    @VisibleForTesting
+    protected static int estimatedCost(int lowerFloor, int higherFloor, int cabinSize, int cabinFloor,
+                                       Direction cabinDirection, int nbPending, int nbInside, int atFloor,
+                                       Direction to) {
+        int distance;
+        if (nbPending == 0 && nbInside == 0) {
+            distance = Math.abs(atFloor - cabinFloor);
+        } else if (cabinDirection == Direction.UP) {
+            if (to == Direction.UP && atFloor >= cabinFloor) {
+                distance = atFloor - cabinFloor;
+            } else if (to == Direction.DOWN) {
+                distance = (higherFloor - cabinFloor) + (higherFloor - atFloor);
+            } else {
+                distance = (higherFloor - cabinFloor) + (higherFloor - lowerFloor) + (atFloor - lowerFloor);
+            }
+        } else {
+            if (to == Direction.DOWN && atFloor <= cabinFloor) {
+                distance = cabinFloor - atFloor;
+            } else if (to == Direction.UP) {
+                distance = (cabinFloor - lowerFloor) + (atFloor - lowerFloor);
+            } else {
+                distance = (cabinFloor - lowerFloor) + (higherFloor - lowerFloor) + (higherFloor - atFloor);
+            }
+        }
+        int cost = distance + STOP_TICKS * nbPending;
+        if (nbInside >= cabinSize) {
+            cost += 2 * (higherFloor - lowerFloor);
+        }
+        return cost;
+    }
+
+    @Override
+    public int getCabinCount() {
+        return cabins.length;
+    }
+
+    @Override
+    public ElevatorEngine call(Integer atFloor, Direction to) {
+        Cabin[] building = cabins;
+        building[dispatching ? dispatch(building, atFloor, to) : 0].call(atFloor, to);
+        return this;
+    }
+
+    @Override
+    public List<Command> nextCommands() {
+        dispatching = true;
+        Cabin[] building = cabins;
+        List<Command> commands = new ArrayList<>(building.length);
+        if (building.length < parallelCabinsThreshold) {
+            for (Cabin cabin : building) {
+                commands.add(cabin.nextCommand());
+            }
+            return commands;
+        }
+        List<Callable<Command>> ticks = new ArrayList<>(building.length);
+        for (final Cabin cabin : building) {
+            ticks.add(new Callable<Command>() {
+                @Override
+                public Command call() {
+                    return cabin.nextCommand();
+                }
+            });
+        }
+        try {
+            for (Future<Command> command : cabinThreads.invokeAll(ticks)) {
+                commands.add(command.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the cabins", e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+        return commands;
+    }
+
+    @Override
+    public Command nextCommand() {
+        return cabins[0].nextCommand();
+    }
+
+    @Override
+    public MultiCabinEngine go(int cabin, Integer floorToGo) {
+        cabin(cabin).go(floorToGo);
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine go(Integer floorToGo) {
+        return go(0, floorToGo);
+    }
+
+    @Override
+    public MultiCabinEngine userHasEntered(int cabin, User user) {
+        cabin(cabin).userHasEntered(user);
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine userHasEntered(User user) {
+        return userHasEntered(0, user);
+    }
+
+    @Override
+    public MultiCabinEngine userHasExited(int cabin, User user) {
+        cabin(cabin).userHasExited(user);
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine userHasExited(User user) {
+        return userHasExited(0, user);
+    }
+
+    @Override
+    public MultiCabinEngine reset(String cause, int lowerFloor, int higherFloor, int cabinSize, int cabinCount) {
+        resetCabins(cause, lowerFloor, higherFloor, cabinSize, cabinCount);
+        dispatching = true;
+        return this;
+    }
+
+    /**
+     * Keeps the number of cabins, and gives the calls to cabin 0 from then on: the client speaks the single-cabin
+     * protocol.
+     */
+    @Override
+    public ElevatorEngine reset(String cause, int lowerFloor, int higherFloor, int cabinSize) {
+        resetCabins(cause, lowerFloor, higherFloor, cabinSize, getCabinCount());
+        dispatching = false;
+        return this;
+    }
+
+    private void resetCabins(String cause, int lowerFloor, int higherFloor, int cabinSize, int cabinCount) {
+        checkArgument(cabinCount > 0, "cabinCount has to be positive");
+        log.warn("RESET, cause: <{}>, lowerFloor: <{}>, higherFloor: <{}>, cabinSize: <{}>, cabinCount: <{}>",
+                cause, lowerFloor, higherFloor, cabinSize, cabinCount);
+        Cabin[] current = cabins;
+        if (current != null && current.length == cabinCount) {
+            for (Cabin cabin : current) {
+                cabin.reset(cause, lowerFloor, higherFloor, cabinSize);
+            }
+            return;
+        }
+        Cabin[] building = new Cabin[cabinCount];
+        for (int cabin = 0; cabin < cabinCount; cabin++) {
+            building[cabin] = new Cabin(S03E01W2Elevator.create(configuration, tracer));
+            building[cabin].reset(cause, lowerFloor, higherFloor, cabinSize);
+        }
+        cabins = building;
+    }
+
+    @Override
+    public Integer getLowerFloor() {
+        return cabins[0].engine.getLowerFloor();
+    }
+
+    @Override
+    public Integer getHigherFloor() {
+        return cabins[0].engine.getHigherFloor();
+    }
+
+    @Override
+    public String getState(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests) {
+        return cabins[0].getState(oIncludeFullUserList, oIncludeLastRequests);
+    }
+
+    @Override
+    public byte[] getStateAsJson(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests) {
+        return getStateAsJson(0, oIncludeFullUserList, oIncludeLastRequests);
+    }
+
+    @Override
+    public byte[] getStateAsJson(int cabin, Optional<Boolean> oIncludeFullUserList,
+                                 Optional<Boolean> oIncludeLastRequests) {
+        return cabin(cabin).getStateAsJson(oIncludeFullUserList, oIncludeLastRequests);
+    }
+
+    public void shutdown() {
+        cabinThreads.shutdown();
+    }
+
+    @VisibleForTesting
+    protected int dispatch(Cabin[] building, int atFloor, Direction to) {
+        int best = 0;
+        int bestCost = Integer.MAX_VALUE;
+        for (int cabin = 0; cabin < building.length; cabin++) {
+            int cost = building[cabin].estimatedCost(atFloor, to);
+            if (cost < bestCost) {
+                best = cabin;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    @VisibleForTesting
+    protected Cabin cabin(int cabin) {
+        Cabin[] building = cabins;
+        if (cabin < 0 || cabin >= building.length) {
+            throw new IllegalArgumentException("cabin <" + cabin + "> is not between 0 and <" +
+                    (building.length - 1) + ">");
+        }
+        return building[cabin];
+    }
+
+    /**
+     * One cabin, changed and read under its own monitor. Its position is copied to volatile fields after each change, for the
+     * dispatcher to read without locking.
+     */
+    @VisibleForTesting
+    protected static class Cabin {
+        private final S03E01W2Elevator engine;
+        private volatile int lowerFloor;
+        private volatile int higherFloor;
+        private volatile int cabinSize;
+        private volatile int floor;
+        private volatile Direction direction;
+        private volatile int nbPending;
+        private volatile int nbInside;
+
+        private Cabin(S03E01W2Elevator engine) {
+            this.engine = engine;
+        }
+
+        @VisibleForTesting
+        protected S03E01W2Elevator getEngine() {
+            return engine;
+        }
+
+        private int estimatedCost(int atFloor, Direction to) {
+            return MultiCabinElevator.estimatedCost(lowerFloor, higherFloor, cabinSize, floor, direction, nbPending,
+                    nbInside, atFloor, to);
+        }
+
+        private synchronized void call(Integer atFloor, Direction to) {
+            try {
+                engine.call(atFloor, to);
+            } finally {
+                publishPosition();
+            }
+        }
+
+        private synchronized void go(Integer floorToGo) {
+            try {
+                engine.go(floorToGo);
+            } finally {
+                publishPosition();
+            }
+        }
+
+        private synchronized Command nextCommand() {
+            try {
+                return engine.nextCommand();
+            } finally {
+                publishPosition();
+            }
+        }
+
+        private synchronized void userHasEntered(User user) {
+            try {
+                engine.userHasEntered(user);
+            } finally {
+                publishPosition();
+            }
+        }
+
+        private synchronized void userHasExited(User user) {
+            try {
+                engine.userHasExited(user);
+            } finally {
+                publishPosition();
+            }
+        }
+
+        private synchronized void reset(String cause, int lowerFloor, int higherFloor, int cabinSize) {
+            engine.reset(cause, lowerFloor, higherFloor, cabinSize);
+            this.lowerFloor = lowerFloor;
+            this.higherFloor = higherFloor;
+            this.cabinSize = cabinSize;
+            publishPosition();
+        }
+
+        private synchronized String getState(Optional<Boolean> oIncludeFullUserList,
+                                             Optional<Boolean> oIncludeLastRequests) {
+            return engine.getState(oIncludeFullUserList, oIncludeLastRequests);
+        }
+
+        private synchronized byte[] getStateAsJson(Optional<Boolean> oIncludeFullUserList,
+                                                   Optional<Boolean> oIncludeLastRequests) {
+            return engine.getStateAsJson(oIncludeFullUserList, oIncludeLastRequests);
+        }
+
+        private void publishPosition() {
+            FloorDemandIndex index = engine.getUserStore().getDemandIndex();
+            floor = engine.getCurrentFloor().get();
+            direction = engine.getCurrentDirection();
+            nbPending = index.getNbWaiting() + index.getNbStops();
+            nbInside = engine.getCurrentNbOfUsersInsideTheElevator().get();
+        }
+    }
+}
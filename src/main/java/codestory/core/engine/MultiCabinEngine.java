@@ -0,0 +1,35 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.User;
+import codestory.core.exception.ElevatorIsBrokenException;
+import com.google.common.base.Optional;
+
+import java.util.List;
+
+/**
+ * An engine driving several cabins of the same building. Cabins are numbered from 0; the {@link ElevatorEngine}
+ * methods taking no cabin act on cabin 0, and {@link #call(Integer, codestory.core.Direction)} gives the call to one
+ * of the cabins once the client uses the multi-cabin requests, to cabin 0 otherwise.
+ */
+public interface MultiCabinEngine extends ElevatorEngine {
+
+    public int getCabinCount();
+
+    /**
+     * @return the next command of each cabin, by cabin number
+     */
+    public List<Command> nextCommands() throws ElevatorIsBrokenException;
+
+    public MultiCabinEngine go(int cabin, Integer floorToGo) throws ElevatorIsBrokenException;
+
+    public MultiCabinEngine userHasEntered(int cabin, User user) throws ElevatorIsBrokenException;
+
+    public MultiCabinEngine userHasExited(int cabin, User user) throws ElevatorIsBrokenException;
+
+    public MultiCabinEngine reset(String cause, int lowerFloor, int higherFloor, int cabinSize,
+                                  int cabinCount) throws ElevatorIsBrokenException;
+
+    public byte[] getStateAsJson(int cabin, Optional<Boolean> oIncludeFullUserList,
+                                 Optional<Boolean> oIncludeLastRequests);
+}
@@ -0,0 +1,379 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.Score;
+import codestory.core.User;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * What a {@link LookaheadPlanner} plays ticks on: the cabin and the users an engine knows of, as primitive columns, so
+ * that a search copies states instead of allocating them. Users already ticked for the tick being decided.
+ */
+class PlanningState {
+
+    private static final byte WAITING = 0;
+    private static final byte TRAVELLING = 1;
+    private static final byte DONE = 2;
+
+    private int lowerFloor;
+    private int higherFloor;
+    private int nbFloors;
+    private int cabinSize;
+    private int floor;
+    private boolean open;
+    private Direction direction;
+    private int nbInside;
+    /**
+     * points of the users delivered since the state was captured, users who arrived since left out
+     */
+    private int delivered;
+    private int nbUsers;
+    /**
+     * the users captured, the first ones; the others {@link #arrive(int, boolean, int)}d since and are not scored
+     */
+    private int nbCaptured;
+    private int nbCapturedLeft;
+    private int[] initialFloor = new int[16];
+    private int[] floorToGo = new int[16];
+    private int[] tickToWait = new int[16];
+    private int[] tickToGo = new int[16];
+    private byte[] state = new byte[16];
+    private boolean[] goingUp = new boolean[16];
+    /**
+     * scratch of {@link #value()}: the stops of the sweep below each floor, by floor - lowerFloor
+     */
+    private int[] stopsBelow = new int[16];
+
+    void reset(int lowerFloor, int higherFloor, int cabinSize, int floor, boolean open, Direction direction,
+               int nbInside) {
+        this.lowerFloor = lowerFloor;
+        this.higherFloor = higherFloor;
+        this.nbFloors = higherFloor - lowerFloor + 1;
+        this.cabinSize = cabinSize;
+        this.floor = floor;
+        this.open = open;
+        this.direction = direction;
+        this.nbInside = nbInside;
+        this.delivered = 0;
+        this.nbUsers = 0;
+        this.nbCaptured = 0;
+        this.nbCapturedLeft = 0;
+    }
+
+    /**
+     * Users done are left out.
+     */
+    void add(User user) {
+        if (user.done()) {
+            return;
+        }
+        ensureCapacity(nbUsers + 1);
+        initialFloor[nbUsers] = user.getInitialFloor();
+        floorToGo[nbUsers] = user.getFloorToGo();
+        tickToWait[nbUsers] = user.getTickToWait();
+        tickToGo[nbUsers] = user.getTickToGo();
+        state[nbUsers] = user.waiting() ? WAITING : TRAVELLING;
+        goingUp[nbUsers] = user.getDirection() != Direction.DOWN;
+        nbUsers++;
+        nbCaptured++;
+        nbCapturedLeft++;
+    }
+
+    /**
+     * A user calling at <code>floor</code> now, for <code>floorToGo</code>: the cabin serves them, they do not score.
+     * Only after the users captured.
+     */
+    void arrive(int floor, boolean up, int floorToGo) {
+        ensureCapacity(nbUsers + 1);
+        initialFloor[nbUsers] = floor;
+        this.floorToGo[nbUsers] = floorToGo;
+        tickToWait[nbUsers] = 0;
+        tickToGo[nbUsers] = 0;
+        state[nbUsers] = WAITING;
+        goingUp[nbUsers] = up;
+        nbUsers++;
+    }
+
+    /**
+     * Gives the users who did not request a stop yet one, drawn among the floors in their direction.
+     */
+    void drawStops(Random random) {
+        for (int user = 0; user < nbUsers; user++) {
+            if (state[user] != DONE && floorToGo[user] == User.UNSET) {
+                floorToGo[user] = drawFloor(random, initialFloor[user], goingUp[user]);
+            }
+        }
+    }
+
+    /**
+     * @return a floor above <code>from</code> if <code>up</code>, below it otherwise; any other floor when there is
+     * none that way
+     */
+    int drawFloor(Random random, int from, boolean up) {
+        int first = up ? from + 1 : lowerFloor;
+        int last = up ? higherFloor : from - 1;
+        if (first > last) {
+            if (nbFloors < 2) {
+                return from;
+            }
+            int floor = lowerFloor + random.nextInt(nbFloors - 1);
+            return floor >= from ? floor + 1 : floor;
+        }
+        return first + random.nextInt(last - first + 1);
+    }
+
+    /**
+     * The command of a plain collective control: let users out and in when some are to, else move on towards the
+     * floors where the cabin is awaited, in its direction first.
+     */
+    Command sweep() {
+        if (open) {
+            return Command.CLOSE;
+        }
+        boolean awaitedAbove = false;
+        boolean awaitedBelow = false;
+        for (int user = 0; user < nbUsers; user++) {
+            int target = target(user);
+            if (target == floor && (state[user] == TRAVELLING || nbInside < cabinSize)) {
+                return Command.OPEN;
+            }
+            if (target != User.UNSET) {
+                awaitedAbove |= target > floor;
+                awaitedBelow |= target < floor;
+            }
+        }
+        boolean up = direction == Direction.UP;
+        if (up ? awaitedAbove : awaitedBelow) {
+            return up ? Command.UP : Command.DOWN;
+        }
+        if (up ? awaitedBelow : awaitedAbove) {
+            return up ? Command.DOWN : Command.UP;
+        }
+        return Command.NOTHING;
+    }
+
+    void copyFrom(PlanningState other) {
+        lowerFloor = other.lowerFloor;
+        higherFloor = other.higherFloor;
+        nbFloors = other.nbFloors;
+        cabinSize = other.cabinSize;
+        floor = other.floor;
+        open = other.open;
+        direction = other.direction;
+        nbInside = other.nbInside;
+        delivered = other.delivered;
+        nbCaptured = other.nbCaptured;
+        nbCapturedLeft = other.nbCapturedLeft;
+        ensureCapacity(other.nbUsers);
+        nbUsers = other.nbUsers;
+        System.arraycopy(other.initialFloor, 0, initialFloor, 0, nbUsers);
+        System.arraycopy(other.floorToGo, 0, floorToGo, 0, nbUsers);
+        System.arraycopy(other.tickToWait, 0, tickToWait, 0, nbUsers);
+        System.arraycopy(other.tickToGo, 0, tickToGo, 0, nbUsers);
+        System.arraycopy(other.state, 0, state, 0, nbUsers);
+        System.arraycopy(other.goingUp, 0, goingUp, 0, nbUsers);
+    }
+
+    /**
+     * @return false for the commands the game server would refuse
+     */
+    boolean accepts(Command command) {
+        return Command.accepted(command, floor, open, lowerFloor, higherFloor);
+    }
+
+    /**
+     * Plays <code>command</code>, then ticks users for the next decision. On OPEN, users who requested a stop at the
+     * floor exit and score, then users waiting there enter while there is room. Users inside who did not request a
+     * stop yet do not tick: the cabin cannot head for their floor, their trip is taken as starting when they request
+     * it, else putting off their boarding would look cheaper than it is.
+     */
+    void play(Command command) {
+        switch (command) {
+            case UP:
+                floor++;
+                direction = Direction.UP;
+                break;
+            case DOWN:
+                floor--;
+                direction = Direction.DOWN;
+                break;
+            case CLOSE:
+                open = false;
+                break;
+            case OPEN:
+                open = true;
+                letUsersOutAndIn();
+                break;
+            default:
+                break;
+        }
+        for (int user = 0; user < nbUsers; user++) {
+            if (state[user] == WAITING) {
+                tickToWait[user]++;
+            } else if (state[user] == TRAVELLING && floorToGo[user] != User.UNSET) {
+                tickToGo[user]++;
+            }
+        }
+    }
+
+    private void letUsersOutAndIn() {
+        for (int user = 0; user < nbUsers; user++) {
+            if (state[user] == TRAVELLING && floorToGo[user] == floor) {
+                state[user] = DONE;
+                nbInside--;
+                if (user < nbCaptured) {
+                    delivered += score(initialFloor[user], floor, tickToWait[user], tickToGo[user]);
+                    nbCapturedLeft--;
+                }
+            }
+        }
+        for (int user = 0; user < nbUsers && nbInside < cabinSize; user++) {
+            if (state[user] == WAITING && initialFloor[user] == floor) {
+                state[user] = TRAVELLING;
+                nbInside++;
+            }
+        }
+    }
+
+    /**
+     * @return the points scored by the users delivered, plus the points each user not delivered yet would score if the
+     * cabin swept the building from now on: on in its direction up to the farthest floor where it is awaited, then
+     * back, opening its door at each of these floors once. A stop not requested yet is taken one floor away; a user
+     * waiting with a stop drawn is taken on a trip stopping wherever the cabin is awaited on the way. Users arrived
+     * since the capture are stopped for, not scored.
+     */
+    int value() {
+        if (stopsBelow.length < nbFloors + 1) {
+            stopsBelow = new int[nbFloors + 1];
+        }
+        Arrays.fill(stopsBelow, 0, nbFloors + 1, 0);
+        int turningFloor = floor;
+        for (int user = 0; user < nbUsers; user++) {
+            int target = target(user);
+            if (target != User.UNSET) {
+                stopsBelow[target - lowerFloor + 1] = 1;
+                if (direction == Direction.UP ? target > turningFloor : target < turningFloor) {
+                    turningFloor = target;
+                }
+            }
+            if (state[user] == WAITING && floorToGo[user] != User.UNSET) {
+                stopsBelow[floorToGo[user] - lowerFloor + 1] = 1;
+            }
+        }
+        for (int f = 1; f <= nbFloors; f++) {
+            stopsBelow[f] += stopsBelow[f - 1];
+        }
+        int value = delivered;
+        int toClose = open ? 1 : 0;
+        for (int user = 0; user < nbCaptured; user++) {
+            if (state[user] == WAITING) {
+                int toBoard = floor == initialFloor[user] && open ? 0 :
+                        toClose + ticksToReach(initialFloor[user], turningFloor) + 1;
+                if (floorToGo[user] == User.UNSET) {
+                    value += score(0, 1, tickToWait[user] + toBoard, Score.bestTickToGo(0, 1));
+                } else {
+                    int trip = 2 + abs(floorToGo[user] - initialFloor[user])
+                            + 2 * stopsBetween(initialFloor[user], floorToGo[user]);
+                    value += score(initialFloor[user], floorToGo[user], tickToWait[user] + toBoard, trip);
+                }
+            } else if (state[user] == TRAVELLING) {
+                if (floorToGo[user] == User.UNSET) {
+                    value += score(0, 1, tickToWait[user], tickToGo[user] + toClose + 2);
+                } else {
+                    int toExit = toClose + ticksToReach(floorToGo[user], turningFloor) + 1;
+                    value += score(initialFloor[user], floorToGo[user], tickToWait[user], tickToGo[user] + toExit);
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return the floor the cabin has to stop at for <code>user</code>, UNSET if not known or none
+     */
+    private int target(int user) {
+        if (state[user] == WAITING) {
+            return initialFloor[user];
+        }
+        return state[user] == TRAVELLING ? floorToGo[user] : User.UNSET;
+    }
+
+    /**
+     * @return the moves to <code>target</code>, plus an open and a close at each stop passed on the way
+     */
+    private int ticksToReach(int target, int turningFloor) {
+        boolean ahead = direction == Direction.UP ? target >= floor : target <= floor;
+        if (ahead) {
+            return abs(target - floor) + 2 * stopsBetween(floor, target);
+        }
+        return abs(turningFloor - floor) + abs(turningFloor - target)
+                + 2 * (stopsBetween(floor, turningFloor) + 1 + stopsBetween(turningFloor, target));
+    }
+
+    /**
+     * @return the stops strictly between the two floors
+     */
+    private int stopsBetween(int from, int to) {
+        int low = min(from, to) - lowerFloor + 1;
+        int high = max(from, to) - lowerFloor;
+        return low >= high ? 0 : stopsBelow[high] - stopsBelow[low];
+    }
+
+    /**
+     * {@link Score#score(int, int, int, int)}, without its checks: estimates may be shorter than the best trip
+     */
+    private int score(int initialFloor, int floorToGo, int tickToWait, int tickToGo) {
+        int score = nbFloors - tickToWait / 2 - tickToGo + Score.bestTickToGo(initialFloor, floorToGo);
+        return min(max(0, score), nbFloors);
+    }
+
+    int getLowerFloor() {
+        return lowerFloor;
+    }
+
+    int getHigherFloor() {
+        return higherFloor;
+    }
+
+    int getFloor() {
+        return floor;
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    Direction getDirection() {
+        return direction;
+    }
+
+    int getNbUsers() {
+        return nbUsers;
+    }
+
+    /**
+     * @return whether users captured are not delivered yet
+     */
+    boolean hasCapturedUsersLeft() {
+        return nbCapturedLeft > 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > state.length) {
+            int length = max(capacity, state.length * 2);
+            initialFloor = Arrays.copyOf(initialFloor, length);
+            floorToGo = Arrays.copyOf(floorToGo, length);
+            tickToWait = Arrays.copyOf(tickToWait, length);
+            tickToGo = Arrays.copyOf(tickToGo, length);
+            state = Arrays.copyOf(state, length);
+            goingUp = Arrays.copyOf(goingUp, length);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.Door;
+import codestory.core.FloorDemandIndex;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A command for each situation of a building, learnt offline (see <code>codestory.simulator.PolicyTrainer</code>)
+ * and read from a memory-mapped file. A situation is what the W2 strategy looks at: the floor of the cabin, its door
+ * (open, closed, just closed), its direction, whether users wait at the floor in that direction or the other one,
+ * wait above or below, and whether stops are requested at the floor, above or below. That is 768 situations by floor,
+ * one byte each.
+ * <p/>
+ * The file is the header of a {@link SituationTable} and the number of situations, followed by the commands,
+ * ordinal + 1, 0 for situations the table has no command for.
+ */
+public class PolicyTable extends SituationTable {
+
+    public static final int FEATURES = 7;
+    private static final int MAGIC = 0x57325032;
+    private static final int COMMANDS_OFFSET = HEADER_BYTES + 4;
+    private static final int WAITING_HERE = 1;
+    private static final int WAITING_HERE_OTHER_WAY = 1 << 1;
+    private static final int WAITING_ABOVE = 1 << 2;
+    private static final int WAITING_BELOW = 1 << 3;
+    private static final int STOP_HERE = 1 << 4;
+    private static final int STOPS_ABOVE = 1 << 5;
+    private static final int STOPS_BELOW = 1 << 6;
+    private final ByteBuffer buffer;
+
+    private PolicyTable(ByteBuffer buffer) throws IOException {
+        super(buffer, MAGIC, "policy table");
+        int situations = situations(getHigherFloor() - getLowerFloor() + 1);
+        if (buffer.capacity() != COMMANDS_OFFSET + situations || buffer.getInt(HEADER_BYTES) != situations) {
+            throw new IOException("policy table of <" + buffer.capacity() + "> bytes does not fit its building");
+        }
+        this.buffer = buffer;
+    }
+
+    private PolicyTable(S03E01W2Elevator engine, byte[] commands) {
+        super(engine);
+        checkArgument(commands.length == situations(getHigherFloor() - getLowerFloor() + 1), "<" + commands.length +
+                "> commands do not fit the building of the engine");
+        this.buffer = header(MAGIC, COMMANDS_OFFSET + commands.length).putInt(commands.length).put(commands);
+    }
+
+    /**
+     * @return the table of <code>file</code>, mapped once for all the engines asking for it
+     */
+    public static PolicyTable map(String file) throws IOException {
+        return load(file, PolicyTable.class, new Reader<PolicyTable>() {
+            @Override
+            public PolicyTable read(String file) throws IOException {
+                try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+                    return new PolicyTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+            }
+        });
+    }
+
+    /**
+     * @param commands by situation, ordinal + 1, 0 for none, for the building, idle floor and strategy of
+     *                 <code>engine</code>
+     */
+    public static PolicyTable of(S03E01W2Elevator engine, byte[] commands) {
+        return new PolicyTable(engine, commands);
+    }
+
+    public static int situations(int nbFloors) {
+        return nbFloors * DOOR_STATES * 2 << FEATURES;
+    }
+
+    /**
+     * @return the situation of <code>engine</code>, -1 when the cabin is not in the building
+     */
+    public static int situationOf(S03E01W2Elevator engine) {
+        int floor = engine.getCurrentFloor().get();
+        if (floor < engine.getLowerFloor() || floor > engine.getHigherFloor()) {
+            return -1;
+        }
+        Direction direction = engine.getCurrentDirection();
+        Direction otherWay = direction == Direction.UP ? Direction.DOWN : Direction.UP;
+        FloorDemandIndex demand = engine.getUserStore().getDemandIndex();
+        int features = 0;
+        features |= demand.nbWaitingAt(floor, direction) > 0 ? WAITING_HERE : 0;
+        features |= demand.nbWaitingAt(floor, otherWay) > 0 ? WAITING_HERE_OTHER_WAY : 0;
+        features |= demand.someoneIsWaitingAbove(floor) ? WAITING_ABOVE : 0;
+        features |= demand.someoneIsWaitingBelow(floor) ? WAITING_BELOW : 0;
+        features |= demand.stopRequestedAt(floor) ? STOP_HERE : 0;
+        features |= demand.someoneRequestedAStopAbove(floor) ? STOPS_ABOVE : 0;
+        features |= demand.someoneRequestedAStopBelow(floor) ? STOPS_BELOW : 0;
+        int door = doorState(engine.getCurrentDoorStatus(), engine.justClosedTheDoor());
+        return situation(floor - engine.getLowerFloor(), door, direction == Direction.UP, features);
+    }
+
+    /**
+     * @return the commands <code>engine</code> gives in each situation of its building, 0 for the situations a
+     * building cannot be in (users waiting above the higher floor...): where training starts from. Leaves the engine
+     * in the last situation: it needs a reset to play again.
+     */
+    public static byte[] decisionsOf(S03E01W2Elevator engine) {
+        int lowerFloor = engine.getLowerFloor();
+        int higherFloor = engine.getHigherFloor();
+        checkArgument(higherFloor - lowerFloor < Integer.SIZE - 1, "floors of a situation are int masks, <" +
+                (higherFloor - lowerFloor + 1) + "> floors is too many");
+        byte[] commands = new byte[situations(higherFloor - lowerFloor + 1)];
+        for (int floor = lowerFloor; floor <= higherFloor; floor++) {
+            int here = 1 << floor - lowerFloor;
+            int above = floor < higherFloor ? here << 1 : 0;
+            int below = floor > lowerFloor ? here >> 1 : 0;
+            for (int door = 0; door < DOOR_STATES; door++) {
+                for (Direction direction : Direction.values()) {
+                    boolean up = direction == Direction.UP;
+                    for (int features = 0; features < 1 << FEATURES; features++) {
+                        if (above == 0 && (features & (WAITING_ABOVE | STOPS_ABOVE)) != 0 ||
+                                below == 0 && (features & (WAITING_BELOW | STOPS_BELOW)) != 0) {
+                            continue;
+                        }
+                        int waitingUp = 0;
+                        int waitingDown = 0;
+                        if ((features & WAITING_HERE) != 0) {
+                            waitingUp |= up ? here : 0;
+                            waitingDown |= up ? 0 : here;
+                        }
+                        if ((features & WAITING_HERE_OTHER_WAY) != 0) {
+                            waitingUp |= up ? 0 : here;
+                            waitingDown |= up ? here : 0;
+                        }
+                        if ((features & WAITING_ABOVE) != 0) {
+                            waitingDown |= above;
+                        }
+                        if ((features & WAITING_BELOW) != 0) {
+                            waitingUp |= below;
+                        }
+                        int stops = ((features & STOP_HERE) != 0 ? here : 0) |
+                                ((features & STOPS_ABOVE) != 0 ? above : 0) |
+                                ((features & STOPS_BELOW) != 0 ? below : 0);
+                        engine.load(floor, door == OPEN ? Door.OPEN : Door.CLOSE, door == JUST_CLOSED, direction,
+                                waitingUp, waitingDown, stops);
+                        commands[situation(floor - lowerFloor, door, up, features)] =
+                                (byte) (engine.decide().ordinal() + 1);
+                    }
+                }
+            }
+        }
+        return commands;
+    }
+
+    /**
+     * @return true when the game server accepts <code>command</code> in <code>situation</code>, as
+     * {@link Command#accepted(Command, int, boolean, int, int)} says
+     */
+    public static boolean accepts(int nbFloors, int situation, Command command) {
+        int cabin = situation >> FEATURES;
+        boolean open = cabin / 2 % DOOR_STATES == OPEN;
+        int floorIndex = cabin / 2 / DOOR_STATES;
+        return Command.accepted(command, floorIndex, open, 0, nbFloors - 1);
+    }
+
+    private static int situation(int floorIndex, int door, boolean up, int features) {
+        return ((floorIndex * DOOR_STATES + door) * 2 + (up ? 1 : 0)) << FEATURES | features;
+    }
+
+    @Override
+    protected Command commandOf(S03E01W2Elevator engine) {
+        int situation = situationOf(engine);
+        return situation < 0 ? null : lookup(situation);
+    }
+
+    /**
+     * @return the command of <code>situation</code>, null if the table has none
+     */
+    public Command lookup(int situation) {
+        int command = buffer.get(COMMANDS_OFFSET + situation);
+        return command == 0 ? null : COMMANDS[command - 1];
+    }
+
+    public void writeTo(File file) throws IOException {
+        ByteBuffer content = buffer.duplicate();
+        content.clear();
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        try (OutputStream output = new FileOutputStream(file)) {
+            output.write(bytes);
+        }
+    }
+}
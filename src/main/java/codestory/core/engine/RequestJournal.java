@@ -0,0 +1,441 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The requests an engine applied, appended to memory-mapped files of fixed 32 bytes records, to rebuild the engine
+ * after a crash by replaying them (see {@link JournaledElevatorEngine}).
+ * <p/>
+ * An append is a few puts into the mapping, no system call: once written, a record survives the process dying. Records
+ * reach the disk, and survive the machine dying, when the flusher thread forces the mapping, every
+ * <code>flushMillis</code> for all the records appended meanwhile. A full mapping is remapped twice as large.
+ * <p/>
+ * The journal is a directory of segments, <code>requests-&lt;n&gt;.journal</code> starting with the n-th record
+ * journaled: {@link #roll()} starts a new one, so that the segments a snapshot covers can be deleted whole.
+ * <p/>
+ * A record is its type (0 past the last record), then its arguments: a floor and a direction for a call, a floor for a
+ * go, the command answered for a nextCommand, the floors, cabin size and cause length for a reset, its cause following
+ * in as many records as it needs. The type is written last, so that a record cut by a crash is not replayed; what it
+ * left past the last record is zeroed when its segment is opened again, so that later records do not run into it.
+ */
+@Slf4j
+public class RequestJournal {
+
+    public static final int RECORD_BYTES = 32;
+    private static final int MAGIC = 0x57324a4c;
+    private static final int TYPE = 0;
+    private static final int CODE = 1;
+    private static final int FIRST = 4;
+    private static final int SECOND = 8;
+    private static final int THIRD = 12;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final Command[] COMMANDS = Command.values();
+    private static final Type[] TYPES = Type.values();
+    private static final Pattern SEGMENT = Pattern.compile("requests-(\\d+)\\.journal");
+
+    private final File directory;
+    private final int capacity;
+    private final ScheduledExecutorService flusher;
+    private FileChannel channel;
+    private volatile MappedByteBuffer mapping;
+    /**
+     * index of the first record of the current segment
+     */
+    private long first;
+    /**
+     * offset of the next record
+     */
+    private int end;
+    private long records;
+    private volatile boolean dirty;
+
+    private RequestJournal(File directory, int capacity, long first, FileChannel channel, MappedByteBuffer mapping,
+                           long flushMillis) {
+        this.directory = directory;
+        this.capacity = capacity;
+        this.first = first;
+        this.channel = channel;
+        this.mapping = mapping;
+        this.end = endOf(mapping);
+        clearFrom(mapping, end);
+        this.records = first + countOf(mapping, end);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("elevator-journal-flusher").build());
+        flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the journal in <code>directory</code>, created if need be, to append to its last segment.
+     *
+     * @param capacity records a segment is mapped for at first, if its file does not hold more already
+     */
+    public static RequestJournal open(File directory, int capacity, long flushMillis) throws IOException {
+        checkArgument(capacity > 0, "capacity has to be positive");
+        checkArgument(flushMillis > 0, "flushMillis has to be positive");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("could not create request journal directory <" + directory + ">");
+        }
+        List<Long> segments = segmentsIn(directory);
+        long first = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        File file = segmentFile(directory, first);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            return new RequestJournal(directory, capacity, first, channel, mapSegment(file, channel, capacity),
+                    flushMillis);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the index of the first record of each segment in <code>directory</code>, in order
+     */
+    public static List<Long> segmentsIn(File directory) {
+        List<Long> segments = new ArrayList<>();
+        String[] names = directory.list();
+        for (String name : names == null ? new String[0] : names) {
+            Matcher matcher = SEGMENT.matcher(name);
+            if (matcher.matches()) {
+                segments.add(Long.parseLong(matcher.group(1)));
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    public synchronized void call(int atFloor, Direction to) {
+        int record = reserve(0);
+        mapping.putInt(record + FIRST, atFloor).put(record + CODE, (byte) to.ordinal());
+        commit(record, Type.CALL);
+    }
+
+    public synchronized void go(int floorToGo) {
+        int record = reserve(0);
+        mapping.putInt(record + FIRST, floorToGo);
+        commit(record, Type.GO);
+    }
+
+    public synchronized void userHasEntered() {
+        commit(reserve(0), Type.USER_HAS_ENTERED);
+    }
+
+    public synchronized void userHasExited() {
+        commit(reserve(0), Type.USER_HAS_EXITED);
+    }
+
+    public synchronized void nextCommand(Command command) {
+        int record = reserve(0);
+        mapping.put(record + CODE, (byte) command.ordinal());
+        commit(record, Type.NEXT_COMMAND);
+    }
+
+    public synchronized void reset(String cause, int lowerFloor, int higherFloor, int cabinSize) {
+        byte[] bytes = cause == null ? new byte[0] : cause.getBytes(Charsets.UTF_8);
+        int record = reserve((bytes.length + RECORD_BYTES - 1) / RECORD_BYTES);
+        mapping.putInt(record + FIRST, lowerFloor).putInt(record + SECOND, higherFloor)
+                .putInt(record + THIRD, cabinSize).putInt(record + THIRD + 4, cause == null ? -1 : bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            mapping.put(record + RECORD_BYTES + i, bytes[i]);
+        }
+        commit(record, Type.RESET);
+    }
+
+    /**
+     * Applies the journaled requests to <code>engine</code>, in order. A nextCommand answering another command than
+     * the journaled one is counted, the engine going on with its own.
+     */
+    public Replayed replayTo(ElevatorEngine engine) throws IOException {
+        return replayTo(engine, 0);
+    }
+
+    /**
+     * Applies to <code>engine</code> the requests journaled from the <code>from</code>-th on, as far back as their
+     * segments were kept.
+     */
+    public synchronized Replayed replayTo(ElevatorEngine engine, long from) throws IOException {
+        Replayed replayed = new Replayed();
+        List<Long> segments = segmentsIn(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            long segment = segments.get(i);
+            if (segment == first) {
+                replay(mapping, end, segment, from, engine, replayed);
+            } else if (i + 1 < segments.size() && segments.get(i + 1) > from) {
+                try (FileChannel older = FileChannel.open(segmentFile(directory, segment).toPath(),
+                        StandardOpenOption.READ)) {
+                    ByteBuffer buffer = older.map(FileChannel.MapMode.READ_ONLY, 0, older.size());
+                    replay(buffer, endOf(buffer), segment, from, engine, replayed);
+                }
+            }
+        }
+        return replayed;
+    }
+
+    private static void replay(ByteBuffer buffer, int end, long segment, long from, ElevatorEngine engine,
+                               Replayed replayed) {
+        long index = segment;
+        for (int record = RECORD_BYTES; record < end; record += RECORD_BYTES * (1 + continuationsOf(buffer, record))) {
+            if (index++ < from) {
+                continue;
+            }
+            replayed.requests++;
+            try {
+                switch (TYPES[buffer.get(record + TYPE) - 1]) {
+                    case CALL:
+                        engine.call(buffer.getInt(record + FIRST), DIRECTIONS[buffer.get(record + CODE)]);
+                        break;
+                    case GO:
+                        engine.go(buffer.getInt(record + FIRST));
+                        break;
+                    case USER_HAS_ENTERED:
+                        engine.userHasEntered(null);
+                        break;
+                    case USER_HAS_EXITED:
+                        engine.userHasExited(null);
+                        break;
+                    case NEXT_COMMAND:
+                        if (engine.nextCommand() != COMMANDS[buffer.get(record + CODE)]) {
+                            replayed.divergences++;
+                        }
+                        break;
+                    case RESET:
+                        engine.reset(causeOf(buffer, record), buffer.getInt(record + FIRST),
+                                buffer.getInt(record + SECOND), buffer.getInt(record + THIRD));
+                        break;
+                }
+            } catch (RuntimeException e) {
+                replayed.failures++;
+                log.warn("replayTo(): engine refused journaled request <{}>: <{}>", replayed.requests,
+                        e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Forces the current segment to the disk and starts a new one with the next record, if the current one holds
+     * any.
+     *
+     * @return the index of the next record, the first of the current segment
+     */
+    public synchronized long roll() throws IOException {
+        if (records == first) {
+            return first;
+        }
+        File file = segmentFile(directory, records);
+        FileChannel next = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedByteBuffer nextMapping;
+        try {
+            nextMapping = mapSegment(file, next, capacity);
+            clearFrom(nextMapping, RECORD_BYTES);
+        } catch (IOException | RuntimeException e) {
+            next.close();
+            throw e;
+        }
+        mapping.force();
+        channel.close();
+        channel = next;
+        mapping = nextMapping;
+        first = records;
+        end = RECORD_BYTES;
+        return first;
+    }
+
+    /**
+     * Deletes the segments holding only records older than the <code>before</code>-th, never the current one.
+     *
+     * @return the number of segments deleted
+     */
+    public int deleteSegmentsBefore(long before) {
+        List<File> covered = new ArrayList<>();
+        synchronized (this) {
+            List<Long> segments = segmentsIn(directory);
+            for (int i = 0; i + 1 < segments.size() && segments.get(i + 1) <= Math.min(before, first); i++) {
+                covered.add(segmentFile(directory, segments.get(i)));
+            }
+        }
+        int deleted = 0;
+        for (File file : covered) {
+            if (file.delete()) {
+                deleted++;
+            } else {
+                log.warn("deleteSegmentsBefore(): could not delete <{}>", file);
+            }
+        }
+        return deleted;
+    }
+
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Forces the records appended since the last flush to the disk.
+     */
+    public void flush() {
+        if (dirty) {
+            dirty = false;
+            mapping.force();
+        }
+    }
+
+    /**
+     * Stops the flusher and forces the last records to the disk.
+     */
+    public synchronized void close() throws IOException {
+        flusher.shutdown();
+        dirty = true;
+        flush();
+        channel.close();
+    }
+
+    private static File segmentFile(File directory, long first) {
+        return new File(directory, "requests-" + first + ".journal");
+    }
+
+    private static MappedByteBuffer mapSegment(File file, FileChannel channel, int capacity) throws IOException {
+        long size = Math.max(channel.size(), (long) (capacity + 1) * RECORD_BYTES);
+        MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        int magic = mapping.getInt(0);
+        if (magic == 0) {
+            mapping.putInt(0, MAGIC).putInt(4, RECORD_BYTES);
+        } else if (magic != MAGIC || mapping.getInt(4) != RECORD_BYTES) {
+            throw new IOException("<" + file + "> is not a request journal");
+        }
+        return mapping;
+    }
+
+    /**
+     * @return the offset past the last record of a segment
+     */
+    private static int endOf(ByteBuffer buffer) {
+        int end = RECORD_BYTES;
+        while (end < buffer.capacity() && buffer.get(end + TYPE) != 0) {
+            end += RECORD_BYTES * (1 + continuationsOf(buffer, end));
+        }
+        return Math.min(end, buffer.capacity());
+    }
+
+    /**
+     * Zeroes <code>buffer</code> from <code>from</code> on, writing only the words a cut record left, so that the
+     * pages nothing was written to are not dirtied.
+     */
+    private static void clearFrom(ByteBuffer buffer, int from) {
+        for (int offset = from; offset < buffer.capacity(); offset += 8) {
+            if (buffer.getLong(offset) != 0) {
+                buffer.putLong(offset, 0);
+            }
+        }
+    }
+
+    private static long countOf(ByteBuffer buffer, int end) {
+        long count = 0;
+        for (int record = RECORD_BYTES; record < end; record += RECORD_BYTES * (1 + continuationsOf(buffer, record))) {
+            count++;
+        }
+        return count;
+    }
+
+    private int reserve(int continuations) {
+        int needed = end + RECORD_BYTES * (1 + continuations);
+        if (needed > mapping.capacity()) {
+            grow(needed);
+        }
+        return end;
+    }
+
+    private void commit(int record, Type type) {
+        mapping.put(record + TYPE, (byte) (type.ordinal() + 1));
+        end += RECORD_BYTES * (1 + continuationsOf(mapping, record));
+        records++;
+        dirty = true;
+    }
+
+    private void grow(int needed) {
+        long size = mapping.capacity();
+        while (size < needed) {
+            size *= 2;
+        }
+        checkArgument(size <= Integer.MAX_VALUE, "a request journal is mapped at once, it cannot grow past 2GB");
+        try {
+            mapping.force();
+            mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new IllegalStateException("could not grow request journal segment <" + segmentFile(directory, first)
+                    + "> to <" + size + "> bytes", e);
+        }
+    }
+
+    private static int continuationsOf(ByteBuffer buffer, int record) {
+        if (buffer.get(record + TYPE) != Type.RESET.ordinal() + 1) {
+            return 0;
+        }
+        int length = buffer.getInt(record + THIRD + 4);
+        return length <= 0 ? 0 : (length + RECORD_BYTES - 1) / RECORD_BYTES;
+    }
+
+    private static String causeOf(ByteBuffer buffer, int record) {
+        int length = buffer.getInt(record + THIRD + 4);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(record + RECORD_BYTES + i);
+        }
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private enum Type {
+        CALL, GO, USER_HAS_ENTERED, USER_HAS_EXITED, NEXT_COMMAND, RESET,;
+    }
+
+    /**
+     * What replaying a journal did.
+     */
+    @Getter
+    public static class Replayed {
+        private long requests;
+        /**
+         * requests the engine refused, though it took them when they were journaled
+         */
+        private long failures;
+        /**
+         * nextCommands answered otherwise than when they were journaled: a lookahead engine, planning within a time
+         * budget, does not always plan the same
+         */
+        private long divergences;
+    }
+}
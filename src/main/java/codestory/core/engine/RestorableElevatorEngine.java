@@ -0,0 +1,16 @@
+package codestory.core.engine;
+
+/**
+ * An engine whose full state can be taken, and put back, between two requests: to restart a node where it was or to
+ * reproduce an incident from a dump, see {@link EngineSnapshot}.
+ */
+public interface RestorableElevatorEngine extends ElevatorEngine {
+
+    public EngineSnapshot snapshot();
+
+    /**
+     * Puts the engine in the state of <code>snapshot</code>, as if it had received the same requests.
+     */
+    public void restore(EngineSnapshot snapshot);
+
+}
@@ -0,0 +1,214 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Plays randomized games from the current state, on a fork/join pool, until the deadline: each first command the
+ * server would accept is followed by a plain collective control ({@link PlanningState#sweep()}) until the users known
+ * now are delivered, or for <code>ticks</code> at most. Meanwhile users call as often as they did since the reset,
+ * everybody going to floors drawn in their direction. The first command the users known now score best after on
+ * average is given; the users drawn only slow the cabin down. All first commands of a round play the same draws, so
+ * that they are compared on the same futures.
+ */
+class RolloutPlanner implements CommandPlanner {
+
+    /**
+     * rounds a decision cannot go beyond, whatever its deadline
+     */
+    static final int MAX_ROUNDS = 1 << 16;
+    private static final int ROUNDS_BY_TASK = 4;
+    private static final Command[] COMMANDS = Command.values();
+
+    private final ForkJoinPool pool;
+    private final int ticks;
+    private final int minRounds;
+    private final ArrivalRates arrivals;
+    private final PlanningState root = new PlanningState();
+    private final Random seeds = new Random(0);
+    private int lastRollouts;
+
+    /**
+     * @param minRounds fewer rounds by the deadline: no plan
+     */
+    RolloutPlanner(ForkJoinPool pool, int ticks, int minRounds, ArrivalRates arrivals) {
+        this.pool = pool;
+        this.ticks = ticks;
+        this.minRounds = minRounds;
+        this.arrivals = arrivals;
+    }
+
+    @Override
+    public PlanningState getRoot() {
+        return root;
+    }
+
+    @Override
+    public Command plan(Command preferred, long deadline) {
+        Command[] candidates = candidates(preferred);
+        if (candidates.length == 0) {
+            lastRollouts = 0;
+            return null;
+        }
+        Round round = new Round(root, candidates, ticks, noArrivalChances(), seeds.nextLong(), deadline);
+        pool.invoke(new Rounds(round, 0, MAX_ROUNDS));
+        int rounds = round.nbRounds();
+        lastRollouts = rounds * candidates.length;
+        if (rounds < minRounds) {
+            return null;
+        }
+        int best = 0;
+        for (int candidate = 1; candidate < candidates.length; candidate++) {
+            if (round.totals.get(candidate) > round.totals.get(best)) {
+                best = candidate;
+            }
+        }
+        return candidates[best];
+    }
+
+    /**
+     * @return the games played by the last plan, up to the deadline
+     */
+    int getLastRollouts() {
+        return lastRollouts;
+    }
+
+    private Command[] candidates(Command preferred) {
+        int nbCandidates = 0;
+        Command[] candidates = new Command[COMMANDS.length];
+        if (root.accepts(preferred)) {
+            candidates[nbCandidates++] = preferred;
+        }
+        for (Command command : COMMANDS) {
+            if (command != preferred && root.accepts(command)) {
+                candidates[nbCandidates++] = command;
+            }
+        }
+        Command[] accepted = new Command[nbCandidates];
+        System.arraycopy(candidates, 0, accepted, 0, nbCandidates);
+        return accepted;
+    }
+
+    /**
+     * @return by floor then direction (down, up), the chance that nobody calls there in a tick, e<sup>-rate</sup>
+     */
+    private double[] noArrivalChances() {
+        int nbFloors = root.getHigherFloor() - root.getLowerFloor() + 1;
+        double[] chances = new double[2 * nbFloors];
+        for (int floor = 0; floor < nbFloors; floor++) {
+            chances[2 * floor] = Math.exp(-arrivals.rate(root.getLowerFloor() + floor, false));
+            chances[2 * floor + 1] = Math.exp(-arrivals.rate(root.getLowerFloor() + floor, true));
+        }
+        return chances;
+    }
+
+    /**
+     * What the rounds of a decision share: their start, and the points each first command scored over them.
+     */
+    private static class Round {
+        private final PlanningState root;
+        private final Command[] candidates;
+        private final int ticks;
+        private final double[] noArrivalChances;
+        private final long seed;
+        private final long deadline;
+        private final AtomicLongArray totals;
+        private final AtomicInteger played = new AtomicInteger();
+
+        private Round(PlanningState root, Command[] candidates, int ticks, double[] noArrivalChances, long seed,
+                      long deadline) {
+            this.root = root;
+            this.candidates = candidates;
+            this.ticks = ticks;
+            this.noArrivalChances = noArrivalChances;
+            this.seed = seed;
+            this.deadline = deadline;
+            this.totals = new AtomicLongArray(candidates.length);
+        }
+
+        private boolean outOfTime() {
+            return System.nanoTime() - deadline >= 0;
+        }
+
+        private int nbRounds() {
+            return played.get();
+        }
+
+        /**
+         * Plays round <code>round</code> for every candidate into <code>points</code>.
+         */
+        private void play(int round, PlanningState game, Random random, long[] points) {
+            for (int candidate = 0; candidate < candidates.length; candidate++) {
+                random.setSeed(seed + round);
+                game.copyFrom(root);
+                game.drawStops(random);
+                game.play(candidates[candidate]);
+                for (int tick = 1; tick < ticks && game.hasCapturedUsersLeft(); tick++) {
+                    arrive(game, random);
+                    game.play(game.sweep());
+                }
+                points[candidate] += game.value();
+            }
+        }
+
+        /**
+         * Poisson arrivals at each floor and direction.
+         */
+        private void arrive(PlanningState game, Random random) {
+            for (int index = 0; index < noArrivalChances.length; index++) {
+                double product = random.nextDouble();
+                while (product > noArrivalChances[index]) {
+                    int floor = game.getLowerFloor() + index / 2;
+                    boolean up = index % 2 == 1;
+                    game.arrive(floor, up, game.drawFloor(random, floor, up));
+                    product *= random.nextDouble();
+                }
+            }
+        }
+    }
+
+    /**
+     * Rounds <code>[from, to)</code>, split until a task plays a few; no round starts past the deadline.
+     */
+    private static class Rounds extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Round round;
+        private final int from;
+        private final int to;
+
+        private Rounds(Round round, int from, int to) {
+            this.round = round;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (round.outOfTime()) {
+                return;
+            }
+            if (to - from > ROUNDS_BY_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Rounds(round, from, middle), new Rounds(round, middle, to));
+                return;
+            }
+            PlanningState game = new PlanningState();
+            Random random = new Random();
+            long[] points = new long[round.candidates.length];
+            int played = 0;
+            for (int index = from; index < to && !round.outOfTime(); index++) {
+                round.play(index, game, random, points);
+                played++;
+            }
+            for (int candidate = 0; candidate < points.length; candidate++) {
+                round.totals.addAndGet(candidate, points[candidate]);
+            }
+            round.played.addAndGet(played);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import codestory.core.User;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
@@ -187,6 +188,10 @@ public class S03E01W1Elevator implements ElevatorEngine {
         return "not implemented";
     }
 
+    public byte[] getStateAsJson(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests) {
+        return getState(oIncludeFullUserList, oIncludeLastRequests).getBytes(Charsets.UTF_8);
+    }
+
     @VisibleForTesting
     protected boolean shouldDoNothing() {
         // retourner au milieu si rien à faire
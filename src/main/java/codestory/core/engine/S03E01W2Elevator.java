@@ -1,20 +1,24 @@
 package codestory.core.engine;
 
+import codestory.EngineConfiguration;
 import codestory.core.*;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.collect.*;
 import lombok.AccessLevel;
 import lombok.Getter;
+import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.ISODateTimeFormat;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -29,7 +33,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 @Slf4j
 @Setter(AccessLevel.PROTECTED)
 @Getter(AccessLevel.PROTECTED)
-public class S03E01W2Elevator implements ElevatorEngine {
+public class S03E01W2Elevator implements RestorableElevatorEngine {
 
     public static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new GuavaModule());
     public static final int LAST_COMMANDS_QUEUE_SIZE = 200;
@@ -40,9 +44,9 @@ public class S03E01W2Elevator implements ElevatorEngine {
     public static final int DEFAULT_CABIN_SIZE = 30;
     public static final String WAITING_LIST = "waitingList";
     public static final String STOP_LIST = "stopList";
-    protected Map<Integer, String> lastCommands = initLastCommandQueue();
-    protected Map<Integer, ElevatorContext> lastResets = initLastResetQueue();
-    protected Map<Integer, String> lastRequests = initLastRequestsQueue();
+    protected final CommandHistory lastCommands;
+    protected final ResetHistory lastResets;
+    protected final RequestHistory lastRequests;
     private Score score;
     private AtomicInteger ticks = new AtomicInteger(0);
     private AtomicInteger nbRequests = new AtomicInteger(0);
@@ -53,7 +57,12 @@ public class S03E01W2Elevator implements ElevatorEngine {
     private AtomicInteger currentNbOfUsersInsideTheElevator = new AtomicInteger();
     private AtomicInteger currentFloor = new AtomicInteger();
     private AtomicInteger previousFloor = new AtomicInteger();
-    private List<codestory.core.User> users;
+    private final boolean compactUserStore;
+    private final boolean allocationFree;
+    private final boolean publishState;
+    private final DecisionTracer tracer;
+    private final StrategyParameters strategy;
+    private UserStore userStore;
     private Direction currentDirection;
     private Command previousCommand;
     private Door currentDoorStatus;
@@ -63,37 +72,60 @@ public class S03E01W2Elevator implements ElevatorEngine {
     private String lastResetDateTime;
     private int lastResetTick;
     private ElevatorContext lastResetContext;
+    private volatile StateSnapshot publishedState;
 
 
     public S03E01W2Elevator() {
+        this(new EngineConfiguration());
+    }
+
+    public S03E01W2Elevator(EngineConfiguration configuration) {
+        this(configuration, new DecisionTracer(configuration));
+    }
+
+    /**
+     * An allocation free engine keeps its users in a {@link CompactUserStore}, does not log requests and does not
+     * publish its state.
+     */
+    public S03E01W2Elevator(EngineConfiguration configuration, DecisionTracer tracer) {
+        this.tracer = tracer;
+        this.strategy = configuration.getStrategy();
+        this.allocationFree = configuration.isAllocationFree();
+        this.compactUserStore = configuration.isCompactUserStore() || allocationFree;
+        this.publishState = configuration.isPublishState() && !allocationFree;
+        this.lastCommands = new CommandHistory(configuration.getLastCommandsCapacity());
+        this.lastRequests = new RequestHistory(configuration.getLastRequestsCapacity());
+        this.lastResets = new ResetHistory(configuration.getLastResetsCapacity());
         reset("self initializing", DEFAULT_LOWER_FLOOR, DEFAULT_HIGHER_FLOOR, DEFAULT_CABIN_SIZE);
     }
 
-    public static Map<Integer, String> initLastCommandQueue() {
-        return new LinkedHashMap<Integer, String>() {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
-                return this.size() > LAST_COMMANDS_QUEUE_SIZE;
-            }
-        };
-    }
-
-    public static Map<Integer, String> initLastRequestsQueue() {
-        return new LinkedHashMap<Integer, String>() {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
-                return this.size() > LAST_REQUESTS_QUEUE_SIZE;
+    /**
+     * @return the W2 engine the configuration asks for, reading a policy or decision table, planning ahead or not
+     * @throws IllegalArgumentException when the configuration asks for more than one of them
+     */
+    public static S03E01W2Elevator create(EngineConfiguration configuration, DecisionTracer tracer) {
+        int deciders = (configuration.getPolicyTable() != null ? 1 : 0) +
+                (configuration.getDecisionTable() != null ? 1 : 0) + (configuration.isLookahead() ? 1 : 0);
+        checkArgument(deciders <= 1, "engine.policyTable, engine.decisionTable and engine.lookahead exclude each other");
+        if (configuration.getPolicyTable() != null) {
+            try {
+                return new TabulatedElevator(configuration, tracer, PolicyTable.map(configuration.getPolicyTable()));
+            } catch (IOException e) {
+                throw new IllegalStateException("could not map policy table <" + configuration.getPolicyTable() + ">",
+                        e);
             }
-        };
-    }
-
-    public static Map<Integer, ElevatorContext> initLastResetQueue() {
-        return new LinkedHashMap<Integer, ElevatorContext>() {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<Integer, ElevatorContext> eldest) {
-                return this.size() > LAST_RESET_QUEUE_SIZE;
+        }
+        if (configuration.getDecisionTable() != null) {
+            try {
+                return new TabulatedElevator(configuration, tracer,
+                        DecisionTable.load(configuration.getDecisionTable()));
+            } catch (IOException e) {
+                throw new IllegalStateException("could not load decision table <" +
+                        configuration.getDecisionTable() + ">", e);
             }
-        };
+        }
+        return configuration.isLookahead() ? new LookaheadElevator(configuration, tracer) :
+                new S03E01W2Elevator(configuration, tracer);
     }
 
     public static Map<Integer, Integer> incrementValueForFloor(Map<Integer, Integer> input, Integer floor) {
@@ -109,90 +141,128 @@ public class S03E01W2Elevator implements ElevatorEngine {
     }
 
     public ElevatorEngine reset(String cause, int lowerFloor, int higherFloor, int cabinSize) {
+        // recorded first so that the context kept for this reset shows the reset request itself
+        lastRequests.reset(nbRequests.incrementAndGet(), ticks.get(), cause, lowerFloor, higherFloor, cabinSize);
         if (ticks.get() > 0) {
             S03E01W2Elevator.log.warn("RESET, cause: <{}>, lowerFloor: <{}>, higherFloor: <{}>, cabinSize: <{}>",
                     cause, lowerFloor, higherFloor, cabinSize);
-            logCurrentState("reset, cause:" + cause);
+            if (tracer.tracesReset()) {
+                traceState("reset, cause:", cause, "");
+            }
             lastResetDateTime = new DateTime(DateTimeZone.UTC).toString(ISODateTimeFormat.dateHourMinuteSecondMillis());
             lastResetContext = getCurrentElevatorContext("lastResetContext", false, true, true);
             lastResetTick = ticks.get();
-            lastResets.put(ticks.get(), lastResetContext);
+            lastResets.record(ticks.get(), lastResetContext);
             lastResetCause = cause;
         }
-        lastRequests.put(nbRequests.incrementAndGet(), ticks.get() + ":reset?cause=" + cause + "&lowerFloor=" + lowerFloor + "&higherFloor=" + higherFloor + "&cabinSize=" + cabinSize);
         score = new Score(lowerFloor, higherFloor);
-        lastCommands = initLastCommandQueue();
-        lastResets = initLastResetQueue();
-        lastRequests = initLastRequestsQueue();
+        // only the commands and requests of the previous game go, lastResets is what tells games apart
+        lastCommands.clear();
+        lastRequests.clear();
         this.lowerFloor = lowerFloor;
         this.higherFloor = higherFloor;
         this.cabinSize = cabinSize;
         this.middleFloor = evaluateMiddleFloor();
-        users = new ArrayList<>();
+        userStore = compactUserStore ? new CompactUserStore(lowerFloor, higherFloor) :
+                new ListUserStore(lowerFloor, higherFloor);
         currentNbOfUsersInsideTheElevator.set(0);
         currentFloor.set(0);
         previousFloor.set(0);
         currentDirection = Direction.UP;
         previousCommand = Command.NOTHING;
         currentDoorStatus = Door.CLOSE;
+        publishState();
         return this;
     }
 
     @Override
     public Command nextCommand() {
         ticks.incrementAndGet();
-        lastRequests.put(nbRequests.incrementAndGet(), ticks.get() + ":nextCommand");
+        lastRequests.nextCommand(nbRequests.incrementAndGet(), ticks.get());
         updateUserState();
         tickForUsers();
-        logCurrentState("nextCommand(before processing), previousCommand: <" + previousCommand + ">");
-        Command nextCommand;
+        Direction directionBefore = currentDirection;
+        if (tracer.tracesTickStart(ticks.get())) {
+            traceState("nextCommand(before processing), previousCommand: <", previousCommand, ">");
+        }
+        Command nextCommand = decide();
+        carryOut(nextCommand);
+        lastCommands.record(ticks.get(), currentFloor.get(), nextCommand);
+        if (tracer.tracesTickEnd(ticks.get(), currentDirection != directionBefore)) {
+            traceState("nextCommand (after processing) <", nextCommand, ">");
+        }
+        previousCommand = nextCommand;
+        publishState();
+
+        return nextCommand;
+    }
+
+    /**
+     * The greedy decision for the tick, users already ticked: only reads the engine, {@link #carryOut(Command)}
+     * applies it.
+     */
+    protected Command decide() {
         if (shouldDoNothing()) {
-            nextCommand = Command.NOTHING;
+            return Command.NOTHING;
         } else if (shouldCloseTheDoor()) {
-            currentDoorStatus = Door.CLOSE;
-            nextCommand = Command.CLOSE;
-        } else if (shouldOpenTheDoor()) {
-            currentDoorStatus = Door.OPEN;
-            nextCommand = Command.OPEN;
-        } else {
-            Direction nextDirection = getNextDirection();
-            if (nextDirection == Direction.UP) {
+            return Command.CLOSE;
+        } else if (doorShouldOpen()) {
+            return Command.OPEN;
+        }
+        return getNextDirection() == Direction.UP ? Command.UP : Command.DOWN;
+    }
+
+    /**
+     * Moves the cabin or its door as <code>command</code> says, lets users in and out when it opens the door.
+     */
+    protected void carryOut(Command command) {
+        switch (command) {
+            case CLOSE:
+                currentDoorStatus = Door.CLOSE;
+                break;
+            case OPEN:
+                openTheDoor();
+                currentDoorStatus = Door.OPEN;
+                break;
+            case UP:
                 previousFloor.set(currentFloor.getAndIncrement());
                 currentDirection = Direction.UP;
-                nextCommand = Command.UP;
-            } else {
+                break;
+            case DOWN:
                 previousFloor.set(currentFloor.getAndDecrement());
                 currentDirection = Direction.DOWN;
-                nextCommand = Command.DOWN;
-            }
+                break;
+            default:
+                break;
         }
-        lastCommands.put(ticks.get(), currentFloor + ":" + nextCommand);
-        logCurrentState("nextCommand (after processing) <" + nextCommand + ">");
-        previousCommand = nextCommand;
-
-        return nextCommand;
     }
 
     public ElevatorEngine call(Integer atFloor, Direction to) {
-        lastRequests.put(nbRequests.incrementAndGet(), ticks.get() + ":call?atFloor=" + atFloor + "&to=" + to);
+        lastRequests.call(nbRequests.incrementAndGet(), ticks.get(), atFloor, to);
         checkFloorValue(atFloor);
         checkNotNull(to, "'to' cannot be null");
-        S03E01W2Elevator.log.info("call(atFloor:{}, to:{})", atFloor, to);
-        registerNewUser(new User(atFloor, to));
+        if (!allocationFree) {
+            S03E01W2Elevator.log.info("call(atFloor:{}, to:{})", atFloor, to);
+        }
+        userStore.register(atFloor, to);
         return this;
     }
 
     public ElevatorEngine go(Integer floorToGo) {
-        lastRequests.put(nbRequests.incrementAndGet(), ticks.get() + ":go?floorToGo=" + floorToGo);
-        S03E01W2Elevator.log.info("go(floorToGo:{})", floorToGo);
+        lastRequests.go(nbRequests.incrementAndGet(), ticks.get(), floorToGo);
+        if (!allocationFree) {
+            S03E01W2Elevator.log.info("go(floorToGo:{})", floorToGo);
+        }
         checkFloorValue(floorToGo);
         userRequestedAStopFor(floorToGo);
         return this;
     }
 
     public ElevatorEngine userHasEntered(User user) {
-        lastRequests.put(nbRequests.incrementAndGet(), ticks.get() + ":userHasEntered");
-        logCurrentState("userHasEntered(" + user + ")-before");
+        lastRequests.userHasEntered(nbRequests.incrementAndGet(), ticks.get());
+        if (tracer.tracesUserMove(ticks.get())) {
+            traceState("userHasEntered(", user, ")-before");
+        }
         currentNbOfUsersInsideTheElevator.incrementAndGet();
 /*        synchronized (userWaitingByFloor) {
             if (someoneIsWaitingAt(currentFloor.get())) {
@@ -212,8 +282,10 @@ public class S03E01W2Elevator implements ElevatorEngine {
     }
 
     public ElevatorEngine userHasExited(User user) {
-        lastRequests.put(nbRequests.incrementAndGet(), ticks.get() + ":userHasExited");
-        logCurrentState("userHasExited(" + user + ")-before");
+        lastRequests.userHasExited(nbRequests.incrementAndGet(), ticks.get());
+        if (tracer.tracesUserMove(ticks.get())) {
+            traceState("userHasExited(", user, ")-before");
+        }
         currentNbOfUsersInsideTheElevator.decrementAndGet();
 /*        synchronized (stopRequestedByFloor) {
             if (stopRequestedAt(currentFloor.get())) {
@@ -231,56 +303,199 @@ public class S03E01W2Elevator implements ElevatorEngine {
     }
 
     public String getState(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests) {
-        String jsonState = "UNDEF";
+        byte[] json = getStateAsJson(oIncludeFullUserList, oIncludeLastRequests);
+        return json == null ? "UNDEF" : new String(json, Charsets.UTF_8);
+    }
+
+    /**
+     * When the state is published, this is the state of the last tick or reset, read without touching the engine:
+     * calls and gos received since are not in it yet.
+     */
+    @Override
+    public byte[] getStateAsJson(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests) {
         boolean includefullUserList = oIncludeFullUserList.isPresent() ? oIncludeFullUserList.get() : false;
         boolean includelastRequests = oIncludeLastRequests.isPresent() ? oIncludeLastRequests.get() : false;
-        ElevatorContext context = getCurrentElevatorContext("stateRequest", true, includefullUserList, includelastRequests);
+        StateSnapshot state = publishedState;
         try {
-            jsonState = MAPPER.writeValueAsString(context);
+            if (state != null) {
+                return state.toJson(includefullUserList, includelastRequests);
+            }
+            ElevatorContext context = getCurrentElevatorContext("stateRequest", true, includefullUserList,
+                    includelastRequests);
+            return MAPPER.writeValueAsBytes(context);
         } catch (JsonProcessingException e) {
             log.error("could not process context to json for tick <{}>", ticks.get(), e);
+            return null;
         }
-        return jsonState;
     }
 
-    @VisibleForTesting
-    protected void updateUserState() {
-        synchronized (users) {
-            for (User user : users) {
-                user.setCurrentFloor(currentFloor.get());
+    /**
+     * @return a rough count of the heap bytes held by the users of the current game, the part of the engine that
+     * grows with it
+     */
+    public long estimatedBytes() {
+        return userStore.estimatedBytes();
+    }
+
+    /**
+     * @return the state published at the last tick or reset, null if the engine does not publish its state
+     */
+    public StateSnapshot getPublishedState() {
+        return publishedState;
+    }
+
+    /**
+     * @return the engine as it is between two ticks, as an {@link EngineState} to fork and play ticks on. Reads the
+     * engine: to be called on the engine thread.
+     */
+    public EngineState exportState() {
+        return EngineState.of(lowerFloor, higherFloor, cabinSize, ticks.get(), currentFloor.get(),
+                currentDoorStatus == Door.OPEN, currentDirection, score.getScore(),
+                currentNbOfUsersInsideTheElevator.get(), userStore.getUsers());
+    }
+
+    /**
+     * @return the full state of the engine, to be written by another thread. Reads the engine: to be called on the
+     * engine thread.
+     */
+    @Override
+    public EngineSnapshot snapshot() {
+        List<User> users = new ArrayList<>();
+        for (User user : getUsers()) {
+            users.add(new User(user));
+        }
+        return EngineSnapshot.builder()
+                .lowerFloor(lowerFloor)
+                .higherFloor(higherFloor)
+                .cabinSize(cabinSize)
+                .ticks(ticks.get())
+                .nbRequests(nbRequests.get())
+                .score(score.getScore())
+                .currentFloor(currentFloor.get())
+                .previousFloor(previousFloor.get())
+                .nbInside(currentNbOfUsersInsideTheElevator.get())
+                .currentDirection(currentDirection)
+                .previousCommand(previousCommand)
+                .currentDoorStatus(currentDoorStatus)
+                .lastResetCause(lastResetCause)
+                .lastResetDateTime(lastResetDateTime)
+                .lastResetTick(lastResetTick)
+                .lastResetContext(lastResetContext)
+                .users(users)
+                .lastCommands(lastCommands.copy())
+                .lastRequests(lastRequests.copy())
+                .lastResets(lastResets.copy())
+                .build();
+    }
+
+    @Override
+    public void restore(EngineSnapshot snapshot) {
+        lowerFloor = snapshot.getLowerFloor();
+        higherFloor = snapshot.getHigherFloor();
+        cabinSize = snapshot.getCabinSize();
+        middleFloor = evaluateMiddleFloor();
+        ticks.set(snapshot.getTicks());
+        nbRequests.set(snapshot.getNbRequests());
+        score = new Score(lowerFloor, higherFloor, snapshot.getScore());
+        currentFloor.set(snapshot.getCurrentFloor());
+        previousFloor.set(snapshot.getPreviousFloor());
+        currentNbOfUsersInsideTheElevator.set(snapshot.getNbInside());
+        currentDirection = snapshot.getCurrentDirection();
+        previousCommand = snapshot.getPreviousCommand();
+        currentDoorStatus = snapshot.getCurrentDoorStatus();
+        lastResetCause = snapshot.getLastResetCause();
+        lastResetDateTime = snapshot.getLastResetDateTime();
+        lastResetTick = snapshot.getLastResetTick();
+        lastResetContext = snapshot.getLastResetContext();
+        userStore = compactUserStore ? new CompactUserStore(lowerFloor, higherFloor) :
+                new ListUserStore(lowerFloor, higherFloor);
+        for (User user : snapshot.getUsers()) {
+            if (user.getCurrentFloor() != null) {
+                // users met by the last tick all know its floor, a compact store keeps it once for all of them
+                userStore.elevatorIsAt(user.getCurrentFloor());
+                break;
+            }
+        }
+        for (User user : snapshot.getUsers()) {
+            userStore.register(new User(user));
+        }
+        lastCommands.copyFrom(snapshot.getLastCommands());
+        lastRequests.copyFrom(snapshot.getLastRequests());
+        lastResets.copyFrom(snapshot.getLastResets());
+        publishState();
+    }
+
+    /**
+     * Puts the engine, between two ticks, in a situation of a {@link DecisionTable}: a user who called a tick ago at
+     * each floor of a waiting mask, a user inside for each floor of the stop mask. Bit i of a mask is lowerFloor + i.
+     */
+    void load(int floor, Door door, boolean justClosed, Direction direction, int waitingUp, int waitingDown,
+              int stops) {
+        userStore = compactUserStore ? new CompactUserStore(lowerFloor, higherFloor) :
+                new ListUserStore(lowerFloor, higherFloor);
+        currentFloor.set(floor);
+        previousFloor.set(floor);
+        currentDoorStatus = door;
+        currentDirection = direction;
+        previousCommand = justClosed ? Command.CLOSE : Command.NOTHING;
+        currentNbOfUsersInsideTheElevator.set(Integer.bitCount(stops));
+        for (int bit = 0; bit <= higherFloor - lowerFloor; bit++) {
+            int atFloor = lowerFloor + bit;
+            if ((waitingUp & 1 << bit) != 0) {
+                userStore.register(loadedUser(atFloor, Direction.UP, floor));
+            }
+            if ((waitingDown & 1 << bit) != 0) {
+                userStore.register(loadedUser(atFloor, Direction.DOWN, floor));
+            }
+            if ((stops & 1 << bit) != 0) {
+                User user = loadedUser(floor, atFloor > floor ? Direction.UP : Direction.DOWN, floor);
+                user.setState(User.State.TRAVELLING);
+                user.go(atFloor);
+                userStore.register(user);
             }
         }
     }
 
+    private static User loadedUser(int initialFloor, Direction direction, int floor) {
+        User user = new User(initialFloor, direction);
+        user.setCurrentFloor(floor);
+        user.setTickToWait(1);
+        return user;
+    }
+
+    /**
+     * Hands the engine a user list it does not own, whatever the user store it was built with: the passenger buckets
+     * can no longer be kept up to date incrementally and are rebuilt from that list on each query until the next reset.
+     */
+    @VisibleForTesting
+    protected void setUsers(List<User> users) {
+        this.userStore = ListUserStore.managedExternally(users, lowerFloor, higherFloor);
+    }
+
+    @VisibleForTesting
+    protected List<User> getUsers() {
+        return userStore.getUsers();
+    }
+
+    @VisibleForTesting
+    protected void updateUserState() {
+        userStore.elevatorIsAt(currentFloor.get());
+    }
+
     @VisibleForTesting
     protected void tickForUsers() {
-        synchronized (users) {
-            for (User user : users) {
-                user.tick();
-            }
-        }
+        userStore.tick();
     }
 
     @VisibleForTesting
     protected void registerNewUser(User user) {
-        synchronized (users) {
-            users.add(user);
-        }
+        userStore.register(user);
     }
 
     @VisibleForTesting
     protected void userRequestedAStopFor(int floorToGo) {
-        synchronized (users) {
-            for (User user : users) {
-                //TODO : gérer les éventuels décalage et accepter de traiter les users qui sont aussi à l'étage précédent?
-                if (user.traveling() && user.didNotRequestedAStopYet() && user.elevatorIsAtWaitingFloor(currentFloor.get()) && user.directionIsMine
-                        (getDirectionFromGoInfo
-                                (floorToGo))) {
-                    user.go(floorToGo);
-                    break;
-                }
-            }
-        }
+        //TODO : gérer les éventuels décalage et accepter de traiter les users qui sont aussi à l'étage précédent?
+        userStore.requestStop(currentFloor.get(), getDirectionFromGoInfo(floorToGo), floorToGo);
     }
 
     @VisibleForTesting
@@ -305,33 +520,42 @@ public class S03E01W2Elevator implements ElevatorEngine {
         return currentDoorStatus == Door.OPEN;
     }
 
+    /**
+     * Opens the door if {@link #doorShouldOpen()}.
+     */
     @VisibleForTesting
     protected boolean shouldOpenTheDoor() {
+        if (doorShouldOpen()) {
+            openTheDoor();
+            return true;
+        }
+        return false;
+    }
+
+    @VisibleForTesting
+    protected boolean doorShouldOpen() {
         boolean openTheDoor = false;
         if (currentDoorStatus == Door.CLOSE) {
 //            log.info("shouldOpenTheDoor (maybe)=> Door.CLOSE");
             // case A
-            if (userWaitingAtCurrentFloorForCurrentDirection() && !justClosedTheDoor()) {
+            if (userWaitingAtCurrentFloorForCurrentDirection() && !justClosedTheDoor()
+                    && takesUsersIn(currentDirectionOfWaitingUsers())) {
                 // case A
 //                log.info("shouldOpenTheDoor (yes)=> userWaitingAtCurrentFloor() && previousCommand != Command.CLOSE");
-                openTheDoor();
                 openTheDoor = true;
             } else if (userInsideElevatorNeedToGetOut()) {
                 // case B
 //                log.info("shouldOpenTheDoor (yes)=> userInsideElevatorNeedToGetOut()");
-                openTheDoor();
                 openTheDoor = true;
-            } else if (!justClosedTheDoor() && userWaitingAtCurrentFloor()) {
+            } else if (!justClosedTheDoor() && userWaitingAtCurrentFloor() && takesUsersIn(null)) {
                 if (currentDirection == Direction.DOWN) {
                     // case C
                     if (!someoneIsWaitingAtLowerLevels()) {
-                        openTheDoor();
                         openTheDoor = true;
                     }
                 } else if (currentDirection == Direction.UP) {
                     // case D
                     if (!someoneIsWaitingAtUpperLevels()) {
-                        openTheDoor();
                         openTheDoor = true;
                     }
                 }
@@ -344,24 +568,41 @@ public class S03E01W2Elevator implements ElevatorEngine {
         return openTheDoor;
     }
 
+    /**
+     * The strategy's rules for a crowded building: a cabin holding enough users, or users who waited too long to
+     * score, are not worth opening the door for.
+     *
+     * @param direction of the users the door would be opened for, null for both
+     */
+    @VisibleForTesting
+    protected boolean takesUsersIn(Direction direction) {
+        int nbInside = currentNbOfUsersInsideTheElevator.get();
+        if (!strategy.isCrowded(demandIndex().getNbWaiting() + nbInside)) {
+            return true;
+        }
+        if (strategy.getMaxUsersOnBoard() > 0 && nbInside >= strategy.getMaxUsersOnBoard()) {
+            return false;
+        }
+        return strategy.getMaxTicksWaited() <= 0
+                || userStore.nbWaitingAt(currentFloor.get(), direction, strategy.getMaxTicksWaited()) > 0;
+    }
+
+    /**
+     * @return null at the ends of the building, where users going either way are taken
+     */
+    private Direction currentDirectionOfWaitingUsers() {
+        if (currentFloor.get() == lowerFloor || currentFloor.get() == higherFloor) {
+            return null;
+        }
+        return currentDirection;
+    }
+
     @VisibleForTesting
     protected void openTheDoor() {
-        log.info("openTheDoor");
-        List<User> doneUsers = new ArrayList<>();
-        for (User user : users) {
-            user.elevatorIsOpen(currentFloor.get(), ticks.get());
-            if (user.done()) {
-                try {
-                    score = score.success(user);
-                    log.info("openTheDoor(): score for user <{}> is <{}>, totalScore is <{}>", user, score.score(user),
-                            score.getScore());
-                } catch (IllegalStateException e) {
-                    log.info("openTheDoor(): caught IllegalStateException <{}> while computing score for user <{}>", e.getMessage(), user.toString());
-                }
-                doneUsers.add(user);
-            }
+        if (!allocationFree) {
+            log.info("openTheDoor");
         }
-        users.removeAll(doneUsers);
+        userStore.elevatorIsOpen(currentFloor.get(), ticks.get(), score);
     }
 
     @VisibleForTesting
@@ -376,29 +617,15 @@ public class S03E01W2Elevator implements ElevatorEngine {
 
     @VisibleForTesting
     protected int nbUserWaitingAtCurrentFloor() {
-        int nb = 0;
-        synchronized (users) {
-            for (User user : users) {
-                if (user.waiting() && user.getInitialFloor() == currentFloor.get()) {
-                    nb++;
-                }
-            }
-        }
-        return nb;
+        return demandIndex().nbWaitingAt(currentFloor.get());
     }
 
     @VisibleForTesting
     protected int nbUserWaitingAtCurrentFloorForCurrentDirection() {
-        int nb = 0;
-        synchronized (users) {
-            for (User user : users) {
-                if (user.waiting() && user.elevatorIsAtWaitingFloor(currentFloor.get()) && (user.getDirection() ==
-                        currentDirection || currentFloor.get() == lowerFloor || currentFloor.get() == higherFloor)) {
-                    nb++;
-                }
-            }
+        if (currentFloor.get() == lowerFloor || currentFloor.get() == higherFloor) {
+            return demandIndex().nbWaitingAt(currentFloor.get());
         }
-        return nb;
+        return demandIndex().nbWaitingAt(currentFloor.get(), currentDirection);
     }
 
     @VisibleForTesting
@@ -464,149 +691,64 @@ public class S03E01W2Elevator implements ElevatorEngine {
 
     @VisibleForTesting
     protected boolean someoneIsWaitingAtLowerLevels() {
-        boolean someoneIsWaitingAtALowerLevel = false;
-        synchronized (users) {
-            for (User user : users) {
-                if (user.waiting() && user.getInitialFloor() < currentFloor.get()) {
-                    someoneIsWaitingAtALowerLevel = true;
-                    break;
-                }
-            }
-        }
-        return someoneIsWaitingAtALowerLevel;
+        return demandIndex().someoneIsWaitingBelow(currentFloor.get());
     }
 
     @VisibleForTesting
     protected boolean someoneRequestedAStopAtLowerLevels() {
-        boolean someoneRequestedAStopAtALowerLevel = false;
-        synchronized (users) {
-            for (User user : users) {
-                if (user.traveling() && user.requestedAStop() && user.getFloorToGo() < currentFloor.get()) {
-                    someoneRequestedAStopAtALowerLevel = true;
-                    break;
-                }
-            }
-        }
-        return someoneRequestedAStopAtALowerLevel;
+        return demandIndex().someoneRequestedAStopBelow(currentFloor.get());
     }
 
     @VisibleForTesting
     protected boolean someoneIsWaitingAtUpperLevels() {
-        boolean someoneIsWaitingAtUpperLevels = false;
-        if (currentFloor.get() != higherFloor) {
-            synchronized (users) {
-                for (User user : users) {
-                    if (user.waiting() && user.getInitialFloor() > currentFloor.get()) {
-                        someoneIsWaitingAtUpperLevels = true;
-                        break;
-                    }
-                }
-            }
-        }
-        return someoneIsWaitingAtUpperLevels;
+        return demandIndex().someoneIsWaitingAbove(currentFloor.get());
     }
 
     @VisibleForTesting
     protected boolean someoneRequestedAStopAtUpperLevels() {
-        boolean someoneRequestedAStopAtUpperLevels = false;
-        if (currentFloor.get() != higherFloor) {
-            synchronized (users) {
-                for (User user : users) {
-                    if (user.traveling() && user.requestedAStop() && user.getFloorToGo() > currentFloor.get()) {
-                        someoneRequestedAStopAtUpperLevels = true;
-                        break;
-                    }
-                }
-            }
-        }
-        return someoneRequestedAStopAtUpperLevels;
+        return demandIndex().someoneRequestedAStopAbove(currentFloor.get());
     }
 
     @VisibleForTesting
     protected boolean nobodyHasCalled() {
-        boolean empty = true;
-        synchronized (users) {
-            for (User user : users) {
-                if (user.waiting()) {
-                    empty = false;
-                    break;
-                }
-            }
-        }
-        return empty;
+        return demandIndex().nobodyIsWaiting();
     }
 
     @VisibleForTesting
     protected boolean nobodyHasRequestedAStop() {
-        boolean answer = true;
-        synchronized (users) {
-            for (User user : users) {
-                if (user.traveling() && user.requestedAStop()) {
-                    answer = false;
-                    break;
-                }
-            }
-        }
-        return answer;
+        return demandIndex().nobodyRequestedAStop();
     }
 
     @VisibleForTesting
     protected boolean stopRequestedAt(int floor) {
-        boolean stopRequested = false;
-        synchronized (users) {
-            for (User user : users) {
-                if (user.traveling() && user.requestedAStop() && user.getFloorToGo() == floor) {
-                    stopRequested = true;
-                }
-            }
-        }
-        return stopRequested;
+        return demandIndex().stopRequestedAt(floor);
     }
 
     @VisibleForTesting
     protected void checkFloorValue(int floorValue) {
-        checkArgument(floorValue >= lowerFloor, "'atFloor'=" + floorValue + " cannot be less than the lowerFloor <" +
-                lowerFloor + ">");
-        checkArgument(floorValue <= higherFloor, "'atFloor'=" + floorValue + " cannot be more than the higherFloor <" +
-                higherFloor + ">");
+        // messages are only built when needed, checkArgument would build them on every call
+        if (floorValue < lowerFloor) {
+            throw new IllegalArgumentException("'atFloor'=" + floorValue + " cannot be less than the lowerFloor <" +
+                    lowerFloor + ">");
+        }
+        if (floorValue > higherFloor) {
+            throw new IllegalArgumentException("'atFloor'=" + floorValue + " cannot be more than the higherFloor <" +
+                    higherFloor + ">");
+        }
     }
 
     protected Map<String, List<CountsByFloorByDirection>> aggregateUserInfos() {
-        Map<Integer, Integer> waitCountByFloorForUp = new HashMap<>();
-        Map<Integer, Integer> waitCountByFloorForDown = new HashMap<>();
-        Map<Integer, Integer> stopCountByFloorForUp = new HashMap<>();
-        Map<Integer, Integer> stopCountByFloorForDown = new HashMap<>();
         List<CountsByFloorByDirection> waitingList = new ArrayList<>();
         List<CountsByFloorByDirection> stopList = new ArrayList<>();
-        synchronized (users) {
-            for (User user : users) {
-                if (user.waiting()) {
-                    switch (user.getDirection()) {
-                        case DOWN:
-                            waitCountByFloorForDown = incrementValueForFloor(waitCountByFloorForDown, user.getInitialFloor());
-                            break;
-                        case UP:
-                            waitCountByFloorForUp = incrementValueForFloor(waitCountByFloorForUp, user.getInitialFloor());
-                            break;
-                    }
-                } else if (user.traveling()) {
-                    switch (user.getDirection()) {
-                        case DOWN:
-                            stopCountByFloorForDown = incrementValueForFloor(stopCountByFloorForDown, user.getFloorToGo());
-                            break;
-                        case UP:
-                            stopCountByFloorForUp = incrementValueForFloor(stopCountByFloorForUp, user.getFloorToGo());
-                            break;
-                    }
-                }
-            }
-        }
+        FloorDemandIndex index = demandIndex();
         for (int f = lowerFloor; f <= higherFloor; f++) {
-            if (waitCountByFloorForDown.containsKey(f) || waitCountByFloorForUp.containsKey(f)) {
-                waitingList.add(new CountsByFloorByDirection(f, waitCountByFloorForDown.get(f), waitCountByFloorForUp.get(f)));
+            if (index.someoneIsWaitingAt(f)) {
+                waitingList.add(new CountsByFloorByDirection(f, index.nbWaitingAt(f, Direction.DOWN),
+                        index.nbWaitingAt(f, Direction.UP)));
             }
-            if (stopCountByFloorForDown.containsKey(f) || stopCountByFloorForUp.containsKey(f)) {
-                stopList.add(new CountsByFloorByDirection(f, stopCountByFloorForDown.get(f), stopCountByFloorForUp.get(f)));
+            if (index.stopRequestedAt(f)) {
+                stopList.add(new CountsByFloorByDirection(f, index.nbStopsAt(f, Direction.DOWN),
+                        index.nbStopsAt(f, Direction.UP)));
             }
         }
         return ImmutableMap.<String, List<CountsByFloorByDirection>>builder().put(WAITING_LIST, waitingList).put(STOP_LIST, stopList).build();
@@ -633,7 +775,7 @@ public class S03E01W2Elevator implements ElevatorEngine {
     @VisibleForTesting
     protected String logRequestedStops() {
         Multimap<Integer, User> stopsByFloor = ArrayListMultimap.create();
-        for (User user : users) {
+        for (User user : getUsers()) {
             if (user.traveling() && user.requestedAStop()) {
                 stopsByFloor.put(user.getFloorToGo(), user);
             }
@@ -654,6 +796,20 @@ public class S03E01W2Elevator implements ElevatorEngine {
 
     @VisibleForTesting
     protected void logCurrentState(String from) {
+        traceState(from, "", "");
+    }
+
+    /**
+     * The context is only built and serialized if the log is written, the caller description is only concatenated
+     * then too.
+     */
+    private void traceState(String from, Object detail, String suffix) {
+        if (log.isInfoEnabled()) {
+            log.info("logCurrentState(): {}", new StateTrace(from, detail, suffix));
+        }
+    }
+
+    private String currentStateAsJson(String from) {
         ElevatorContext context = getCurrentElevatorContext(from, false, false, false);
         String contextAsJsonString;
         try {
@@ -661,14 +817,13 @@ public class S03E01W2Elevator implements ElevatorEngine {
         } catch (JsonProcessingException e) {
             contextAsJsonString = "oups, got JsonProcessingException <" + e.getMessage() + ">";
         }
-
-        log.info("logCurrentState(): {}", contextAsJsonString);
+        return contextAsJsonString;
     }
 
     @VisibleForTesting
     protected boolean stateIsInconsistent() {
         boolean consistent = true;
-        for (User user : users) {
+        for (User user : getUsers()) {
             if (user.traveling() && user.didNotRequestedAStopYet()) {
                 consistent = false;
             }
@@ -676,26 +831,59 @@ public class S03E01W2Elevator implements ElevatorEngine {
         return consistent;
     }
 
+    private FloorDemandIndex demandIndex() {
+        return userStore.getDemandIndex();
+    }
+
     protected int evaluateMiddleFloor() {
-        return (higherFloor - lowerFloor) / 2 + lowerFloor;
+        return (int) (strategy.getMiddleFloorRatio() * (higherFloor - lowerFloor)) + lowerFloor;
     }
 
     protected List<User> getUsersInStrangeTravelingState() {
-        List<User> weirdUsers = new ArrayList<>();
-        synchronized (users) {
-            for (User user : users) {
-                if (user.traveling() && user.didNotRequestedAStopYet()) {
-                    weirdUsers.add(user);
-                }
-            }
+        return userStore.getUsersInStrangeTravelingState();
+    }
+
+    /**
+     * Captures the state for the readers of {@link #getStateAsJson(Optional, Optional)}: users are copied, a later
+     * tick does not move them in the published state.
+     */
+    private void publishState() {
+        if (!publishState) {
+            return;
+        }
+        List<User> users = new ArrayList<>();
+        for (User user : getUsers()) {
+            users.add(new User(user));
         }
-        return ImmutableList.copyOf(weirdUsers);
+        List<User> strangeUsers = new ArrayList<>();
+        for (User user : getUsersInStrangeTravelingState()) {
+            strangeUsers.add(new User(user));
+        }
+        ElevatorContext.ElevatorContextBuilder builder = currentElevatorContext("stateRequest")
+                .usersInStrangeTravelingState(strangeUsers)
+                .lastResetContext(getLastResetContext());
+        publishedState = new StateSnapshot(MAPPER, builder, users, lastRequests.render());
     }
 
     private ElevatorContext getCurrentElevatorContext(String caller, boolean includeLastResetContext,
                                                       boolean includeFullUserList, boolean includeLastRequests) {
+        ElevatorContext.ElevatorContextBuilder builder = currentElevatorContext(caller);
+        if (includeLastRequests) {
+            builder.lastRequests(lastRequests.render());
+        }
+
+        if (includeFullUserList) {
+            builder.users(getUsers());
+        }
+        if (includeLastResetContext) {
+            builder.lastResetContext(getLastResetContext());
+        }
+        return builder.build();
+    }
+
+    private ElevatorContext.ElevatorContextBuilder currentElevatorContext(String caller) {
         Map<String, List<CountsByFloorByDirection>> aggregatedUserInfo = aggregateUserInfos();
-        ElevatorContext.ElevatorContextBuilder builder = ElevatorContext.builder()
+        return ElevatorContext.builder()
                 .caller(caller)
                 .score(score.getScore())
                 .date(new DateTime(DateTimeZone.UTC).toString(ISODateTimeFormat.dateHourMinuteSecondMillis()))
@@ -720,21 +908,24 @@ public class S03E01W2Elevator implements ElevatorEngine {
                 .waitingList(aggregatedUserInfo.get(WAITING_LIST))
                 .stopList(aggregatedUserInfo.get(STOP_LIST))
                 .usersInStrangeTravelingState(getUsersInStrangeTravelingState())
-                .lastCommands(lastCommands)
+                .lastCommands(lastCommands.render())
                 .lastResetCause(lastResetCause)
                 .lastResetDateTime(lastResetDateTime)
                 .lastResetTick(lastResetTick);
-        if (includeLastRequests) {
-            builder.lastRequests(lastRequests);
-        }
+    }
 
-        if (includeFullUserList) {
-            builder.users(users);
-        }
-        if (includeLastResetContext) {
-            builder.lastResetContext(getLastResetContext());
+    /**
+     * Rendered by the logger, on the engine thread, only when the trace is actually written.
+     */
+    @RequiredArgsConstructor
+    private class StateTrace {
+        private final String from;
+        private final Object detail;
+        private final String suffix;
+
+        @Override
+        public String toString() {
+            return currentStateAsJson(from + detail + suffix);
         }
-        return builder.build();
     }
-
 }
@@ -0,0 +1,143 @@
+package codestory.core.engine;
+
+import codestory.EngineConfiguration;
+import codestory.core.exception.EngineOverloadedException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Independent games served side by side, each one by its own engine, found by its session id. A session is created by
+ * its first request, with the floors and cabin size of its first reset, and is forgotten once idle for
+ * <code>sessionIdleMinutes</code>. Past <code>maxSessions</code>, new sessions are refused with an
+ * {@link EngineOverloadedException}: live games are never dropped to make room.
+ * <p/>
+ * Sessions are spread over <code>sessionShards</code> engine threads by the hash of their id: a session is only ever
+ * touched by its shard thread, so sessions never lock against each other, and sessions on different shards run in
+ * parallel.
+ */
+@Slf4j
+public class SessionRegistry {
+
+    private static final int SWEEP_PERIOD_SECONDS = 60;
+    private final EngineConfiguration configuration;
+    private final DecisionTracer tracer;
+    private final ExecutorService[] shards;
+    private final Cache<String, ShardedElevatorEngine> sessions;
+    private final ScheduledExecutorService sweeper;
+
+    public SessionRegistry(EngineConfiguration configuration, DecisionTracer tracer) {
+        this(configuration, tracer, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    protected SessionRegistry(EngineConfiguration configuration, DecisionTracer tracer, Ticker ticker) {
+        checkArgument(configuration.getSessionShards() > 0, "sessionShards has to be positive");
+        this.configuration = configuration;
+        this.tracer = tracer;
+        this.shards = new ExecutorService[configuration.getSessionShards()];
+        for (int shard = 0; shard < shards.length; shard++) {
+            shards[shard] = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                    .setNameFormat("elevator-shard-" + shard).build());
+        }
+        this.sessions = CacheBuilder.newBuilder()
+                .expireAfterAccess(configuration.getSessionIdleMinutes(), TimeUnit.MINUTES)
+                .ticker(ticker)
+                .removalListener(new RemovalListener<String, ShardedElevatorEngine>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<String, ShardedElevatorEngine> notification) {
+                        log.info("session <{}> forgotten, cause: <{}>", notification.getKey(),
+                                notification.getCause());
+                    }
+                })
+                .build();
+        // expired sessions are otherwise only dropped when another session is looked up
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("elevator-session-sweeper").build());
+        sweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sweep();
+            }
+        }, SWEEP_PERIOD_SECONDS, SWEEP_PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return the engine of the session, created if needed; each call counts as an access
+     * @throws EngineOverloadedException when the session would be one more than <code>maxSessions</code>
+     */
+    public ShardedElevatorEngine engine(final String session) {
+        checkArgument(session != null && !session.isEmpty(), "session id cannot be empty");
+        ShardedElevatorEngine engine = sessions.getIfPresent(session);
+        if (engine != null) {
+            return engine;
+        }
+        // creations are serialized, so that racing ones cannot get past the cap together
+        synchronized (sessions) {
+            if (sessions.getIfPresent(session) == null) {
+                sessions.cleanUp();
+                if (sessions.size() >= configuration.getMaxSessions()) {
+                    throw new EngineOverloadedException("session <" + session + "> refused, <" +
+                            configuration.getMaxSessions() + "> sessions are already served");
+                }
+            }
+            return create(session);
+        }
+    }
+
+    private ShardedElevatorEngine create(final String session) {
+        try {
+            return sessions.get(session, new Callable<ShardedElevatorEngine>() {
+                @Override
+                public ShardedElevatorEngine call() {
+                    log.info("session <{}> created on shard <{}>", session, shardOf(session));
+                    return new ShardedElevatorEngine(session, S03E01W2Elevator.create(configuration, tracer),
+                            shards[shardOf(session)], configuration.getSessionMemoryCap());
+                }
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new IllegalStateException("could not create session <" + session + ">", e.getCause());
+        }
+    }
+
+    public Set<String> getSessions() {
+        return sessions.asMap().keySet();
+    }
+
+    public void close(String session) {
+        sessions.invalidate(session);
+    }
+
+    @VisibleForTesting
+    protected int shardOf(String session) {
+        return (session.hashCode() & Integer.MAX_VALUE) % shards.length;
+    }
+
+    @VisibleForTesting
+    protected void sweep() {
+        sessions.cleanUp();
+    }
+
+    public void shutdown() {
+        sweeper.shutdown();
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.User;
+import codestory.core.exception.ElevatorIsBrokenException;
+import codestory.core.exception.EngineOverloadedException;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+import lombok.Getter;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The engine of one session of a {@link SessionRegistry}: it is only touched by the engine thread of its shard, which
+ * it shares with other sessions but with no other thread. Callers wait for their request to be applied and get what the
+ * engine threw. The published state is read without going through the shard.
+ * <p/>
+ * Calls are refused with an {@link EngineOverloadedException} once the users of the session hold more than
+ * <code>memoryCap</code> bytes.
+ */
+public class ShardedElevatorEngine implements BatchingElevatorEngine {
+
+    @Getter
+    private final String session;
+    private final S03E01W2Elevator engine;
+    private final ExecutorService shard;
+    private final long memoryCap;
+
+    public ShardedElevatorEngine(String session, S03E01W2Elevator engine, ExecutorService shard, long memoryCap) {
+        this.session = session;
+        this.engine = engine;
+        this.shard = shard;
+        this.memoryCap = memoryCap;
+    }
+
+    @Override
+    public ElevatorEngine call(final Integer atFloor, final Direction to) throws ElevatorIsBrokenException {
+        onShard(new Callable<Void>() {
+            @Override
+            public Void call() {
+                checkMemoryCap();
+                engine.call(atFloor, to);
+                return null;
+            }
+        });
+        return this;
+    }
+
+    @Override
+    public Command apply(final EventBatch batch) {
+        return onShard(new Callable<Command>() {
+            @Override
+            public Command call() {
+                if (batch.hasCalls()) {
+                    checkMemoryCap();
+                }
+                return batch.applyEach(engine);
+            }
+        });
+    }
+
+    @Override
+    public ElevatorEngine go(final Integer floorToGo) throws ElevatorIsBrokenException {
+        onShard(new Callable<Void>() {
+            @Override
+            public Void call() {
+                engine.go(floorToGo);
+                return null;
+            }
+        });
+        return this;
+    }
+
+    @Override
+    public Command nextCommand() throws ElevatorIsBrokenException {
+        return onShard(new Callable<Command>() {
+            @Override
+            public Command call() {
+                return engine.nextCommand();
+            }
+        });
+    }
+
+    @Override
+    public ElevatorEngine userHasEntered(final User user) throws ElevatorIsBrokenException {
+        onShard(new Callable<Void>() {
+            @Override
+            public Void call() {
+                engine.userHasEntered(user);
+                return null;
+            }
+        });
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine userHasExited(final User user) throws ElevatorIsBrokenException {
+        onShard(new Callable<Void>() {
+            @Override
+            public Void call() {
+                engine.userHasExited(user);
+                return null;
+            }
+        });
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine reset(final String cause, final int lowerFloor, final int higherFloor,
+                                final int cabinSize) throws ElevatorIsBrokenException {
+        onShard(new Callable<Void>() {
+            @Override
+            public Void call() {
+                engine.reset(cause, lowerFloor, higherFloor, cabinSize);
+                return null;
+            }
+        });
+        return this;
+    }
+
+    @Override
+    public Integer getLowerFloor() {
+        return engine.getLowerFloor();
+    }
+
+    @Override
+    public Integer getHigherFloor() {
+        return engine.getHigherFloor();
+    }
+
+    @Override
+    public String getState(final Optional<Boolean> oIncludeFullUserList,
+                           final Optional<Boolean> oIncludeLastRequests) {
+        if (engine.getPublishedState() != null) {
+            return engine.getState(oIncludeFullUserList, oIncludeLastRequests);
+        }
+        return onShard(new Callable<String>() {
+            @Override
+            public String call() {
+                return engine.getState(oIncludeFullUserList, oIncludeLastRequests);
+            }
+        });
+    }
+
+    @Override
+    public byte[] getStateAsJson(final Optional<Boolean> oIncludeFullUserList,
+                                 final Optional<Boolean> oIncludeLastRequests) {
+        if (engine.getPublishedState() != null) {
+            return engine.getStateAsJson(oIncludeFullUserList, oIncludeLastRequests);
+        }
+        return onShard(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return engine.getStateAsJson(oIncludeFullUserList, oIncludeLastRequests);
+            }
+        });
+    }
+
+    /**
+     * @return the estimated bytes held by the users of the session, read on its shard
+     */
+    public long estimatedBytes() {
+        return onShard(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return engine.estimatedBytes();
+            }
+        });
+    }
+
+    private void checkMemoryCap() {
+        long bytes = engine.estimatedBytes();
+        if (bytes > memoryCap) {
+            throw new EngineOverloadedException("session <" + session + "> users hold <" + bytes +
+                    "> bytes, over its <" + memoryCap + "> bytes cap");
+        }
+    }
+
+    private <T> T onShard(Callable<T> request) {
+        try {
+            return Uninterruptibles.getUninterruptibly(shard.submit(request));
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Door;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The commands a W2 engine gives in the situations of a building, worked out offline for the building, idle floor and
+ * strategy of an engine, and read by a {@link TabulatedElevator}. Files start with the same header: magic,
+ * lowerFloor, higherFloor, middleFloor and the strategy parameters; what follows is each table's.
+ */
+public abstract class SituationTable {
+
+    protected static final int HEADER_BYTES = 4 * 4 + 8 + 3 * 4;
+    protected static final int DOOR_STATES = 3;
+    protected static final int OPEN = 0;
+    protected static final int CLOSED = 1;
+    protected static final int JUST_CLOSED = 2;
+    protected static final Command[] COMMANDS = Command.values();
+    private static final ConcurrentMap<String, SituationTable> LOADED = new ConcurrentHashMap<>();
+
+    @Getter
+    private final int lowerFloor;
+    @Getter
+    private final int higherFloor;
+    /**
+     * where the engine of the table takes an idle cabin: engines with another one do not decide as the table says
+     */
+    @Getter
+    private final int middleFloor;
+    @Getter
+    private final StrategyParameters strategy;
+
+    protected SituationTable(S03E01W2Elevator engine) {
+        this.lowerFloor = engine.getLowerFloor();
+        this.higherFloor = engine.getHigherFloor();
+        this.middleFloor = engine.getMiddleFloor();
+        this.strategy = engine.getStrategy();
+    }
+
+    /**
+     * @param header the first {@link #HEADER_BYTES} bytes of the file
+     */
+    protected SituationTable(ByteBuffer header, int magic, String kind) throws IOException {
+        if (header.capacity() < HEADER_BYTES || header.getInt(0) != magic) {
+            throw new IOException("not a " + kind);
+        }
+        this.lowerFloor = header.getInt(4);
+        this.higherFloor = header.getInt(8);
+        this.middleFloor = header.getInt(12);
+        this.strategy = new StrategyParameters();
+        strategy.setMiddleFloorRatio(header.getDouble(16));
+        strategy.setCrowdThreshold(header.getInt(24));
+        strategy.setMaxUsersOnBoard(header.getInt(28));
+        strategy.setMaxTicksWaited(header.getInt(32));
+    }
+
+    protected interface Reader<T extends SituationTable> {
+        T read(String file) throws IOException;
+    }
+
+    /**
+     * @return the table of <code>file</code>, read once for all the engines asking for it
+     */
+    protected static <T extends SituationTable> T load(String file, Class<T> type, Reader<T> reader)
+            throws IOException {
+        String key = type.getName() + ':' + file;
+        SituationTable table = LOADED.get(key);
+        if (table == null) {
+            table = reader.read(file);
+            SituationTable loaded = LOADED.putIfAbsent(key, table);
+            table = loaded != null ? loaded : table;
+        }
+        return type.cast(table);
+    }
+
+    protected static int doorState(Door door, boolean justClosed) {
+        return door == Door.OPEN ? OPEN : justClosed ? JUST_CLOSED : CLOSED;
+    }
+
+    /**
+     * @return a buffer of <code>capacity</code> bytes holding the header, positioned after it
+     */
+    protected ByteBuffer header(int magic, int capacity) {
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        buffer.putInt(magic).putInt(lowerFloor).putInt(higherFloor).putInt(middleFloor)
+                .putDouble(strategy.getMiddleFloorRatio()).putInt(strategy.getCrowdThreshold())
+                .putInt(strategy.getMaxUsersOnBoard()).putInt(strategy.getMaxTicksWaited());
+        return buffer;
+    }
+
+    /**
+     * @return true when the table was worked out for the building, the idle floor and the strategy of
+     * <code>engine</code>
+     */
+    public boolean covers(S03E01W2Elevator engine) {
+        return lowerFloor == engine.getLowerFloor() && higherFloor == engine.getHigherFloor() &&
+                middleFloor == engine.getMiddleFloor() && strategy.equals(engine.getStrategy());
+    }
+
+    /**
+     * @return the command of the situation <code>engine</code> is in, null if the table does not cover the engine or
+     * has no command there
+     */
+    public Command lookup(S03E01W2Elevator engine) {
+        return covers(engine) ? commandOf(engine) : null;
+    }
+
+    /**
+     * @return the command of the situation of a covered <code>engine</code>, null if the table has none
+     */
+    protected abstract Command commandOf(S03E01W2Elevator engine);
+}
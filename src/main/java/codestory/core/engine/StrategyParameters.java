@@ -0,0 +1,39 @@
+package codestory.core.engine;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+/**
+ * The knobs of the {@link S03E01W2Elevator} strategy, the <code>engine.strategy:</code> block of the service
+ * configuration; the defaults are the strategy as it was hard-coded. Values worth trying for a building and a traffic
+ * are found by the <code>tune</code> command.
+ */
+@Data
+public class StrategyParameters {
+    /**
+     * where an idle cabin waits, from 0 (lowerFloor) to 1 (higherFloor)
+     */
+    @JsonProperty
+    double middleFloorRatio = 0.5;
+    /**
+     * known users (waiting or inside) from which the building is crowded: the two rules below only apply then; 0 for
+     * always
+     */
+    @JsonProperty
+    int crowdThreshold = 0;
+    /**
+     * when crowded, no door opened to take users in once this many are inside; 0 for no cap but the cabin's
+     */
+    @JsonProperty
+    int maxUsersOnBoard = 0;
+    /**
+     * when crowded, no door opened for users who waited more than this: they will not score anymore; 0 to take
+     * everybody
+     */
+    @JsonProperty
+    int maxTicksWaited = 0;
+
+    public boolean isCrowded(int nbKnownUsers) {
+        return nbKnownUsers >= crowdThreshold;
+    }
+}
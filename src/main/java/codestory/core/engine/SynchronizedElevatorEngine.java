@@ -0,0 +1,155 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.User;
+import codestory.core.exception.ElevatorIsBrokenException;
+import com.google.common.base.Optional;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.MetricsRegistry;
+
+/**
+ * Mutations of the wrapped engine serialized on one monitor, what ElevatorResource used to do itself. getState is
+ * serialized too, the engine builds it from its users unless it publishes its state; getLowerFloor and getHigherFloor
+ * are not serialized. Contention is counted without allocating:
+ * <code>lock-acquisitions</code>, and <code>lock-wait-nanos</code> spent waiting for the monitor.
+ */
+public class SynchronizedElevatorEngine implements RestorableElevatorEngine, BatchingElevatorEngine {
+
+    private final ElevatorEngine engine;
+    private final Counter lockAcquisitions;
+    private final Counter lockWaitNanos;
+
+    public SynchronizedElevatorEngine(ElevatorEngine engine, MetricsRegistry metrics) {
+        this.engine = engine;
+        this.lockAcquisitions = metrics.newCounter(SynchronizedElevatorEngine.class, "lock-acquisitions");
+        this.lockWaitNanos = metrics.newCounter(SynchronizedElevatorEngine.class, "lock-wait-nanos");
+    }
+
+    @Override
+    public ElevatorEngine call(Integer atFloor, Direction to) throws ElevatorIsBrokenException {
+        long start = System.nanoTime();
+        synchronized (engine) {
+            acquired(start);
+            engine.call(atFloor, to);
+        }
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine go(Integer floorToGo) throws ElevatorIsBrokenException {
+        long start = System.nanoTime();
+        synchronized (engine) {
+            acquired(start);
+            engine.go(floorToGo);
+        }
+        return this;
+    }
+
+    @Override
+    public Command nextCommand() throws ElevatorIsBrokenException {
+        long start = System.nanoTime();
+        synchronized (engine) {
+            acquired(start);
+            return engine.nextCommand();
+        }
+    }
+
+    @Override
+    public ElevatorEngine userHasEntered(User user) throws ElevatorIsBrokenException {
+        long start = System.nanoTime();
+        synchronized (engine) {
+            acquired(start);
+            engine.userHasEntered(user);
+        }
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine userHasExited(User user) throws ElevatorIsBrokenException {
+        long start = System.nanoTime();
+        synchronized (engine) {
+            acquired(start);
+            engine.userHasExited(user);
+        }
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine reset(String cause, int lowerFloor, int higherFloor, int cabinSize)
+            throws ElevatorIsBrokenException {
+        long start = System.nanoTime();
+        synchronized (engine) {
+            acquired(start);
+            engine.reset(cause, lowerFloor, higherFloor, cabinSize);
+        }
+        return this;
+    }
+
+    @Override
+    public Command apply(EventBatch batch) {
+        long start = System.nanoTime();
+        synchronized (engine) {
+            acquired(start);
+            return batch.applyEach(engine);
+        }
+    }
+
+    @Override
+    public EngineSnapshot snapshot() {
+        long start = System.nanoTime();
+        synchronized (engine) {
+            acquired(start);
+            return restorable().snapshot();
+        }
+    }
+
+    @Override
+    public void restore(EngineSnapshot snapshot) {
+        long start = System.nanoTime();
+        synchronized (engine) {
+            acquired(start);
+            restorable().restore(snapshot);
+        }
+    }
+
+    @Override
+    public Integer getLowerFloor() {
+        return engine.getLowerFloor();
+    }
+
+    @Override
+    public Integer getHigherFloor() {
+        return engine.getHigherFloor();
+    }
+
+    @Override
+    public String getState(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests) {
+        long start = System.nanoTime();
+        synchronized (engine) {
+            acquired(start);
+            return engine.getState(oIncludeFullUserList, oIncludeLastRequests);
+        }
+    }
+
+    @Override
+    public byte[] getStateAsJson(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests) {
+        long start = System.nanoTime();
+        synchronized (engine) {
+            acquired(start);
+            return engine.getStateAsJson(oIncludeFullUserList, oIncludeLastRequests);
+        }
+    }
+
+    private RestorableElevatorEngine restorable() {
+        if (!(engine instanceof RestorableElevatorEngine)) {
+            throw new UnsupportedOperationException("<" + engine.getClass().getSimpleName() + "> cannot be restored");
+        }
+        return (RestorableElevatorEngine) engine;
+    }
+
+    private void acquired(long waitStart) {
+        lockAcquisitions.inc();
+        lockWaitNanos.inc(System.nanoTime() - waitStart);
+    }
+}
@@ -0,0 +1,46 @@
+package codestory.core.engine;
+
+import codestory.EngineConfiguration;
+import codestory.core.Command;
+
+/**
+ * A W2 engine reading its decisions from a {@link SituationTable} worked out offline, a {@link DecisionTable} compiled
+ * from an engine or a {@link PolicyTable} learnt by training. Buildings and strategies the table was not worked out
+ * for, and situations it has no command for, are decided live.
+ */
+public class TabulatedElevator extends S03E01W2Elevator {
+
+    private final SituationTable table;
+    private volatile long tabulatedDecisions;
+    private volatile long liveDecisions;
+
+    public TabulatedElevator(EngineConfiguration configuration, DecisionTracer tracer, SituationTable table) {
+        super(configuration, tracer);
+        this.table = table;
+    }
+
+    @Override
+    protected Command decide() {
+        Command command = table.lookup(this);
+        if (command == null) {
+            liveDecisions++;
+            return super.decide();
+        }
+        tabulatedDecisions++;
+        return command;
+    }
+
+    /**
+     * @return the decisions read from the table since the engine was created
+     */
+    public long getTabulatedDecisions() {
+        return tabulatedDecisions;
+    }
+
+    /**
+     * @return the decisions computed live since the engine was created, for want of a table entry
+     */
+    public long getLiveDecisions() {
+        return liveDecisions;
+    }
+}
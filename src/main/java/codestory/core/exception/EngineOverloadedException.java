@@ -0,0 +1,11 @@
+package codestory.core.exception;
+
+public class EngineOverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = -2270613425137316146L;
+
+    public EngineOverloadedException(String message) {
+        super(message);
+    }
+
+}
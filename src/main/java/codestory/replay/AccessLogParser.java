@@ -0,0 +1,81 @@
+package codestory.replay;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the game requests of a Dropwizard request log, e.g.
+ * <pre>
+ *     127.0.0.1 - - [13/Nov/2013:21:06:49 +0000] "GET /call?atFloor=3&to=UP HTTP/1.1" 200 0 2 2
+ * </pre>
+ * Other requests (states, admin, sessions) and lines that are not requests are left out.
+ */
+public class AccessLogParser {
+
+    private static final Pattern REQUEST = Pattern.compile(
+            "^\\S+ \\S+ \\S+ \\[[^\\]]*\\] \"[A-Z]+ /([^ ?\"]*)(?:\\?([^ \"]*))?[^\"]*\" (\\d{3}) (\\d+|-).*$");
+    private static final Splitter PARAMETERS = Splitter.on('&').omitEmptyStrings();
+
+    public static List<LoggedRequest> read(BufferedReader reader) throws IOException {
+        List<LoggedRequest> requests = new ArrayList<>();
+        int line = 0;
+        for (String text = reader.readLine(); text != null; text = reader.readLine()) {
+            line++;
+            Optional<LoggedRequest> request = parse(line, text);
+            if (request.isPresent()) {
+                requests.add(request.get());
+            }
+        }
+        return requests;
+    }
+
+    public static Optional<LoggedRequest> parse(int line, String text) {
+        Matcher matcher = REQUEST.matcher(text);
+        if (!matcher.matches()) {
+            return Optional.absent();
+        }
+        LoggedRequest.Operation operation = LoggedRequest.Operation.forPath(matcher.group(1));
+        if (operation == null) {
+            return Optional.absent();
+        }
+        String responseBytes = matcher.group(4);
+        return Optional.of(new LoggedRequest(line, operation, parameters(matcher.group(2)),
+                Integer.parseInt(matcher.group(3)), "-".equals(responseBytes) ? -1 : Integer.parseInt(responseBytes)));
+    }
+
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String parameter : PARAMETERS.split(query)) {
+            int equals = parameter.indexOf('=');
+            if (equals < 0) {
+                parameters.put(decode(parameter), "");
+            } else {
+                parameters.put(decode(parameter.substring(0, equals)), decode(parameter.substring(equals + 1)));
+            }
+        }
+        return parameters;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, Charsets.UTF_8.name());
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package codestory.replay;
+
+import java.util.Arrays;
+
+/**
+ * Keeps every latency of an operation, for exact percentiles: a replay holds at most a few million requests.
+ */
+class LatencyRecorder {
+
+    private long[] nanos = new long[1024];
+    private int count;
+
+    void record(long latency) {
+        if (count == nanos.length) {
+            nanos = Arrays.copyOf(nanos, 2 * count);
+        }
+        nanos[count++] = latency;
+    }
+
+    ReplayReport.Latencies summary() {
+        long[] sorted = Arrays.copyOf(nanos, count);
+        Arrays.sort(sorted);
+        return new ReplayReport.Latencies(count, percentile(sorted, 0.5), percentile(sorted, 0.9),
+                percentile(sorted, 0.99), percentile(sorted, 0.999), count == 0 ? 0 : sorted[count - 1]);
+    }
+
+    /**
+     * nearest rank
+     */
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,52 @@
+package codestory.replay;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * One game request of a request log, as the server answered it.
+ */
+@Data
+public class LoggedRequest {
+
+    /**
+     * line number in the log, from 1
+     */
+    private final int line;
+    private final Operation operation;
+    private final Map<String, String> parameters;
+    private final int status;
+    /**
+     * length of the response, -1 when the log has none: for nextCommand, the length of the command's name
+     */
+    private final int responseBytes;
+
+    public int intParameter(String name, int defaultValue) {
+        String value = parameters.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    public enum Operation {
+        RESET("reset"), CALL("call"), GO("go"), NEXT_COMMAND("nextCommand"), USER_HAS_ENTERED("userHasEntered"),
+        USER_HAS_EXITED("userHasExited"),;
+
+        private final String path;
+
+        Operation(String path) {
+            this.path = path;
+        }
+
+        /**
+         * @return null for any path but the game requests, e.g. <code>/</code> or <code>/tasks/trace</code>
+         */
+        public static Operation forPath(String path) {
+            for (Operation operation : values()) {
+                if (operation.path.equals(path)) {
+                    return operation;
+                }
+            }
+            return null;
+        }
+    }
+}
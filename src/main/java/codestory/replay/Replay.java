@@ -0,0 +1,149 @@
+package codestory.replay;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.engine.ElevatorEngine;
+import codestory.replay.LoggedRequest.Operation;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plays the requests of a game log against an engine, in the calling thread and without waiting between requests.
+ * <p/>
+ * The users of a log answered the commands of the logged engine: once the replayed engine decides otherwise, users
+ * enter and exit where it never opened its door, and the score it counts is only comparable between engines that
+ * follow the log. The log only keeps the length of the commands, so DOWN and OPEN cannot be told apart.
+ */
+public class Replay {
+
+    public static final int MAX_DIVERGENCES_KEPT = 100;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Optional<Boolean> NO = Optional.of(false);
+
+    private final List<LoggedRequest> requests;
+
+    public Replay(List<LoggedRequest> requests) {
+        this.requests = requests;
+    }
+
+    public ReplayReport run(ElevatorEngine engine) {
+        Map<Operation, LatencyRecorder> latencies = new EnumMap<>(Operation.class);
+        Map<Operation, Integer> errors = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyRecorder());
+            errors.put(operation, 0);
+        }
+        List<ReplayReport.Divergence> divergences = new ArrayList<>();
+        int divergenceCount = 0;
+        int ticks = 0;
+
+        long replayStart = System.nanoTime();
+        for (LoggedRequest request : requests) {
+            Operation operation = request.getOperation();
+            String replayed;
+            boolean failed = false;
+            try {
+                long start = System.nanoTime();
+                replayed = apply(engine, request);
+                latencies.get(operation).record(System.nanoTime() - start);
+            } catch (RuntimeException e) {
+                errors.put(operation, errors.get(operation) + 1);
+                failed = true;
+                replayed = e.getClass().getSimpleName();
+            }
+            if (operation == Operation.NEXT_COMMAND) {
+                ticks++;
+            }
+            String logged = divergence(request, replayed, failed);
+            if (logged != null) {
+                if (divergenceCount++ < MAX_DIVERGENCES_KEPT) {
+                    divergences.add(new ReplayReport.Divergence(request.getLine(), ticks, operation, logged,
+                            replayed));
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - replayStart;
+
+        Map<Operation, ReplayReport.Latencies> summaries = new EnumMap<>(Operation.class);
+        for (Map.Entry<Operation, LatencyRecorder> entry : latencies.entrySet()) {
+            summaries.put(entry.getKey(), entry.getValue().summary());
+        }
+        return new ReplayReport(engine.getClass().getSimpleName(), requests.size(), ticks, elapsed, score(engine),
+                summaries, errors, divergenceCount, divergences);
+    }
+
+    /**
+     * @return the command's name for nextCommand, an empty string for the other requests
+     */
+    private static String apply(ElevatorEngine engine, LoggedRequest request) {
+        switch (request.getOperation()) {
+            case RESET:
+                engine.reset(request.getParameters().get("cause"), request.intParameter("lowerFloor", 0),
+                        request.intParameter("higherFloor", 5), request.intParameter("cabinSize", 30));
+                return "";
+            case CALL:
+                engine.call(request.intParameter("atFloor", 0), Direction.valueOf(request.getParameters().get("to")));
+                return "";
+            case GO:
+                engine.go(request.intParameter("floorToGo", 0));
+                return "";
+            case NEXT_COMMAND:
+                return engine.nextCommand().name();
+            case USER_HAS_ENTERED:
+                engine.userHasEntered(null);
+                return "";
+            case USER_HAS_EXITED:
+                engine.userHasExited(null);
+                return "";
+            default:
+                throw new IllegalArgumentException("unknown operation " + request.getOperation());
+        }
+    }
+
+    /**
+     * @return what the server answered, or null when the replayed answer matches it
+     */
+    private static String divergence(LoggedRequest request, String replayed, boolean failed) {
+        boolean loggedFailure = request.getStatus() >= 400;
+        if (loggedFailure != failed) {
+            return "HTTP " + request.getStatus();
+        }
+        if (loggedFailure || request.getOperation() != Operation.NEXT_COMMAND || request.getResponseBytes() < 0) {
+            return null;
+        }
+        if (replayed.length() == request.getResponseBytes()) {
+            return null;
+        }
+        return loggedCommand(request.getResponseBytes());
+    }
+
+    /**
+     * @return every command with the logged length, e.g. <code>DOWN|OPEN</code>
+     */
+    private static String loggedCommand(int responseBytes) {
+        List<Command> commands = new ArrayList<>();
+        for (Command command : Command.values()) {
+            if (command.name().length() == responseBytes) {
+                commands.add(command);
+            }
+        }
+        return commands.isEmpty() ? responseBytes + " bytes" : Joiner.on('|').join(commands);
+    }
+
+    private static Integer score(ElevatorEngine engine) {
+        try {
+            JsonNode score = MAPPER.readTree(engine.getStateAsJson(NO, NO)).get("score");
+            return score != null && score.isInt() ? score.intValue() : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package codestory.replay;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import codestory.replay.LoggedRequest.Operation;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.yammer.dropwizard.cli.Command;
+import com.yammer.dropwizard.config.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <code>java -jar codestory.jar replay [--engine W2] [--warmups 5] use-cases/1.txt ...</code>: replays request logs
+ * against an engine, one game log after the other, and prints a {@link ReplayReport} for each.
+ */
+public class ReplayCommand extends Command {
+
+    public ReplayCommand() {
+        super("replay", "Replays game request logs against an engine, as fast as it answers");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        subparser.addArgument("--engine").setDefault(ReplayedEngine.W2.name())
+                .help("W1, W2, W2_COMPACT, W2_ALLOCATION_FREE, or the class name of an engine with a no-arg constructor");
+        subparser.addArgument("--warmups").type(Integer.class).setDefault(0)
+                .help("replays of each log left out of the report, for the JIT to compile the engine");
+        subparser.addArgument("logs").nargs("+").help("request logs, e.g. use-cases/1.txt");
+    }
+
+    @Override
+    public void run(Bootstrap<?> bootstrap, Namespace namespace) throws Exception {
+        ((Logger) LoggerFactory.getLogger("codestory")).setLevel(Level.WARN);
+        String engine = namespace.getString("engine");
+        int warmups = namespace.getInt("warmups");
+        List<String> logs = namespace.getList("logs");
+        for (String log : logs) {
+            List<LoggedRequest> requests;
+            try (BufferedReader reader = Files.newReader(new File(log), Charsets.UTF_8)) {
+                requests = AccessLogParser.read(reader);
+            }
+            Replay replay = new Replay(requests);
+            for (int warmup = 0; warmup < warmups; warmup++) {
+                replay.run(ReplayedEngine.create(engine));
+            }
+            print(log, replay.run(ReplayedEngine.create(engine)), System.out);
+        }
+    }
+
+    static void print(String log, ReplayReport report, PrintStream out) {
+        out.printf("%s: %d requests, %d ticks against %s in %.1f ms, %.0f ticks/s%n", log, report.getRequests(),
+                report.getTicks(), report.getEngine(), report.getElapsedNanos() / 1e6, report.getTicksPerSecond());
+        out.printf("  score: %s%n", report.getScore() == null ? "not reported by the engine" : report.getScore());
+        out.printf("  %-16s %8s %8s %10s %10s %10s %10s %10s%n", "latency (ns)", "count", "errors", "p50", "p90",
+                "p99", "p99.9", "max");
+        for (Map.Entry<Operation, ReplayReport.Latencies> entry : report.getLatencies().entrySet()) {
+            ReplayReport.Latencies latencies = entry.getValue();
+            int errors = report.getErrors().get(entry.getKey());
+            if (latencies.getCount() == 0 && errors == 0) {
+                continue;
+            }
+            out.printf("  %-16s %8d %8d %10d %10d %10d %10d %10d%n", entry.getKey(), latencies.getCount(), errors,
+                    latencies.getP50(), latencies.getP90(), latencies.getP99(), latencies.getP999(),
+                    latencies.getMax());
+        }
+        out.printf("  divergences: %d%n", report.getDivergenceCount());
+        for (ReplayReport.Divergence divergence : report.getDivergences()) {
+            out.printf("    line %d, tick %d, %s: logged %s, replayed %s%n", divergence.getLine(),
+                    divergence.getTick(), divergence.getOperation(), divergence.getLogged(),
+                    divergence.getReplayed());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package codestory.replay;
+
+import codestory.replay.LoggedRequest.Operation;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a {@link Replay} measured. Latencies are in nanoseconds, and only cover the engine's work.
+ */
+@Data
+public class ReplayReport {
+
+    private final String engine;
+    private final int requests;
+    private final int ticks;
+    private final long elapsedNanos;
+    /**
+     * the score the engine counted, null when its state does not tell it (W1)
+     */
+    private final Integer score;
+    private final Map<Operation, Latencies> latencies;
+    private final Map<Operation, Integer> errors;
+    private final int divergenceCount;
+    /**
+     * the first divergences, in log order
+     */
+    private final List<Divergence> divergences;
+
+    public double getTicksPerSecond() {
+        return elapsedNanos == 0 ? 0 : ticks * 1e9 / elapsedNanos;
+    }
+
+    @Data
+    public static class Latencies {
+        private final int count;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+    }
+
+    /**
+     * A request the engine did not answer like the logged server: another command, or a failure where the server
+     * succeeded (and the other way round).
+     */
+    @Data
+    public static class Divergence {
+        private final int line;
+        private final int tick;
+        private final Operation operation;
+        private final String logged;
+        private final String replayed;
+    }
+}
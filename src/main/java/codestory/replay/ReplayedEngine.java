@@ -0,0 +1,81 @@
+package codestory.replay;
+
+import codestory.EngineConfiguration;
+import codestory.core.engine.DecisionTracer;
+import codestory.core.engine.ElevatorEngine;
+import codestory.core.engine.LookaheadElevator;
+import codestory.core.engine.S03E01W1Elevator;
+import codestory.core.engine.S03E01W2Elevator;
+
+/**
+ * The engines a replay or a simulation can be run against by name; any other engine is given by its class name. W2
+ * engines run without decision tracing, which would be most of what a replay measures.
+ */
+public enum ReplayedEngine {
+    W1 {
+        @Override
+        public ElevatorEngine create(EngineConfiguration configuration) {
+            return new S03E01W1Elevator();
+        }
+    },
+    W2 {
+        @Override
+        public ElevatorEngine create(EngineConfiguration configuration) {
+            return w2(configuration);
+        }
+    },
+    W2_COMPACT {
+        @Override
+        public ElevatorEngine create(EngineConfiguration configuration) {
+            configuration.setCompactUserStore(true);
+            return w2(configuration);
+        }
+    },
+    W2_ALLOCATION_FREE {
+        @Override
+        public ElevatorEngine create(EngineConfiguration configuration) {
+            configuration.setAllocationFree(true);
+            return w2(configuration);
+        }
+    },
+    LOOKAHEAD {
+        @Override
+        public ElevatorEngine create(EngineConfiguration configuration) {
+            configuration.setLookahead(true);
+            return w2(configuration);
+        }
+    },
+    ROLLOUTS {
+        @Override
+        public ElevatorEngine create(EngineConfiguration configuration) {
+            configuration.setLookahead(true);
+            configuration.setLookaheadPlanning(LookaheadElevator.Planning.ROLLOUTS);
+            return w2(configuration);
+        }
+    },;
+
+    public ElevatorEngine create() {
+        return create(new EngineConfiguration());
+    }
+
+    /**
+     * @param configuration the settings the engine starts from, to which it adds its own; W1 takes none
+     */
+    public abstract ElevatorEngine create(EngineConfiguration configuration);
+
+    /**
+     * @param engine one of these names, or the class name of an engine with a no-arg constructor
+     */
+    public static ElevatorEngine create(String engine) throws ReflectiveOperationException {
+        for (ReplayedEngine replayed : values()) {
+            if (replayed.name().equals(engine)) {
+                return replayed.create();
+            }
+        }
+        return Class.forName(engine).asSubclass(ElevatorEngine.class).newInstance();
+    }
+
+    private static ElevatorEngine w2(EngineConfiguration configuration) {
+        return S03E01W2Elevator.create(configuration, new DecisionTracer(DecisionTracer.Sampling.OFF, 1));
+    }
+}
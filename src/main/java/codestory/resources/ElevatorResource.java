@@ -1,7 +1,14 @@
 package codestory.resources;
 
+import codestory.core.AllocationMeter;
+import codestory.core.Command;
 import codestory.core.Direction;
+import codestory.core.engine.BatchingElevatorEngine;
 import codestory.core.engine.ElevatorEngine;
+import codestory.core.engine.EventBatch;
+import codestory.core.engine.MultiCabinEngine;
+import codestory.core.engine.SessionRegistry;
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.inject.Inject;
 
@@ -13,46 +20,77 @@ import javax.ws.rs.core.Response;
  * User: cfurmaniak
  * Date: 31/10/13
  * Time: 19:03
+ * <p/>
+ * Mutations are not serialized here: the engine bound by ElevatorModule takes care of it (see
+ * {@link codestory.core.engine.SynchronizedElevatorEngine} and {@link codestory.core.engine.EventLoopElevatorEngine}).
+ * Requests without a <code>cabin</code> are for cabin 0; other cabins need a {@link MultiCabinEngine}. Requests under
+ * <code>/sessions/{session}</code> go to the engine of that session instead (see {@link SessionRegistry}).
  */
 @Produces(MediaType.TEXT_PLAIN)
 @Path("/")
 public class ElevatorResource {
 
     private final ElevatorEngine elevatorEngine;
+    private final AllocationMeter allocationMeter;
+    private final SessionRegistry sessions;
 
     @Inject
-    public ElevatorResource(ElevatorEngine engine) {
+    public ElevatorResource(ElevatorEngine engine, AllocationMeter allocationMeter, SessionRegistry sessions) {
         this.elevatorEngine = engine;
+        this.allocationMeter = allocationMeter;
+        this.sessions = sessions;
+    }
+
+    /**
+     * The same requests, for the game of one session, e.g. <code>/sessions/practice/nextCommand</code>.
+     */
+    @Path("sessions/{session}")
+    public ElevatorResource session(@PathParam("session") String session) {
+        if (sessions == null) {
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        }
+        return new ElevatorResource(sessions.engine(session), allocationMeter, null);
     }
 
     @GET
-    public String getState(@QueryParam("includeFullUserList")Optional<Boolean> includeFullUserList,
-                           @QueryParam("includeLastRequests") Optional<Boolean> includeLastRequests) {
-        return elevatorEngine.getState(includeFullUserList,includeLastRequests);
+    public byte[] getState(@QueryParam("includeFullUserList")Optional<Boolean> includeFullUserList,
+                           @QueryParam("includeLastRequests") Optional<Boolean> includeLastRequests,
+                           @QueryParam("cabin") @DefaultValue("0") int cabin) {
+        if (cabin != 0) {
+            return multiCabinEngine().getStateAsJson(cabin, includeFullUserList, includeLastRequests);
+        }
+        return elevatorEngine.getStateAsJson(includeFullUserList,includeLastRequests);
     }
 
     @Path("call")
     @GET
     public Response call(@QueryParam("atFloor") int atFloor, @QueryParam("to") String to) {
-        synchronized (elevatorEngine) {
-            elevatorEngine.call(atFloor, Direction.valueOf(to));
-        }
+        Direction direction = Direction.valueOf(to);
+        long start = allocationMeter.start();
+        elevatorEngine.call(atFloor, direction);
+        allocationMeter.record(AllocationMeter.Operation.CALL, start);
         return Response.ok().build();
     }
 
     @Path("go")
     @GET
-    public Response go(@QueryParam("floorToGo") int floorToGo) {
-        synchronized (elevatorEngine) {
+    public Response go(@QueryParam("floorToGo") int floorToGo, @QueryParam("cabin") @DefaultValue("0") int cabin) {
+        long start = allocationMeter.start();
+        if (cabin != 0) {
+            multiCabinEngine().go(cabin, floorToGo);
+        } else {
             elevatorEngine.go(floorToGo);
         }
+        allocationMeter.record(AllocationMeter.Operation.GO, start);
         return Response.ok().build();
     }
 
     @Path("userHasEntered")
     @GET
-    public Response userHasEntered() {
-        synchronized (elevatorEngine) {
+    public Response userHasEntered(@QueryParam("cabin") @DefaultValue("0") int cabin) {
+        if (cabin != 0) {
+            multiCabinEngine().userHasEntered(cabin, null);
+        } else {
             elevatorEngine.userHasEntered(null);
         }
         return Response.ok().build();
@@ -60,8 +98,10 @@ public class ElevatorResource {
 
     @Path("userHasExited")
     @GET
-    public Response userHasExited() {
-        synchronized (elevatorEngine) {
+    public Response userHasExited(@QueryParam("cabin") @DefaultValue("0") int cabin) {
+        if (cabin != 0) {
+            multiCabinEngine().userHasExited(cabin, null);
+        } else {
             elevatorEngine.userHasExited(null);
         }
         return Response.ok().build();
@@ -71,8 +111,11 @@ public class ElevatorResource {
     @GET
     public Response reset(@QueryParam("cause") String cause, @QueryParam("lowerFloor") @DefaultValue("0") int lowerFloor,
                           @QueryParam("higherFloor") @DefaultValue("5") int higherFloor,
-                          @QueryParam("cabinSize") @DefaultValue("30") int cabinSize) {
-        synchronized (elevatorEngine) {
+                          @QueryParam("cabinSize") @DefaultValue("30") int cabinSize,
+                          @QueryParam("cabinCount") Optional<Integer> cabinCount) {
+        if (cabinCount.isPresent()) {
+            multiCabinEngine().reset(cause, lowerFloor, higherFloor, cabinSize, cabinCount.get());
+        } else {
             elevatorEngine.reset(cause, lowerFloor, higherFloor, cabinSize);
         }
         return Response.ok().build();
@@ -81,8 +124,53 @@ public class ElevatorResource {
     @Path("nextCommand")
     @GET
     public String nextCommand() {
-        synchronized (elevatorEngine) {
-            return elevatorEngine.nextCommand().toString();
+        long start = allocationMeter.start();
+        Command command = elevatorEngine.nextCommand();
+        allocationMeter.record(AllocationMeter.Operation.NEXT_COMMAND, start);
+        return command.toString();
+    }
+
+    /**
+     * One command per line, by cabin number; a single cabin engine answers its nextCommand.
+     */
+    @Path("nextCommands")
+    @GET
+    public String nextCommands() {
+        if (!(elevatorEngine instanceof MultiCabinEngine)) {
+            return nextCommand();
+        }
+        return Joiner.on('\n').join(((MultiCabinEngine) elevatorEngine).nextCommands());
+    }
+
+    /**
+     * Game events posted as an {@link EventBatch}, applied at once and in order; answers the command of the nextCommand
+     * ending the batch, nothing if it does not end with one. A batch with a malformed event or a floor out of the
+     * building is refused whole, as are batches to an engine which cannot apply them at once: a
+     * {@link MultiCabinEngine} has no lock on its whole building.
+     */
+    @Path("batch")
+    @POST
+    @Consumes(MediaType.TEXT_PLAIN)
+    public String batch(String body) {
+        if (!(elevatorEngine instanceof BatchingElevatorEngine)) {
+            throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST)
+                    .entity("this engine cannot apply a batch at once, see engine.multiCabin").build());
+        }
+        Command command;
+        try {
+            command = ((BatchingElevatorEngine) elevatorEngine).apply(EventBatch.parse(body));
+        } catch (IllegalArgumentException e) {
+            throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST)
+                    .entity(e.getMessage()).build());
+        }
+        return command == null ? "" : command.toString();
+    }
+
+    private MultiCabinEngine multiCabinEngine() {
+        if (!(elevatorEngine instanceof MultiCabinEngine)) {
+            throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST)
+                    .entity("this engine drives a single cabin, see engine.multiCabin").build());
         }
+        return (MultiCabinEngine) elevatorEngine;
     }
 }
@@ -0,0 +1,21 @@
+package codestory.resources;
+
+import codestory.core.exception.EngineOverloadedException;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * An engine refusing events because too many are pending answers 503, the game server will call again.
+ */
+@Provider
+public class EngineOverloadedExceptionMapper implements ExceptionMapper<EngineOverloadedException> {
+
+    @Override
+    public Response toResponse(EngineOverloadedException exception) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE).type(MediaType.TEXT_PLAIN)
+                .entity(exception.getMessage()).build();
+    }
+}
@@ -0,0 +1,59 @@
+package codestory.simulator;
+
+import java.util.Random;
+
+/**
+ * Draws the users showing up at each floor: a Poisson number of them by tick, with the floor's arrival rate, each
+ * going to a floor drawn from the destination weights.
+ */
+class Arrivals {
+
+    private final Random random;
+    private final int lowerFloor;
+    private final double[] rates;
+    private final double[] weights;
+
+    Arrivals(SimulationConfiguration configuration) {
+        this.random = new Random(configuration.getSeed());
+        this.lowerFloor = configuration.getLowerFloor();
+        int nbFloors = configuration.getHigherFloor() - configuration.getLowerFloor() + 1;
+        this.rates = new double[nbFloors];
+        this.weights = new double[nbFloors];
+        for (int floor = 0; floor < nbFloors; floor++) {
+            rates[floor] = floor < configuration.getArrivalRates().size() ?
+                    configuration.getArrivalRates().get(floor) : configuration.getArrivalRate();
+            weights[floor] = floor < configuration.getDestinationWeights().size() ?
+                    configuration.getDestinationWeights().get(floor) : 1;
+        }
+    }
+
+    int arriving(int floor) {
+        double limit = Math.exp(-rates[floor - lowerFloor]);
+        int count = 0;
+        for (double product = random.nextDouble(); product > limit; product *= random.nextDouble()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return a floor other than <code>from</code>, or <code>from</code> when no other floor has any weight
+     */
+    int destination(int from) {
+        double total = 0;
+        for (int floor = 0; floor < weights.length; floor++) {
+            if (floor + lowerFloor != from) {
+                total += weights[floor];
+            }
+        }
+        double drawn = random.nextDouble() * total;
+        int destination = from;
+        for (int floor = 0; floor < weights.length && drawn >= 0; floor++) {
+            if (floor + lowerFloor != from && weights[floor] > 0) {
+                destination = floor + lowerFloor;
+                drawn -= weights[floor];
+            }
+        }
+        return destination;
+    }
+}
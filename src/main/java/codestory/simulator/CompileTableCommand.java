@@ -0,0 +1,53 @@
+package codestory.simulator;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import codestory.core.engine.DecisionTable;
+import codestory.core.engine.ElevatorEngine;
+import codestory.core.engine.S03E01W2Elevator;
+import codestory.replay.ReplayedEngine;
+import com.yammer.dropwizard.cli.Command;
+import com.yammer.dropwizard.config.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+
+/**
+ * <code>java -jar codestory.jar compile-table --floors 6 --engine W2</code>: asks a W2 engine, planning ahead or not,
+ * what to do in every situation of a small building, and writes the {@link DecisionTable} the
+ * <code>engine.decisionTable</code> setting loads.
+ */
+public class CompileTableCommand extends Command {
+
+    public CompileTableCommand() {
+        super("compile-table", "Compiles the decisions of an engine in every situation of a small building");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        subparser.addArgument("--floors").type(Integer.class).setDefault(S03E01W2Elevator.DEFAULT_HIGHER_FLOOR + 1)
+                .help("floors of the building, from 0, " + DecisionTable.MAX_FLOORS + " at most");
+        subparser.addArgument("--cabin-size").type(Integer.class).setDefault(S03E01W2Elevator.DEFAULT_CABIN_SIZE);
+        subparser.addArgument("--engine").setDefault(ReplayedEngine.W2.name())
+                .help("W2, LOOKAHEAD or ROLLOUTS: a planner decides in its budget for each situation");
+        subparser.addArgument("--output").setDefault("decision-table.bin");
+    }
+
+    @Override
+    public void run(Bootstrap<?> bootstrap, Namespace namespace) throws Exception {
+        ((Logger) LoggerFactory.getLogger("codestory")).setLevel(Level.ERROR);
+        ElevatorEngine engine = ReplayedEngine.create(namespace.getString("engine"));
+        if (!(engine instanceof S03E01W2Elevator)) {
+            throw new IllegalArgumentException("engine <" + namespace.getString("engine") + "> is not a W2 engine");
+        }
+        engine.reset("compile-table", 0, namespace.getInt("floors") - 1, namespace.getInt("cabin_size"));
+        long start = System.currentTimeMillis();
+        DecisionTable table = DecisionTable.compile((S03E01W2Elevator) engine);
+        File output = new File(namespace.getString("output"));
+        table.writeTo(output);
+        System.out.printf("%d situations compiled in %d ms into %s (%d bytes)%n", table.size(),
+                System.currentTimeMillis() - start, output, output.length());
+    }
+}
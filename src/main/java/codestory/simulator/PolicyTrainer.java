@@ -0,0 +1,340 @@
+package codestory.simulator;
+
+import codestory.EngineConfiguration;
+import codestory.core.Command;
+import codestory.core.engine.DecisionTracer;
+import codestory.core.engine.TabulatedElevator;
+import codestory.core.engine.PolicyTable;
+import codestory.core.engine.S03E01W2Elevator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Learns a {@link PolicyTable} for a building and a traffic by tabular Q-learning against the {@link Simulator}.
+ * <p/>
+ * A situation only tells where users are, not how many nor for how long: greedy Q-learning over it loops (doing nothing
+ * is worth as much as moving when both lead to the same situation). So the trainer learns the values of the commands
+ * around the policy it holds, W2 at first: every thread of the pool plays its own games on a copy of the values,
+ * following the policy but for a command at random now and then, and the copies are merged. The policy then takes the
+ * commands learnt to be worth most over its own, the surest first, and keeps them only if it scores better on
+ * evaluation games training never plays; otherwise it tries half as many next epoch.
+ */
+public class PolicyTrainer {
+
+    private static final Command[] COMMANDS = Command.values();
+    private static final float LEARNING_RATE = 0.1f;
+    private static final float DISCOUNT = 0.95f;
+    private static final double EXPLORATION = 0.1;
+    /**
+     * times a command must be learnt in a situation before the policy takes it there
+     */
+    private static final int TRUSTED_VISITS = 20;
+    private static final int IMPROVEMENTS = 16;
+    /**
+     * evaluation games are seeded from here on, training games below
+     */
+    private static final long EVALUATION_SEEDS = 1000000;
+
+    private final ForkJoinPool pool;
+    private final SimulationConfiguration configuration;
+    private final int gamesByTask;
+    private final int evaluationGames;
+    private final EngineConfiguration engineConfiguration = new EngineConfiguration();
+    private final DecisionTracer noTraces = new DecisionTracer(DecisionTracer.Sampling.OFF, 1);
+
+    /**
+     * @param template ticks, seed and maxUsers of the games, the building and the traffic are the trainer's
+     */
+    public PolicyTrainer(ForkJoinPool pool, SimulationConfiguration template, int floors, int cabinSize,
+                         TrafficProfile profile, int gamesByTask, int evaluationGames) {
+        this.pool = pool;
+        this.configuration = template.withSeed(template.getSeed());
+        configuration.setLowerFloor(0);
+        configuration.setHigherFloor(floors - 1);
+        configuration.setCabinSize(cabinSize);
+        configuration.setTickMillis(0);
+        profile.apply(configuration, floors);
+        this.gamesByTask = gamesByTask;
+        this.evaluationGames = evaluationGames;
+        engineConfiguration.setAllocationFree(true);
+    }
+
+    public TrainedPolicy train(int epochs) {
+        S03E01W2Elevator w2 = new S03E01W2Elevator(engineConfiguration, noTraces);
+        w2.reset("training", configuration.getLowerFloor(), configuration.getHigherFloor(),
+                configuration.getCabinSize());
+        byte[] policy = PolicyTable.decisionsOf(w2);
+        Values values = new Values(configuration.getHigherFloor() - configuration.getLowerFloor() + 1,
+                policy.length);
+        PolicyTable best = PolicyTable.of(w2, policy);
+        double w2Score = evaluate(best);
+        double bestScore = w2Score;
+        int bestEpoch = 0;
+        int improvements = IMPROVEMENTS;
+        boolean[] rejected = new boolean[policy.length * COMMANDS.length];
+        for (int epoch = 1; epoch <= epochs; epoch++) {
+            values = values.merge(learn(values, policy, epoch));
+            byte[] improved = values.improve(policy, improvements, rejected);
+            if (improved == null) {
+                continue;
+            }
+            PolicyTable table = PolicyTable.of(w2, improved);
+            double score = evaluate(table);
+            if (score > bestScore) {
+                policy = improved;
+                best = table;
+                bestScore = score;
+                bestEpoch = epoch;
+            } else if (improvements > 1) {
+                improvements /= 2;
+            } else {
+                for (int situation = 0; situation < policy.length; situation++) {
+                    if (improved[situation] != policy[situation]) {
+                        rejected[situation * COMMANDS.length + improved[situation] - 1] = true;
+                    }
+                }
+            }
+        }
+        return new TrainedPolicy(best, bestScore, w2Score, bestEpoch);
+    }
+
+    private List<Values> learn(final Values values, final byte[] policy, final int epoch) {
+        final int tasks = pool.getParallelism();
+        List<Callable<Values>> learners = new ArrayList<>();
+        for (int task = 0; task < tasks; task++) {
+            final long seed = configuration.getSeed() + ((long) (epoch - 1) * tasks + task) * gamesByTask;
+            learners.add(new Callable<Values>() {
+                @Override
+                public Values call() {
+                    LearningElevator learner = new LearningElevator(engineConfiguration, noTraces, values.copy(),
+                            policy, new Random(seed));
+                    for (int game = 0; game < gamesByTask; game++) {
+                        new Simulator(configuration.withSeed(seed + game), learner).run();
+                    }
+                    return learner.values;
+                }
+            });
+        }
+        return invokeAll(learners);
+    }
+
+    /**
+     * @return the points per tick <code>table</code> scores over the evaluation games
+     */
+    private double evaluate(final PolicyTable table) {
+        List<Callable<SimulationReport>> games = new ArrayList<>();
+        for (int game = 0; game < evaluationGames; game++) {
+            final SimulationConfiguration seeded = configuration.withSeed(configuration.getSeed() + EVALUATION_SEEDS +
+                    game);
+            games.add(new Callable<SimulationReport>() {
+                @Override
+                public SimulationReport call() {
+                    return new Simulator(seeded, new TabulatedElevator(engineConfiguration, noTraces, table)).run();
+                }
+            });
+        }
+        long score = 0;
+        long ticks = 0;
+        for (SimulationReport report : invokeAll(games)) {
+            score += report.getScore();
+            ticks += report.getTicks();
+        }
+        return ticks == 0 ? 0 : (double) score / ticks;
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>();
+        try {
+            for (Future<T> result : pool.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while training", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("a simulation failed", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * What each command is worth in each situation, how much that varies and how many times it was learnt.
+     */
+    private static class Values {
+        private final int nbFloors;
+        private final float[] values;
+        private final float[] squares;
+        private final int[] visits;
+
+        private Values(int nbFloors, int situations) {
+            this(nbFloors, new float[situations * COMMANDS.length], new float[situations * COMMANDS.length],
+                    new int[situations * COMMANDS.length]);
+        }
+
+        private Values(int nbFloors, float[] values, float[] squares, int[] visits) {
+            this.nbFloors = nbFloors;
+            this.values = values;
+            this.squares = squares;
+            this.visits = visits;
+        }
+
+        private Values copy() {
+            return new Values(nbFloors, values.clone(), squares.clone(), visits.clone());
+        }
+
+        private float valueOf(int situation, int command) {
+            return values[situation * COMMANDS.length + command];
+        }
+
+        /**
+         * Moves the value of <code>command</code> in <code>situation</code> towards <code>target</code>: the first
+         * times it is learnt, the value is the mean of the targets, so that one unlucky game does not bury a command.
+         */
+        private void learn(int situation, int command, float target) {
+            int index = situation * COMMANDS.length + command;
+            visits[index]++;
+            float rate = Math.max(1f / visits[index], LEARNING_RATE);
+            values[index] += rate * (target - values[index]);
+            squares[index] += rate * (target * target - squares[index]);
+        }
+
+        /**
+         * @return the standard error of the value of a command learnt at <code>index</code>
+         */
+        private double errorOf(int index) {
+            double variance = Math.max(0, squares[index] - values[index] * values[index]);
+            return Math.sqrt(variance / Math.min(visits[index], 1 / LEARNING_RATE));
+        }
+
+        /**
+         * @return the values each copy learnt, weighted by how many times it learnt them since it was copied
+         */
+        private Values merge(List<Values> copies) {
+            Values merged = copy();
+            for (int index = 0; index < values.length; index++) {
+                long learnt = 0;
+                double sum = 0;
+                double sumOfSquares = 0;
+                for (Values copy : copies) {
+                    int times = copy.visits[index] - visits[index];
+                    learnt += times;
+                    sum += (double) copy.values[index] * times;
+                    sumOfSquares += (double) copy.squares[index] * times;
+                }
+                if (learnt > 0) {
+                    merged.values[index] = (float) (sum / learnt);
+                    merged.squares[index] = (float) (sumOfSquares / learnt);
+                    merged.visits[index] += learnt;
+                }
+            }
+            return merged;
+        }
+
+        /**
+         * @return <code>policy</code> with the <code>improvements</code> commands learnt to be surely worth most over
+         * its own, but those evaluation <code>rejected</code> already, null if none is
+         */
+        private byte[] improve(byte[] policy, int improvements, boolean[] rejected) {
+            float[] gains = new float[improvements];
+            int[] situations = new int[improvements];
+            int[] commands = new int[improvements];
+            int found = 0;
+            for (int situation = 0; situation < policy.length; situation++) {
+                int current = policy[situation] - 1;
+                if (current < 0 || visits[situation * COMMANDS.length + current] < TRUSTED_VISITS) {
+                    continue;
+                }
+                double currentError = errorOf(situation * COMMANDS.length + current);
+                for (Command command : COMMANDS) {
+                    int index = situation * COMMANDS.length + command.ordinal();
+                    float gain = values[index] - valueOf(situation, current);
+                    if (rejected[index] || visits[index] < TRUSTED_VISITS ||
+                            gain <= 2 * Math.hypot(errorOf(index), currentError) ||
+                            !PolicyTable.accepts(nbFloors, situation, command) ||
+                            found == improvements && gain <= gains[found - 1]) {
+                        continue;
+                    }
+                    int rank = found < improvements ? found++ : found - 1;
+                    while (rank > 0 && gains[rank - 1] < gain) {
+                        gains[rank] = gains[rank - 1];
+                        situations[rank] = situations[rank - 1];
+                        commands[rank] = commands[rank - 1];
+                        rank--;
+                    }
+                    gains[rank] = gain;
+                    situations[rank] = situation;
+                    commands[rank] = command.ordinal();
+                }
+            }
+            if (found == 0) {
+                return null;
+            }
+            byte[] improved = policy.clone();
+            for (int rank = found - 1; rank >= 0; rank--) {
+                if (valueOf(situations[rank], improved[situations[rank]] - 1) < valueOf(situations[rank],
+                        commands[rank])) {
+                    improved[situations[rank]] = (byte) (commands[rank] + 1);
+                }
+            }
+            return improved;
+        }
+    }
+
+    /**
+     * Follows a policy, but for a command at random now and then, and learns the value of each decision at the next
+     * one: the points scored meanwhile and what the policy's command is worth from there.
+     */
+    private static class LearningElevator extends S03E01W2Elevator {
+        private final Values values;
+        private final byte[] policy;
+        private final Random random;
+        private int previousSituation = -1;
+        private int previousCommand;
+        private int previousScore;
+
+        private LearningElevator(EngineConfiguration configuration, DecisionTracer tracer, Values values,
+                                 byte[] policy, Random random) {
+            super(configuration, tracer);
+            this.values = values;
+            this.policy = policy;
+            this.random = random;
+        }
+
+        @Override
+        public LearningElevator reset(String cause, int lowerFloor, int higherFloor, int cabinSize) {
+            super.reset(cause, lowerFloor, higherFloor, cabinSize);
+            previousSituation = -1;
+            return this;
+        }
+
+        @Override
+        protected Command decide() {
+            int situation = PolicyTable.situationOf(this);
+            if (situation < 0 || policy[situation] == 0) {
+                previousSituation = -1;
+                return super.decide();
+            }
+            Command command = COMMANDS[policy[situation] - 1];
+            int score = getScore().getScore();
+            if (previousSituation >= 0) {
+                values.learn(previousSituation, previousCommand,
+                        score - previousScore + DISCOUNT * values.valueOf(situation, command.ordinal()));
+            }
+            if (random.nextDouble() < EXPLORATION) {
+                do {
+                    command = COMMANDS[random.nextInt(COMMANDS.length)];
+                } while (!PolicyTable.accepts(values.nbFloors, situation, command));
+            }
+            previousSituation = situation;
+            previousCommand = command.ordinal();
+            previousScore = score;
+            return command;
+        }
+    }
+}
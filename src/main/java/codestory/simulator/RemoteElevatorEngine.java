@@ -0,0 +1,187 @@
+package codestory.simulator;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.User;
+import codestory.core.engine.ElevatorEngine;
+import codestory.core.engine.EventBatch;
+import codestory.core.exception.ElevatorIsBrokenException;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+
+/**
+ * A running ElevatorService seen as an engine: each call is the request the game server would send, e.g.
+ * <code>http://localhost:8080/</code>, or <code>http://localhost:8080/sessions/simulation/</code> to leave the main
+ * game alone. A request that does not get a 200 is an {@link ElevatorIsBrokenException}.
+ * <p/>
+ * When <code>batching</code>, call, go, userHasEntered and userHasExited are held back and posted with the next
+ * nextCommand as a single {@link EventBatch}, one round trip per tick; reset and getState post the held events first.
+ * An event the service refuses then fails the request that posts it.
+ */
+public class RemoteElevatorEngine implements ElevatorEngine {
+
+    private static final int TIMEOUT_MILLIS = 10000;
+    private final String baseUrl;
+    private final boolean batching;
+    private EventBatch pending = new EventBatch();
+    private int lowerFloor = DEFAULT_LOWER_FLOOR;
+    private int higherFloor = DEFAULT_HIGHER_FLOOR;
+
+    public RemoteElevatorEngine(String baseUrl) {
+        this(baseUrl, false);
+    }
+
+    public RemoteElevatorEngine(String baseUrl, boolean batching) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.batching = batching;
+    }
+
+    @Override
+    public ElevatorEngine call(Integer atFloor, Direction to) {
+        if (batching) {
+            pending.call(atFloor, to);
+        } else {
+            get("call?atFloor=" + atFloor + "&to=" + to);
+        }
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine go(Integer floorToGo) {
+        if (batching) {
+            pending.go(floorToGo);
+        } else {
+            get("go?floorToGo=" + floorToGo);
+        }
+        return this;
+    }
+
+    @Override
+    public Command nextCommand() {
+        if (batching) {
+            EventBatch batch = pending.nextCommand();
+            pending = new EventBatch();
+            return Command.valueOf(new String(post("batch", batch.toString()), Charsets.UTF_8).trim());
+        }
+        return Command.valueOf(new String(get("nextCommand"), Charsets.UTF_8).trim());
+    }
+
+    @Override
+    public ElevatorEngine userHasEntered(User user) {
+        if (batching) {
+            pending.userHasEntered();
+        } else {
+            get("userHasEntered");
+        }
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine userHasExited(User user) {
+        if (batching) {
+            pending.userHasExited();
+        } else {
+            get("userHasExited");
+        }
+        return this;
+    }
+
+    @Override
+    public ElevatorEngine reset(String cause, int lowerFloor, int higherFloor, int cabinSize) {
+        flush();
+        get("reset?lowerFloor=" + lowerFloor + "&higherFloor=" + higherFloor + "&cabinSize=" + cabinSize
+                + (cause == null ? "" : "&cause=" + encode(cause)));
+        this.lowerFloor = lowerFloor;
+        this.higherFloor = higherFloor;
+        return this;
+    }
+
+    @Override
+    public Integer getLowerFloor() {
+        return lowerFloor;
+    }
+
+    @Override
+    public Integer getHigherFloor() {
+        return higherFloor;
+    }
+
+    @Override
+    public String getState(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests) {
+        return new String(getStateAsJson(oIncludeFullUserList, oIncludeLastRequests), Charsets.UTF_8);
+    }
+
+    @Override
+    public byte[] getStateAsJson(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests) {
+        flush();
+        return get("?includeFullUserList=" + oIncludeFullUserList.or(false) + "&includeLastRequests="
+                + oIncludeLastRequests.or(false));
+    }
+
+    private void flush() {
+        if (!pending.isEmpty()) {
+            EventBatch batch = pending;
+            pending = new EventBatch();
+            post("batch", batch.toString());
+        }
+    }
+
+    private byte[] get(String request) {
+        return send("GET", request, null);
+    }
+
+    private byte[] post(String request, String body) {
+        return send("POST", request, body.getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Bodies are read to the end, so that the connection is kept alive for the next request.
+     */
+    private byte[] send(String method, String request, byte[] content) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + request).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            if (content != null) {
+                connection.setRequestMethod(method);
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+                connection.setFixedLengthStreamingMode(content.length);
+                try (OutputStream output = connection.getOutputStream()) {
+                    output.write(content);
+                }
+            }
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                InputStream error = connection.getErrorStream();
+                if (error != null) {
+                    ByteStreams.toByteArray(error);
+                    error.close();
+                }
+                throw new ElevatorIsBrokenException(method + " /" + request + " answered " + status);
+            }
+            try (InputStream body = connection.getInputStream()) {
+                return ByteStreams.toByteArray(body);
+            }
+        } catch (IOException e) {
+            throw new ElevatorIsBrokenException(method + " /" + request + " failed: " + e.getMessage());
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, Charsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
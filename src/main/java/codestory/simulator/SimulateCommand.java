@@ -0,0 +1,93 @@
+package codestory.simulator;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import codestory.core.engine.ElevatorEngine;
+import codestory.core.engine.LookaheadElevator;
+import codestory.replay.ReplayedEngine;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.yammer.dropwizard.cli.Command;
+import com.yammer.dropwizard.config.Bootstrap;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.PrintStream;
+
+/**
+ * <code>java -jar codestory.jar simulate [--scenario rush-hour.yml] [--engine W2 | --url http://localhost:8080/]</code>:
+ * plays a simulated game against an engine, in-process or through the HTTP API of a running service, and prints its
+ * {@link SimulationReport}.
+ */
+public class SimulateCommand extends Command {
+
+    public SimulateCommand() {
+        super("simulate", "Plays the game server against an engine, in-process or over HTTP");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        subparser.addArgument("--scenario").help("YAML simulation configuration, see SimulationConfiguration");
+        subparser.addArgument("--engine").setDefault(ReplayedEngine.W2.name())
+                .help("W1, W2, W2_COMPACT, W2_ALLOCATION_FREE, or the class name of an engine with a no-arg constructor");
+        subparser.addArgument("--url").help("plays against the service at this URL instead, e.g. http://localhost:8080/");
+        subparser.addArgument("--batch").action(Arguments.storeTrue())
+                .help("with --url, posts the events of each tick with its nextCommand in a single batch request");
+        subparser.addArgument("--ticks").type(Integer.class).help("overrides the scenario's ticks");
+        subparser.addArgument("--seed").type(Long.class).help("overrides the scenario's seed");
+        subparser.addArgument("--tick-millis").dest("tickMillis").type(Long.class)
+                .help("overrides the scenario's time between ticks");
+    }
+
+    @Override
+    public void run(Bootstrap<?> bootstrap, Namespace namespace) throws Exception {
+        ((Logger) LoggerFactory.getLogger("codestory.core")).setLevel(Level.WARN);
+        SimulationConfiguration configuration = new SimulationConfiguration();
+        String scenario = namespace.getString("scenario");
+        if (scenario != null) {
+            configuration = new ObjectMapper(new YAMLFactory()).readValue(new File(scenario),
+                    SimulationConfiguration.class);
+        }
+        if (namespace.getInt("ticks") != null) {
+            configuration.setTicks(namespace.getInt("ticks"));
+        }
+        if (namespace.getLong("seed") != null) {
+            configuration.setSeed(namespace.getLong("seed"));
+        }
+        if (namespace.getLong("tickMillis") != null) {
+            configuration.setTickMillis(namespace.getLong("tickMillis"));
+        }
+        String url = namespace.getString("url");
+        ElevatorEngine engine = url != null ? new RemoteElevatorEngine(url, namespace.getBoolean("batch")) :
+                ReplayedEngine.create(namespace.getString("engine"));
+        print(url != null ? url : namespace.getString("engine"), new Simulator(configuration, engine).run(),
+                System.out);
+        if (engine instanceof LookaheadElevator) {
+            print((LookaheadElevator) engine, System.out);
+        }
+    }
+
+    static void print(LookaheadElevator engine, PrintStream out) {
+        long decisions = engine.getPlannedDecisions() + engine.getGreedyDecisions();
+        out.printf("  decisions: %d planned, %d greedy for want of time%n", engine.getPlannedDecisions(),
+                engine.getGreedyDecisions());
+        if (engine.getRollouts() > 0) {
+            out.printf("  rollouts: %.0f by decision%n", (double) engine.getRollouts() / decisions);
+        }
+    }
+
+    static void print(String engine, SimulationReport report, PrintStream out) {
+        out.printf("%s: %d ticks in %.1f ms, %.0f ticks/s%n", engine, report.getTicks(),
+                report.getElapsedNanos() / 1e6, report.getTicksPerSecond());
+        out.printf("  score: %d%n", report.getScore());
+        out.printf("  users: %d arrived, %d delivered, %d waiting and %d travelling at the end%n",
+                report.getArrived(), report.getDelivered(), report.getWaitingAtEnd(), report.getTravellingAtEnd());
+        out.printf("  average ticks to wait: %.1f, to go: %.1f%n", report.getAverageTicksToWait(),
+                report.getAverageTicksToGo());
+        out.printf("  failures: %d%s%n", report.getFailures(),
+                report.getLastFailure() == null ? "" : ", last: " + report.getLastFailure());
+    }
+}
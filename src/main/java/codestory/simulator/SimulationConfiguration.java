@@ -0,0 +1,76 @@
+package codestory.simulator;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A simulated game: the building, how users show up and where they go. Can be read from a YAML scenario, e.g.
+ * <pre>
+ *     higherFloor: 9
+ *     arrivalRates: [0.5, 0.02, 0.02]   # most users come in at the ground floor
+ *     destinationWeights: [0, 1, 1, 1, 1, 1, 1, 1, 1, 1]
+ * </pre>
+ */
+@Data
+public class SimulationConfiguration {
+    @JsonProperty
+    int lowerFloor = 0;
+    @JsonProperty
+    int higherFloor = 19;
+    @JsonProperty
+    int cabinSize = 30;
+    @JsonProperty
+    int ticks = 1000;
+    /**
+     * time between two nextCommand, 0 to ask for the next one as soon as the engine answered
+     */
+    @JsonProperty
+    long tickMillis = 0;
+    @JsonProperty
+    long seed = 42;
+    /**
+     * users in the building at once, waiting or travelling: nobody shows up beyond
+     */
+    @JsonProperty
+    int maxUsers = 40;
+    /**
+     * mean number of users showing up at each tick by floor, from lowerFloor up; floors left out get arrivalRate
+     */
+    @JsonProperty
+    List<Double> arrivalRates = new ArrayList<>();
+    @JsonProperty
+    double arrivalRate = 0.05;
+    /**
+     * how likely each floor is to be a destination, from lowerFloor up; floors left out get 1, a user never goes to
+     * the floor they called from
+     */
+    @JsonProperty
+    List<Double> destinationWeights = new ArrayList<>();
+    /**
+     * measure the CPU time of each nextCommand, which costs about a microsecond more by tick
+     */
+    @JsonProperty
+    boolean measureCpu = false;
+
+    /**
+     * The same game with other users.
+     */
+    public SimulationConfiguration withSeed(long seed) {
+        SimulationConfiguration copy = new SimulationConfiguration();
+        copy.lowerFloor = lowerFloor;
+        copy.higherFloor = higherFloor;
+        copy.cabinSize = cabinSize;
+        copy.ticks = ticks;
+        copy.tickMillis = tickMillis;
+        copy.seed = seed;
+        copy.maxUsers = maxUsers;
+        copy.arrivalRates = arrivalRates;
+        copy.arrivalRate = arrivalRate;
+        copy.destinationWeights = destinationWeights;
+        copy.measureCpu = measureCpu;
+        return copy;
+    }
+}
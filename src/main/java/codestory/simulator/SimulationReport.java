@@ -0,0 +1,41 @@
+package codestory.simulator;
+
+import lombok.Data;
+
+/**
+ * The outcome of a simulated game, scored like the game server scores it.
+ */
+@Data
+public class SimulationReport {
+
+    private final int ticks;
+    private final int score;
+    private final int arrived;
+    private final int delivered;
+    /**
+     * commands the server refuses (moving with the door open, past the last floor, ...), each costs a reset
+     */
+    private final int failures;
+    private final String lastFailure;
+    private final int waitingAtEnd;
+    private final int travellingAtEnd;
+    /**
+     * over the delivered users
+     */
+    private final double averageTicksToWait;
+    private final double averageTicksToGo;
+    /**
+     * users by number of ticks waited before entering the cabin; users still waiting at a reset or at the end count
+     * with the ticks waited so far
+     */
+    private final long[] waitHistogram;
+    /**
+     * CPU time of the engine's nextCommand over the game, 0 unless measureCpu
+     */
+    private final long decisionCpuNanos;
+    private final long elapsedNanos;
+
+    public double getTicksPerSecond() {
+        return elapsedNanos == 0 ? 0 : ticks * 1e9 / elapsedNanos;
+    }
+}
@@ -0,0 +1,239 @@
+package codestory.simulator;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.Score;
+import codestory.core.User;
+import codestory.core.engine.ElevatorEngine;
+import com.google.common.util.concurrent.Uninterruptibles;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays the game server against an engine, in-process or through a {@link RemoteElevatorEngine}. At each tick the
+ * server asks for the next command and carries it out, users get out and in when the door opens, then new users show
+ * up and call. A command the server refuses costs a loss and a reset, as in the real game.
+ * <p/>
+ * Users count their ticks before the command is carried out, so that a delivery scores exactly like
+ * {@link Score#bestTickToGo} when the cabin went straight to the destination.
+ * <p/>
+ * After a reset the cabin is at floor 0, where the engines assume it starts, even in a building whose lower floor is
+ * not 0.
+ */
+@Slf4j
+public class Simulator {
+
+    private static final int START_FLOOR = 0;
+    private final SimulationConfiguration configuration;
+    private final ElevatorEngine engine;
+    private final Arrivals arrivals;
+    private final List<User> users = new ArrayList<>();
+    private final Score score;
+    private final long[] waitHistogram;
+    private final ThreadMXBean cpu;
+    private int tick;
+    private int floor;
+    private boolean doorOpen;
+    private int nbInside;
+    private int arrived;
+    private int delivered;
+    private int failures;
+    private String lastFailure;
+    private long totalTicksToWait;
+    private long totalTicksToGo;
+    private long decisionCpuNanos;
+
+    public Simulator(SimulationConfiguration configuration, ElevatorEngine engine) {
+        this.configuration = configuration;
+        this.engine = engine;
+        this.arrivals = new Arrivals(configuration);
+        this.score = new Score(configuration.getLowerFloor(), configuration.getHigherFloor());
+        this.waitHistogram = new long[configuration.getTicks() + 1];
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        this.cpu = configuration.isMeasureCpu() && threads.isCurrentThreadCpuTimeSupported() ? threads : null;
+    }
+
+    public SimulationReport run() {
+        reset("the simulation starts");
+        long start = System.nanoTime();
+        for (tick = 1; tick <= configuration.getTicks(); tick++) {
+            waitForTick(start);
+            String failure;
+            try {
+                Command command = nextCommand();
+                for (User user : users) {
+                    user.tick();
+                }
+                failure = carryOut(command);
+            } catch (RuntimeException e) {
+                failure = e.toString();
+            }
+            if (failure != null) {
+                fail(failure);
+            }
+            usersShowUp();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int waiting = countWaiting();
+        return new SimulationReport(configuration.getTicks(), score.getScore(), arrived, delivered, failures,
+                lastFailure, waiting, users.size() - waiting, average(totalTicksToWait), average(totalTicksToGo),
+                waitHistogram, decisionCpuNanos, elapsed);
+    }
+
+    private Command nextCommand() {
+        if (cpu == null) {
+            return engine.nextCommand();
+        }
+        long start = cpu.getCurrentThreadCpuTime();
+        try {
+            return engine.nextCommand();
+        } finally {
+            decisionCpuNanos += cpu.getCurrentThreadCpuTime() - start;
+        }
+    }
+
+    /**
+     * @return the users still waiting, counted in the wait histogram
+     */
+    private int countWaiting() {
+        int waiting = 0;
+        for (User user : users) {
+            if (user.waiting()) {
+                waitHistogram[user.getTickToWait()]++;
+                waiting++;
+            }
+        }
+        return waiting;
+    }
+
+    private void waitForTick(long start) {
+        if (configuration.getTickMillis() > 0) {
+            long at = start + TimeUnit.MILLISECONDS.toNanos((tick - 1) * configuration.getTickMillis());
+            Uninterruptibles.sleepUninterruptibly(at - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @return why the server refuses the command, null when it is carried out
+     */
+    private String carryOut(Command command) {
+        switch (command) {
+            case UP:
+                if (doorOpen) {
+                    return "UP with the door open";
+                }
+                if (floor == configuration.getHigherFloor()) {
+                    return "UP from the higher floor";
+                }
+                floor++;
+                return null;
+            case DOWN:
+                if (doorOpen) {
+                    return "DOWN with the door open";
+                }
+                if (floor == configuration.getLowerFloor()) {
+                    return "DOWN from the lower floor";
+                }
+                floor--;
+                return null;
+            case OPEN:
+                if (doorOpen) {
+                    return "OPEN with the door open";
+                }
+                doorOpen = true;
+                usersGetOutAndIn();
+                return null;
+            case CLOSE:
+                if (!doorOpen) {
+                    return "CLOSE with the door closed";
+                }
+                doorOpen = false;
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private void usersGetOutAndIn() {
+        for (Iterator<User> iterator = users.iterator(); iterator.hasNext(); ) {
+            User user = iterator.next();
+            if (user.traveling() && user.elevatorIsAtDestination(floor)) {
+                user.setCurrentFloor(floor);
+                user.elevatorIsOpen(floor, tick);
+                engine.userHasExited(null);
+                nbInside--;
+                score.success(user);
+                delivered++;
+                totalTicksToWait += user.getTickToWait();
+                totalTicksToGo += user.getTickToGo();
+                iterator.remove();
+            }
+        }
+        for (User user : users) {
+            if (nbInside == configuration.getCabinSize()) {
+                break;
+            }
+            if (user.waiting() && user.elevatorIsAtWaitingFloor(floor)) {
+                user.elevatorIsOpen(floor, tick);
+                waitHistogram[user.getTickToWait()]++;
+                nbInside++;
+                engine.userHasEntered(null);
+                engine.go(user.getFloorToGo());
+            }
+        }
+    }
+
+    /**
+     * Users are drawn whether there is room for them or not, so that every engine sees the same ones show up.
+     */
+    private void usersShowUp() {
+        for (int from = configuration.getLowerFloor(); from <= configuration.getHigherFloor(); from++) {
+            for (int n = arrivals.arriving(from); n > 0; n--) {
+                int to = arrivals.destination(from);
+                if (to == from || users.size() >= configuration.getMaxUsers()) {
+                    continue;
+                }
+                User user = new User(from, to > from ? Direction.UP : Direction.DOWN);
+                user.go(to);
+                user.setCurrentFloor(from);
+                users.add(user);
+                arrived++;
+                try {
+                    engine.call(from, user.getDirection());
+                } catch (RuntimeException e) {
+                    fail(e.toString());
+                    return;
+                }
+            }
+        }
+    }
+
+    private void fail(String cause) {
+        log.warn("tick {}: {}", tick, cause);
+        failures++;
+        lastFailure = cause;
+        score.loose();
+        reset(cause);
+    }
+
+    private void reset(String cause) {
+        countWaiting();
+        users.clear();
+        floor = START_FLOOR;
+        doorOpen = false;
+        nbInside = 0;
+        engine.reset(cause, configuration.getLowerFloor(), configuration.getHigherFloor(),
+                configuration.getCabinSize());
+    }
+
+    private double average(long total) {
+        return delivered == 0 ? 0 : (double) total / delivered;
+    }
+}
@@ -0,0 +1,94 @@
+package codestory.simulator;
+
+import lombok.Getter;
+
+/**
+ * What an engine scored over the games of a {@link Tournament}.
+ */
+@Getter
+public class Standing {
+
+    private final String engine;
+    private int games;
+    private long ticks;
+    private long score;
+    private long delivered;
+    private long failures;
+    private long decisionCpuNanos;
+    private long[] waitHistogram = new long[0];
+
+    public Standing(String engine) {
+        this.engine = engine;
+    }
+
+    void add(SimulationReport report) {
+        games++;
+        ticks += report.getTicks();
+        score += report.getScore();
+        delivered += report.getDelivered();
+        failures += report.getFailures();
+        decisionCpuNanos += report.getDecisionCpuNanos();
+        addWaits(report.getWaitHistogram());
+    }
+
+    Standing merge(Standing other) {
+        games += other.games;
+        ticks += other.ticks;
+        score += other.score;
+        delivered += other.delivered;
+        failures += other.failures;
+        decisionCpuNanos += other.decisionCpuNanos;
+        addWaits(other.waitHistogram);
+        return this;
+    }
+
+    private void addWaits(long[] histogram) {
+        if (histogram.length > waitHistogram.length) {
+            long[] grown = histogram.clone();
+            for (int wait = 0; wait < waitHistogram.length; wait++) {
+                grown[wait] += waitHistogram[wait];
+            }
+            waitHistogram = grown;
+        } else {
+            for (int wait = 0; wait < histogram.length; wait++) {
+                waitHistogram[wait] += histogram[wait];
+            }
+        }
+    }
+
+    public double getScorePerTick() {
+        return ticks == 0 ? 0 : (double) score / ticks;
+    }
+
+    public double getMeanWait() {
+        long users = 0;
+        long total = 0;
+        for (int wait = 0; wait < waitHistogram.length; wait++) {
+            users += waitHistogram[wait];
+            total += wait * waitHistogram[wait];
+        }
+        return users == 0 ? 0 : (double) total / users;
+    }
+
+    /**
+     * @return the nearest rank percentile of the ticks users waited, e.g. <code>waitPercentile(0.99)</code>
+     */
+    public int waitPercentile(double p) {
+        long users = 0;
+        for (long count : waitHistogram) {
+            users += count;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * users));
+        for (int wait = 0; wait < waitHistogram.length; wait++) {
+            rank -= waitHistogram[wait];
+            if (rank <= 0) {
+                return wait;
+            }
+        }
+        return 0;
+    }
+
+    public double getCpuNanosPerDecision() {
+        return ticks == 0 ? 0 : (double) decisionCpuNanos / ticks;
+    }
+}
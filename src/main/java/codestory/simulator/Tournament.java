@@ -0,0 +1,94 @@
+package codestory.simulator;
+
+import codestory.core.engine.ElevatorEngine;
+import codestory.replay.ReplayedEngine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays the same simulated games against each engine, game <code>n</code> being seeded with
+ * <code>seed + n</code>, and ranks the engines by score per tick. Games are split between the threads of a fork/join
+ * pool, each game with its own engine.
+ */
+public class Tournament {
+
+    private final List<String> engines;
+    private final SimulationConfiguration configuration;
+    private final int games;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param engines names or class names, see {@link ReplayedEngine#create(String)}
+     */
+    public Tournament(List<String> engines, SimulationConfiguration configuration, int games, ForkJoinPool pool) {
+        this.engines = engines;
+        this.configuration = configuration;
+        this.games = games;
+        this.pool = pool;
+    }
+
+    /**
+     * @return the standings, best score per tick first
+     */
+    public List<Standing> run() {
+        List<ForkJoinTask<Standing>> tasks = new ArrayList<>();
+        for (String engine : engines) {
+            tasks.add(pool.submit(new Games(engine, 0, games)));
+        }
+        List<Standing> standings = new ArrayList<>();
+        for (ForkJoinTask<Standing> task : tasks) {
+            standings.add(task.join());
+        }
+        Collections.sort(standings, new Comparator<Standing>() {
+            @Override
+            public int compare(Standing first, Standing second) {
+                return Double.compare(second.getScorePerTick(), first.getScorePerTick());
+            }
+        });
+        return standings;
+    }
+
+    private class Games extends RecursiveTask<Standing> {
+
+        private static final long serialVersionUID = 1L;
+        private final String engine;
+        private final int from;
+        private final int to;
+
+        Games(String engine, int from, int to) {
+            this.engine = engine;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Standing compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                Games upper = new Games(engine, middle, to);
+                upper.fork();
+                return new Games(engine, from, middle).compute().merge(upper.join());
+            }
+            Standing standing = new Standing(engine);
+            for (int game = from; game < to; game++) {
+                SimulationConfiguration seeded = configuration.withSeed(configuration.getSeed() + game);
+                standing.add(new Simulator(seeded, create()).run());
+            }
+            return standing;
+        }
+
+        private ElevatorEngine create() {
+            try {
+                return ReplayedEngine.create(engine);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("no engine named " + engine, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package codestory.simulator;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.yammer.dropwizard.cli.Command;
+import com.yammer.dropwizard.config.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <code>java -jar codestory.jar tournament --engines W1,W2 --games 1000 [--scenario rush-hour.yml]</code>: plays the
+ * same simulated games against each engine, on all cores, and prints the engines ranked by score per tick.
+ */
+public class TournamentCommand extends Command {
+
+    public TournamentCommand() {
+        super("tournament", "Ranks engines over many simulated games");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        subparser.addArgument("--engines").setDefault("W1,W2").help("comma separated engine names or class names");
+        subparser.addArgument("--games").type(Integer.class).setDefault(200).help("games played by each engine");
+        subparser.addArgument("--scenario").help("YAML simulation configuration, see SimulationConfiguration");
+        subparser.addArgument("--ticks").type(Integer.class).help("overrides the scenario's ticks");
+        subparser.addArgument("--seed").type(Long.class).help("overrides the scenario's seed of the first game");
+        subparser.addArgument("--threads").type(Integer.class)
+                .setDefault(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public void run(Bootstrap<?> bootstrap, Namespace namespace) throws Exception {
+        ((Logger) LoggerFactory.getLogger("codestory")).setLevel(Level.ERROR);
+        SimulationConfiguration configuration = new SimulationConfiguration();
+        String scenario = namespace.getString("scenario");
+        if (scenario != null) {
+            configuration = new ObjectMapper(new YAMLFactory()).readValue(new File(scenario),
+                    SimulationConfiguration.class);
+        }
+        if (namespace.getInt("ticks") != null) {
+            configuration.setTicks(namespace.getInt("ticks"));
+        }
+        if (namespace.getLong("seed") != null) {
+            configuration.setSeed(namespace.getLong("seed"));
+        }
+        configuration.setTickMillis(0);
+        configuration.setMeasureCpu(true);
+        List<String> engines = Lists.newArrayList(Splitter.on(',').trimResults().omitEmptyStrings()
+                .split(namespace.getString("engines")));
+        int games = namespace.getInt("games");
+
+        ForkJoinPool pool = new ForkJoinPool(namespace.getInt("threads"));
+        try {
+            long start = System.nanoTime();
+            List<Standing> standings = new Tournament(engines, configuration, games, pool).run();
+            System.out.printf("%d games of %d ticks by engine in %.1f s%n", games, configuration.getTicks(),
+                    (System.nanoTime() - start) / 1e9);
+            print(standings, System.out);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static void print(List<Standing> standings, PrintStream out) {
+        out.printf("%4s  %-40s %12s %10s %10s %14s %10s%n", "rank", "engine", "score/tick", "mean wait", "p99 wait",
+                "cpu/decision", "failures");
+        int rank = 1;
+        for (Standing standing : standings) {
+            out.printf("%4d  %-40s %12.3f %10.1f %10d %11.1f us %10d%n", rank++, standing.getEngine(),
+                    standing.getScorePerTick(), standing.getMeanWait(), standing.waitPercentile(0.99),
+                    standing.getCpuNanosPerDecision() / 1000, standing.getFailures());
+        }
+    }
+}
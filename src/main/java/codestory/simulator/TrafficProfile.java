@@ -0,0 +1,63 @@
+package codestory.simulator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Typical traffics, applied to a simulation of a given building.
+ */
+public enum TrafficProfile {
+    /**
+     * a few users, anywhere
+     */
+    SPARSE {
+        @Override
+        void apply(SimulationConfiguration configuration, int nbFloors) {
+            configuration.setArrivalRate(0.01);
+        }
+    },
+    /**
+     * many users, anywhere
+     */
+    BUSY {
+        @Override
+        void apply(SimulationConfiguration configuration, int nbFloors) {
+            configuration.setArrivalRate(0.1);
+        }
+    },
+    /**
+     * users come in at the ground floor and go up
+     */
+    MORNING {
+        @Override
+        void apply(SimulationConfiguration configuration, int nbFloors) {
+            List<Double> rates = filled(nbFloors, 0.01);
+            rates.set(0, 0.5);
+            List<Double> weights = filled(nbFloors, 1.0);
+            weights.set(0, 0.0);
+            configuration.setArrivalRates(rates);
+            configuration.setDestinationWeights(weights);
+        }
+    },
+    /**
+     * users leave: they call from every floor and go down to the ground floor
+     */
+    EVENING {
+        @Override
+        void apply(SimulationConfiguration configuration, int nbFloors) {
+            List<Double> rates = filled(nbFloors, 0.05);
+            rates.set(0, 0.0);
+            List<Double> weights = filled(nbFloors, 0.0);
+            weights.set(0, 1.0);
+            configuration.setArrivalRates(rates);
+            configuration.setDestinationWeights(weights);
+        }
+    },;
+
+    abstract void apply(SimulationConfiguration configuration, int nbFloors);
+
+    private static List<Double> filled(int nbFloors, double value) {
+        return new ArrayList<>(Collections.nCopies(nbFloors, value));
+    }
+}
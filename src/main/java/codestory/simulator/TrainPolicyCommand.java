@@ -0,0 +1,60 @@
+package codestory.simulator;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.yammer.dropwizard.cli.Command;
+import com.yammer.dropwizard.config.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <code>java -jar codestory.jar train-policy --floors 6 --profile BUSY --epochs 50</code>: learns a policy for a
+ * building and a traffic on all cores, and writes the table the <code>engine.policyTable</code> setting maps.
+ */
+public class TrainPolicyCommand extends Command {
+
+    public TrainPolicyCommand() {
+        super("train-policy", "Learns a policy table by Q-learning over simulated games");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        subparser.addArgument("--floors").type(Integer.class).setDefault(6);
+        subparser.addArgument("--cabin-size").type(Integer.class).setDefault(10);
+        subparser.addArgument("--profile").type(TrafficProfile.class).setDefault(TrafficProfile.BUSY);
+        subparser.addArgument("--epochs").type(Integer.class).setDefault(50);
+        subparser.addArgument("--games").type(Integer.class).setDefault(4)
+                .help("games each thread plays by epoch");
+        subparser.addArgument("--evaluation-games").type(Integer.class).setDefault(20);
+        subparser.addArgument("--ticks").type(Integer.class).setDefault(1000);
+        subparser.addArgument("--seed").type(Long.class).setDefault(42L);
+        subparser.addArgument("--threads").type(Integer.class)
+                .setDefault(Runtime.getRuntime().availableProcessors());
+        subparser.addArgument("--output").setDefault("policy-table.bin");
+    }
+
+    @Override
+    public void run(Bootstrap<?> bootstrap, Namespace namespace) throws Exception {
+        ((Logger) LoggerFactory.getLogger("codestory")).setLevel(Level.ERROR);
+        SimulationConfiguration template = new SimulationConfiguration();
+        template.setTicks(namespace.getInt("ticks"));
+        template.setSeed(namespace.getLong("seed"));
+        ForkJoinPool pool = new ForkJoinPool(namespace.getInt("threads"));
+        try {
+            PolicyTrainer trainer = new PolicyTrainer(pool, template, namespace.getInt("floors"),
+                    namespace.getInt("cabin_size"), (TrafficProfile) namespace.get("profile"),
+                    namespace.getInt("games"), namespace.getInt("evaluation_games"));
+            TrainedPolicy trained = trainer.train(namespace.getInt("epochs"));
+            File output = new File(namespace.getString("output"));
+            trained.getTable().writeTo(output);
+            System.out.printf("%.3f points/tick (W2 %.3f), learnt by epoch %d, written to %s%n",
+                    trained.getScorePerTick(), trained.getW2ScorePerTick(), trained.getBestEpoch(), output);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package codestory.simulator;
+
+import codestory.core.engine.PolicyTable;
+import lombok.Data;
+
+/**
+ * The best policy learnt for a building and a traffic, with how it and W2 scored on the evaluation games.
+ */
+@Data
+public class TrainedPolicy {
+
+    private final PolicyTable table;
+    private final double scorePerTick;
+    private final double w2ScorePerTick;
+    /**
+     * the epoch the table was learnt by, 0 when training never beat W2: the table then plays as W2
+     */
+    private final int bestEpoch;
+}
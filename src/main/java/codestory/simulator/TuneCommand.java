@@ -0,0 +1,76 @@
+package codestory.simulator;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.google.common.base.Splitter;
+import com.yammer.dropwizard.cli.Command;
+import com.yammer.dropwizard.config.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <code>java -jar codestory.jar tune --buildings 6x10,20x30 --profiles BUSY,MORNING --search REFINE</code>: finds
+ * the best W2 strategy for each building (floors x cabin size) and traffic profile, and writes them as YAML, each
+ * <code>strategy</code> block ready to be pasted under <code>engine:</code>.
+ */
+public class TuneCommand extends Command {
+
+    private static final Splitter COMMAS = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    public TuneCommand() {
+        super("tune", "Searches the W2 strategy parameters scoring best in simulated games");
+    }
+
+    @Override
+    public void configure(Subparser subparser) {
+        subparser.addArgument("--buildings").setDefault("20x30").help("comma separated floors x cabin size");
+        subparser.addArgument("--profiles").setDefault("SPARSE,BUSY,MORNING,EVENING")
+                .help("comma separated traffic profiles");
+        subparser.addArgument("--search").type(Tuner.Search.class).setDefault(Tuner.Search.GRID);
+        subparser.addArgument("--samples").type(Integer.class).setDefault(60)
+                .help("candidates of a RANDOM or REFINE search");
+        subparser.addArgument("--games").type(Integer.class).setDefault(10).help("games played by each candidate");
+        subparser.addArgument("--ticks").type(Integer.class).setDefault(1000);
+        subparser.addArgument("--seed").type(Long.class).setDefault(42L);
+        subparser.addArgument("--threads").type(Integer.class)
+                .setDefault(Runtime.getRuntime().availableProcessors());
+        subparser.addArgument("--output").setDefault("tuned-strategies.yml");
+    }
+
+    @Override
+    public void run(Bootstrap<?> bootstrap, Namespace namespace) throws Exception {
+        ((Logger) LoggerFactory.getLogger("codestory")).setLevel(Level.ERROR);
+        SimulationConfiguration template = new SimulationConfiguration();
+        template.setTicks(namespace.getInt("ticks"));
+        template.setSeed(namespace.getLong("seed"));
+        Tuner.Search search = (Tuner.Search) namespace.get("search");
+        int samples = namespace.getInt("samples");
+
+        List<TunedStrategy> tuned = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(namespace.getInt("threads"));
+        try {
+            Tuner tuner = new Tuner(pool, template, namespace.getInt("games"));
+            for (String building : COMMAS.split(namespace.getString("buildings"))) {
+                String[] size = building.split("x");
+                for (String profile : COMMAS.split(namespace.getString("profiles"))) {
+                    TunedStrategy best = tuner.tune(Integer.parseInt(size[0]), Integer.parseInt(size[1]),
+                            TrafficProfile.valueOf(profile), search, samples);
+                    System.out.printf("%s %s: %.3f points/tick (default strategy %.3f) with %s%n", building, profile,
+                            best.getScorePerTick(), best.getDefaultScorePerTick(), best.getStrategy());
+                    tuned.add(best);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        new ObjectMapper(new YAMLFactory()).writeValue(new File(namespace.getString("output")), tuned);
+    }
+}
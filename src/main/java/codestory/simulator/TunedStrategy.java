@@ -0,0 +1,22 @@
+package codestory.simulator;
+
+import codestory.core.engine.StrategyParameters;
+import lombok.Data;
+
+/**
+ * The best strategy found for a building and a traffic, as written by the <code>tune</code> command.
+ */
+@Data
+public class TunedStrategy {
+
+    private final int floors;
+    private final int cabinSize;
+    private final TrafficProfile profile;
+    private final StrategyParameters strategy;
+    private final double scorePerTick;
+    /**
+     * with the default strategy, over the same games
+     */
+    private final double defaultScorePerTick;
+    private final int evaluated;
+}
@@ -0,0 +1,176 @@
+package codestory.simulator;
+
+import codestory.EngineConfiguration;
+import codestory.core.engine.DecisionTracer;
+import codestory.core.engine.S03E01W2Elevator;
+import codestory.core.engine.StrategyParameters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Looks for the {@link StrategyParameters} of the W2 engine scoring best in a building, under a traffic. Each
+ * candidate plays the same seeded games (see {@link Tournament}), candidates are evaluated in parallel on a fork/join
+ * pool; the default parameters are always a candidate.
+ */
+public class Tuner {
+
+    private final ForkJoinPool pool;
+    private final SimulationConfiguration template;
+    private final int games;
+
+    /**
+     * @param template ticks, seed and maxUsers of the games, the building and the traffic are the tuner's
+     */
+    public Tuner(ForkJoinPool pool, SimulationConfiguration template, int games) {
+        this.pool = pool;
+        this.template = template;
+        this.games = games;
+    }
+
+    public TunedStrategy tune(int floors, int cabinSize, TrafficProfile profile, Search search, int samples) {
+        SimulationConfiguration configuration = template.withSeed(template.getSeed());
+        configuration.setLowerFloor(0);
+        configuration.setHigherFloor(floors - 1);
+        configuration.setCabinSize(cabinSize);
+        configuration.setTickMillis(0);
+        profile.apply(configuration, floors);
+
+        Random random = new Random(template.getSeed());
+        List<StrategyParameters> candidates = new ArrayList<>();
+        candidates.add(new StrategyParameters());
+        if (search == Search.GRID) {
+            candidates.addAll(grid(floors, cabinSize));
+        } else {
+            for (int sample = 0; sample < (search == Search.REFINE ? samples / 2 : samples); sample++) {
+                candidates.add(randomSample(random, floors, cabinSize));
+            }
+        }
+        List<Double> scores = evaluate(configuration, candidates);
+        if (search == Search.REFINE) {
+            StrategyParameters best = candidates.get(indexOfBest(scores));
+            List<StrategyParameters> neighbours = new ArrayList<>();
+            for (int sample = 0; sample < samples - samples / 2; sample++) {
+                neighbours.add(neighbour(random, best, floors, cabinSize));
+            }
+            candidates.addAll(neighbours);
+            scores.addAll(evaluate(configuration, neighbours));
+        }
+        int best = indexOfBest(scores);
+        return new TunedStrategy(floors, cabinSize, profile, candidates.get(best), scores.get(best), scores.get(0),
+                candidates.size());
+    }
+
+    private List<Double> evaluate(final SimulationConfiguration configuration, List<StrategyParameters> candidates) {
+        List<Callable<Double>> evaluations = new ArrayList<>();
+        for (final StrategyParameters candidate : candidates) {
+            evaluations.add(new Callable<Double>() {
+                @Override
+                public Double call() {
+                    return scorePerTick(configuration, candidate);
+                }
+            });
+        }
+        List<Double> scores = new ArrayList<>();
+        try {
+            for (Future<Double> score : pool.invokeAll(evaluations)) {
+                scores.add(score.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while tuning", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("a simulation failed", e.getCause());
+        }
+        return scores;
+    }
+
+    private double scorePerTick(SimulationConfiguration configuration, StrategyParameters strategy) {
+        EngineConfiguration engineConfiguration = new EngineConfiguration();
+        engineConfiguration.setAllocationFree(true);
+        engineConfiguration.setStrategy(strategy);
+        DecisionTracer noTraces = new DecisionTracer(DecisionTracer.Sampling.OFF, 1);
+        long score = 0;
+        long ticks = 0;
+        for (int game = 0; game < games; game++) {
+            SimulationConfiguration seeded = configuration.withSeed(configuration.getSeed() + game);
+            SimulationReport report = new Simulator(seeded, new S03E01W2Elevator(engineConfiguration, noTraces)).run();
+            score += report.getScore();
+            ticks += report.getTicks();
+        }
+        return ticks == 0 ? 0 : (double) score / ticks;
+    }
+
+    /**
+     * the first best, so that the defaults win ties
+     */
+    private static int indexOfBest(List<Double> scores) {
+        int best = 0;
+        for (int candidate = 1; candidate < scores.size(); candidate++) {
+            if (scores.get(candidate) > scores.get(best)) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    static List<StrategyParameters> grid(int floors, int cabinSize) {
+        List<StrategyParameters> grid = new ArrayList<>();
+        for (double middleFloorRatio : new double[]{0, 0.25, 0.5, 0.75}) {
+            for (int crowdThreshold : new int[]{0, floors}) {
+                for (int maxUsersOnBoard : new int[]{0, Math.max(1, cabinSize / 2)}) {
+                    for (int maxTicksWaited : new int[]{0, floors, 2 * floors}) {
+                        grid.add(parameters(middleFloorRatio, crowdThreshold, maxUsersOnBoard, maxTicksWaited));
+                    }
+                }
+            }
+        }
+        return grid;
+    }
+
+    private static StrategyParameters randomSample(Random random, int floors, int cabinSize) {
+        return parameters(random.nextDouble(), random.nextInt(2 * floors + 1),
+                random.nextBoolean() ? 0 : 1 + random.nextInt(cabinSize), random.nextBoolean() ? 0 :
+                        floors / 2 + random.nextInt(3 * floors));
+    }
+
+    private static StrategyParameters neighbour(Random random, StrategyParameters of, int floors, int cabinSize) {
+        double middleFloorRatio = Math.min(1, Math.max(0, of.getMiddleFloorRatio() + random.nextGaussian() * 0.1));
+        int crowdThreshold = Math.max(0, of.getCrowdThreshold() + (int) Math.round(random.nextGaussian() * floors / 4));
+        int maxUsersOnBoard = of.getMaxUsersOnBoard() == 0 ? 0 :
+                Math.min(cabinSize, Math.max(1, of.getMaxUsersOnBoard() + (int) Math.round(random.nextGaussian() * 2)));
+        int maxTicksWaited = of.getMaxTicksWaited() == 0 ? 0 :
+                Math.max(1, of.getMaxTicksWaited() + (int) Math.round(random.nextGaussian() * floors / 4));
+        return parameters(middleFloorRatio, crowdThreshold, maxUsersOnBoard, maxTicksWaited);
+    }
+
+    private static StrategyParameters parameters(double middleFloorRatio, int crowdThreshold, int maxUsersOnBoard,
+                                                 int maxTicksWaited) {
+        StrategyParameters parameters = new StrategyParameters();
+        parameters.setMiddleFloorRatio(middleFloorRatio);
+        parameters.setCrowdThreshold(crowdThreshold);
+        parameters.setMaxUsersOnBoard(maxUsersOnBoard);
+        parameters.setMaxTicksWaited(maxTicksWaited);
+        return parameters;
+    }
+
+    public enum Search {
+        /**
+         * every combination of a few values of each knob
+         */
+        GRID,
+        /**
+         * samples drawn over the whole range of each knob
+         */
+        RANDOM,
+        /**
+         * half of the samples drawn at random, the other half around the best of them
+         */
+        REFINE,;
+    }
+}
@@ -0,0 +1,39 @@
+package codestory.tasks;
+
+import codestory.core.AllocationMeter;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.inject.Inject;
+import com.yammer.dropwizard.tasks.Task;
+
+import java.io.PrintWriter;
+
+/**
+ * <code>POST /tasks/allocations</code> on the admin port: bytes allocated per nextCommand/call/go since startup or the
+ * last <code>?reset</code>.
+ */
+public class AllocationReport extends Task {
+
+    private final AllocationMeter allocationMeter;
+
+    @Inject
+    public AllocationReport(AllocationMeter allocationMeter) {
+        super("allocations");
+        this.allocationMeter = allocationMeter;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        if (!allocationMeter.isEnabled()) {
+            output.println("allocation meter is disabled (engine.allocationMeter: false, or unsupported by the JVM)");
+            return;
+        }
+        for (AllocationMeter.Operation operation : AllocationMeter.Operation.values()) {
+            output.printf("%s: %d calls, %d bytes, %.1f bytes/call%n", operation, allocationMeter.getCount(operation),
+                    allocationMeter.getBytes(operation), allocationMeter.getBytesPerOperation(operation));
+        }
+        if (parameters.containsKey("reset")) {
+            allocationMeter.reset();
+            output.println("reset");
+        }
+    }
+}
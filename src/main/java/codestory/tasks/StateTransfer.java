@@ -0,0 +1,51 @@
+package codestory.tasks;
+
+import codestory.core.engine.ElevatorEngine;
+import codestory.core.engine.EngineSnapshot;
+import codestory.core.engine.RestorableElevatorEngine;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.inject.Inject;
+import com.yammer.dropwizard.tasks.Task;
+
+import java.io.File;
+import java.io.PrintWriter;
+
+/**
+ * <code>POST /tasks/state?export=FILE</code> on the admin port: writes the full engine state to <code>FILE</code>, as
+ * a binary {@link EngineSnapshot}. <code>POST /tasks/state?import=FILE</code>: puts the engine in the state of
+ * <code>FILE</code>, either such a snapshot or a getState() JSON dump, to restart a node where it was or reproduce an
+ * incident.
+ */
+public class StateTransfer extends Task {
+
+    private final ElevatorEngine engine;
+
+    @Inject
+    public StateTransfer(ElevatorEngine engine) {
+        super("state");
+        this.engine = engine;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        if (!(engine instanceof RestorableElevatorEngine)) {
+            output.println("engine state cannot be exported nor imported (engine.multiCabin: true)");
+            return;
+        }
+        RestorableElevatorEngine restorable = (RestorableElevatorEngine) engine;
+        if (parameters.containsKey("import")) {
+            File file = new File(parameters.get("import").iterator().next());
+            long start = System.nanoTime();
+            EngineSnapshot snapshot = EngineSnapshot.load(file);
+            restorable.restore(snapshot);
+            output.printf("engine restored at tick %d from %s in %d ms%n", snapshot.getTicks(), file,
+                    (System.nanoTime() - start) / 1000000);
+        }
+        if (parameters.containsKey("export")) {
+            File file = new File(parameters.get("export").iterator().next());
+            EngineSnapshot snapshot = restorable.snapshot();
+            snapshot.writeTo(file);
+            output.printf("engine state at tick %d exported to %s%n", snapshot.getTicks(), file);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package codestory.tasks;
+
+import codestory.core.engine.DecisionTracer;
+import com.google.common.base.Enums;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.primitives.Ints;
+import com.google.inject.Inject;
+import com.yammer.dropwizard.tasks.Task;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * <code>POST /tasks/trace[?sampling=ALL|EVERY_N_TICKS|DIRECTION_CHANGES|OFF][&every=N]</code> on the admin port: shows
+ * or changes which engine decisions get their state logged, without a restart. Unknown values change nothing and are
+ * answered with the allowed ones.
+ */
+public class TraceSampling extends Task {
+
+    private final DecisionTracer tracer;
+
+    @Inject
+    public TraceSampling(DecisionTracer tracer) {
+        super("trace");
+        this.tracer = tracer;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        DecisionTracer.Sampling sampling = tracer.getSampling();
+        int every = tracer.getEvery();
+        if (parameters.containsKey("sampling")) {
+            String value = parameters.get("sampling").iterator().next();
+            Optional<DecisionTracer.Sampling> parsed = Enums.getIfPresent(DecisionTracer.Sampling.class, value);
+            if (!parsed.isPresent()) {
+                output.printf("unknown sampling <%s>, expected one of %s%n", value,
+                        Arrays.toString(DecisionTracer.Sampling.values()));
+                return;
+            }
+            sampling = parsed.get();
+        }
+        if (parameters.containsKey("every")) {
+            String value = parameters.get("every").iterator().next();
+            Integer parsed = Ints.tryParse(value);
+            if (parsed == null || parsed <= 0) {
+                output.printf("every has to be a positive number of ticks, not <%s>%n", value);
+                return;
+            }
+            every = parsed;
+        }
+        tracer.set(sampling, every);
+        output.printf("sampling: %s, every: %d%n", tracer.getSampling(), tracer.getEvery());
+    }
+}
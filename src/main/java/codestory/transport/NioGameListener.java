@@ -0,0 +1,494 @@
+package codestory.transport;
+
+import codestory.ElevatorConfiguration;
+import codestory.core.AllocationMeter;
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.engine.ElevatorEngine;
+import codestory.core.exception.EngineOverloadedException;
+import com.google.common.base.Charsets;
+import com.google.inject.Inject;
+import com.yammer.dropwizard.lifecycle.Managed;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A lightweight HTTP/1.1 listener serving the six game requests of {@link codestory.resources.ElevatorResource}
+ * straight to the engine, next to Jetty, on <code>engine.nioPort</code>: one selector thread parses each request in
+ * place in the buffer of its connection, floors and directions without allocating, and answers with response bytes
+ * built once, one per command.
+ * <p/>
+ * Only what the game server sends is served: <code>GET /nextCommand, /call, /go, /userHasEntered, /userHasExited</code>
+ * and <code>/reset</code> of a single cabin, kept alive and pipelined. The state, cabins other than 0 and sessions are
+ * left to the Jersey port: requests for another cabin get a 400, but calls, which are not made to a cabin, ignore
+ * their <code>cabin</code> parameter as Jersey does. The engine is called from the selector thread, which waits for the nextCommands and resets
+ * of an {@link codestory.core.engine.EventLoopElevatorEngine}.
+ */
+@Slf4j
+public class NioGameListener implements Managed {
+
+    private static final int BUFFER_BYTES = 8192;
+    private static final byte[] GET = ascii("GET ");
+    private static final byte[] HTTP_1_0 = ascii("HTTP/1.0");
+    private static final byte[] CONNECTION = ascii("connection:");
+    private static final byte[] CLOSE = ascii("close");
+    private static final byte[] KEEP_ALIVE = ascii("keep-alive");
+    private static final byte[] NEXT_COMMAND = ascii("/nextCommand");
+    private static final byte[] CALL = ascii("/call");
+    private static final byte[] GO = ascii("/go");
+    private static final byte[] USER_HAS_ENTERED = ascii("/userHasEntered");
+    private static final byte[] USER_HAS_EXITED = ascii("/userHasExited");
+    private static final byte[] RESET = ascii("/reset");
+    private static final byte[] AT_FLOOR = ascii("atFloor=");
+    private static final byte[] TO = ascii("to=");
+    private static final byte[] FLOOR_TO_GO = ascii("floorToGo=");
+    private static final byte[] CABIN = ascii("cabin=");
+    private static final byte[] CAUSE = ascii("cause=");
+    private static final byte[] LOWER_FLOOR = ascii("lowerFloor=");
+    private static final byte[] HIGHER_FLOOR = ascii("higherFloor=");
+    private static final byte[] CABIN_SIZE = ascii("cabinSize=");
+    private static final byte[] CABIN_COUNT = ascii("cabinCount=");
+    private static final byte[] UP = ascii("UP");
+    private static final byte[] DOWN = ascii("DOWN");
+    private static final byte[] OK = response("200 OK", "");
+    private static final byte[] BAD_REQUEST = response("400 Bad Request", "");
+    private static final byte[] NOT_FOUND = response("404 Not Found", "");
+    private static final byte[] METHOD_NOT_ALLOWED = response("405 Method Not Allowed", "");
+    private static final byte[] TOO_LARGE = response("431 Request Header Fields Too Large", "");
+    private static final byte[] ERROR = response("500 Internal Server Error", "");
+    private static final byte[] OVERLOADED = response("503 Service Unavailable", "");
+    private static final byte[][] COMMANDS = new byte[Command.values().length][];
+    private static final int LONGEST_RESPONSE;
+    private static final BadRequest BAD_REQUEST_EXCEPTION = new BadRequest();
+
+    static {
+        int longest = TOO_LARGE.length;
+        for (Command command : Command.values()) {
+            COMMANDS[command.ordinal()] = response("200 OK", command.toString());
+            longest = Math.max(longest, COMMANDS[command.ordinal()].length);
+        }
+        LONGEST_RESPONSE = longest;
+    }
+
+    private final ElevatorEngine engine;
+    private final AllocationMeter allocationMeter;
+    private final Integer port;
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    @Inject
+    public NioGameListener(ElevatorEngine engine, AllocationMeter allocationMeter, ElevatorConfiguration configuration) {
+        this(engine, allocationMeter, configuration.getEngine().getNioPort());
+    }
+
+    /**
+     * @param port null not to listen, 0 for any free port
+     */
+    public NioGameListener(ElevatorEngine engine, AllocationMeter allocationMeter, Integer port) {
+        this.engine = engine;
+        this.allocationMeter = allocationMeter;
+        this.port = port;
+    }
+
+    @Override
+    public void start() throws Exception {
+        if (port == null) {
+            return;
+        }
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.configureBlocking(false);
+        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        server.bind(new InetSocketAddress(port));
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                select();
+            }
+        }, "elevator-nio-listener");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        log.info("start(): game requests served on port <{}>", getPort());
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (selectorThread == null) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        selectorThread.join(TimeUnit.SECONDS.toMillis(5));
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    /**
+     * @return the port listened to, once started
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    private void select() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                log.error("select(): selector failed, game requests are no longer served on port <{}>", getPort(), e);
+                return;
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                try {
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        read(key);
+                    } else if (key.isWritable()) {
+                        write(key);
+                    }
+                } catch (IOException | CancelledKeyException e) {
+                    close(key);
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        if (((SocketChannel) key.channel()).read(connection.in) < 0) {
+            close(key);
+            return;
+        }
+        serve(connection);
+        flush(key, connection);
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        flush(key, connection);
+        if (connection.out.position() == 0 && !connection.closing) {
+            // requests left waiting for the responses to be written
+            serve(connection);
+            flush(key, connection);
+        }
+    }
+
+    private void flush(SelectionKey key, Connection connection) throws IOException {
+        ByteBuffer out = connection.out;
+        out.flip();
+        ((SocketChannel) key.channel()).write(out);
+        if (out.hasRemaining()) {
+            out.compact();
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else {
+            out.clear();
+            if (connection.closing) {
+                close(key);
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            log.debug("close(): <{}>", e.getMessage());
+        }
+    }
+
+    /**
+     * Answers the complete requests read, as long as their responses fit, and keeps the rest for the next read.
+     */
+    private void serve(Connection connection) {
+        byte[] bytes = connection.in.array();
+        int limit = connection.in.position();
+        int start = 0;
+        while (!connection.closing && connection.out.remaining() >= LONGEST_RESPONSE) {
+            int end = endOfHeaders(bytes, start, limit);
+            if (end < 0) {
+                break;
+            }
+            connection.out.put(answer(bytes, start, end, connection));
+            start = end;
+        }
+        System.arraycopy(bytes, start, bytes, 0, limit - start);
+        connection.in.position(limit - start);
+        if (!connection.in.hasRemaining() && !connection.closing && connection.out.position() == 0) {
+            connection.out.put(TOO_LARGE);
+            connection.closing = true;
+        }
+    }
+
+    private byte[] answer(byte[] bytes, int start, int end, Connection connection) {
+        int lineEnd = indexOf(bytes, start, end, (byte) '\r');
+        int targetEnd = indexOf(bytes, start + GET.length, lineEnd, (byte) ' ');
+        keepAliveOrNot(bytes, targetEnd + 1, lineEnd, end, connection);
+        if (!startsWith(bytes, start, lineEnd, GET)) {
+            return METHOD_NOT_ALLOWED;
+        }
+        if (targetEnd < 0) {
+            return BAD_REQUEST;
+        }
+        int pathStart = start + GET.length;
+        int pathEnd = indexOf(bytes, pathStart, targetEnd, (byte) '?');
+        int query = pathEnd < 0 ? targetEnd : pathEnd + 1;
+        pathEnd = pathEnd < 0 ? targetEnd : pathEnd;
+        try {
+            if (!equals(bytes, pathStart, pathEnd, CALL) && intParameter(bytes, query, targetEnd, CABIN, 0) != 0) {
+                return BAD_REQUEST;
+            }
+            if (equals(bytes, pathStart, pathEnd, NEXT_COMMAND)) {
+                long allocationStart = allocationMeter.start();
+                Command command = engine.nextCommand();
+                allocationMeter.record(AllocationMeter.Operation.NEXT_COMMAND, allocationStart);
+                return COMMANDS[command.ordinal()];
+            } else if (equals(bytes, pathStart, pathEnd, CALL)) {
+                int atFloor = intParameter(bytes, query, targetEnd, AT_FLOOR, null);
+                Direction to = direction(bytes, query, targetEnd);
+                long allocationStart = allocationMeter.start();
+                engine.call(atFloor, to);
+                allocationMeter.record(AllocationMeter.Operation.CALL, allocationStart);
+            } else if (equals(bytes, pathStart, pathEnd, GO)) {
+                int floorToGo = intParameter(bytes, query, targetEnd, FLOOR_TO_GO, null);
+                long allocationStart = allocationMeter.start();
+                engine.go(floorToGo);
+                allocationMeter.record(AllocationMeter.Operation.GO, allocationStart);
+            } else if (equals(bytes, pathStart, pathEnd, USER_HAS_ENTERED)) {
+                engine.userHasEntered(null);
+            } else if (equals(bytes, pathStart, pathEnd, USER_HAS_EXITED)) {
+                engine.userHasExited(null);
+            } else if (equals(bytes, pathStart, pathEnd, RESET)) {
+                if (parameter(bytes, query, targetEnd, CABIN_COUNT) >= 0) {
+                    return BAD_REQUEST;
+                }
+                engine.reset(cause(bytes, query, targetEnd), intParameter(bytes, query, targetEnd, LOWER_FLOOR, 0),
+                        intParameter(bytes, query, targetEnd, HIGHER_FLOOR, 5),
+                        intParameter(bytes, query, targetEnd, CABIN_SIZE, 30));
+            } else {
+                return NOT_FOUND;
+            }
+            return OK;
+        } catch (BadRequest e) {
+            return BAD_REQUEST;
+        } catch (EngineOverloadedException e) {
+            return OVERLOADED;
+        } catch (RuntimeException e) {
+            log.warn("answer(): engine failed on <{}>: <{}>", new String(bytes, start, lineEnd - start,
+                    Charsets.US_ASCII), e.getMessage());
+            return ERROR;
+        }
+    }
+
+    /**
+     * HTTP/1.1 connections are kept alive unless asked otherwise, HTTP/1.0 ones only if asked.
+     */
+    private static void keepAliveOrNot(byte[] bytes, int version, int lineEnd, int end, Connection connection) {
+        boolean http10 = version > 0 && startsWith(bytes, version, lineEnd, HTTP_1_0);
+        connection.closing = http10;
+        for (int line = lineEnd + 2; line < end - 2; line = indexOf(bytes, line, end, (byte) '\n') + 1) {
+            int next = indexOf(bytes, line, end, (byte) '\r');
+            if (startsWithIgnoringCase(bytes, line, next, CONNECTION)) {
+                if (contains(bytes, line + CONNECTION.length, next, CLOSE)) {
+                    connection.closing = true;
+                } else if (http10 && contains(bytes, line + CONNECTION.length, next, KEEP_ALIVE)) {
+                    connection.closing = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return where the value of parameter <code>name</code> starts in the query, -1 if it is not there
+     */
+    private static int parameter(byte[] bytes, int from, int to, byte[] name) {
+        int i = from;
+        while (i < to) {
+            if (startsWith(bytes, i, to, name)) {
+                return i + name.length;
+            }
+            int next = indexOf(bytes, i, to, (byte) '&');
+            if (next < 0) {
+                break;
+            }
+            i = next + 1;
+        }
+        return -1;
+    }
+
+    private static int intParameter(byte[] bytes, int from, int to, byte[] name, Integer absent) {
+        int value = parameter(bytes, from, to, name);
+        if (value < 0) {
+            if (absent == null) {
+                throw BAD_REQUEST_EXCEPTION;
+            }
+            return absent;
+        }
+        int valueEnd = endOfValue(bytes, value, to);
+        boolean negative = value < valueEnd && bytes[value] == '-';
+        int i = negative ? value + 1 : value;
+        if (i == valueEnd || valueEnd - i > 9) {
+            throw BAD_REQUEST_EXCEPTION;
+        }
+        int parsed = 0;
+        for (; i < valueEnd; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9') {
+                throw BAD_REQUEST_EXCEPTION;
+            }
+            parsed = parsed * 10 + bytes[i] - '0';
+        }
+        return negative ? -parsed : parsed;
+    }
+
+    private static Direction direction(byte[] bytes, int from, int to) {
+        int value = parameter(bytes, from, to, TO);
+        if (value >= 0 && equals(bytes, value, endOfValue(bytes, value, to), UP)) {
+            return Direction.UP;
+        }
+        if (value >= 0 && equals(bytes, value, endOfValue(bytes, value, to), DOWN)) {
+            return Direction.DOWN;
+        }
+        throw BAD_REQUEST_EXCEPTION;
+    }
+
+    /**
+     * Resets are rare, their cause is decoded as a String.
+     */
+    private static String cause(byte[] bytes, int from, int to) {
+        int value = parameter(bytes, from, to, CAUSE);
+        if (value < 0) {
+            return null;
+        }
+        try {
+            return URLDecoder.decode(new String(bytes, value, endOfValue(bytes, value, to) - value,
+                    Charsets.US_ASCII), "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            throw BAD_REQUEST_EXCEPTION;
+        }
+    }
+
+    private static int endOfValue(byte[] bytes, int value, int to) {
+        int end = indexOf(bytes, value, to, (byte) '&');
+        return end < 0 ? to : end;
+    }
+
+    /**
+     * @return the offset past the blank line ending the headers of the request starting at <code>from</code>, -1 if
+     * they were not all read yet
+     */
+    private static int endOfHeaders(byte[] bytes, int from, int limit) {
+        for (int i = from + 3; i < limit; i++) {
+            if (bytes[i] == '\n' && bytes[i - 1] == '\r' && bytes[i - 2] == '\n' && bytes[i - 3] == '\r') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte b) {
+        for (int i = Math.max(from, 0); i < to; i++) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean equals(byte[] bytes, int from, int to, byte[] expected) {
+        return to - from == expected.length && startsWith(bytes, from, to, expected);
+    }
+
+    private static boolean startsWith(byte[] bytes, int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWithIgnoringCase(byte[] bytes, int from, int to, byte[] lowerCasePrefix) {
+        if (to - from < lowerCasePrefix.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerCasePrefix.length; i++) {
+            if ((bytes[from + i] | 0x20) != lowerCasePrefix[i] && bytes[from + i] != lowerCasePrefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(byte[] bytes, int from, int to, byte[] lowerCaseWord) {
+        for (int i = from; i <= to - lowerCaseWord.length; i++) {
+            if (startsWithIgnoringCase(bytes, i, to, lowerCaseWord)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(Charsets.US_ASCII);
+    }
+
+    private static byte[] response(String status, String body) {
+        return ascii("HTTP/1.1 " + status + "\r\nContent-Type: text/plain\r\nContent-Length: " + body.length()
+                + "\r\n\r\n" + body);
+    }
+
+    private static class Connection {
+        private final ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES);
+        private final ByteBuffer out = ByteBuffer.allocate(BUFFER_BYTES);
+        private boolean closing;
+    }
+
+    /**
+     * Thrown, without a stack trace, for a request missing a parameter or with one malformed.
+     */
+    private static class BadRequest extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private BadRequest() {
+            super("bad request", null, false, false);
+        }
+    }
+}
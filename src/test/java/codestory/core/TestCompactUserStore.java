@@ -0,0 +1,103 @@
+package codestory.core;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TestCompactUserStore {
+
+    private CompactUserStore store;
+
+    @BeforeMethod
+    public void setUp() {
+        store = new CompactUserStore(0, 19, 2);
+    }
+
+    @Test
+    public void users_should_go_through_waiting_travelling_and_done() {
+        Score score = new Score(0, 19);
+        store.register(new User(2, Direction.UP));
+        store.elevatorIsAt(2);
+        store.tick();
+        assertThat(store.getDemandIndex().nbWaitingAt(2, Direction.UP)).isEqualTo(1);
+
+        assertThat(store.elevatorIsOpen(2, 1, score)).isZero();
+        assertThat(store.getDemandIndex().nobodyIsWaiting()).isTrue();
+        assertThat(store.getUsersInStrangeTravelingState()).hasSize(1);
+        assertThat(store.requestStop(2, Direction.UP, 5)).isTrue();
+        assertThat(store.getDemandIndex().stopRequestedAt(5)).isTrue();
+        store.elevatorIsAt(5);
+        for (int i = 0; i < 5; i++) {
+            store.tick();
+        }
+
+        assertThat(store.elevatorIsOpen(5, 6, score)).isEqualTo(1);
+        assertThat(store.size()).isZero();
+        assertThat(store.getUsers()).isEmpty();
+        assertThat(store.getDemandIndex().nobodyRequestedAStop()).isTrue();
+        assertThat(score.getScore()).isEqualTo(new Score(0, 19).score(2, 5, 1, 5));
+    }
+
+    @Test
+    public void users_should_be_materialized_as_a_list_store_would_hold_them() {
+        ListUserStore listStore = new ListUserStore(0, 19);
+        for (UserStore s : new UserStore[]{store, listStore}) {
+            s.register(new User(3, Direction.DOWN));
+            s.elevatorIsAt(3);
+            s.tick();
+            s.register(new User(3, Direction.UP));
+            s.elevatorIsAt(3);
+            s.register(new User(7, Direction.UP));
+            s.elevatorIsOpen(3, 1, new Score(0, 19));
+            s.requestStop(3, Direction.DOWN, 1);
+            s.tick();
+        }
+
+        List<User> users = store.getUsers();
+        assertThat(users).isEqualTo(listStore.getUsers());
+        assertThat(users.get(2).getCurrentFloor()).isNull();
+        assertThat(users.get(2).didNotRequestedAStopYet()).isTrue();
+    }
+
+    @Test
+    public void stops_should_be_given_to_boarded_users_in_boarding_order() {
+        store.register(new User(4, Direction.UP));
+        store.register(new User(4, Direction.UP));
+        store.register(new User(4, Direction.DOWN));
+        store.elevatorIsAt(4);
+        store.elevatorIsOpen(4, 0, new Score(0, 19));
+
+        assertThat(store.requestStop(4, Direction.UP, 9)).isTrue();
+        assertThat(store.requestStop(4, Direction.UP, 6)).isTrue();
+        assertThat(store.requestStop(4, Direction.UP, 7)).isFalse();
+        assertThat(store.requestStop(3, Direction.DOWN, 1)).isFalse();
+
+        List<User> users = store.getUsers();
+        assertThat(users.get(0).getFloorToGo()).isEqualTo(9);
+        assertThat(users.get(1).getFloorToGo()).isEqualTo(6);
+        assertThat(users.get(2).didNotRequestedAStopYet()).isTrue();
+    }
+
+    @Test
+    public void slots_of_done_users_should_be_recycled() {
+        Score score = new Score(0, 19);
+        for (int i = 0; i < 100; i++) {
+            store.register(new User(0, Direction.UP));
+            store.elevatorIsAt(0);
+            store.elevatorIsOpen(0, i, score);
+            store.requestStop(0, Direction.UP, 1);
+            store.elevatorIsAt(1);
+            store.elevatorIsOpen(1, i, score);
+        }
+        assertThat(store.size()).isZero();
+        assertThat(store.capacity()).isEqualTo(2);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void should_refuse_floors_outside_of_the_building() {
+        store.register(new User(20, Direction.DOWN));
+    }
+}
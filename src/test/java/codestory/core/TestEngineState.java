@@ -0,0 +1,118 @@
+package codestory.core;
+
+import codestory.core.engine.S03E01W2Elevator;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TestEngineState {
+
+    private static EngineState userWaitingAtGroundFloor() {
+        return EngineState.initial(0, 9, 2).call(0, Direction.UP);
+    }
+
+    @Test
+    public void a_delivered_user_should_score_as_on_the_server() {
+        EngineState state = userWaitingAtGroundFloor().step(Command.OPEN).go(5).step(Command.CLOSE);
+        for (int floor = 1; floor <= 5; floor++) {
+            state = state.step(Command.UP);
+        }
+        assertThat(state.nbStopsAt(5)).isEqualTo(1);
+
+        state = state.step(Command.OPEN);
+
+        assertThat(state.getScore()).isEqualTo(new Score(0, 9).score(0, 5, 1, 7));
+        assertThat(state.getNbInside()).isZero();
+        assertThat(state.nbStopsAt(5)).isZero();
+    }
+
+    @Test
+    public void forks_should_not_change_the_state_they_come_from() {
+        EngineState state = userWaitingAtGroundFloor();
+
+        EngineState opened = state.step(Command.OPEN);
+        EngineState moved = state.step(Command.UP);
+
+        assertThat(opened.getNbBoardedWithoutStop()).isEqualTo(1);
+        assertThat(opened.nbWaitingAt(0)).isZero();
+        assertThat(moved.getFloor()).isEqualTo(1);
+        assertThat(moved.nbWaitingAt(0, Direction.UP)).isEqualTo(1);
+        assertThat(state.getTick()).isZero();
+        assertThat(state.getFloor()).isZero();
+        assertThat(state.nbWaitingAt(0)).isEqualTo(1);
+        assertThat(state.getNbBoardedWithoutStop()).isZero();
+    }
+
+    @Test
+    public void users_should_only_enter_while_there_is_room() {
+        EngineState state = userWaitingAtGroundFloor().call(0, Direction.UP).call(0, Direction.DOWN);
+
+        state = state.step(Command.OPEN);
+
+        assertThat(state.getNbInside()).isEqualTo(2);
+        assertThat(state.nbWaitingAt(0, Direction.DOWN)).isEqualTo(1);
+        assertThat(state.go(9).go(9).nbStopsAt(9)).isEqualTo(2);
+        assertThat(state.go(9).go(9).go(9).getNbBoardedWithoutStop()).isZero();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void commands_the_server_refuses_should_not_be_played() {
+        EngineState.initial(0, 9, 2).step(Command.DOWN);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void calls_from_outside_the_building_should_be_rejected() {
+        EngineState.initial(0, 9, 2).call(10, Direction.DOWN);
+    }
+
+    /**
+     * The engine and the state exported from it at the start play the same game: the state stepped with the commands
+     * of the engine stays the one the engine exports.
+     */
+    @Test
+    public void states_stepped_along_an_engine_should_match_its_exports() {
+        S03E01W2Elevator elevator = new S03E01W2Elevator();
+        elevator.reset("test", 0, 9, 10);
+        elevator.call(0, Direction.UP);
+        elevator.call(2, Direction.UP);
+        elevator.call(8, Direction.DOWN);
+        EngineState state = elevator.exportState();
+        int[] floorToGoByInitialFloor = new int[10];
+        floorToGoByInitialFloor[0] = 5;
+        floorToGoByInitialFloor[2] = 7;
+        floorToGoByInitialFloor[8] = 1;
+
+        for (int tick = 0; tick < 60; tick++) {
+            Command command = elevator.nextCommand();
+            int nbInside = state.getNbInside();
+            state = state.step(command);
+            for (int exited = state.getNbInside(); exited < nbInside; exited++) {
+                elevator.userHasExited(null);
+            }
+            while (state.getNbBoardedWithoutStop() > 0) {
+                elevator.userHasEntered(null);
+                state = state.go(floorToGoByInitialFloor[state.getFloor()]);
+                elevator.go(floorToGoByInitialFloor[state.getFloor()]);
+            }
+            assertSameGame(state, elevator.exportState());
+        }
+        assertThat(state.getScore()).isPositive();
+        assertThat(state.getNbInside()).isZero();
+        assertThat(Arrays.asList(state.nbWaitingAt(0), state.nbWaitingAt(2), state.nbWaitingAt(8)))
+                .containsOnly(0);
+    }
+
+    private static void assertSameGame(EngineState state, EngineState exported) {
+        assertThat(state.getTick()).isEqualTo(exported.getTick());
+        assertThat(state.getFloor()).isEqualTo(exported.getFloor());
+        assertThat(state.isOpen()).isEqualTo(exported.isOpen());
+        assertThat(state.getScore()).isEqualTo(exported.getScore());
+        assertThat(state.getNbInside()).isEqualTo(exported.getNbInside());
+        for (int floor = 0; floor <= 9; floor++) {
+            assertThat(state.nbWaitingAt(floor)).isEqualTo(exported.nbWaitingAt(floor));
+            assertThat(state.nbStopsAt(floor)).isEqualTo(exported.nbStopsAt(floor));
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package codestory.core;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TestFloorDemandIndex {
+
+    private FloorDemandIndex index;
+
+    @BeforeMethod
+    public void setUp() {
+        index = new FloorDemandIndex(-3, 25);
+    }
+
+    @Test
+    public void empty_index_should_have_no_demand() {
+        assertThat(index.nobodyIsWaiting()).isTrue();
+        assertThat(index.nobodyRequestedAStop()).isTrue();
+        assertThat(index.someoneIsWaitingAbove(-3)).isFalse();
+        assertThat(index.someoneIsWaitingBelow(25)).isFalse();
+        assertThat(index.someoneRequestedAStopAbove(-3)).isFalse();
+        assertThat(index.someoneRequestedAStopBelow(25)).isFalse();
+    }
+
+    @Test
+    public void waiting_user_should_be_indexed_at_its_initial_floor() {
+        index.add(new User(-2, Direction.UP));
+        index.add(new User(-2, Direction.DOWN));
+        index.add(new User(-2, Direction.UP));
+        assertThat(index.nobodyIsWaiting()).isFalse();
+        assertThat(index.nbWaitingAt(-2)).isEqualTo(3);
+        assertThat(index.nbWaitingAt(-2, Direction.UP)).isEqualTo(2);
+        assertThat(index.nbWaitingAt(-2, Direction.DOWN)).isEqualTo(1);
+        assertThat(index.someoneIsWaitingAbove(-3)).isTrue();
+        assertThat(index.someoneIsWaitingAbove(-2)).isFalse();
+        assertThat(index.someoneIsWaitingBelow(-1)).isTrue();
+        assertThat(index.someoneIsWaitingBelow(-2)).isFalse();
+        assertThat(index.nobodyRequestedAStop()).isTrue();
+    }
+
+    @Test
+    public void traveling_user_should_be_indexed_at_its_floor_to_go_only_once_a_stop_is_requested() {
+        User user = new User(3, Direction.UP);
+        user.setState(User.State.TRAVELLING);
+        index.add(user);
+        assertThat(index.nobodyIsWaiting()).isTrue();
+        assertThat(index.nobodyRequestedAStop()).isTrue();
+
+        index.remove(user);
+        user.go(20);
+        index.add(user);
+        assertThat(index.nobodyRequestedAStop()).isFalse();
+        assertThat(index.stopRequestedAt(20)).isTrue();
+        assertThat(index.nbStopsAt(20, Direction.UP)).isEqualTo(1);
+        assertThat(index.someoneRequestedAStopAbove(19)).isTrue();
+        assertThat(index.someoneRequestedAStopBelow(20)).isFalse();
+        assertThat(index.someoneRequestedAStopBelow(25)).isTrue();
+    }
+
+    @Test
+    public void removing_the_last_user_of_a_floor_should_clear_that_floor() {
+        User first = new User(10, Direction.DOWN);
+        User second = new User(10, Direction.UP);
+        index.add(first);
+        index.add(second);
+        index.remove(first);
+        assertThat(index.someoneIsWaitingAt(10)).isTrue();
+        index.remove(second);
+        assertThat(index.someoneIsWaitingAt(10)).isFalse();
+        assertThat(index.someoneIsWaitingAbove(0)).isFalse();
+        assertThat(index.nobodyIsWaiting()).isTrue();
+    }
+
+    @Test
+    public void rebuild_should_forget_previous_content() {
+        index.add(new User(5, Direction.UP));
+        index.rebuild(Arrays.asList(new User(7, Direction.DOWN)));
+        assertThat(index.someoneIsWaitingAt(5)).isFalse();
+        assertThat(index.nbWaitingAt(7, Direction.DOWN)).isEqualTo(1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void floor_out_of_the_building_should_be_rejected() {
+        index.addWaiting(26, Direction.DOWN);
+    }
+
+    @Test
+    public void nobody_should_wait_out_of_the_building() {
+        index.addWaiting(-3, Direction.UP);
+        index.addStop(25, Direction.UP);
+
+        assertThat(index.nbWaitingAt(26)).isEqualTo(0);
+        assertThat(index.nbStopsAt(-4, Direction.UP)).isEqualTo(0);
+        assertThat(index.someoneIsWaitingAt(-4)).isFalse();
+        assertThat(index.stopRequestedAt(26)).isFalse();
+        assertThat(index.someoneIsWaitingAbove(-4)).isTrue();
+        assertThat(index.someoneIsWaitingBelow(-4)).isFalse();
+        assertThat(index.someoneRequestedAStopBelow(26)).isTrue();
+        assertThat(index.someoneRequestedAStopAbove(26)).isFalse();
+    }
+}
@@ -0,0 +1,87 @@
+package codestory.core;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TestPassengerBuckets {
+
+    private PassengerBuckets buckets;
+
+    @BeforeMethod
+    public void setUp() {
+        buckets = new PassengerBuckets(0, 19);
+    }
+
+    @Test
+    public void open_door_should_only_concern_users_waiting_or_stopping_at_that_floor() {
+        User waitingHere = new User(4, Direction.UP);
+        User waitingElsewhere = new User(5, Direction.UP);
+        User stoppingHere = travelingUser(1, Direction.UP, 4);
+        User boardedHere = travelingUser(4, Direction.DOWN, User.UNSET);
+        buckets.add(waitingHere);
+        buckets.add(waitingElsewhere);
+        buckets.add(stoppingHere);
+        buckets.add(boardedHere);
+
+        List<User> concerned = buckets.collectConcernedByOpenDoorAt(4, new ArrayList<User>());
+
+        assertThat(concerned).containsOnly(waitingHere, stoppingHere);
+    }
+
+    @Test
+    public void first_boarded_without_stop_should_be_fifo_by_floor_and_direction() {
+        User first = travelingUser(3, Direction.UP, User.UNSET);
+        User second = travelingUser(3, Direction.UP, User.UNSET);
+        buckets.add(first);
+        buckets.add(second);
+        buckets.add(travelingUser(3, Direction.DOWN, User.UNSET));
+
+        assertThat(buckets.firstBoardedWithoutStop(3, Direction.UP)).isSameAs(first);
+        buckets.remove(first);
+        first.go(7);
+        buckets.add(first);
+        assertThat(buckets.firstBoardedWithoutStop(3, Direction.UP)).isSameAs(second);
+        assertThat(buckets.firstBoardedWithoutStop(2, Direction.UP)).isNull();
+        assertThat(buckets.getDemandIndex().stopRequestedAt(7)).isTrue();
+    }
+
+    @Test
+    public void remove_should_pick_the_same_instance_among_equal_users() {
+        User first = new User(2, Direction.DOWN);
+        User second = new User(2, Direction.DOWN);
+        assertThat(first).isEqualTo(second);
+        buckets.add(first);
+        buckets.add(second);
+
+        buckets.remove(second);
+        second.setState(User.State.TRAVELLING);
+        buckets.add(second);
+
+        assertThat(buckets.collectConcernedByOpenDoorAt(2, new ArrayList<User>())).hasSize(1);
+        assertThat(buckets.collectConcernedByOpenDoorAt(2, new ArrayList<User>()).get(0)).isSameAs(first);
+        assertThat(buckets.firstBoardedWithoutStop(2, Direction.DOWN)).isSameAs(second);
+    }
+
+    @Test
+    public void done_users_should_not_be_kept() {
+        User done = travelingUser(1, Direction.UP, 3);
+        done.setState(User.State.DONE);
+        buckets.add(done);
+        assertThat(buckets.collectConcernedByOpenDoorAt(3, new ArrayList<User>())).isEmpty();
+        assertThat(buckets.getDemandIndex().nobodyRequestedAStop()).isTrue();
+    }
+
+    private static User travelingUser(int initialFloor, Direction direction, int floorToGo) {
+        User user = new User(initialFloor, direction);
+        user.setState(User.State.TRAVELLING);
+        if (floorToGo != User.UNSET) {
+            user.go(floorToGo);
+        }
+        return user;
+    }
+}
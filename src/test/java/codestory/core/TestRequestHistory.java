@@ -0,0 +1,77 @@
+package codestory.core;
+
+import com.google.common.collect.Lists;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.MapAssert.entry;
+
+public class TestRequestHistory {
+
+    @Test
+    public void requests_should_be_rendered_as_query_strings() {
+        RequestHistory history = new RequestHistory(10);
+        history.reset(1, 0, "start", -1, 5, 12);
+        history.call(2, 0, 3, Direction.DOWN);
+        history.nextCommand(3, 1);
+        history.userHasEntered(4, 1);
+        history.go(5, 1, -1);
+        history.userHasExited(6, 2);
+        history.call(7, 2, 4, null);
+
+        assertThat(history.render()).hasSize(7).includes(
+                entry(1, "0:reset?cause=start&lowerFloor=-1&higherFloor=5&cabinSize=12"),
+                entry(2, "0:call?atFloor=3&to=DOWN"),
+                entry(3, "1:nextCommand"),
+                entry(4, "1:userHasEntered"),
+                entry(5, "1:go?floorToGo=-1"),
+                entry(6, "2:userHasExited"),
+                entry(7, "2:call?atFloor=4&to=null"));
+    }
+
+    @Test
+    public void only_the_last_requests_should_be_kept_oldest_first() {
+        RequestHistory history = new RequestHistory(3);
+        for (int number = 1; number <= 5; number++) {
+            history.nextCommand(number, number);
+        }
+
+        Map<Integer, String> rendered = history.render();
+
+        assertThat(Lists.newArrayList(rendered.keySet())).containsExactly(3, 4, 5);
+        history.clear();
+        assertThat(history.render()).isEmpty();
+    }
+
+    @Test
+    public void commands_should_be_rendered_by_tick() {
+        CommandHistory history = new CommandHistory(2);
+        history.record(1, 0, Command.CLOSE);
+        history.record(2, 1, Command.UP);
+        history.record(3, 1, Command.OPEN);
+
+        assertThat(history.render()).hasSize(2).includes(entry(2, "1:UP"), entry(3, "1:OPEN"));
+        assertThat(Lists.newArrayList(history.render().keySet())).containsExactly(2, 3);
+    }
+
+    @Test
+    public void rendered_histories_should_be_read_back() {
+        RequestHistory requests = new RequestHistory(10);
+        requests.reset(1, 0, "cause with &lowerFloor=1 in it", -1, 5, 12);
+        requests.call(2, 0, 3, Direction.DOWN);
+        requests.call(3, 0, 4, null);
+        requests.nextCommand(4, 1);
+        requests.userHasEntered(5, 1);
+        requests.go(6, 1, -1);
+        requests.userHasExited(7, 2);
+        requests.reset(8, 2, null, 0, 9, 10);
+        CommandHistory commands = new CommandHistory(10);
+        commands.record(1, 0, Command.CLOSE);
+        commands.record(2, -1, Command.DOWN);
+
+        assertThat(RequestHistory.of(requests.render()).render()).isEqualTo(requests.render());
+        assertThat(CommandHistory.of(commands.render()).render()).isEqualTo(commands.render());
+    }
+}
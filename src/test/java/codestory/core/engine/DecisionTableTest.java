@@ -0,0 +1,109 @@
+package codestory.core.engine;
+
+import codestory.EngineConfiguration;
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.Door;
+import codestory.simulator.SimulationReport;
+import codestory.simulator.Simulator;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static codestory.simulator.Games.building;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DecisionTableTest {
+
+    private DecisionTable table;
+
+    @BeforeClass
+    public void compile() {
+        S03E01W2Elevator engine = new S03E01W2Elevator();
+        engine.reset("test", 0, 4, 10);
+        table = DecisionTable.compile(engine);
+    }
+
+    private TabulatedElevator tabulated() {
+        return new TabulatedElevator(new EngineConfiguration(), new DecisionTracer(DecisionTracer.Sampling.OFF, 1),
+                table);
+    }
+
+    @Test
+    public void situations_should_leave_out_impossible_calls() {
+        assertThat(table.lookup(2, Door.CLOSE, false, Direction.UP, 0, 0, 1 << 4)).isEqualTo(Command.UP);
+        assertThat(table.lookup(2, Door.OPEN, false, Direction.UP, 0, 0, 1 << 4)).isEqualTo(Command.CLOSE);
+        assertThat(table.lookup(2, Door.CLOSE, false, Direction.UP, 1 << 4, 0, 0)).isNull();
+        assertThat(table.lookup(2, Door.CLOSE, false, Direction.UP, 0, 1, 0)).isNull();
+        assertThat(table.size()).isEqualTo(5 * 3 * 2 * (1 << 4) * (1 << 4) * (1 << 5));
+    }
+
+    @Test
+    public void a_tabulated_w2_should_play_as_w2() {
+        TabulatedElevator elevator = tabulated();
+
+        SimulationReport report = new Simulator(building(4, 10, 500), elevator).run();
+
+        assertThat(report.getScore()).isEqualTo(new Simulator(building(4, 10, 500), new S03E01W2Elevator()).run().getScore());
+        assertThat(elevator.getTabulatedDecisions()).isEqualTo(500);
+        assertThat(elevator.getLiveDecisions()).isZero();
+    }
+
+    @Test
+    public void other_buildings_should_be_decided_live() {
+        TabulatedElevator elevator = tabulated();
+
+        SimulationReport report = new Simulator(building(9, 10, 500), elevator).run();
+
+        assertThat(report.getScore()).isEqualTo(new Simulator(building(9, 10, 500), new S03E01W2Elevator()).run().getScore());
+        assertThat(elevator.getTabulatedDecisions()).isZero();
+    }
+
+    @Test
+    public void another_strategy_should_be_decided_live() {
+        EngineConfiguration configuration = new EngineConfiguration();
+        configuration.getStrategy().setMaxTicksWaited(20);
+        TabulatedElevator elevator = new TabulatedElevator(configuration,
+                new DecisionTracer(DecisionTracer.Sampling.OFF, 1), table);
+
+        new Simulator(building(4, 10, 500), elevator).run();
+
+        assertThat(elevator.getTabulatedDecisions()).isZero();
+        assertThat(elevator.getLiveDecisions()).isEqualTo(500);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void conflicting_deciders_should_be_refused() {
+        EngineConfiguration configuration = new EngineConfiguration();
+        configuration.setDecisionTable("decision-table.bin");
+        configuration.setLookahead(true);
+
+        S03E01W2Elevator.create(configuration, new DecisionTracer(configuration));
+    }
+
+    @Test
+    public void tables_should_be_read_as_written() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        table.writeTo(output);
+
+        DecisionTable read = DecisionTable.readFrom(new ByteArrayInputStream(output.toByteArray()));
+
+        S03E01W2Elevator engine = new S03E01W2Elevator();
+        engine.reset("test", 0, 4, 10);
+        assertThat(read.covers(engine)).isTrue();
+        assertThat(read.getStrategy()).isEqualTo(table.getStrategy());
+        assertThat(read.size()).isEqualTo(table.size());
+        assertThat(read.lookup(2, Door.CLOSE, true, Direction.DOWN, 1 << 3, 1 << 1, 1))
+                .isEqualTo(table.lookup(2, Door.CLOSE, true, Direction.DOWN, 1 << 3, 1 << 1, 1));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void large_buildings_should_not_be_compiled() {
+        S03E01W2Elevator engine = new S03E01W2Elevator();
+        engine.reset("test", 0, DecisionTable.MAX_FLOORS, 10);
+
+        DecisionTable.compile(engine);
+    }
+}
@@ -0,0 +1,64 @@
+package codestory.core.engine;
+
+import codestory.EngineConfiguration;
+import org.testng.annotations.Test;
+
+import static codestory.core.engine.DecisionTracer.Sampling.ALL;
+import static codestory.core.engine.DecisionTracer.Sampling.DIRECTION_CHANGES;
+import static codestory.core.engine.DecisionTracer.Sampling.EVERY_N_TICKS;
+import static codestory.core.engine.DecisionTracer.Sampling.OFF;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DecisionTracerTest {
+
+    @Test
+    public void off_should_trace_nothing() {
+        DecisionTracer tracer = new DecisionTracer(OFF, 1);
+        assertThat(tracer.tracesTickStart(1)).isFalse();
+        assertThat(tracer.tracesTickEnd(1, true)).isFalse();
+        assertThat(tracer.tracesUserMove(1)).isFalse();
+        assertThat(tracer.tracesReset()).isFalse();
+    }
+
+    @Test
+    public void all_should_trace_everything() {
+        DecisionTracer tracer = new DecisionTracer(ALL, 10);
+        assertThat(tracer.tracesTickStart(3)).isTrue();
+        assertThat(tracer.tracesTickEnd(3, false)).isTrue();
+        assertThat(tracer.tracesUserMove(3)).isTrue();
+        assertThat(tracer.tracesReset()).isTrue();
+    }
+
+    @Test
+    public void every_n_ticks_should_sample_ticks() {
+        DecisionTracer tracer = new DecisionTracer(EVERY_N_TICKS, 10);
+        assertThat(tracer.tracesTickStart(20)).isTrue();
+        assertThat(tracer.tracesTickEnd(20, false)).isTrue();
+        assertThat(tracer.tracesUserMove(20)).isTrue();
+        assertThat(tracer.tracesTickStart(21)).isFalse();
+        assertThat(tracer.tracesTickEnd(21, true)).isFalse();
+        assertThat(tracer.tracesUserMove(21)).isFalse();
+    }
+
+    @Test
+    public void direction_changes_should_only_trace_ticks_ending_with_a_new_direction() {
+        DecisionTracer tracer = new DecisionTracer(DIRECTION_CHANGES, 1);
+        assertThat(tracer.tracesTickStart(5)).isFalse();
+        assertThat(tracer.tracesTickEnd(5, false)).isFalse();
+        assertThat(tracer.tracesTickEnd(5, true)).isTrue();
+        assertThat(tracer.tracesReset()).isTrue();
+    }
+
+    @Test
+    public void allocation_free_engines_should_start_untraced() {
+        EngineConfiguration configuration = new EngineConfiguration();
+        configuration.setAllocationFree(true);
+        assertThat(new DecisionTracer(configuration).getSampling()).isEqualTo(OFF);
+        assertThat(new DecisionTracer(new EngineConfiguration()).getSampling()).isEqualTo(ALL);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void sampling_every_zero_tick_should_be_refused() {
+        new DecisionTracer(EVERY_N_TICKS, 1).set(EVERY_N_TICKS, 0);
+    }
+}
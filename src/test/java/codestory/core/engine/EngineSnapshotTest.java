@@ -0,0 +1,89 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.ElevatorContext;
+import codestory.core.EngineState;
+import codestory.simulator.SimulationConfiguration;
+import codestory.simulator.Simulator;
+import com.google.common.base.Optional;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.testng.annotations.Test;
+
+import java.io.File;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class EngineSnapshotTest {
+
+    private static S03E01W2Elevator played() {
+        SimulationConfiguration configuration = new SimulationConfiguration();
+        configuration.setHigherFloor(9);
+        configuration.setCabinSize(10);
+        configuration.setTicks(500);
+        S03E01W2Elevator played = new S03E01W2Elevator();
+        new Simulator(configuration, played).run();
+        return played;
+    }
+
+    @Test
+    public void a_dump_without_users_should_be_restored_from_its_waiting_and_stop_lists() throws Exception {
+        S03E01W2Elevator engine = new S03E01W2Elevator();
+
+        engine.restore(EngineSnapshot.load(new File("use-cases/strange-reset.json")));
+
+        EngineState state = engine.exportState();
+        assertThat(state.getTick()).isEqualTo(201);
+        assertThat(state.getScore()).isEqualTo(145);
+        assertThat(state.getLowerFloor()).isEqualTo(-3);
+        assertThat(state.getHigherFloor()).isEqualTo(25);
+        assertThat(state.getFloor()).isEqualTo(10);
+        assertThat(state.nbWaitingAt(22, Direction.DOWN)).isEqualTo(1);
+        assertThat(state.nbStopsAt(19)).isEqualTo(1);
+        assertThat(engine.getState(Optional.of(false), Optional.of(true))).contains("\"201\":\"10:UP\"");
+        assertThat(engine.nextCommand()).isEqualTo(Command.UP);
+    }
+
+    @Test
+    public void a_dump_with_the_full_user_list_should_go_on_with_the_game() throws Exception {
+        S03E01W2Elevator played = played();
+        played.nextCommand();
+        String dump = played.getState(Optional.of(true), Optional.of(true));
+
+        S03E01W2Elevator restored = new S03E01W2Elevator();
+        restored.restore(EngineSnapshot.of(ElevatorContext.fromJson(S03E01W2Elevator.MAPPER.readTree(dump))));
+
+        EngineState expected = played.exportState();
+        EngineState actual = restored.exportState();
+        assertThat(actual.getTick()).isEqualTo(expected.getTick());
+        assertThat(actual.getScore()).isEqualTo(expected.getScore());
+        assertThat(actual.getNbInside()).isEqualTo(expected.getNbInside());
+        for (int floor = expected.getLowerFloor(); floor <= expected.getHigherFloor(); floor++) {
+            assertThat(actual.nbWaitingAt(floor)).isEqualTo(expected.nbWaitingAt(floor));
+            assertThat(actual.nbStopsAt(floor)).isEqualTo(expected.nbStopsAt(floor));
+        }
+        for (int tick = 0; tick < 20; tick++) {
+            assertThat(restored.nextCommand()).isEqualTo(played.nextCommand());
+        }
+    }
+
+    @Test
+    public void an_event_loop_should_snapshot_and_restore_on_the_engine_thread() throws Exception {
+        S03E01W2Elevator played = played();
+        File file = File.createTempFile("engine", ".bin");
+        EventLoopElevatorEngine from = new EventLoopElevatorEngine(played, 16,
+                EventLoopElevatorEngine.Backpressure.BLOCK, new MetricsRegistry());
+        from.snapshot().writeTo(file);
+        from.shutdown();
+
+        S03E01W2Elevator restored = new S03E01W2Elevator();
+        EventLoopElevatorEngine to = new EventLoopElevatorEngine(restored, 16,
+                EventLoopElevatorEngine.Backpressure.BLOCK, new MetricsRegistry());
+        to.restore(EngineSnapshot.load(file));
+
+        assertThat(to.nextCommand()).isEqualTo(played.nextCommand());
+        assertThat(restored.exportState().getTick()).isEqualTo(played.exportState().getTick());
+        to.shutdown();
+        file.delete();
+    }
+}
@@ -0,0 +1,68 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.testng.annotations.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+public class EventBatchTest {
+
+    @Test
+    public void a_batch_should_be_read_back_from_its_text() {
+        EventBatch batch = new EventBatch().call(3, Direction.UP).userHasEntered().go(-1).userHasExited().nextCommand();
+
+        EventBatch read = EventBatch.parse(batch.toString());
+
+        assertThat(read.toString()).isEqualTo("call?atFloor=3&to=UP\nuserHasEntered\ngo?floorToGo=-1\nuserHasExited\n" +
+                "nextCommand\n");
+        assertThat(read.size()).isEqualTo(5);
+        assertThat(read.isNextCommand()).isTrue();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void an_event_after_the_next_command_should_be_refused() {
+        EventBatch.parse("nextCommand\ncall?atFloor=3&to=UP");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void a_malformed_event_should_be_refused() {
+        EventBatch.parse("call?atFloor=3&to=SIDEWAYS");
+    }
+
+    @Test
+    public void a_batch_with_a_floor_out_of_the_building_should_apply_nothing() {
+        S03E01W2Elevator engine = new S03E01W2Elevator();
+        engine.reset("start", 0, 5, 10);
+
+        try {
+            new EventBatch().call(3, Direction.UP).go(12).nextCommand().applyTo(engine);
+            fail("the batch should have been refused");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("<12>");
+        }
+
+        assertThat(engine.exportState().nbWaitingAt(3, Direction.UP)).isEqualTo(0);
+    }
+
+    @Test
+    public void a_batch_should_answer_the_command_of_its_tick_through_the_serializing_engines() throws Exception {
+        S03E01W2Elevator reference = new S03E01W2Elevator();
+        reference.call(3, Direction.UP);
+        reference.call(1, Direction.DOWN);
+        Command expected = reference.nextCommand();
+        SynchronizedElevatorEngine locked = new SynchronizedElevatorEngine(new S03E01W2Elevator(),
+                new MetricsRegistry());
+        EventLoopElevatorEngine loop = new EventLoopElevatorEngine(new S03E01W2Elevator(), 16,
+                EventLoopElevatorEngine.Backpressure.BLOCK, new MetricsRegistry());
+
+        EventBatch batch = new EventBatch().call(3, Direction.UP).call(1, Direction.DOWN).nextCommand();
+
+        assertThat(batch.applyTo(locked)).isEqualTo(expected);
+        assertThat(batch.applyTo(loop)).isEqualTo(expected);
+        assertThat(new EventBatch().userHasEntered().applyTo(loop)).isNull();
+        loop.shutdown();
+    }
+}
@@ -0,0 +1,286 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.User;
+import codestory.core.exception.EngineOverloadedException;
+import com.google.common.base.Optional;
+import com.yammer.metrics.core.Counter;
+import com.yammer.metrics.core.MetricName;
+import com.yammer.metrics.core.MetricsRegistry;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class EventLoopElevatorEngineTest {
+
+    private MetricsRegistry metrics;
+    private EventLoopElevatorEngine loop;
+
+    @BeforeMethod
+    public void setUp() {
+        metrics = new MetricsRegistry();
+    }
+
+    @AfterMethod
+    public void tearDown() throws InterruptedException {
+        if (loop != null) {
+            loop.shutdown();
+        }
+    }
+
+    @Test
+    public void commands_should_be_the_ones_of_the_wrapped_engine() {
+        S03E01W2Elevator reference = new S03E01W2Elevator();
+        loop = new EventLoopElevatorEngine(new S03E01W2Elevator(), 16, EventLoopElevatorEngine.Backpressure.BLOCK,
+                metrics);
+        reference.reset("test", 0, 9, 10);
+        loop.reset("test", 0, 9, 10);
+        Random random = new Random(7);
+        for (int tick = 0; tick < 500; tick++) {
+            if (random.nextInt(3) == 0) {
+                int floor = 1 + random.nextInt(8);
+                Direction direction = random.nextBoolean() ? Direction.UP : Direction.DOWN;
+                reference.call(floor, direction);
+                loop.call(floor, direction);
+            }
+            Command command = reference.nextCommand();
+            assertThat(loop.nextCommand()).isEqualTo(command);
+            if (command == Command.OPEN && random.nextBoolean()) {
+                int floorToGo = random.nextInt(10);
+                reference.userHasEntered(null).go(floorToGo);
+                loop.userHasEntered(null).go(floorToGo);
+            }
+        }
+    }
+
+    @Test
+    public void concurrent_calls_should_all_be_applied() throws InterruptedException {
+        final S03E01W2Elevator elevator = new S03E01W2Elevator();
+        loop = new EventLoopElevatorEngine(elevator, 8, EventLoopElevatorEngine.Backpressure.BLOCK, metrics);
+        loop.reset("test", 0, 19, 30);
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 8; p++) {
+            final int floor = p + 1;
+            producers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 500; i++) {
+                        loop.call(floor, Direction.UP);
+                    }
+                }
+            }));
+        }
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        loop.nextCommand();
+
+        assertThat(elevator.getUsers()).hasSize(8 * 500);
+        assertThat(loop.getPendingEvents()).isZero();
+    }
+
+    @Test
+    public void full_queue_should_reject_events() {
+        BlockedEngine engine = new BlockedEngine();
+        loop = new EventLoopElevatorEngine(engine, 2, EventLoopElevatorEngine.Backpressure.REJECT, metrics);
+        loop.call(1, Direction.UP);
+        engine.awaitBlocked();
+        loop.call(2, Direction.UP);
+        loop.call(3, Direction.UP);
+
+        try {
+            loop.call(4, Direction.UP);
+            throw new AssertionError("EngineOverloadedException expected");
+        } catch (EngineOverloadedException e) {
+            assertThat(counter("rejected-events").count()).isEqualTo(1);
+        } finally {
+            engine.unblock();
+        }
+    }
+
+    @Test
+    public void refused_events_should_be_counted_and_next_command_failures_rethrown() {
+        loop = new EventLoopElevatorEngine(new S03E01W2Elevator(), 4, EventLoopElevatorEngine.Backpressure.BLOCK,
+                metrics);
+        loop.call(42, Direction.UP);
+        try {
+            loop.reset("test", 5, 0, 10);
+            throw new AssertionError("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertThat(counter("failed-events").count()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void state_should_be_read_on_the_engine_thread_after_the_queued_events() {
+        final List<String> threads = new ArrayList<>();
+        S03E01W2Elevator elevator = new S03E01W2Elevator() {
+            @Override
+            public byte[] getStateAsJson(Optional<Boolean> oIncludeFullUserList,
+                                         Optional<Boolean> oIncludeLastRequests) {
+                threads.add(Thread.currentThread().getName());
+                return super.getStateAsJson(oIncludeFullUserList, oIncludeLastRequests);
+            }
+        };
+        loop = new EventLoopElevatorEngine(elevator, 16, EventLoopElevatorEngine.Backpressure.BLOCK, metrics);
+        loop.call(3, Direction.UP);
+
+        String state = loop.getState(Optional.of(true), Optional.<Boolean>absent());
+
+        assertThat(state).contains("\"initialFloor\":3");
+        assertThat(threads).containsOnly("elevator-engine");
+    }
+
+    @Test
+    public void an_error_of_the_engine_should_reach_the_caller_and_spare_the_engine_thread() {
+        S03E01W2Elevator elevator = new S03E01W2Elevator() {
+            private boolean failed;
+
+            @Override
+            public Command nextCommand() {
+                if (!failed) {
+                    failed = true;
+                    throw new StackOverflowError("too deep");
+                }
+                return super.nextCommand();
+            }
+        };
+        loop = new EventLoopElevatorEngine(elevator, 4, EventLoopElevatorEngine.Backpressure.BLOCK, metrics);
+
+        try {
+            loop.nextCommand();
+            throw new AssertionError("StackOverflowError expected");
+        } catch (StackOverflowError e) {
+            assertThat(e.getMessage()).isEqualTo("too deep");
+        }
+        assertThat(loop.nextCommand()).isNotNull();
+        assertThat(counter("failed-events").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void events_left_at_shutdown_should_fail_instead_of_hanging() throws Exception {
+        BlockedEngine engine = new BlockedEngine();
+        loop = new EventLoopElevatorEngine(engine, 4, EventLoopElevatorEngine.Backpressure.BLOCK, metrics);
+        loop.call(1, Direction.UP);
+        engine.awaitBlocked();
+        final List<RuntimeException> failures = new ArrayList<>();
+        Thread caller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loop.nextCommand();
+                } catch (RuntimeException e) {
+                    failures.add(e);
+                }
+            }
+        });
+        caller.start();
+        while (loop.getPendingEvents() == 0) {
+            Thread.sleep(1);
+        }
+
+        try {
+            loop.shutdown(50, TimeUnit.MILLISECONDS);
+            caller.join(5000);
+        } finally {
+            engine.unblock();
+        }
+
+        assertThat(caller.isAlive()).isFalse();
+        assertThat(failures).hasSize(1);
+        assertThat(failures.get(0)).isInstanceOf(IllegalStateException.class);
+        assertThat(loop.getPendingEvents()).isZero();
+    }
+
+    private Counter counter(String name) {
+        return (Counter) metrics.allMetrics().get(new MetricName(EventLoopElevatorEngine.class, name));
+    }
+
+    /**
+     * Blocks the engine thread in its first call, until unblocked.
+     */
+    private static class BlockedEngine implements ElevatorEngine {
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final CountDownLatch unblocked = new CountDownLatch(1);
+
+        void awaitBlocked() {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void unblock() {
+            unblocked.countDown();
+        }
+
+        @Override
+        public ElevatorEngine call(Integer atFloor, Direction to) {
+            blocked.countDown();
+            try {
+                unblocked.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return this;
+        }
+
+        @Override
+        public ElevatorEngine go(Integer floorToGo) {
+            return this;
+        }
+
+        @Override
+        public Command nextCommand() {
+            return Command.NOTHING;
+        }
+
+        @Override
+        public ElevatorEngine userHasEntered(User user) {
+            return this;
+        }
+
+        @Override
+        public ElevatorEngine userHasExited(User user) {
+            return this;
+        }
+
+        @Override
+        public ElevatorEngine reset(String cause, int lowerFloor, int higherFloor, int cabinSize) {
+            return this;
+        }
+
+        @Override
+        public Integer getLowerFloor() {
+            return 0;
+        }
+
+        @Override
+        public Integer getHigherFloor() {
+            return 0;
+        }
+
+        @Override
+        public String getState(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests) {
+            return "";
+        }
+
+        @Override
+        public byte[] getStateAsJson(Optional<Boolean> oIncludeFullUserList, Optional<Boolean> oIncludeLastRequests) {
+            return new byte[0];
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.EngineState;
+import codestory.simulator.SimulationConfiguration;
+import codestory.simulator.Simulator;
+import com.google.common.base.Optional;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class JournaledElevatorEngineTest {
+
+    private final DecisionTracer tracer = new DecisionTracer(DecisionTracer.Sampling.OFF, 1);
+    private File directory;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = File.createTempFile("journal", "");
+        directory.delete();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static SimulationConfiguration game() {
+        SimulationConfiguration configuration = new SimulationConfiguration();
+        configuration.setHigherFloor(9);
+        configuration.setCabinSize(10);
+        configuration.setTicks(1000);
+        return configuration;
+    }
+
+    private static void assertSameState(S03E01W2Elevator recovered, S03E01W2Elevator played) {
+        EngineState expected = played.exportState();
+        EngineState actual = recovered.exportState();
+        assertThat(actual.getTick()).isEqualTo(expected.getTick());
+        assertThat(actual.getScore()).isEqualTo(expected.getScore());
+        assertThat(actual.getFloor()).isEqualTo(expected.getFloor());
+        assertThat(actual.isOpen()).isEqualTo(expected.isOpen());
+        assertThat(actual.getDirection()).isEqualTo(expected.getDirection());
+        assertThat(actual.getNbInside()).isEqualTo(expected.getNbInside());
+        for (int floor = expected.getLowerFloor(); floor <= expected.getHigherFloor(); floor++) {
+            assertThat(actual.nbWaitingAt(floor)).isEqualTo(expected.nbWaitingAt(floor));
+            assertThat(actual.nbStopsAt(floor)).isEqualTo(expected.nbStopsAt(floor));
+        }
+    }
+
+    private static String undated(String state) {
+        return state.replaceFirst("\"date\":\"[^\"]*\"", "");
+    }
+
+    @Test
+    public void a_recovered_engine_should_go_on_with_the_game() throws Exception {
+        S03E01W2Elevator played = new S03E01W2Elevator();
+        RequestJournal journal = RequestJournal.open(directory, 64, 10);
+        new Simulator(game(), new JournaledElevatorEngine(played, journal)).run();
+        journal.close();
+
+        S03E01W2Elevator recovered = new S03E01W2Elevator();
+        RequestJournal reopened = RequestJournal.open(directory, 64, 10);
+        JournaledElevatorEngine engine = JournaledElevatorEngine.recover(recovered, reopened, tracer);
+
+        assertSameState(recovered, played);
+        assertThat(engine.nextCommand()).isEqualTo(played.nextCommand());
+        assertThat(reopened.getRecords()).isGreaterThan(journal.getRecords());
+        reopened.close();
+    }
+
+    @Test
+    public void replay_should_apply_the_requests_in_order() throws Exception {
+        RequestJournal journal = RequestJournal.open(directory, 4, 10);
+        JournaledElevatorEngine engine = new JournaledElevatorEngine(new S03E01W2Elevator(), journal);
+        engine.reset("a cause long enough to need a few records of its own, é included", 0, 5, 10);
+        engine.call(3, Direction.DOWN);
+        Command first = engine.nextCommand();
+        engine.go(1);
+
+        S03E01W2Elevator recovered = new S03E01W2Elevator();
+        RequestJournal.Replayed replayed = journal.replayTo(recovered);
+
+        assertThat(replayed.getRequests()).isEqualTo(4);
+        assertThat(replayed.getFailures()).isZero();
+        assertThat(replayed.getDivergences()).isZero();
+        assertThat(journal.getRecords()).isEqualTo(4);
+        assertThat(recovered.exportState().getTick()).isEqualTo(1);
+        assertThat(recovered.exportState().nbWaitingAt(3, Direction.DOWN)).isEqualTo(1);
+        assertThat(first).isEqualTo(Command.UP);
+        journal.close();
+    }
+
+    @Test
+    public void requests_refused_should_not_be_journaled() throws Exception {
+        RequestJournal journal = RequestJournal.open(directory, 4, 10);
+        JournaledElevatorEngine engine = new JournaledElevatorEngine(new S03E01W2Elevator(), journal);
+        engine.reset("test", 0, 5, 10);
+        try {
+            engine.call(42, Direction.UP);
+        } catch (RuntimeException e) {
+            // refused as the server would be
+        }
+
+        assertThat(journal.getRecords()).isEqualTo(1);
+        journal.close();
+    }
+
+    @Test
+    public void a_record_cut_by_a_crash_should_not_be_replayed() throws Exception {
+        RequestJournal journal = RequestJournal.open(directory, 4, 10);
+        journal.reset("test", 0, 5, 10);
+        journal.call(2, Direction.UP);
+        journal.close();
+        try (RandomAccessFile raw = new RandomAccessFile(new File(directory, "requests-0.journal"), "rw")) {
+            raw.seek(3 * RequestJournal.RECORD_BYTES + 4);
+            raw.writeInt(4);
+        }
+
+        RequestJournal reopened = RequestJournal.open(directory, 4, 10);
+
+        assertThat(reopened.getRecords()).isEqualTo(2);
+        reopened.go(1);
+        assertThat(reopened.replayTo(new S03E01W2Elevator()).getRequests()).isEqualTo(3);
+        reopened.close();
+    }
+
+    @Test
+    public void what_a_cut_reset_left_should_not_be_read_as_records() throws Exception {
+        RequestJournal journal = RequestJournal.open(directory, 8, 10);
+        journal.reset("test", 0, 5, 10);
+        journal.call(2, Direction.UP);
+        journal.close();
+        try (RandomAccessFile raw = new RandomAccessFile(new File(directory, "requests-0.journal"), "rw")) {
+            raw.seek(4 * RequestJournal.RECORD_BYTES + 16);
+            raw.writeInt(2 * RequestJournal.RECORD_BYTES);
+            raw.seek(5 * RequestJournal.RECORD_BYTES);
+            raw.write(new byte[]{2, 0, 0, 0, 0, 0, 0, 7});
+        }
+
+        RequestJournal reopened = RequestJournal.open(directory, 8, 10);
+        reopened.go(1);
+        reopened.close();
+        RequestJournal again = RequestJournal.open(directory, 8, 10);
+
+        assertThat(again.getRecords()).isEqualTo(3);
+        assertThat(again.replayTo(new S03E01W2Elevator()).getRequests()).isEqualTo(3);
+        again.close();
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void other_files_should_not_be_taken_for_journals() throws Exception {
+        directory.mkdirs();
+        try (RandomAccessFile raw = new RandomAccessFile(new File(directory, "requests-0.journal"), "rw")) {
+            raw.writeInt(42);
+        }
+
+        RequestJournal.open(directory, 4, 10);
+    }
+
+    @Test
+    public void a_snapshot_should_restore_the_full_engine_state() throws Exception {
+        S03E01W2Elevator played = new S03E01W2Elevator();
+        new Simulator(game(), played).run();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        played.snapshot().writeTo(bytes);
+
+        S03E01W2Elevator restored = new S03E01W2Elevator();
+        restored.restore(EngineSnapshot.readFrom(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertSameState(restored, played);
+        assertThat(restored.nextCommand()).isEqualTo(played.nextCommand());
+        assertThat(undated(restored.getState(Optional.of(true), Optional.of(true))))
+                .isEqualTo(undated(played.getState(Optional.of(true), Optional.of(true))));
+    }
+
+    @Test
+    public void recovery_should_replay_the_journal_from_the_newest_snapshot() throws Exception {
+        S03E01W2Elevator played = new S03E01W2Elevator();
+        RequestJournal journal = RequestJournal.open(directory, 64, 10);
+        JournaledElevatorEngine journaled = new JournaledElevatorEngine(played, journal, 100);
+        new Simulator(game(), journaled).run();
+        journaled.awaitSnapshot();
+        long records = journal.getRecords();
+        journal.close();
+
+        List<Long> snapshots = JournaledElevatorEngine.snapshotsIn(directory);
+        List<Long> segments = RequestJournal.segmentsIn(directory);
+        assertThat(snapshots).hasSize(1);
+        assertThat(segments.get(0)).isEqualTo(snapshots.get(0));
+
+        S03E01W2Elevator recovered = new S03E01W2Elevator();
+        RequestJournal reopened = RequestJournal.open(directory, 64, 10);
+        JournaledElevatorEngine engine = JournaledElevatorEngine.recover(recovered, reopened, tracer, 100);
+
+        assertThat(reopened.getRecords()).isEqualTo(records);
+        assertSameState(recovered, played);
+        assertThat(engine.nextCommand()).isEqualTo(played.nextCommand());
+        reopened.close();
+    }
+
+    @Test
+    public void a_snapshot_that_cannot_be_read_should_be_replayed_past() throws Exception {
+        RequestJournal journal = RequestJournal.open(directory, 4, 10);
+        JournaledElevatorEngine engine = new JournaledElevatorEngine(new S03E01W2Elevator(), journal);
+        engine.reset("test", 0, 5, 10);
+        engine.call(3, Direction.DOWN);
+        try (RandomAccessFile raw = new RandomAccessFile(new File(directory, "snapshot-1.bin"), "rw")) {
+            raw.writeInt(42);
+        }
+
+        S03E01W2Elevator recovered = new S03E01W2Elevator();
+        JournaledElevatorEngine.recover(recovered, journal, tracer, 100);
+
+        assertThat(recovered.exportState().nbWaitingAt(3, Direction.DOWN)).isEqualTo(1);
+        journal.close();
+    }
+}
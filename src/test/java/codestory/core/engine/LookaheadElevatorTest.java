@@ -0,0 +1,89 @@
+package codestory.core.engine;
+
+import codestory.EngineConfiguration;
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.simulator.SimulationReport;
+import codestory.simulator.Simulator;
+import org.testng.annotations.Test;
+
+import static codestory.simulator.Games.building;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LookaheadElevatorTest {
+
+    private static EngineConfiguration lookahead(long budgetMicros) {
+        EngineConfiguration configuration = new EngineConfiguration();
+        configuration.setLookahead(true);
+        configuration.setLookaheadBudgetMicros(budgetMicros);
+        return configuration;
+    }
+
+    @Test
+    public void the_configuration_should_say_whether_w2_plans_ahead() {
+        DecisionTracer tracer = new DecisionTracer(DecisionTracer.Sampling.OFF, 1);
+
+        assertThat(S03E01W2Elevator.create(lookahead(1000), tracer)).isInstanceOf(LookaheadElevator.class);
+        assertThat(S03E01W2Elevator.create(new EngineConfiguration(), tracer).getClass())
+                .isEqualTo(S03E01W2Elevator.class);
+    }
+
+    @Test
+    public void without_time_to_plan_decisions_should_be_greedy() {
+        LookaheadElevator elevator = new LookaheadElevator(lookahead(0));
+        S03E01W2Elevator greedy = new S03E01W2Elevator();
+
+        SimulationReport planned = new Simulator(building(9, 10, 300), elevator).run();
+
+        assertThat(planned.getScore()).isEqualTo(new Simulator(building(9, 10, 300), greedy).run().getScore());
+        assertThat(elevator.getPlannedDecisions()).isZero();
+        assertThat(elevator.getGreedyDecisions()).isEqualTo(300);
+    }
+
+    @Test
+    public void planned_games_should_only_give_commands_the_server_accepts() {
+        LookaheadElevator elevator = new LookaheadElevator(lookahead(100000));
+
+        SimulationReport report = new Simulator(building(9, 10, 300), elevator).run();
+
+        assertThat(report.getFailures()).isZero();
+        assertThat(report.getDelivered()).isGreaterThan(0);
+        assertThat(elevator.getPlannedDecisions()).isEqualTo(300);
+    }
+
+    @Test
+    public void rollouts_should_be_counted_by_decision() {
+        EngineConfiguration configuration = lookahead(20000);
+        configuration.setLookaheadPlanning(LookaheadElevator.Planning.ROLLOUTS);
+        configuration.setRolloutThreads(2);
+        configuration.setMinRolloutRounds(1);
+        LookaheadElevator elevator = new LookaheadElevator(configuration);
+
+        SimulationReport report = new Simulator(building(9, 10, 50), elevator).run();
+
+        assertThat(report.getFailures()).isZero();
+        assertThat(elevator.getPlannedDecisions()).isGreaterThan(0);
+        assertThat(elevator.getRollouts()).isGreaterThanOrEqualTo(elevator.getPlannedDecisions());
+        assertThat(elevator.getLastRollouts()).isGreaterThan(0);
+    }
+
+    @Test
+    public void engines_should_share_their_rollout_pool() {
+        assertThat(LookaheadElevator.rolloutPool(2)).isSameAs(LookaheadElevator.rolloutPool(2));
+        assertThat(LookaheadElevator.rolloutPool(3).getParallelism()).isEqualTo(3);
+    }
+
+    @Test
+    public void a_passenger_should_be_let_out_at_once() {
+        LookaheadElevator elevator = new LookaheadElevator(lookahead(100000));
+        elevator.reset("test", 0, 9, 10);
+        elevator.call(0, Direction.UP);
+
+        assertThat(elevator.nextCommand()).isEqualTo(Command.OPEN);
+        elevator.userHasEntered(null);
+        elevator.go(1);
+        assertThat(elevator.nextCommand()).isEqualTo(Command.CLOSE);
+        assertThat(elevator.nextCommand()).isEqualTo(Command.UP);
+        assertThat(elevator.nextCommand()).isEqualTo(Command.OPEN);
+    }
+}
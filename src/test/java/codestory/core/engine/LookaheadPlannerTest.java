@@ -0,0 +1,86 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.User;
+import org.testng.annotations.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LookaheadPlannerTest {
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE / 2;
+
+    private static User travelling(int initialFloor, int floorToGo, int tickToWait, int tickToGo) {
+        User user = new User(initialFloor, initialFloor < floorToGo ? Direction.UP : Direction.DOWN);
+        user.setState(User.State.TRAVELLING);
+        user.setTickToWait(tickToWait);
+        user.setTickToGo(tickToGo);
+        user.go(floorToGo);
+        return user;
+    }
+
+    private static User waiting(int initialFloor, Direction direction, int tickToWait) {
+        User user = new User(initialFloor, direction);
+        user.setTickToWait(tickToWait);
+        return user;
+    }
+
+    private static LookaheadPlanner planner(int floor, Direction direction, User... users) {
+        LookaheadPlanner planner = new LookaheadPlanner(6, 2);
+        planner.getRoot().reset(0, 9, 30, floor, false, direction, users.length);
+        for (User user : users) {
+            planner.getRoot().add(user);
+        }
+        return planner;
+    }
+
+    @Test
+    public void should_open_the_door_for_a_passenger_at_destination() {
+        LookaheadPlanner planner = planner(4, Direction.UP, travelling(0, 4, 2, 5));
+
+        assertThat(planner.plan(Command.UP, NO_DEADLINE)).isEqualTo(Command.OPEN);
+        assertThat(planner.getHorizon()).isEqualTo(6);
+    }
+
+    @Test
+    public void should_head_for_a_passenger_destination() {
+        assertThat(planner(4, Direction.UP, travelling(0, 2, 2, 5)).plan(Command.NOTHING, NO_DEADLINE))
+                .isEqualTo(Command.DOWN);
+    }
+
+    @Test
+    public void should_not_make_a_cabin_full_of_passengers_wait_for_one_user() {
+        LookaheadPlanner planner = planner(5, Direction.UP, waiting(6, Direction.DOWN, 1), travelling(8, 1, 2, 4),
+                travelling(8, 1, 2, 4), travelling(8, 1, 2, 4), travelling(9, 1, 2, 5), travelling(9, 2, 2, 5));
+
+        assertThat(planner.plan(Command.UP, NO_DEADLINE)).isEqualTo(Command.DOWN);
+    }
+
+    @Test
+    public void the_preferred_command_should_win_ties() {
+        assertThat(planner(0, Direction.UP).plan(Command.NOTHING, NO_DEADLINE)).isEqualTo(Command.NOTHING);
+        assertThat(planner(0, Direction.UP).plan(Command.UP, NO_DEADLINE)).isEqualTo(Command.UP);
+    }
+
+    @Test
+    public void no_plan_should_be_given_when_out_of_time() {
+        LookaheadPlanner planner = planner(4, Direction.UP, travelling(0, 2, 2, 5));
+
+        assertThat(planner.plan(Command.UP, System.nanoTime())).isNull();
+        assertThat(planner.getHorizon()).isZero();
+    }
+
+    @Test
+    public void playing_a_command_should_tick_users_and_deliver_them() {
+        PlanningState state = planner(4, Direction.UP, travelling(0, 4, 2, 5), waiting(4, Direction.UP, 3)).getRoot();
+        int before = state.value();
+
+        assertThat(state.accepts(Command.CLOSE)).isFalse();
+        state.play(Command.OPEN);
+
+        assertThat(state.isOpen()).isTrue();
+        assertThat(state.accepts(Command.UP)).isFalse();
+        assertThat(state.value()).isGreaterThan(before);
+    }
+}
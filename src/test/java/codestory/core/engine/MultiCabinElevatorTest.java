@@ -0,0 +1,175 @@
+package codestory.core.engine;
+
+import codestory.EngineConfiguration;
+import codestory.core.Command;
+import codestory.core.Direction;
+import com.google.common.base.Optional;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static codestory.core.Direction.DOWN;
+import static codestory.core.Direction.UP;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MultiCabinElevatorTest {
+
+    private MultiCabinElevator elevator;
+
+    @AfterMethod
+    public void tearDown() {
+        if (elevator != null) {
+            elevator.shutdown();
+        }
+    }
+
+    @Test
+    public void a_single_cabin_should_behave_like_a_single_cabin_engine() {
+        S03E01W2Elevator reference = new S03E01W2Elevator();
+        elevator = newElevator(1, 8);
+        reference.reset("test", 0, 9, 10);
+        elevator.reset("test", 0, 9, 10);
+        Random random = new Random(3);
+        for (int tick = 0; tick < 500; tick++) {
+            if (random.nextInt(3) == 0) {
+                int floor = 1 + random.nextInt(8);
+                Direction direction = random.nextBoolean() ? UP : DOWN;
+                reference.call(floor, direction);
+                elevator.call(floor, direction);
+            }
+            Command command = reference.nextCommand();
+            assertThat(elevator.nextCommand()).isEqualTo(command);
+            if (command == Command.OPEN && random.nextBoolean()) {
+                int floorToGo = random.nextInt(10);
+                reference.userHasEntered(null).go(floorToGo);
+                elevator.userHasEntered(null).go(floorToGo);
+            }
+        }
+    }
+
+    @Test
+    public void idle_cabin_cost_should_be_the_distance() {
+        assertThat(MultiCabinElevator.estimatedCost(0, 9, 10, 2, UP, 0, 0, 7, DOWN)).isEqualTo(5);
+        assertThat(MultiCabinElevator.estimatedCost(0, 9, 10, 7, DOWN, 0, 0, 2, DOWN)).isEqualTo(5);
+    }
+
+    @Test
+    public void busy_cabin_cost_should_follow_its_direction() {
+        // on its way
+        assertThat(MultiCabinElevator.estimatedCost(0, 9, 10, 2, UP, 1, 0, 7, UP)).isEqualTo(5 + 2);
+        // up to the top, then down to the call
+        assertThat(MultiCabinElevator.estimatedCost(0, 9, 10, 2, UP, 1, 0, 7, DOWN)).isEqualTo(7 + 2 + 2);
+        // up to the top, down to the bottom, then up to the call
+        assertThat(MultiCabinElevator.estimatedCost(0, 9, 10, 4, UP, 1, 0, 2, UP)).isEqualTo(5 + 9 + 2 + 2);
+        // a full cabin comes back later
+        assertThat(MultiCabinElevator.estimatedCost(0, 9, 2, 2, UP, 1, 2, 7, UP)).isEqualTo(5 + 2 + 18);
+    }
+
+    @Test
+    public void calls_should_go_to_the_cheapest_cabin() {
+        elevator = newElevator(3, 8);
+        elevator.reset("test", 0, 9, 10, 3);
+
+        elevator.call(5, UP);
+        elevator.call(5, UP);
+        elevator.call(5, UP);
+        elevator.call(5, UP);
+
+        assertThat(elevator.cabin(0).getEngine().getUsers()).hasSize(2);
+        assertThat(elevator.cabin(1).getEngine().getUsers()).hasSize(1);
+        assertThat(elevator.cabin(2).getEngine().getUsers()).hasSize(1);
+    }
+
+    @Test
+    public void calls_of_a_single_cabin_client_should_go_to_cabin_0() {
+        elevator = newElevator(3, 8);
+        elevator.reset("test", 0, 9, 10, 3);
+        elevator.reset("the game server knows a single cabin", 0, 9, 10);
+
+        elevator.call(5, UP);
+        elevator.call(5, UP);
+        elevator.call(5, UP);
+
+        assertThat(elevator.cabin(0).getEngine().getUsers()).hasSize(3);
+        elevator.nextCommands();
+        elevator.call(5, UP);
+        assertThat(elevator.cabin(0).getEngine().getUsers()).hasSize(3);
+    }
+
+    @Test
+    public void cabins_should_give_the_same_commands_in_parallel() {
+        MultiCabinElevator sequential = newElevator(16, 100);
+        elevator = newElevator(16, 1);
+        try {
+            sequential.reset("test", -2, 20, 5, 16);
+            elevator.reset("test", -2, 20, 5, 16);
+            Random random = new Random(11);
+            for (int tick = 0; tick < 300; tick++) {
+                for (int call = random.nextInt(4); call > 0; call--) {
+                    int floor = -2 + random.nextInt(23);
+                    Direction direction = floor == 20 || (floor > -2 && random.nextBoolean()) ? DOWN : UP;
+                    sequential.call(floor, direction);
+                    elevator.call(floor, direction);
+                }
+                List<Command> commands = sequential.nextCommands();
+                assertThat(elevator.nextCommands()).isEqualTo(commands);
+                for (int cabin = 0; cabin < commands.size(); cabin++) {
+                    if (commands.get(cabin) == Command.OPEN && random.nextBoolean()) {
+                        int floorToGo = -2 + random.nextInt(23);
+                        sequential.userHasEntered(cabin, null).go(cabin, floorToGo);
+                        elevator.userHasEntered(cabin, null).go(cabin, floorToGo);
+                    }
+                }
+            }
+        } finally {
+            sequential.shutdown();
+        }
+    }
+
+    @Test
+    public void single_cabin_reset_should_keep_the_cabins() {
+        elevator = newElevator(1, 8);
+        elevator.reset("test", 0, 9, 10, 4);
+
+        elevator.reset("test", 0, 19, 10);
+
+        assertThat(elevator.getCabinCount()).isEqualTo(4);
+        assertThat(elevator.getHigherFloor()).isEqualTo(19);
+    }
+
+    @Test
+    public void resets_keeping_the_cabin_count_should_reset_the_cabins_in_place() {
+        elevator = newElevator(2, 8);
+        elevator.reset("first game", 0, 9, 10, 2);
+        S03E01W2Elevator cabin = elevator.cabin(1).getEngine();
+        elevator.nextCommands();
+
+        elevator.reset("second game", 0, 9, 10);
+        elevator.nextCommand();
+        elevator.reset("third game", 0, 9, 10);
+
+        assertThat(elevator.cabin(1).getEngine()).isSameAs(cabin);
+        assertThat(cabin.getState(Optional.of(false), Optional.of(false))).contains("second game")
+                .contains("third game");
+        elevator.reset("fourth game", 0, 9, 10, 3);
+        assertThat(elevator.cabin(1).getEngine()).isNotSameAs(cabin);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unknown_cabin_should_be_refused() {
+        elevator = newElevator(2, 8);
+
+        elevator.go(2, 3);
+    }
+
+    private MultiCabinElevator newElevator(int cabinCount, int parallelCabinsThreshold) {
+        EngineConfiguration configuration = new EngineConfiguration();
+        configuration.setMultiCabin(true);
+        configuration.setCabinCount(cabinCount);
+        configuration.setParallelCabinsThreshold(parallelCabinsThreshold);
+        configuration.setCabinThreads(4);
+        return new MultiCabinElevator(configuration, new DecisionTracer(configuration));
+    }
+}
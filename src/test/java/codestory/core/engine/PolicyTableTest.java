@@ -0,0 +1,51 @@
+package codestory.core.engine;
+
+import codestory.EngineConfiguration;
+import codestory.core.Command;
+import codestory.simulator.Simulator;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static codestory.simulator.Games.building;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PolicyTableTest {
+
+    private PolicyTable table;
+
+    @BeforeClass
+    public void learn() {
+        S03E01W2Elevator engine = new S03E01W2Elevator();
+        engine.reset("test", 0, 5, 10);
+        table = PolicyTable.of(engine, PolicyTable.decisionsOf(engine));
+    }
+
+    private TabulatedElevator policy() {
+        return new TabulatedElevator(new EngineConfiguration(), new DecisionTracer(DecisionTracer.Sampling.OFF, 1),
+                table);
+    }
+
+    @Test
+    public void the_policy_of_w2_should_play_as_w2() {
+        TabulatedElevator elevator = policy();
+
+        long score = new Simulator(building(5, 10, 500), elevator).run().getScore();
+
+        assertThat(score).isEqualTo(new Simulator(building(5, 10, 500), new S03E01W2Elevator()).run().getScore());
+        assertThat(elevator.getTabulatedDecisions()).isEqualTo(500);
+        assertThat(elevator.getLiveDecisions()).isZero();
+    }
+
+    @Test
+    public void only_commands_the_server_accepts_should_be_learnt() {
+        int openAtTheTop = PolicyTable.situations(6) - (1 << PolicyTable.FEATURES) * 6 + 1;
+        int closedAtTheTop = PolicyTable.situations(6) - (1 << PolicyTable.FEATURES);
+
+        assertThat(PolicyTable.accepts(6, openAtTheTop, Command.CLOSE)).isTrue();
+        assertThat(PolicyTable.accepts(6, openAtTheTop, Command.DOWN)).isFalse();
+        assertThat(PolicyTable.accepts(6, openAtTheTop, Command.NOTHING)).isFalse();
+        assertThat(PolicyTable.accepts(6, closedAtTheTop, Command.NOTHING)).isTrue();
+        assertThat(PolicyTable.accepts(6, closedAtTheTop, Command.UP)).isFalse();
+        assertThat(PolicyTable.accepts(6, closedAtTheTop, Command.DOWN)).isTrue();
+    }
+}
@@ -0,0 +1,96 @@
+package codestory.core.engine;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.User;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RolloutPlannerTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+
+    @AfterClass
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private static User travelling(int initialFloor, int floorToGo) {
+        User user = new User(initialFloor, initialFloor < floorToGo ? Direction.UP : Direction.DOWN);
+        user.setState(User.State.TRAVELLING);
+        user.setTickToWait(2);
+        user.setTickToGo(3);
+        user.go(floorToGo);
+        return user;
+    }
+
+    private RolloutPlanner planner(ArrivalRates arrivals, int floor, User... users) {
+        RolloutPlanner planner = new RolloutPlanner(pool, 50, 4, arrivals);
+        planner.getRoot().reset(0, 9, 10, floor, false, Direction.UP, users.length);
+        for (User user : users) {
+            planner.getRoot().add(user);
+        }
+        return planner;
+    }
+
+    private static long in(long millis) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static ArrivalRates busyBuilding() {
+        ArrivalRates arrivals = new ArrivalRates();
+        arrivals.reset(0, 9);
+        for (int tick = 0; tick < 10; tick++) {
+            arrivals.tick();
+            arrivals.call(tick, tick < 9 ? Direction.UP : Direction.DOWN);
+        }
+        return arrivals;
+    }
+
+    @Test
+    public void should_let_a_passenger_out_at_destination() {
+        RolloutPlanner planner = planner(busyBuilding(), 3, travelling(0, 3), travelling(1, 7));
+
+        assertThat(planner.plan(Command.UP, in(50))).isEqualTo(Command.OPEN);
+        assertThat(planner.getLastRollouts()).isGreaterThanOrEqualTo(4 * 4);
+        assertThat(planner.getLastRollouts() % 4).isZero();
+    }
+
+    @Test
+    public void should_head_for_the_passengers() {
+        RolloutPlanner planner = planner(busyBuilding(), 5, travelling(9, 2), travelling(8, 1));
+
+        assertThat(planner.plan(Command.UP, in(50))).isEqualTo(Command.DOWN);
+    }
+
+    @Test
+    public void no_plan_should_be_given_when_out_of_time() {
+        RolloutPlanner planner = planner(busyBuilding(), 3, travelling(0, 3));
+
+        assertThat(planner.plan(Command.UP, System.nanoTime())).isNull();
+        assertThat(planner.getLastRollouts()).isZero();
+    }
+
+    @Test
+    public void arrival_rates_should_be_calls_by_tick() {
+        ArrivalRates arrivals = new ArrivalRates();
+        arrivals.reset(-1, 3);
+        assertThat(arrivals.rate(0, true)).isZero();
+
+        for (int tick = 0; tick < 4; tick++) {
+            arrivals.tick();
+        }
+        arrivals.call(-1, Direction.UP);
+        arrivals.call(0, Direction.DOWN);
+        arrivals.call(0, Direction.DOWN);
+
+        assertThat(arrivals.rate(-1, true)).isEqualTo(0.25);
+        assertThat(arrivals.rate(0, false)).isEqualTo(0.5);
+        assertThat(arrivals.rate(0, true)).isZero();
+    }
+}
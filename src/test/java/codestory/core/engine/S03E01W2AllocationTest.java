@@ -0,0 +1,152 @@
+package codestory.core.engine;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import codestory.EngineConfiguration;
+import codestory.core.AllocationMeter;
+import codestory.core.Command;
+import codestory.core.Direction;
+import org.slf4j.LoggerFactory;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import static codestory.core.AllocationMeter.Operation.CALL;
+import static codestory.core.AllocationMeter.Operation.GO;
+import static codestory.core.AllocationMeter.Operation.NEXT_COMMAND;
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Bytes allocated per operation by an allocation free engine, averaged over a steady state game. The budgets are
+ * below one byte: a single allocation on the hot path blows them.
+ */
+public class S03E01W2AllocationTest {
+
+    private static final double NEXT_COMMAND_BUDGET = 0.5;
+    private static final double CALL_BUDGET = 0.5;
+    private static final double GO_BUDGET = 0.5;
+    private static final int LOWER_FLOOR = 0;
+    private static final int HIGHER_FLOOR = 19;
+    private static final int CABIN_SIZE = 30;
+    private static final int MAX_USERS = 1024;
+    private AllocationMeter meter;
+    private S03E01W2Elevator elevator;
+    private Random random;
+    // users of the simulated game, by index: initial floor, floor to go, inside the cabin or not
+    private final int[] initialFloors = new int[MAX_USERS];
+    private final int[] floorsToGo = new int[MAX_USERS];
+    private final boolean[] inside = new boolean[MAX_USERS];
+    private int nbUsers;
+    private int floor;
+    private Level previousLevel;
+
+    @BeforeMethod
+    public void setUp() {
+        if (!AllocationMeter.isSupported()) {
+            throw new SkipException("this JVM does not count allocated bytes per thread");
+        }
+        // debug logs are not on the allocation free path, tests run with logback's default DEBUG level
+        Logger logger = (Logger) LoggerFactory.getLogger("codestory");
+        previousLevel = logger.getLevel();
+        logger.setLevel(Level.INFO);
+        meter = new AllocationMeter(true);
+        EngineConfiguration configuration = new EngineConfiguration();
+        configuration.setAllocationFree(true);
+        elevator = new S03E01W2Elevator(configuration);
+        elevator.reset("allocation test", LOWER_FLOOR, HIGHER_FLOOR, CABIN_SIZE);
+        random = new Random(42);
+        nbUsers = 0;
+        floor = 0;
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        ((Logger) LoggerFactory.getLogger("codestory")).setLevel(previousLevel);
+    }
+
+    @Test
+    public void steady_state_should_not_allocate() {
+        play(20000);
+        meter.reset();
+
+        play(20000);
+
+        assertThat(meter.getCount(NEXT_COMMAND)).isEqualTo(20000);
+        assertThat(meter.getCount(CALL)).isPositive();
+        assertThat(meter.getCount(GO)).isPositive();
+        assertThat(meter.getBytesPerOperation(NEXT_COMMAND)).as("bytes per nextCommand").isLessThanOrEqualTo(NEXT_COMMAND_BUDGET);
+        assertThat(meter.getBytesPerOperation(CALL)).as("bytes per call").isLessThanOrEqualTo(CALL_BUDGET);
+        assertThat(meter.getBytesPerOperation(GO)).as("bytes per go").isLessThanOrEqualTo(GO_BUDGET);
+    }
+
+    @Test
+    public void default_engine_should_be_caught_allocating() {
+        elevator = new S03E01W2Elevator();
+        elevator.reset("allocation test", LOWER_FLOOR, HIGHER_FLOOR, CABIN_SIZE);
+
+        play(200);
+
+        assertThat(meter.getBytesPerOperation(NEXT_COMMAND)).isGreaterThan(NEXT_COMMAND_BUDGET);
+    }
+
+    private void play(int ticks) {
+        for (int tick = 0; tick < ticks; tick++) {
+            if (random.nextInt(4) == 0 && nbUsers < MAX_USERS) {
+                int from = LOWER_FLOOR + random.nextInt(HIGHER_FLOOR - LOWER_FLOOR + 1);
+                int to;
+                do {
+                    to = LOWER_FLOOR + random.nextInt(HIGHER_FLOOR - LOWER_FLOOR + 1);
+                } while (to == from);
+                initialFloors[nbUsers] = from;
+                floorsToGo[nbUsers] = to;
+                inside[nbUsers] = false;
+                nbUsers++;
+                long start = meter.start();
+                elevator.call(from, to > from ? Direction.UP : Direction.DOWN);
+                meter.record(CALL, start);
+            }
+            long start = meter.start();
+            Command command = elevator.nextCommand();
+            meter.record(NEXT_COMMAND, start);
+            if (command == Command.UP) {
+                floor++;
+            } else if (command == Command.DOWN) {
+                floor--;
+            } else if (command == Command.OPEN) {
+                usersGetInAndOut();
+            }
+        }
+    }
+
+    private void usersGetInAndOut() {
+        int nbInside = 0;
+        for (int u = 0; u < nbUsers; u++) {
+            if (inside[u] && floorsToGo[u] == floor) {
+                removeUser(u--);
+                elevator.userHasExited(null);
+            } else if (inside[u]) {
+                nbInside++;
+            }
+        }
+        for (int u = 0; u < nbUsers; u++) {
+            if (!inside[u] && initialFloors[u] == floor && nbInside < CABIN_SIZE) {
+                inside[u] = true;
+                nbInside++;
+                elevator.userHasEntered(null);
+                long start = meter.start();
+                elevator.go(floorsToGo[u]);
+                meter.record(GO, start);
+            }
+        }
+    }
+
+    private void removeUser(int u) {
+        nbUsers--;
+        initialFloors[u] = initialFloors[nbUsers];
+        floorsToGo[u] = floorsToGo[nbUsers];
+        inside[u] = inside[nbUsers];
+    }
+}
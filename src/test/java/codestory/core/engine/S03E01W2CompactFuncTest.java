@@ -0,0 +1,16 @@
+package codestory.core.engine;
+
+import codestory.EngineConfiguration;
+
+/**
+ * Same scenarios, users kept in a {@link codestory.core.CompactUserStore}.
+ */
+public class S03E01W2CompactFuncTest extends S03E01W2FuncTest {
+
+    @Override
+    protected S03E01W2Elevator newElevator() {
+        EngineConfiguration configuration = new EngineConfiguration();
+        configuration.setCompactUserStore(true);
+        return new S03E01W2Elevator(configuration);
+    }
+}
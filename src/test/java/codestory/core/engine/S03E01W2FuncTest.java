@@ -2,6 +2,7 @@ package codestory.core.engine;
 
 import codestory.core.Command;
 import codestory.core.Direction;
+import com.google.common.base.Optional;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -14,7 +15,11 @@ public class S03E01W2FuncTest {
 
     @BeforeMethod
     public void setUp() {
-        elevator = new S03E01W2Elevator();
+        elevator = newElevator();
+    }
+
+    protected S03E01W2Elevator newElevator() {
+        return new S03E01W2Elevator();
     }
 
     @Test
@@ -22,6 +27,26 @@ public class S03E01W2FuncTest {
         assertThat(elevator).is("CLOSE 0").reset("for test purposes").is("NOTHING 0").onTick("CLOSE 1");
     }
 
+    @Test
+    public void should_play_and_reset_a_building_without_floor_0() {
+        elevator.reset("a building without floor 0", 1, 10, 10);
+        elevator.call(3, Direction.UP);
+
+        org.fest.assertions.Assertions.assertThat(elevator.nextCommand()).isEqualTo(Command.UP);
+        org.fest.assertions.Assertions.assertThat(elevator.nextCommand()).isEqualTo(Command.UP);
+        org.fest.assertions.Assertions.assertThat(elevator.nextCommand()).isEqualTo(Command.UP);
+        org.fest.assertions.Assertions.assertThat(elevator.nextCommand()).isEqualTo(Command.OPEN);
+        elevator.userHasEntered(null);
+        elevator.go(7);
+        org.fest.assertions.Assertions.assertThat(elevator.nextCommand()).isEqualTo(Command.CLOSE);
+
+        elevator.reset("the game goes on", 1, 10, 10);
+        org.fest.assertions.Assertions.assertThat(elevator.getCurrentFloor().get()).isEqualTo(0);
+        elevator.reset("once more", 1, 10, 10);
+        org.fest.assertions.Assertions.assertThat(elevator.getState(Optional.of(false), Optional.of(false)))
+                .contains("once more");
+    }
+
     @Test
     public void simple_scenario() {
         elevator.logCurrentState("simple_scenario");
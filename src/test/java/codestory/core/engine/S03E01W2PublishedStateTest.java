@@ -0,0 +1,87 @@
+package codestory.core.engine;
+
+import codestory.EngineConfiguration;
+import codestory.core.Direction;
+import codestory.core.StateSnapshot;
+import codestory.core.User;
+import com.google.common.base.Optional;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class S03E01W2PublishedStateTest {
+
+    private static final Optional<Boolean> YES = Optional.of(true);
+    private static final Optional<Boolean> ABSENT = Optional.absent();
+    private S03E01W2Elevator elevator;
+
+    @BeforeMethod
+    public void setUp() {
+        EngineConfiguration configuration = new EngineConfiguration();
+        configuration.setPublishState(true);
+        elevator = new S03E01W2Elevator(configuration);
+        elevator.reset("test", 0, 9, 10);
+    }
+
+    @Test
+    public void polls_within_a_tick_should_get_the_same_bytes() {
+        elevator.call(3, Direction.UP);
+        elevator.nextCommand();
+
+        byte[] json = elevator.getStateAsJson(ABSENT, ABSENT);
+
+        assertThat(elevator.getStateAsJson(ABSENT, ABSENT)).isSameAs(json);
+        assertThat(elevator.getStateAsJson(YES, YES)).isNotSameAs(json);
+        assertThat(elevator.getStateAsJson(YES, YES)).isSameAs(elevator.getStateAsJson(YES, YES));
+    }
+
+    @Test
+    public void state_should_be_published_at_each_tick_and_reset() {
+        StateSnapshot afterReset = elevator.getPublishedState();
+        assertThat(afterReset.getTick()).isZero();
+
+        elevator.nextCommand();
+        StateSnapshot afterTick = elevator.getPublishedState();
+
+        assertThat(afterTick).isNotSameAs(afterReset);
+        assertThat(afterTick.getTick()).isEqualTo(1);
+    }
+
+    @Test
+    public void calls_should_only_show_up_at_the_next_tick() {
+        elevator.call(3, Direction.UP);
+        assertThat(elevator.getState(YES, ABSENT)).contains("\"users\":[]");
+
+        elevator.nextCommand();
+
+        assertThat(elevator.getState(YES, ABSENT)).contains("\"initialFloor\":3");
+    }
+
+    @Test
+    public void published_users_should_not_move_with_the_engine() {
+        elevator.call(3, Direction.UP);
+        elevator.nextCommand();
+        User published = elevator.getPublishedState().getContext(true, false).getUsers().get(0);
+        int tickToWait = published.getTickToWait();
+
+        elevator.nextCommand();
+        elevator.nextCommand();
+
+        assertThat(published.getTickToWait()).isEqualTo(tickToWait);
+        assertThat(elevator.getPublishedState().getContext(true, false).getUsers().get(0).getTickToWait())
+                .isEqualTo(tickToWait + 2);
+    }
+
+    @Test
+    public void unpublished_state_should_be_built_on_each_request() {
+        EngineConfiguration configuration = new EngineConfiguration();
+        configuration.setPublishState(false);
+        elevator = new S03E01W2Elevator(configuration);
+
+        elevator.call(3, Direction.UP);
+
+        assertThat(elevator.getPublishedState()).isNull();
+        assertThat(elevator.getState(YES, ABSENT)).contains("\"initialFloor\":3");
+    }
+}
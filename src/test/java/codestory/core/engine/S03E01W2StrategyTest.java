@@ -0,0 +1,81 @@
+package codestory.core.engine;
+
+import codestory.EngineConfiguration;
+import codestory.core.Command;
+import codestory.core.Direction;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class S03E01W2StrategyTest {
+
+    @DataProvider
+    public Object[][] stores() {
+        return new Object[][]{{false}, {true}};
+    }
+
+    private static S03E01W2Elevator elevator(boolean compactUserStore, StrategyParameters strategy) {
+        EngineConfiguration configuration = new EngineConfiguration();
+        configuration.setCompactUserStore(compactUserStore);
+        configuration.setStrategy(strategy);
+        S03E01W2Elevator elevator = new S03E01W2Elevator(configuration);
+        elevator.reset("test", 0, 9, 10);
+        return elevator;
+    }
+
+    /**
+     * A user boards at the ground floor for the 5th, another one waits at the 2nd since the start: the answer of
+     * the cabin reaching the 2nd floor.
+     */
+    private static Command atSecondFloor(S03E01W2Elevator elevator) {
+        elevator.call(0, Direction.UP);
+        elevator.call(2, Direction.UP);
+        assertThat(elevator.nextCommand()).isEqualTo(Command.OPEN);
+        elevator.userHasEntered(null);
+        elevator.go(5);
+        assertThat(elevator.nextCommand()).isEqualTo(Command.CLOSE);
+        assertThat(elevator.nextCommand()).isEqualTo(Command.UP);
+        assertThat(elevator.nextCommand()).isEqualTo(Command.UP);
+        return elevator.nextCommand();
+    }
+
+    @Test(dataProvider = "stores")
+    public void default_strategy_should_pick_everybody_up(boolean compactUserStore) {
+        assertThat(atSecondFloor(elevator(compactUserStore, new StrategyParameters()))).isEqualTo(Command.OPEN);
+    }
+
+    @Test(dataProvider = "stores")
+    public void a_full_enough_cabin_should_not_stop_for_more_users(boolean compactUserStore) {
+        StrategyParameters strategy = new StrategyParameters();
+        strategy.setMaxUsersOnBoard(1);
+
+        assertThat(atSecondFloor(elevator(compactUserStore, strategy))).isEqualTo(Command.UP);
+    }
+
+    @Test(dataProvider = "stores")
+    public void users_waiting_too_long_should_not_be_stopped_for(boolean compactUserStore) {
+        StrategyParameters strategy = new StrategyParameters();
+        strategy.setMaxTicksWaited(3);
+
+        assertThat(atSecondFloor(elevator(compactUserStore, strategy))).isEqualTo(Command.UP);
+    }
+
+    @Test(dataProvider = "stores")
+    public void crowd_rules_should_not_apply_to_a_quiet_building(boolean compactUserStore) {
+        StrategyParameters strategy = new StrategyParameters();
+        strategy.setMaxUsersOnBoard(1);
+        strategy.setCrowdThreshold(3);
+
+        assertThat(atSecondFloor(elevator(compactUserStore, strategy))).isEqualTo(Command.OPEN);
+    }
+
+    @Test
+    public void an_idle_cabin_should_wait_at_the_configured_floor() {
+        StrategyParameters strategy = new StrategyParameters();
+        strategy.setMiddleFloorRatio(0);
+
+        assertThat(elevator(false, strategy).nextCommand()).isEqualTo(Command.NOTHING);
+        assertThat(elevator(false, new StrategyParameters()).nextCommand()).isEqualTo(Command.UP);
+    }
+}
@@ -0,0 +1,173 @@
+package codestory.core.engine;
+
+import codestory.EngineConfiguration;
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.exception.EngineOverloadedException;
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SessionRegistryTest {
+
+    private EngineConfiguration configuration;
+    private ManualTicker ticker;
+    private SessionRegistry registry;
+
+    @BeforeMethod
+    public void setUp() {
+        configuration = new EngineConfiguration();
+        configuration.setSessionShards(2);
+        configuration.setSessionIdleMinutes(10);
+        ticker = new ManualTicker();
+        registry = new SessionRegistry(configuration, new DecisionTracer(configuration), ticker);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    public void a_session_should_keep_its_engine() {
+        assertThat(registry.engine("live")).isSameAs(registry.engine("live"));
+        assertThat(registry.engine("practice")).isNotSameAs(registry.engine("live"));
+        assertThat(registry.getSessions()).containsOnly("live", "practice");
+    }
+
+    @Test
+    public void sessions_should_not_share_their_game() {
+        ShardedElevatorEngine live = registry.engine("live");
+        ShardedElevatorEngine practice = registry.engine("practice");
+        live.reset("test", 0, 19, 30);
+        practice.reset("test", 0, 5, 10);
+
+        live.call(3, Direction.UP);
+        live.nextCommand();
+        practice.nextCommand();
+
+        assertThat(live.getHigherFloor()).isEqualTo(19);
+        assertThat(practice.getHigherFloor()).isEqualTo(5);
+        assertThat(live.getState(Optional.of(true), Optional.<Boolean>absent())).contains("\"initialFloor\":3");
+        assertThat(practice.getState(Optional.of(true), Optional.<Boolean>absent())).contains("\"users\":[]");
+    }
+
+    @Test
+    public void sharded_engines_should_only_run_on_their_shard_thread() {
+        ExecutorService shard = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("shard")
+                .build());
+        final List<String> threads = new CopyOnWriteArrayList<>();
+        S03E01W2Elevator probe = new S03E01W2Elevator() {
+            @Override
+            public Command nextCommand() {
+                threads.add(Thread.currentThread().getName());
+                return super.nextCommand();
+            }
+
+            @Override
+            public ElevatorEngine call(Integer atFloor, Direction to) {
+                threads.add(Thread.currentThread().getName());
+                return super.call(atFloor, to);
+            }
+        };
+        try {
+            ShardedElevatorEngine engine = new ShardedElevatorEngine("live", probe, shard, Long.MAX_VALUE);
+
+            engine.call(1, Direction.UP);
+            engine.nextCommand();
+
+            assertThat(threads).hasSize(2).containsOnly("shard");
+        } finally {
+            shard.shutdown();
+        }
+    }
+
+    @Test
+    public void sessions_should_always_get_the_same_shard() {
+        assertThat(registry.shardOf("live")).isEqualTo(registry.shardOf("live"));
+        assertThat(registry.shardOf("live")).isGreaterThanOrEqualTo(0).isLessThan(2);
+        assertThat(registry.shardOf("practice")).isGreaterThanOrEqualTo(0).isLessThan(2);
+    }
+
+    @Test
+    public void idle_sessions_should_be_forgotten() {
+        registry.engine("live");
+        ticker.advance(5, TimeUnit.MINUTES);
+        registry.engine("practice");
+        ticker.advance(6, TimeUnit.MINUTES);
+
+        registry.sweep();
+
+        assertThat(registry.getSessions()).containsOnly("practice");
+    }
+
+    @Test
+    public void sessions_should_be_refused_past_the_cap_without_dropping_live_ones() {
+        configuration.setMaxSessions(2);
+        registry.shutdown();
+        registry = new SessionRegistry(configuration, new DecisionTracer(configuration), ticker);
+        registry.engine("live");
+        registry.engine("practice");
+
+        try {
+            registry.engine("newcomer");
+            throw new AssertionError("EngineOverloadedException expected");
+        } catch (EngineOverloadedException e) {
+            assertThat(e.getMessage()).contains("newcomer");
+        }
+        assertThat(registry.getSessions()).containsOnly("live", "practice");
+
+        ticker.advance(11, TimeUnit.MINUTES);
+        registry.engine("newcomer");
+        assertThat(registry.getSessions()).containsOnly("newcomer");
+    }
+
+    @Test
+    public void calls_should_be_refused_over_the_memory_cap() {
+        configuration.setSessionMemoryCap(10 * 128);
+        registry.shutdown();
+        registry = new SessionRegistry(configuration, new DecisionTracer(configuration), ticker);
+        ShardedElevatorEngine engine = registry.engine("live");
+        for (int call = 0; call <= 10; call++) {
+            engine.call(1, Direction.UP);
+        }
+
+        try {
+            engine.call(1, Direction.UP);
+            throw new AssertionError("EngineOverloadedException expected");
+        } catch (EngineOverloadedException e) {
+            assertThat(e.getMessage()).contains("live");
+        }
+        assertThat(engine.estimatedBytes()).isEqualTo(11 * 128);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void engine_errors_should_reach_the_caller() {
+        registry.engine("live").call(42, Direction.UP);
+    }
+
+    private static class ManualTicker extends Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        void advance(long duration, TimeUnit unit) {
+            nanos.addAndGet(unit.toNanos(duration));
+        }
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package codestory.replay;
+
+import codestory.core.engine.S03E01W2Elevator;
+import codestory.replay.LoggedRequest.Operation;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ReplayTest {
+
+    private static final String LOG_PREFIX = "127.0.0.1 - - [13/Nov/2013:21:06:45 +0000] ";
+
+    private static List<LoggedRequest> log(String... requests) throws Exception {
+        String[] lines = new String[requests.length];
+        for (int i = 0; i < requests.length; i++) {
+            lines[i] = LOG_PREFIX + requests[i];
+        }
+        return AccessLogParser.read(new BufferedReader(new StringReader(Joiner.on('\n').join(lines))));
+    }
+
+    @Test
+    public void parser_should_decode_the_query_and_keep_the_response_length() {
+        Optional<LoggedRequest> reset = AccessLogParser.parse(1, LOG_PREFIX
+                + "\"GET /reset?lowerFloor=0&higherFloor=19&cabinSize=11&cause=player+has+requested+a+reset HTTP/1.1\" 200 0 2 2");
+        Optional<LoggedRequest> nextCommand = AccessLogParser.parse(2, LOG_PREFIX
+                + "\"GET /nextCommand HTTP/1.1\" 200 5 3 3");
+
+        assertThat(reset.get().getOperation()).isEqualTo(Operation.RESET);
+        assertThat(reset.get().getParameters().get("cause")).isEqualTo("player has requested a reset");
+        assertThat(reset.get().intParameter("higherFloor", 5)).isEqualTo(19);
+        assertThat(nextCommand.get().getLine()).isEqualTo(2);
+        assertThat(nextCommand.get().getResponseBytes()).isEqualTo(5);
+    }
+
+    @Test
+    public void parser_should_leave_out_what_is_not_a_game_request() throws Exception {
+        List<LoggedRequest> requests = log("\"GET /?includeFullUserList=true HTTP/1.1\" 200 512 3 3",
+                "\"GET /sessions/practice/nextCommand HTTP/1.1\" 200 7 1 1",
+                "\"GET /nextCommand HTTP/1.1\" 200 7 1 1");
+
+        assertThat(requests).hasSize(1);
+        assertThat(requests.get(0).getLine()).isEqualTo(3);
+        assertThat(AccessLogParser.parse(1, "INFO  [2013-11-13 21:06:45,123] started").isPresent()).isFalse();
+    }
+
+    @Test
+    public void replay_should_report_ticks_latencies_and_score() throws Exception {
+        List<LoggedRequest> requests = log(
+                "\"GET /reset?lowerFloor=0&higherFloor=5&cabinSize=10&cause=test HTTP/1.1\" 200 0 2 2",
+                "\"GET /call?atFloor=0&to=UP HTTP/1.1\" 200 0 2 2",
+                "\"GET /nextCommand HTTP/1.1\" 200 4 3 3",
+                "\"GET /userHasEntered HTTP/1.1\" 200 0 2 2",
+                "\"GET /go?floorToGo=1 HTTP/1.1\" 200 0 2 2",
+                "\"GET /nextCommand HTTP/1.1\" 200 5 3 3",
+                "\"GET /nextCommand HTTP/1.1\" 200 2 3 3",
+                "\"GET /nextCommand HTTP/1.1\" 200 4 3 3",
+                "\"GET /userHasExited HTTP/1.1\" 200 0 2 2");
+
+        ReplayReport report = new Replay(requests).run(ReplayedEngine.W2.create());
+
+        assertThat(report.getRequests()).isEqualTo(9);
+        assertThat(report.getTicks()).isEqualTo(4);
+        assertThat(report.getLatencies().get(Operation.NEXT_COMMAND).getCount()).isEqualTo(4);
+        assertThat(report.getLatencies().get(Operation.NEXT_COMMAND).getMax()).isGreaterThan(0);
+        assertThat(report.getTicksPerSecond()).isGreaterThan(0);
+        assertThat(report.getDivergenceCount()).isZero();
+        assertThat(report.getScore()).isGreaterThan(0);
+    }
+
+    @Test
+    public void replay_should_report_other_commands_and_failures() throws Exception {
+        List<LoggedRequest> requests = log(
+                "\"GET /reset?lowerFloor=0&higherFloor=5&cabinSize=10&cause=test HTTP/1.1\" 200 0 2 2",
+                "\"GET /nextCommand HTTP/1.1\" 200 5 3 3",
+                "\"GET /call?atFloor=12&to=DOWN HTTP/1.1\" 200 0 2 2",
+                "\"GET /call?atFloor=2&to=SIDEWAYS HTTP/1.1\" 400 0 2 2");
+
+        ReplayReport report = new Replay(requests).run(new S03E01W2Elevator());
+
+        assertThat(report.getDivergenceCount()).isEqualTo(2);
+        assertThat(report.getDivergences().get(0)).isEqualTo(
+                new ReplayReport.Divergence(2, 1, Operation.NEXT_COMMAND, "CLOSE", "UP"));
+        assertThat(report.getDivergences().get(1).getLine()).isEqualTo(3);
+        assertThat(report.getDivergences().get(1).getLogged()).isEqualTo("HTTP 200");
+        assertThat(report.getDivergences().get(1).getReplayed()).isEqualTo("IllegalArgumentException");
+        assertThat(report.getErrors().get(Operation.CALL)).isEqualTo(2);
+    }
+}
@@ -0,0 +1,22 @@
+package codestory.simulator;
+
+/**
+ * Games the engine and simulator tests play.
+ */
+public final class Games {
+
+    private Games() {
+    }
+
+    /**
+     * @return a game of <code>ticks</code> ticks in a building of floors 0 to <code>higherFloor</code>, with the
+     * default traffic
+     */
+    public static SimulationConfiguration building(int higherFloor, int cabinSize, int ticks) {
+        SimulationConfiguration configuration = new SimulationConfiguration();
+        configuration.setHigherFloor(higherFloor);
+        configuration.setCabinSize(cabinSize);
+        configuration.setTicks(ticks);
+        return configuration;
+    }
+}
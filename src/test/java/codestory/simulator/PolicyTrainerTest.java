@@ -0,0 +1,78 @@
+package codestory.simulator;
+
+import codestory.EngineConfiguration;
+import codestory.core.engine.DecisionTracer;
+import codestory.core.engine.PolicyTable;
+import codestory.core.engine.S03E01W2Elevator;
+import codestory.core.engine.TabulatedElevator;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PolicyTrainerTest {
+
+    private ForkJoinPool pool;
+    private PolicyTrainer trainer;
+
+    @BeforeClass
+    public void setUp() {
+        pool = new ForkJoinPool(2);
+        SimulationConfiguration template = new SimulationConfiguration();
+        template.setTicks(300);
+        trainer = new PolicyTrainer(pool, template, 5, 10, TrafficProfile.MORNING, 2, 2);
+    }
+
+    @AfterClass
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    private static SimulationConfiguration game() {
+        SimulationConfiguration configuration = Games.building(4, 10, 300);
+        TrafficProfile.MORNING.apply(configuration, 5);
+        return configuration;
+    }
+
+    @Test
+    public void no_training_should_play_as_w2() {
+        TrainedPolicy trained = trainer.train(0);
+        TabulatedElevator elevator = new TabulatedElevator(new EngineConfiguration(),
+                new DecisionTracer(DecisionTracer.Sampling.OFF, 1), trained.getTable());
+
+        SimulationReport report = new Simulator(game(), elevator).run();
+
+        assertThat(trained.getBestEpoch()).isZero();
+        assertThat(trained.getScorePerTick()).isEqualTo(trained.getW2ScorePerTick());
+        assertThat(report.getScore()).isEqualTo(new Simulator(game(), new S03E01W2Elevator()).run().getScore());
+        assertThat(elevator.getLiveDecisions()).isZero();
+    }
+
+    @Test
+    public void training_should_never_do_worse_than_w2() {
+        TrainedPolicy trained = trainer.train(5);
+
+        assertThat(trained.getScorePerTick()).isGreaterThanOrEqualTo(trained.getW2ScorePerTick());
+        assertThat(trained.getTable().getLowerFloor()).isZero();
+        assertThat(trained.getTable().getHigherFloor()).isEqualTo(4);
+    }
+
+    @Test
+    public void learnt_tables_should_be_mapped_as_written() throws Exception {
+        TrainedPolicy trained = trainer.train(2);
+        File file = File.createTempFile("policy", ".bin");
+        file.deleteOnExit();
+        trained.getTable().writeTo(file);
+
+        PolicyTable mapped = PolicyTable.map(file.getPath());
+
+        for (int situation = 0; situation < PolicyTable.situations(5); situation++) {
+            assertThat(mapped.lookup(situation)).isEqualTo(trained.getTable().lookup(situation));
+        }
+        assertThat(PolicyTable.map(file.getPath())).isSameAs(mapped);
+    }
+}
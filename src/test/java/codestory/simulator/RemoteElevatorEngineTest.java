@@ -0,0 +1,103 @@
+package codestory.simulator;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.exception.ElevatorIsBrokenException;
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RemoteElevatorEngineTest {
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private RemoteElevatorEngine engine;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        requests.clear();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String request = exchange.getRequestURI().toString();
+                if (exchange.getRequestMethod().equals("POST")) {
+                    request += " " + new String(ByteStreams.toByteArray(exchange.getRequestBody()), Charsets.UTF_8);
+                }
+                requests.add(request);
+                byte[] body = request.trim().endsWith("nextCommand") ? "OPEN".getBytes(Charsets.UTF_8) : new byte[0];
+                exchange.sendResponseHeaders(request.contains("atFloor=-1") ? 400 : 200, body.length == 0 ? -1 : body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.start();
+        engine = new RemoteElevatorEngine("http://127.0.0.1:" + server.getAddress().getPort() + "/sessions/test");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void requests_should_be_those_of_the_game_server() {
+        engine.reset("the simulation starts", 0, 9, 5);
+        engine.call(3, Direction.UP);
+        Command command = engine.nextCommand();
+        engine.userHasEntered(null);
+        engine.go(7);
+
+        assertThat(command).isEqualTo(Command.OPEN);
+        assertThat(engine.getHigherFloor()).isEqualTo(9);
+        assertThat(requests).containsExactly(
+                "/sessions/test/reset?lowerFloor=0&higherFloor=9&cabinSize=5&cause=the+simulation+starts",
+                "/sessions/test/call?atFloor=3&to=UP", "/sessions/test/nextCommand", "/sessions/test/userHasEntered",
+                "/sessions/test/go?floorToGo=7");
+    }
+
+    @Test
+    public void batching_should_post_the_events_of_a_tick_with_its_next_command() {
+        engine = new RemoteElevatorEngine("http://127.0.0.1:" + server.getAddress().getPort() + "/sessions/test", true);
+        engine.reset("the simulation starts", 0, 9, 5);
+        engine.call(3, Direction.UP);
+        engine.call(5, Direction.DOWN);
+        Command command = engine.nextCommand();
+        engine.userHasEntered(null);
+        engine.go(7);
+        engine.reset("the simulation ends", 0, 9, 5);
+
+        assertThat(command).isEqualTo(Command.OPEN);
+        assertThat(requests).containsExactly(
+                "/sessions/test/reset?lowerFloor=0&higherFloor=9&cabinSize=5&cause=the+simulation+starts",
+                "/sessions/test/batch call?atFloor=3&to=UP\ncall?atFloor=5&to=DOWN\nnextCommand\n",
+                "/sessions/test/batch userHasEntered\ngo?floorToGo=7\n",
+                "/sessions/test/reset?lowerFloor=0&higherFloor=9&cabinSize=5&cause=the+simulation+ends");
+    }
+
+    @Test
+    public void a_reset_without_cause_should_not_send_one() {
+        engine.reset(null, 0, 9, 5);
+
+        assertThat(requests).containsExactly("/sessions/test/reset?lowerFloor=0&higherFloor=9&cabinSize=5");
+    }
+
+    @Test(expectedExceptions = ElevatorIsBrokenException.class)
+    public void an_error_status_should_break_the_elevator() {
+        engine.call(-1, Direction.UP);
+    }
+}
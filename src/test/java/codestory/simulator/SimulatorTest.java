@@ -0,0 +1,124 @@
+package codestory.simulator;
+
+import codestory.core.Command;
+import codestory.core.Direction;
+import codestory.core.User;
+import codestory.core.engine.ElevatorEngine;
+import codestory.core.engine.S03E01W2Elevator;
+import codestory.replay.ReplayedEngine;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+
+import static codestory.simulator.Games.building;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class SimulatorTest {
+
+    @Test
+    public void w2_should_deliver_users_without_failing() {
+        SimulationReport report = new Simulator(building(19, 30, 2000), ReplayedEngine.W2.create()).run();
+
+        assertThat(report.getFailures()).isZero();
+        assertThat(report.getDelivered()).isGreaterThan(100);
+        assertThat(report.getArrived()).isGreaterThanOrEqualTo(report.getDelivered());
+        assertThat(report.getScore()).isGreaterThan(0);
+        assertThat(report.getAverageTicksToGo()).isGreaterThanOrEqualTo(3);
+    }
+
+    @Test
+    public void w2_should_not_fail_in_a_building_with_basements() {
+        SimulationConfiguration configuration = building(5, 10, 500);
+        configuration.setLowerFloor(-3);
+
+        SimulationReport report = new Simulator(configuration, ReplayedEngine.W2.create()).run();
+
+        assertThat(report.getFailures()).isZero();
+        assertThat(report.getScore()).isGreaterThan(0);
+    }
+
+    @Test
+    public void same_seed_should_play_the_same_game() {
+        SimulationReport first = new Simulator(building(9, 5, 500), ReplayedEngine.W2.create()).run();
+        SimulationReport second = new Simulator(building(9, 5, 500), ReplayedEngine.W2.create()).run();
+
+        assertThat(second.getArrived()).isEqualTo(first.getArrived());
+        assertThat(second.getDelivered()).isEqualTo(first.getDelivered());
+        assertThat(second.getScore()).isEqualTo(first.getScore());
+    }
+
+    @Test
+    public void users_should_show_up_where_arrivals_are_configured() {
+        SimulationConfiguration configuration = building(5, 30, 300);
+        configuration.setArrivalRates(Arrays.asList(0.3, 0.0, 0.0, 0.0, 0.0, 0.0));
+        configuration.setDestinationWeights(Arrays.asList(0.0, 0.0, 0.0, 0.0, 0.0, 1.0));
+        CountingEngine engine = new CountingEngine();
+
+        SimulationReport report = new Simulator(configuration, engine).run();
+
+        assertThat(report.getArrived()).isGreaterThan(50);
+        assertThat(engine.calls[0]).isEqualTo(report.getArrived());
+        assertThat(engine.gos[5]).isEqualTo(engine.entered);
+    }
+
+    @Test
+    public void no_more_users_than_cabinSize_should_enter() {
+        CountingEngine engine = new CountingEngine();
+
+        SimulationReport report = new Simulator(building(9, 2, 1000), engine).run();
+
+        assertThat(report.getDelivered()).isGreaterThan(0);
+        assertThat(engine.maxInside).isEqualTo(2);
+    }
+
+    @Test
+    public void refused_commands_should_cost_a_loss_and_a_reset() {
+        ElevatorEngine alwaysUp = new S03E01W2Elevator() {
+            @Override
+            public Command nextCommand() {
+                super.nextCommand();
+                return Command.UP;
+            }
+        };
+
+        SimulationReport report = new Simulator(building(5, 30, 12), alwaysUp).run();
+
+        // UP from 5 at ticks 6 and 12, back to the lower floor after the first reset
+        assertThat(report.getFailures()).isEqualTo(2);
+        assertThat(report.getLastFailure()).isEqualTo("UP from the higher floor");
+        assertThat(report.getScore()).isEqualTo(-12);
+    }
+
+    private static class CountingEngine extends S03E01W2Elevator {
+        final int[] calls = new int[20];
+        final int[] gos = new int[20];
+        int entered;
+        int inside;
+        int maxInside;
+
+        @Override
+        public ElevatorEngine call(Integer atFloor, Direction to) {
+            calls[atFloor]++;
+            return super.call(atFloor, to);
+        }
+
+        @Override
+        public ElevatorEngine go(Integer floorToGo) {
+            gos[floorToGo]++;
+            return super.go(floorToGo);
+        }
+
+        @Override
+        public ElevatorEngine userHasEntered(User user) {
+            entered++;
+            maxInside = Math.max(maxInside, ++inside);
+            return super.userHasEntered(user);
+        }
+
+        @Override
+        public ElevatorEngine userHasExited(User user) {
+            inside--;
+            return super.userHasExited(user);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package codestory.simulator;
+
+import codestory.core.Command;
+import codestory.core.engine.S03E01W2Elevator;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TournamentTest {
+
+    private static SimulationConfiguration building() {
+        SimulationConfiguration configuration = Games.building(9, 30, 200);
+        configuration.setMeasureCpu(true);
+        return configuration;
+    }
+
+    @Test
+    public void engines_should_be_ranked_by_score_per_tick() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<Standing> standings = new Tournament(Arrays.asList(AlwaysUp.class.getName(), "W2"), building(), 5,
+                    pool).run();
+
+            assertThat(standings).hasSize(2);
+            assertThat(standings.get(0).getEngine()).isEqualTo("W2");
+            assertThat(standings.get(0).getGames()).isEqualTo(5);
+            assertThat(standings.get(0).getTicks()).isEqualTo(1000);
+            assertThat(standings.get(0).getScorePerTick()).isGreaterThan(0);
+            assertThat(standings.get(0).getCpuNanosPerDecision()).isGreaterThan(0);
+            assertThat(standings.get(1).getFailures()).isGreaterThan(0);
+            assertThat(standings.get(1).getScorePerTick()).isLessThan(0);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void games_should_be_the_same_whatever_the_split() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            Standing split = new Tournament(Arrays.asList("W2"), building(), 6, pool).run().get(0);
+            Standing alone = new Standing("W2");
+            for (int game = 0; game < 6; game++) {
+                alone.add(new Simulator(building().withSeed(42 + game), new S03E01W2Elevator()).run());
+            }
+
+            assertThat(split.getScore()).isEqualTo(alone.getScore());
+            assertThat(split.getDelivered()).isEqualTo(alone.getDelivered());
+            assertThat(split.waitPercentile(0.99)).isEqualTo(alone.waitPercentile(0.99));
+            assertThat(split.getMeanWait()).isEqualTo(alone.getMeanWait());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void wait_percentiles_should_use_the_nearest_rank() {
+        Standing standing = new Standing("test");
+        standing.merge(new Standing("test"));
+        SimulationReport report = new SimulationReport(10, 0, 0, 0, 0, null, 0, 0, 0, 0,
+                new long[]{0, 50, 0, 49, 0, 1}, 0, 0);
+        standing.add(report);
+
+        assertThat(standing.waitPercentile(0.5)).isEqualTo(1);
+        assertThat(standing.waitPercentile(0.99)).isEqualTo(3);
+        assertThat(standing.waitPercentile(1)).isEqualTo(5);
+        assertThat(standing.getMeanWait()).isEqualTo((50 + 3 * 49 + 5) / 100.0);
+    }
+
+    public static class AlwaysUp extends S03E01W2Elevator {
+        @Override
+        public Command nextCommand() {
+            super.nextCommand();
+            return Command.UP;
+        }
+    }
+}
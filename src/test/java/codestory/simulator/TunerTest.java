@@ -0,0 +1,55 @@
+package codestory.simulator;
+
+import codestory.core.engine.StrategyParameters;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TunerTest {
+
+    private ForkJoinPool pool;
+    private Tuner tuner;
+
+    @BeforeClass
+    public void setUp() {
+        pool = new ForkJoinPool(2);
+        SimulationConfiguration template = new SimulationConfiguration();
+        template.setTicks(300);
+        tuner = new Tuner(pool, template, 2);
+    }
+
+    @AfterClass
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void grid_search_should_never_do_worse_than_the_defaults() {
+        TunedStrategy tuned = tuner.tune(10, 10, TrafficProfile.EVENING, Tuner.Search.GRID, 0);
+
+        assertThat(tuned.getEvaluated()).isEqualTo(1 + Tuner.grid(10, 10).size());
+        assertThat(tuned.getScorePerTick()).isGreaterThanOrEqualTo(tuned.getDefaultScorePerTick());
+        assertThat(tuned.getFloors()).isEqualTo(10);
+        assertThat(tuned.getProfile()).isEqualTo(TrafficProfile.EVENING);
+    }
+
+    @Test
+    public void refine_search_should_evaluate_the_samples_asked_for() {
+        TunedStrategy tuned = tuner.tune(6, 5, TrafficProfile.BUSY, Tuner.Search.REFINE, 7);
+
+        assertThat(tuned.getEvaluated()).isEqualTo(8);
+        assertThat(tuned.getScorePerTick()).isGreaterThanOrEqualTo(tuned.getDefaultScorePerTick());
+    }
+
+    @Test
+    public void same_search_should_find_the_same_strategy() {
+        StrategyParameters first = tuner.tune(6, 5, TrafficProfile.SPARSE, Tuner.Search.RANDOM, 5).getStrategy();
+        StrategyParameters second = tuner.tune(6, 5, TrafficProfile.SPARSE, Tuner.Search.RANDOM, 5).getStrategy();
+
+        assertThat(second).isEqualTo(first);
+    }
+}
@@ -0,0 +1,120 @@
+package codestory.transport;
+
+import codestory.core.AllocationMeter;
+import codestory.core.Direction;
+import codestory.core.engine.S03E01W2Elevator;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class NioGameListenerTest {
+
+    private S03E01W2Elevator engine;
+    private NioGameListener listener;
+    private Socket socket;
+    private BufferedReader input;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        engine = new S03E01W2Elevator();
+        listener = new NioGameListener(engine, new AllocationMeter(false), 0);
+        listener.start();
+        socket = new Socket("localhost", listener.getPort());
+        socket.setSoTimeout(5000);
+        input = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charsets.US_ASCII));
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        socket.close();
+        listener.stop();
+    }
+
+    private void send(String... targets) throws Exception {
+        StringBuilder requests = new StringBuilder();
+        for (String target : targets) {
+            requests.append("GET ").append(target).append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        }
+        OutputStream output = socket.getOutputStream();
+        output.write(requests.toString().getBytes(Charsets.US_ASCII));
+        output.flush();
+    }
+
+    /**
+     * @return the status line and the body of the next response
+     */
+    private String[] response() throws Exception {
+        String status = input.readLine();
+        int length = 0;
+        for (String header = input.readLine(); !header.isEmpty(); header = input.readLine()) {
+            if (header.startsWith("Content-Length: ")) {
+                length = Integer.parseInt(header.substring("Content-Length: ".length()));
+            }
+        }
+        char[] body = new char[length];
+        for (int read = 0; read < length; ) {
+            read += input.read(body, read, length - read);
+        }
+        return new String[]{status, new String(body)};
+    }
+
+    @Test
+    public void pipelined_game_requests_should_be_answered_in_order() throws Exception {
+        send("/reset?cause=start&lowerFloor=-1&higherFloor=9&cabinSize=10",
+                "/call?atFloor=3&to=DOWN", "/nextCommand", "/userHasEntered", "/go?floorToGo=-1", "/userHasExited");
+
+        for (int i = 0; i < 6; i++) {
+            String[] response = response();
+            assertThat(response[0]).isEqualTo("HTTP/1.1 200 OK");
+            if (i == 2) {
+                assertThat(response[1]).isEqualTo("UP");
+            }
+        }
+        assertThat(engine.getLowerFloor()).isEqualTo(-1);
+        assertThat(engine.getHigherFloor()).isEqualTo(9);
+        assertThat(engine.exportState().nbWaitingAt(3, Direction.DOWN)).isEqualTo(1);
+        send("/reset?higherFloor=5&cause=too+slow%2C+%C3%A9t%C3%A9");
+        assertThat(response()[0]).isEqualTo("HTTP/1.1 200 OK");
+        assertThat(engine.getState(Optional.of(false), Optional.of(false))).contains("too slow, été");
+    }
+
+    @Test
+    public void malformed_or_unknown_requests_should_be_refused() throws Exception {
+        send("/call?atFloor=three&to=DOWN", "/call?atFloor=3&to=SIDEWAYS", "/go", "/nextCommand?cabin=1",
+                "/reset?cabinCount=2", "/getState");
+
+        assertThat(response()[0]).isEqualTo("HTTP/1.1 400 Bad Request");
+        assertThat(response()[0]).isEqualTo("HTTP/1.1 400 Bad Request");
+        assertThat(response()[0]).isEqualTo("HTTP/1.1 400 Bad Request");
+        assertThat(response()[0]).isEqualTo("HTTP/1.1 400 Bad Request");
+        assertThat(response()[0]).isEqualTo("HTTP/1.1 400 Bad Request");
+        assertThat(response()[0]).isEqualTo("HTTP/1.1 404 Not Found");
+    }
+
+    @Test
+    public void calls_should_ignore_their_cabin_as_on_the_jersey_port() throws Exception {
+        send("/call?atFloor=3&to=DOWN&cabin=1");
+
+        assertThat(response()[0]).isEqualTo("HTTP/1.1 200 OK");
+        assertThat(engine.exportState().nbWaitingAt(3, Direction.DOWN)).isEqualTo(1);
+    }
+
+    @Test
+    public void a_connection_asked_to_close_should_be_closed_after_its_response() throws Exception {
+        OutputStream output = socket.getOutputStream();
+        output.write("GET /nextCommand HTTP/1.1\r\nConnection: close\r\n\r\n".getBytes(Charsets.US_ASCII));
+        output.flush();
+
+        assertThat(response()[0]).isEqualTo("HTTP/1.1 200 OK");
+        assertThat(input.read()).isEqualTo(-1);
+    }
+}